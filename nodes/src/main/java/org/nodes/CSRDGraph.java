@@ -0,0 +1,1018 @@
+package org.nodes;
+
+import java.util.AbstractCollection;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import nl.peterbloem.kit.Functions;
+
+/**
+ * An immutable implementation of a directed graph, backed by a compressed
+ * sparse row (CSR) representation.
+ *
+ * The structure is stored in four int arrays: for both the outgoing and the
+ * incoming links there is an array of row offsets (one per node, plus one) and
+ * an array of neighbor indices. Each row is sorted, so that checking for a
+ * link takes a binary search. This uses about 8 bytes per link (4 for each
+ * direction), and no objects per node or link.
+ *
+ * The graph cannot be modified. Use {@link #copy(Graph)} to create one from
+ * any other graph. All methods that would modify the graph throw an
+ * UnsupportedOperationException. Since node indices never change, node and
+ * link objects never become invalid.
+ *
+ * The primitive methods ({@link #outDegree(int)}, {@link #out(int, int)}, etc.)
+ * allow the graph to be traversed without creating any objects.
+ *
+ * @author Peter
+ *
+ * @param <L>
+ */
+public class CSRDGraph<L> implements DGraph<L>, FastWalkable<L, DNode<L>>
+{
+	private List<L> labels;
+
+	// * row i of the out-lists is outTargets[outOffsets[i]] to
+	//   outTargets[outOffsets[i+1]] (exclusive)
+	private int[] outOffsets;
+	private int[] outTargets;
+
+	private int[] inOffsets;
+	private int[] inTargets;
+
+	private int hash;
+	private boolean hashed = false;
+
+	CSRDGraph(List<L> labels, int[] outOffsets, int[] outTargets, int[] inOffsets, int[] inTargets)
+	{
+		this.labels = labels;
+
+		this.outOffsets = outOffsets;
+		this.outTargets = outTargets;
+		this.inOffsets = inOffsets;
+		this.inTargets = inTargets;
+	}
+
+	@Override
+	public int size()
+	{
+		return labels.size();
+	}
+
+	@Override
+	public long numLinks()
+	{
+		return outTargets.length;
+	}
+
+	/**
+	 * The number of links going out of the given node.
+	 */
+	public int outDegree(int node)
+	{
+		return outOffsets[node + 1] - outOffsets[node];
+	}
+
+	/**
+	 * The number of links coming into the given node.
+	 */
+	public int inDegree(int node)
+	{
+		return inOffsets[node + 1] - inOffsets[node];
+	}
+
+	/**
+	 * The index of the j-th node (in order of index) that the given node links
+	 * to.
+	 */
+	public int out(int node, int j)
+	{
+		return outTargets[outOffsets[node] + j];
+	}
+
+	/**
+	 * The index of the j-th node (in order of index) that links to the given
+	 * node.
+	 */
+	public int in(int node, int j)
+	{
+		return inTargets[inOffsets[node] + j];
+	}
+
+	/**
+	 * Whether there is at least one link from the first node to the second.
+	 */
+	public boolean connectedTo(int from, int to)
+	{
+		return Arrays.binarySearch(outTargets, outOffsets[from], outOffsets[from + 1], to) >= 0;
+	}
+
+	/**
+	 * The number of links from the first node to the second.
+	 */
+	private int numLinks(int from, int to)
+	{
+		return count(outTargets, outOffsets[from], outOffsets[from + 1], to);
+	}
+
+	@Override
+	public DNode<L> node(L label)
+	{
+		for(int i = 0; i < labels.size(); i++)
+			if(Functions.equals(labels.get(i), label))
+				return new CSRDNode(i);
+
+		return null;
+	}
+
+	@Override
+	public Collection<? extends DNode<L>> nodes(L label)
+	{
+		List<Integer> indices = new ArrayList<Integer>();
+
+		for(int i = 0; i < labels.size(); i++)
+			if(Functions.equals(labels.get(i), label))
+				indices.add(i);
+
+		return new NodeList(toArray(indices), 0, indices.size());
+	}
+
+	@Override
+	public List<? extends DNode<L>> nodes()
+	{
+		return new AllNodes();
+	}
+
+	@Override
+	public DNode<L> get(int i)
+	{
+		if(i < 0 || i >= size())
+			throw new IndexOutOfBoundsException("Index "+i+" is out of bounds for graph of size "+size()+".");
+
+		return new CSRDNode(i);
+	}
+
+	@Override
+	public Iterable<? extends DLink<L>> links()
+	{
+		return new LinkCollection();
+	}
+
+	@Override
+	public DNode<L> add(L label)
+	{
+		throw new UnsupportedOperationException("CSRDGraph is immutable.");
+	}
+
+	@Override
+	public Set<L> labels()
+	{
+		return new HashSet<L>(labels);
+	}
+
+	@Override
+	public boolean connected(L from, L to)
+	{
+		for(DNode<L> a : nodes(from))
+			for(DNode<L> b : nodes(to))
+				if(a.connected(b))
+					return true;
+
+		return false;
+	}
+
+	/**
+	 * Since the graph is immutable, its state never changes.
+	 */
+	@Override
+	public long state()
+	{
+		return 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public Class<? extends DGraph<L>> level()
+	{
+		Object obj = DGraph.class;
+		return (Class<? extends DGraph<L>>) obj;
+	}
+
+	@Override
+	public List<DNode<L>> neighborsFast(Node<L> node)
+	{
+		if(node.graph() != this)
+			throw new IllegalArgumentException("Cannot call with node from another graph.");
+
+		int i = node.index();
+
+		return new NodeList(
+				inTargets, inOffsets[i], inOffsets[i+1],
+				outTargets, outOffsets[i], outOffsets[i+1]);
+	}
+
+	@Override
+	public int numNeighborsFast(int node)
+	{
+		return inDegree(node) + outDegree(node);
+	}
+
+	@Override
+	public int neighborFast(int node, int i)
+	{
+		int in = inDegree(node);
+
+		return i < in ? in(node, i) : out(node, i - in);
+	}
+
+	@Override
+	public IntCursor neighborCursor()
+	{
+		return new Cursor();
+	}
+
+	/**
+	 * Walks over the in-segment, and then the out-segment of a node.
+	 */
+	private class Cursor implements IntCursor
+	{
+		private int in, inEnd, out, outEnd, size;
+
+		@Override
+		public void reset(int node)
+		{
+			in = inOffsets[node];
+			inEnd = inOffsets[node + 1];
+			out = outOffsets[node];
+			outEnd = outOffsets[node + 1];
+
+			size = (inEnd - in) + (outEnd - out);
+		}
+
+		@Override
+		public int size()
+		{
+			return size;
+		}
+
+		@Override
+		public boolean hasNext()
+		{
+			return in < inEnd || out < outEnd;
+		}
+
+		@Override
+		public int next()
+		{
+			if(in < inEnd)
+				return inTargets[in++];
+
+			if(out < outEnd)
+				return outTargets[out++];
+
+			throw new NoSuchElementException();
+		}
+	}
+
+	private class CSRDNode implements DNode<L>
+	{
+		private int index;
+
+		public CSRDNode(int index)
+		{
+			this.index = index;
+		}
+
+		@Override
+		public L label()
+		{
+			return labels.get(index);
+		}
+
+		@Override
+		public Collection<? extends DNode<L>> neighbors()
+		{
+			int[] indices = union(
+					inTargets, inOffsets[index], inOffsets[index + 1],
+					outTargets, outOffsets[index], outOffsets[index + 1]);
+
+			return new NodeList(indices, 0, indices.length);
+		}
+
+		@Override
+		public DNode<L> neighbor(L label)
+		{
+			for(int j = inOffsets[index]; j < inOffsets[index + 1]; j++)
+				if(Functions.equals(labels.get(inTargets[j]), label))
+					return new CSRDNode(inTargets[j]);
+
+			for(int j = outOffsets[index]; j < outOffsets[index + 1]; j++)
+				if(Functions.equals(labels.get(outTargets[j]), label))
+					return new CSRDNode(outTargets[j]);
+
+			return null;
+		}
+
+		@Override
+		public Collection<? extends DNode<L>> neighbors(L label)
+		{
+			int[] all = union(
+					inTargets, inOffsets[index], inOffsets[index + 1],
+					outTargets, outOffsets[index], outOffsets[index + 1]);
+
+			return withLabel(all, 0, all.length, label);
+		}
+
+		@Override
+		public Collection<? extends DNode<L>> out()
+		{
+			return new NodeList(outTargets, outOffsets[index], outOffsets[index + 1]);
+		}
+
+		@Override
+		public Collection<? extends DNode<L>> out(L label)
+		{
+			return withLabel(outTargets, outOffsets[index], outOffsets[index + 1], label);
+		}
+
+		@Override
+		public Collection<? extends DNode<L>> in()
+		{
+			return new NodeList(inTargets, inOffsets[index], inOffsets[index + 1]);
+		}
+
+		@Override
+		public Collection<? extends DNode<L>> in(L label)
+		{
+			return withLabel(inTargets, inOffsets[index], inOffsets[index + 1], label);
+		}
+
+		@Override
+		public Collection<? extends DLink<L>> links()
+		{
+			List<DLink<L>> list = new ArrayList<DLink<L>>(degree());
+
+			for(int j = outOffsets[index]; j < outOffsets[index + 1]; j++)
+				list.add(new CSRDLink(index, outTargets[j]));
+
+			for(int j = inOffsets[index]; j < inOffsets[index + 1]; j++)
+				if(inTargets[j] != index) // no double reflexive links
+					list.add(new CSRDLink(inTargets[j], index));
+
+			return list;
+		}
+
+		@Override
+		public Collection<? extends DLink<L>> linksOut()
+		{
+			List<DLink<L>> list = new ArrayList<DLink<L>>(outDegree());
+
+			for(int j = outOffsets[index]; j < outOffsets[index + 1]; j++)
+				list.add(new CSRDLink(index, outTargets[j]));
+
+			return list;
+		}
+
+		@Override
+		public Collection<? extends DLink<L>> linksOut(DNode<L> other)
+		{
+			int o = other.index();
+			int n = numLinks(index, o);
+
+			List<DLink<L>> list = new ArrayList<DLink<L>>(n);
+			for(int i = 0; i < n; i++)
+				list.add(new CSRDLink(index, o));
+
+			return list;
+		}
+
+		@Override
+		public Collection<? extends DLink<L>> linksIn()
+		{
+			List<DLink<L>> list = new ArrayList<DLink<L>>(inDegree());
+
+			for(int j = inOffsets[index]; j < inOffsets[index + 1]; j++)
+				list.add(new CSRDLink(inTargets[j], index));
+
+			return list;
+		}
+
+		@Override
+		public Collection<? extends DLink<L>> linksIn(DNode<L> other)
+		{
+			int o = other.index();
+			int n = numLinks(o, index);
+
+			List<DLink<L>> list = new ArrayList<DLink<L>>(n);
+			for(int i = 0; i < n; i++)
+				list.add(new CSRDLink(o, index));
+
+			return list;
+		}
+
+		@Override
+		public Collection<? extends DLink<L>> links(Node<L> other)
+		{
+			int o = other.index();
+
+			int nOut = numLinks(index, o);
+			int nIn = index == o ? 0 : numLinks(o, index);
+
+			List<DLink<L>> list = new ArrayList<DLink<L>>(nOut + nIn);
+			for(int i = 0; i < nOut; i++)
+				list.add(new CSRDLink(index, o));
+			for(int i = 0; i < nIn; i++)
+				list.add(new CSRDLink(o, index));
+
+			return list;
+		}
+
+		@Override
+		public DLink<L> connect(Node<L> to)
+		{
+			throw new UnsupportedOperationException("CSRDGraph is immutable.");
+		}
+
+		@Override
+		public void disconnect(Node<L> other)
+		{
+			throw new UnsupportedOperationException("CSRDGraph is immutable.");
+		}
+
+		@Override
+		public void remove()
+		{
+			throw new UnsupportedOperationException("CSRDGraph is immutable.");
+		}
+
+		@Override
+		public boolean connected(Node<L> other)
+		{
+			if(other.graph() != CSRDGraph.this)
+				return false;
+
+			int o = other.index();
+			return CSRDGraph.this.connectedTo(index, o) || CSRDGraph.this.connectedTo(o, index);
+		}
+
+		@Override
+		public boolean connectedTo(DNode<L> to)
+		{
+			if(to.graph() != CSRDGraph.this)
+				return false;
+
+			return CSRDGraph.this.connectedTo(index, to.index());
+		}
+
+		@Override
+		public DGraph<L> graph()
+		{
+			return CSRDGraph.this;
+		}
+
+		@Override
+		public int index()
+		{
+			return index;
+		}
+
+		@Override
+		public boolean dead()
+		{
+			return false;
+		}
+
+		@Override
+		public int degree()
+		{
+			return inDegree() + outDegree();
+		}
+
+		@Override
+		public int inDegree()
+		{
+			return CSRDGraph.this.inDegree(index);
+		}
+
+		@Override
+		public int outDegree()
+		{
+			return CSRDGraph.this.outDegree(index);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + index;
+			result = prime * result + ((label() == null) ? 0 : label().hashCode());
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (this == obj)
+				return true;
+
+			if (obj == null)
+				return false;
+
+			if (getClass() != obj.getClass())
+				return false;
+
+			CSRDNode other = (CSRDNode) obj;
+
+			if (graph() != other.graph())
+				return false;
+
+			return index == other.index;
+		}
+
+		public String toString()
+		{
+			return label() == null ? ("n"+index()) : label().toString() + "_" +index();
+		}
+	}
+
+	private class CSRDLink implements DLink<L>
+	{
+		private int from, to;
+
+		public CSRDLink(int from, int to)
+		{
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		public Collection<? extends Node<L>> nodes()
+		{
+			return Arrays.asList(first(), second());
+		}
+
+		@Override
+		public Graph<L> graph()
+		{
+			return CSRDGraph.this;
+		}
+
+		@Override
+		public void remove()
+		{
+			throw new UnsupportedOperationException("CSRDGraph is immutable.");
+		}
+
+		@Override
+		public boolean dead()
+		{
+			return false;
+		}
+
+		@Override
+		public DNode<L> first()
+		{
+			return new CSRDNode(from);
+		}
+
+		@Override
+		public DNode<L> second()
+		{
+			return new CSRDNode(to);
+		}
+
+		@Override
+		public DNode<L> from()
+		{
+			return first();
+		}
+
+		@Override
+		public DNode<L> to()
+		{
+			return second();
+		}
+
+		@Override
+		public DNode<L> other(Node<L> current)
+		{
+			if(current.index() != from)
+				return first();
+			return second();
+		}
+
+		@Override
+		public int hashCode()
+		{
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + from;
+			result = prime * result + to;
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (this == obj)
+				return true;
+			if (obj == null)
+				return false;
+			if (getClass() != obj.getClass())
+				return false;
+
+			CSRDLink other = (CSRDLink) obj;
+			if (graph() != other.graph())
+				return false;
+
+			return from == other.from && to == other.to;
+		}
+
+		public String toString()
+		{
+			return first() + " -> " + second();
+		}
+	}
+
+	/**
+	 * A list of nodes backed by one or two segments of an int array. The
+	 * segments are not copied.
+	 */
+	private class NodeList extends AbstractList<DNode<L>>
+	{
+		private int[] first, second;
+		private int firstFrom, firstSize, secondFrom, secondSize;
+
+		public NodeList(int[] indices, int from, int to)
+		{
+			this(indices, from, to, null, 0, 0);
+		}
+
+		public NodeList(
+				int[] first, int firstFrom, int firstTo,
+				int[] second, int secondFrom, int secondTo)
+		{
+			this.first = first;
+			this.firstFrom = firstFrom;
+			this.firstSize = firstTo - firstFrom;
+
+			this.second = second;
+			this.secondFrom = secondFrom;
+			this.secondSize = secondTo - secondFrom;
+		}
+
+		@Override
+		public DNode<L> get(int i)
+		{
+			if(i < 0 || i >= size())
+				throw new IndexOutOfBoundsException("Index "+i+" out of bounds for list of size " + size() + ".");
+
+			if(i < firstSize)
+				return new CSRDNode(first[firstFrom + i]);
+
+			return new CSRDNode(second[secondFrom + i - firstSize]);
+		}
+
+		@Override
+		public int size()
+		{
+			return firstSize + secondSize;
+		}
+	}
+
+	private class AllNodes extends AbstractList<DNode<L>>
+	{
+		@Override
+		public DNode<L> get(int index)
+		{
+			return CSRDGraph.this.get(index);
+		}
+
+		@Override
+		public int size()
+		{
+			return CSRDGraph.this.size();
+		}
+	}
+
+	/**
+	 * A collection of all links in this graph.
+	 */
+	private class LinkCollection extends AbstractCollection<DLink<L>>
+	{
+		@Override
+		public Iterator<DLink<L>> iterator()
+		{
+			return new LinkIterator();
+		}
+
+		@Override
+		public int size()
+		{
+			return outTargets.length;
+		}
+
+		private class LinkIterator implements Iterator<DLink<L>>
+		{
+			// * the node from which the next link originates
+			private int from = 0;
+			// * the position of the next link in outTargets
+			private int next = 0;
+
+			@Override
+			public boolean hasNext()
+			{
+				return next < outTargets.length;
+			}
+
+			@Override
+			public DLink<L> next()
+			{
+				if(! hasNext())
+					throw new NoSuchElementException();
+
+				while(outOffsets[from + 1] <= next)
+					from++;
+
+				return new CSRDLink(from, outTargets[next++]);
+			}
+
+			@Override
+			public void remove()
+			{
+				throw new UnsupportedOperationException("CSRDGraph is immutable.");
+			}
+		}
+	}
+
+	/**
+	 * Returns a representation of the graph in Dot language format.
+	 */
+	public String toString()
+	{
+		StringBuffer sb = new StringBuffer();
+		sb.append("digraph {");
+
+		Set<DNode<L>> nodes = new HashSet<DNode<L>>(nodes());
+
+		for(DLink<L> link : links())
+		{
+			if(sb.length() != 9)
+				sb.append("; ");
+
+			sb.append(link);
+
+			nodes.remove(link.first());
+			nodes.remove(link.second());
+		}
+
+		for(DNode<L> node : nodes)
+			sb.append("; " + node);
+
+		sb.append("}");
+
+		return sb.toString();
+	}
+
+	/**
+	 * The hash is the structural fingerprint used by LightDGraph (see
+	 * Fingerprint), so that equal graphs of the two types have the same hash.
+	 */
+	@Override
+	public int hashCode()
+	{
+		if(hashed)
+			return hash;
+
+		long fingerprint = Fingerprint.nodes(labels);
+		for(int i = 0; i < size(); i++)
+			for(int j = outOffsets[i]; j < outOffsets[i + 1]; j++)
+				fingerprint += Fingerprint.link(i, outTargets[j]);
+
+		hash = Fingerprint.hash(fingerprint);
+		hashed = true;
+
+		return hash;
+	}
+
+	@SuppressWarnings("unchecked")
+	public boolean equals(Object other)
+	{
+		if(!(other instanceof DGraph<?>))
+			return false;
+
+		DGraph<Object> oth = (DGraph<Object>) other;
+		if(! oth.level().equals(level()))
+			return false;
+
+		if(size() != oth.size())
+			return false;
+
+		if(numLinks() != oth.numLinks())
+			return false;
+
+		// * Since the rows are sorted, two CSR graphs have the same structure
+		//   iff their arrays are the same.
+		if(other instanceof CSRDGraph<?>)
+		{
+			CSRDGraph<?> csr = (CSRDGraph<?>) other;
+
+			return Arrays.equals(outOffsets, csr.outOffsets)
+					&& Arrays.equals(outTargets, csr.outTargets)
+					&& labels.equals(csr.labels);
+		}
+
+		if(labels().size() != oth.labels().size())
+			return false;
+
+		int[] othOuts = new int[0];
+		for(int i = 0; i < size(); i++)
+		{
+			DNode<Object> othNode = oth.get(i);
+
+			if(! Functions.equals(labels.get(i), othNode.label()))
+				return false;
+
+			if(othNode.outDegree() != outDegree(i))
+				return false;
+
+			if(othOuts.length < outDegree(i))
+				othOuts = new int[outDegree(i)];
+
+			int k = 0;
+			for(DNode<Object> othNeighbor : othNode.out())
+				othOuts[k++] = othNeighbor.index();
+
+			Arrays.sort(othOuts, 0, k);
+
+			for(int j = 0; j < k; j++)
+				if(othOuts[j] != out(i, j))
+					return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Creates a CSRDGraph with the same labels and structure as the given
+	 * graph.
+	 *
+	 * If the argument is undirectional, the link direction will be arbitrary.
+	 *
+	 * @param graph
+	 * @return
+	 */
+	public static <L> CSRDGraph<L> copy(Graph<L> graph)
+	{
+		if(graph instanceof CSRDGraph<?>)
+		{
+			// * The arrays are never modified, so they can be shared
+			CSRDGraph<L> other = (CSRDGraph<L>) graph;
+			return new CSRDGraph<L>(other.labels, other.outOffsets, other.outTargets, other.inOffsets, other.inTargets);
+		}
+
+		if(graph.numLinks() > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Graph has "+graph.numLinks()+" links. CSRDGraph supports at most "+Integer.MAX_VALUE+".");
+
+		int n = graph.size(), m = (int) graph.numLinks();
+
+		List<L> labels = labels(graph);
+
+		// * Count the degrees
+		int[] outOffsets = new int[n + 1], inOffsets = new int[n + 1];
+		for(Link<L> link : graph.links())
+		{
+			outOffsets[link.first().index() + 1] ++;
+			inOffsets[link.second().index() + 1] ++;
+		}
+
+		// * Turn the degrees into offsets
+		for(int i = 0; i < n; i++)
+		{
+			outOffsets[i + 1] += outOffsets[i];
+			inOffsets[i + 1] += inOffsets[i];
+		}
+
+		// * Fill the rows
+		int[] outTargets = new int[m], inTargets = new int[m];
+		int[] outPos = Arrays.copyOf(outOffsets, n), inPos = Arrays.copyOf(inOffsets, n);
+
+		for(Link<L> link : graph.links())
+		{
+			int from = link.first().index(), to = link.second().index();
+
+			outTargets[outPos[from]++] = to;
+			inTargets[inPos[to]++] = from;
+		}
+
+		for(int i = 0; i < n; i++)
+		{
+			Arrays.sort(outTargets, outOffsets[i], outOffsets[i + 1]);
+			Arrays.sort(inTargets, inOffsets[i], inOffsets[i + 1]);
+		}
+
+		return new CSRDGraph<L>(labels, outOffsets, outTargets, inOffsets, inTargets);
+	}
+
+	/**
+	 * Copies the labels of a graph into an immutable list. If all labels are
+	 * null, no storage is used for them.
+	 */
+	static <L> List<L> labels(Graph<L> graph)
+	{
+		List<L> labels = new ArrayList<L>(graph.size());
+		boolean allNull = true;
+
+		for(Node<L> node : graph.nodes())
+		{
+			labels.add(node.label());
+			allNull = allNull && node.label() == null;
+		}
+
+		if(allNull)
+			return Collections.nCopies(graph.size(), null);
+
+		return Collections.unmodifiableList(labels);
+	}
+
+	/**
+	 * Returns the nodes with the given label in the given segment of an index
+	 * array.
+	 */
+	private Collection<? extends DNode<L>> withLabel(int[] indices, int from, int to, L label)
+	{
+		int n = 0;
+		for(int j = from; j < to; j++)
+			if(Functions.equals(labels.get(indices[j]), label))
+				n++;
+
+		int[] result = new int[n];
+		n = 0;
+		for(int j = from; j < to; j++)
+			if(Functions.equals(labels.get(indices[j]), label))
+				result[n++] = indices[j];
+
+		return new NodeList(result, 0, result.length);
+	}
+
+	/**
+	 * Merges two sorted segments of int arrays into a sorted array without
+	 * duplicates.
+	 */
+	static int[] union(int[] a, int aFrom, int aTo, int[] b, int bFrom, int bTo)
+	{
+		int[] result = new int[(aTo - aFrom) + (bTo - bFrom)];
+		int n = 0;
+
+		int i = aFrom, j = bFrom;
+		while(i < aTo || j < bTo)
+		{
+			int next;
+			if(j >= bTo || (i < aTo && a[i] <= b[j]))
+				next = a[i++];
+			else
+				next = b[j++];
+
+			if(n == 0 || result[n - 1] != next)
+				result[n++] = next;
+		}
+
+		return n == result.length ? result : Arrays.copyOf(result, n);
+	}
+
+	/**
+	 * Counts the occurrences of a value in a sorted segment of an int array.
+	 */
+	static int count(int[] array, int from, int to, int value)
+	{
+		int i = Arrays.binarySearch(array, from, to, value);
+		if(i < 0)
+			return 0;
+
+		int lo = i, hi = i + 1;
+		while(lo > from && array[lo - 1] == value)
+			lo--;
+		while(hi < to && array[hi] == value)
+			hi++;
+
+		return hi - lo;
+	}
+
+	private static int[] toArray(List<Integer> list)
+	{
+		int[] array = new int[list.size()];
+		for(int i = 0; i < array.length; i++)
+			array[i] = list.get(i);
+
+		return array;
+	}
+}
@@ -0,0 +1,802 @@
+package org.nodes;
+
+import java.util.AbstractCollection;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import nl.peterbloem.kit.Functions;
+
+/**
+ * An immutable implementation of an undirected graph, backed by a compressed
+ * sparse row (CSR) representation.
+ *
+ * The structure is stored in two int arrays: an array of row offsets (one per
+ * node, plus one) and an array of neighbor indices. Each link is stored in the
+ * rows of both its nodes, except for self-loops, which are stored once. Each
+ * row is sorted, so that checking for a link takes a binary search.
+ *
+ * The graph cannot be modified. Use {@link #copy(Graph)} to create one from
+ * any other graph. All methods that would modify the graph throw an
+ * UnsupportedOperationException. Since node indices never change, node and
+ * link objects never become invalid.
+ *
+ * The primitive methods ({@link #degree(int)}, {@link #neighbor(int, int)},
+ * etc.) allow the graph to be traversed without creating any objects.
+ *
+ * @author Peter
+ *
+ * @param <L>
+ */
+public class CSRUGraph<L> implements UGraph<L>, FastWalkable<L, UNode<L>>
+{
+	private List<L> labels;
+
+	// * row i is targets[offsets[i]] to targets[offsets[i+1]] (exclusive)
+	private int[] offsets;
+	private int[] targets;
+
+	private long numLinks;
+
+	private int hash;
+	private boolean hashed = false;
+
+	CSRUGraph(List<L> labels, int[] offsets, int[] targets, long numLinks)
+	{
+		this.labels = labels;
+
+		this.offsets = offsets;
+		this.targets = targets;
+
+		this.numLinks = numLinks;
+	}
+
+	@Override
+	public int size()
+	{
+		return labels.size();
+	}
+
+	@Override
+	public long numLinks()
+	{
+		return numLinks;
+	}
+
+	/**
+	 * The degree of the given node. A self-loop counts once.
+	 */
+	public int degree(int node)
+	{
+		return offsets[node + 1] - offsets[node];
+	}
+
+	/**
+	 * The index of the j-th neighbor (in order of index) of the given node.
+	 */
+	public int neighbor(int node, int j)
+	{
+		return targets[offsets[node] + j];
+	}
+
+	/**
+	 * Whether there is at least one link between the two given nodes.
+	 */
+	public boolean connected(int first, int second)
+	{
+		return Arrays.binarySearch(targets, offsets[first], offsets[first + 1], second) >= 0;
+	}
+
+	@Override
+	public UNode<L> node(L label)
+	{
+		for(int i = 0; i < labels.size(); i++)
+			if(Functions.equals(labels.get(i), label))
+				return new CSRUNode(i);
+
+		return null;
+	}
+
+	@Override
+	public Collection<? extends UNode<L>> nodes(L label)
+	{
+		int n = 0;
+		for(L l : labels)
+			if(Functions.equals(l, label))
+				n++;
+
+		int[] indices = new int[n];
+		n = 0;
+		for(int i = 0; i < labels.size(); i++)
+			if(Functions.equals(labels.get(i), label))
+				indices[n++] = i;
+
+		return new NodeList(indices, 0, indices.length);
+	}
+
+	@Override
+	public List<? extends UNode<L>> nodes()
+	{
+		return new AllNodes();
+	}
+
+	@Override
+	public UNode<L> get(int i)
+	{
+		if(i < 0 || i >= size())
+			throw new IndexOutOfBoundsException("Index "+i+" is out of bounds for graph of size "+size()+".");
+
+		return new CSRUNode(i);
+	}
+
+	@Override
+	public Iterable<? extends ULink<L>> links()
+	{
+		return new LinkCollection();
+	}
+
+	@Override
+	public UNode<L> add(L label)
+	{
+		throw new UnsupportedOperationException("CSRUGraph is immutable.");
+	}
+
+	@Override
+	public Set<L> labels()
+	{
+		return new HashSet<L>(labels);
+	}
+
+	@Override
+	public boolean connected(L first, L second)
+	{
+		for(UNode<L> a : nodes(first))
+			for(UNode<L> b : nodes(second))
+				if(a.connected(b))
+					return true;
+
+		return false;
+	}
+
+	/**
+	 * Since the graph is immutable, its state never changes.
+	 */
+	@Override
+	public long state()
+	{
+		return 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public Class<? extends UGraph<L>> level()
+	{
+		Object obj = UGraph.class;
+		return (Class<? extends UGraph<L>>) obj;
+	}
+
+	@Override
+	public List<UNode<L>> neighborsFast(Node<L> node)
+	{
+		if(node.graph() != this)
+			throw new IllegalArgumentException("Cannot call with node from another graph.");
+
+		int i = node.index();
+
+		return new NodeList(targets, offsets[i], offsets[i + 1]);
+	}
+
+	@Override
+	public int numNeighborsFast(int node)
+	{
+		return degree(node);
+	}
+
+	@Override
+	public int neighborFast(int node, int i)
+	{
+		return neighbor(node, i);
+	}
+
+	@Override
+	public IntCursor neighborCursor()
+	{
+		return new Cursor();
+	}
+
+	private class Cursor implements IntCursor
+	{
+		private int i, end, size;
+
+		@Override
+		public void reset(int node)
+		{
+			i = offsets[node];
+			end = offsets[node + 1];
+
+			size = end - i;
+		}
+
+		@Override
+		public int size()
+		{
+			return size;
+		}
+
+		@Override
+		public boolean hasNext()
+		{
+			return i < end;
+		}
+
+		@Override
+		public int next()
+		{
+			if(i >= end)
+				throw new NoSuchElementException();
+
+			return targets[i++];
+		}
+	}
+
+	private class CSRUNode implements UNode<L>
+	{
+		private int index;
+
+		public CSRUNode(int index)
+		{
+			this.index = index;
+		}
+
+		@Override
+		public L label()
+		{
+			return labels.get(index);
+		}
+
+		@Override
+		public Collection<? extends UNode<L>> neighbors()
+		{
+			int[] indices = distinct(targets, offsets[index], offsets[index + 1]);
+
+			return new NodeList(indices, 0, indices.length);
+		}
+
+		@Override
+		public UNode<L> neighbor(L label)
+		{
+			for(int j = offsets[index]; j < offsets[index + 1]; j++)
+				if(Functions.equals(labels.get(targets[j]), label))
+					return new CSRUNode(targets[j]);
+
+			return null;
+		}
+
+		@Override
+		public Collection<? extends UNode<L>> neighbors(L label)
+		{
+			int[] all = distinct(targets, offsets[index], offsets[index + 1]);
+
+			int n = 0;
+			for(int i : all)
+				if(Functions.equals(labels.get(i), label))
+					all[n++] = i;
+
+			return new NodeList(all, 0, n);
+		}
+
+		@Override
+		public Collection<? extends ULink<L>> links()
+		{
+			List<ULink<L>> list = new ArrayList<ULink<L>>(degree());
+
+			for(int j = offsets[index]; j < offsets[index + 1]; j++)
+				list.add(new CSRULink(index, targets[j]));
+
+			return list;
+		}
+
+		@Override
+		public Collection<? extends ULink<L>> links(Node<L> other)
+		{
+			int o = other.index();
+			int n = CSRDGraph.count(targets, offsets[index], offsets[index + 1], o);
+
+			List<ULink<L>> list = new ArrayList<ULink<L>>(n);
+			for(int i = 0; i < n; i++)
+				list.add(new CSRULink(index, o));
+
+			return list;
+		}
+
+		@Override
+		public ULink<L> connect(Node<L> to)
+		{
+			throw new UnsupportedOperationException("CSRUGraph is immutable.");
+		}
+
+		@Override
+		public void disconnect(Node<L> other)
+		{
+			throw new UnsupportedOperationException("CSRUGraph is immutable.");
+		}
+
+		@Override
+		public void remove()
+		{
+			throw new UnsupportedOperationException("CSRUGraph is immutable.");
+		}
+
+		@Override
+		public boolean connected(Node<L> other)
+		{
+			if(other.graph() != CSRUGraph.this)
+				return false;
+
+			return CSRUGraph.this.connected(index, other.index());
+		}
+
+		@Override
+		public UGraph<L> graph()
+		{
+			return CSRUGraph.this;
+		}
+
+		@Override
+		public int index()
+		{
+			return index;
+		}
+
+		@Override
+		public boolean dead()
+		{
+			return false;
+		}
+
+		@Override
+		public int degree()
+		{
+			return CSRUGraph.this.degree(index);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + index;
+			result = prime * result + ((label() == null) ? 0 : label().hashCode());
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (this == obj)
+				return true;
+
+			if (obj == null)
+				return false;
+
+			if (getClass() != obj.getClass())
+				return false;
+
+			CSRUNode other = (CSRUNode) obj;
+
+			if (graph() != other.graph())
+				return false;
+
+			return index == other.index;
+		}
+
+		public String toString()
+		{
+			return label() == null ? ("n"+index()) : label().toString();
+		}
+	}
+
+	private class CSRULink implements ULink<L>
+	{
+		private int first, second;
+
+		public CSRULink(int first, int second)
+		{
+			this.first = first;
+			this.second = second;
+		}
+
+		@Override
+		public Collection<? extends UNode<L>> nodes()
+		{
+			return Arrays.asList(first(), second());
+		}
+
+		@Override
+		public Graph<L> graph()
+		{
+			return CSRUGraph.this;
+		}
+
+		@Override
+		public void remove()
+		{
+			throw new UnsupportedOperationException("CSRUGraph is immutable.");
+		}
+
+		@Override
+		public boolean dead()
+		{
+			return false;
+		}
+
+		@Override
+		public UNode<L> first()
+		{
+			return new CSRUNode(first);
+		}
+
+		@Override
+		public UNode<L> second()
+		{
+			return new CSRUNode(second);
+		}
+
+		@Override
+		public UNode<L> other(Node<L> current)
+		{
+			if(current.index() != first)
+				return first();
+			return second();
+		}
+
+		@Override
+		public int hashCode()
+		{
+			// * symmetric in the two nodes
+			return 31 * (first + second) + first * second;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (this == obj)
+				return true;
+			if (obj == null)
+				return false;
+			if (getClass() != obj.getClass())
+				return false;
+
+			CSRULink other = (CSRULink) obj;
+			if (graph() != other.graph())
+				return false;
+
+			if(first == other.first && second == other.second)
+				return true;
+
+			return first == other.second && second == other.first;
+		}
+
+		public String toString()
+		{
+			return first() + " -- " + second();
+		}
+	}
+
+	/**
+	 * A list of nodes backed by a segment of an int array. The segment is not
+	 * copied.
+	 */
+	private class NodeList extends AbstractList<UNode<L>>
+	{
+		private int[] indices;
+		private int from, size;
+
+		public NodeList(int[] indices, int from, int to)
+		{
+			this.indices = indices;
+			this.from = from;
+			this.size = to - from;
+		}
+
+		@Override
+		public UNode<L> get(int i)
+		{
+			if(i < 0 || i >= size)
+				throw new IndexOutOfBoundsException("Index "+i+" out of bounds for list of size " + size + ".");
+
+			return new CSRUNode(indices[from + i]);
+		}
+
+		@Override
+		public int size()
+		{
+			return size;
+		}
+	}
+
+	private class AllNodes extends AbstractList<UNode<L>>
+	{
+		@Override
+		public UNode<L> get(int index)
+		{
+			return CSRUGraph.this.get(index);
+		}
+
+		@Override
+		public int size()
+		{
+			return CSRUGraph.this.size();
+		}
+	}
+
+	/**
+	 * A collection of all links in this graph. Each link is returned once, from
+	 * the node with the lowest index.
+	 */
+	private class LinkCollection extends AbstractCollection<ULink<L>>
+	{
+		@Override
+		public Iterator<ULink<L>> iterator()
+		{
+			return new LinkIterator();
+		}
+
+		@Override
+		public int size()
+		{
+			return (int)numLinks;
+		}
+
+		private class LinkIterator implements Iterator<ULink<L>>
+		{
+			// * the node whose row we are currently in
+			private int from = 0;
+			// * the position of the next link in targets
+			private int next = 0;
+
+			public LinkIterator()
+			{
+				seek();
+			}
+
+			/**
+			 * Moves the cursor to the next link (from, to) with to >= from.
+			 */
+			private void seek()
+			{
+				while(next < targets.length)
+				{
+					while(offsets[from + 1] <= next)
+						from++;
+
+					if(targets[next] >= from)
+						return;
+
+					next++;
+				}
+			}
+
+			@Override
+			public boolean hasNext()
+			{
+				return next < targets.length;
+			}
+
+			@Override
+			public ULink<L> next()
+			{
+				if(! hasNext())
+					throw new NoSuchElementException();
+
+				ULink<L> link = new CSRULink(from, targets[next]);
+
+				next++;
+				seek();
+
+				return link;
+			}
+
+			@Override
+			public void remove()
+			{
+				throw new UnsupportedOperationException("CSRUGraph is immutable.");
+			}
+		}
+	}
+
+	/**
+	 * Returns a representation of the graph in Dot language format.
+	 */
+	public String toString()
+	{
+		StringBuffer sb = new StringBuffer();
+		sb.append("graph {");
+
+		Set<UNode<L>> nodes = new HashSet<UNode<L>>(nodes());
+
+		int i = 0;
+		for(ULink<L> link : links())
+		{
+			if(i++ != 0)
+				sb.append(";");
+
+			sb.append(link);
+
+			nodes.remove(link.first());
+			nodes.remove(link.second());
+		}
+
+		for(UNode<L> node : nodes)
+		{
+			if(i++ != 0)
+				sb.append(";");
+
+			sb.append(node);
+		}
+
+		sb.append("}");
+
+		return sb.toString();
+	}
+
+	/**
+	 * The hash is the structural fingerprint used by LightUGraph (see
+	 * Fingerprint), so that equal graphs of the two types have the same hash.
+	 */
+	@Override
+	public int hashCode()
+	{
+		if(hashed)
+			return hash;
+
+		long fingerprint = Fingerprint.nodes(labels);
+		for(int i = 0; i < size(); i++)
+			for(int j = offsets[i]; j < offsets[i + 1]; j++)
+				if(targets[j] >= i) // * count each link once
+					fingerprint += Fingerprint.ulink(i, targets[j]);
+
+		hash = Fingerprint.hash(fingerprint);
+		hashed = true;
+
+		return hash;
+	}
+
+	@SuppressWarnings("unchecked")
+	public boolean equals(Object other)
+	{
+		if(!(other instanceof UGraph<?>))
+			return false;
+
+		UGraph<Object> oth = (UGraph<Object>) other;
+		if(! oth.level().equals(level()))
+			return false;
+
+		if(size() != oth.size())
+			return false;
+
+		if(numLinks() != oth.numLinks())
+			return false;
+
+		// * Since the rows are sorted, two CSR graphs have the same structure
+		//   iff their arrays are the same.
+		if(other instanceof CSRUGraph<?>)
+		{
+			CSRUGraph<?> csr = (CSRUGraph<?>) other;
+
+			return Arrays.equals(offsets, csr.offsets)
+					&& Arrays.equals(targets, csr.targets)
+					&& labels.equals(csr.labels);
+		}
+
+		if(labels().size() != oth.labels().size())
+			return false;
+
+		int[] othNeighbors = new int[0];
+		for(int i = 0; i < size(); i++)
+		{
+			UNode<Object> othNode = oth.get(i);
+
+			if(! Functions.equals(labels.get(i), othNode.label()))
+				return false;
+
+			if(othNode.degree() != degree(i))
+				return false;
+
+			if(othNeighbors.length < degree(i))
+				othNeighbors = new int[degree(i)];
+
+			int k = 0;
+			for(ULink<Object> link : othNode.links())
+				othNeighbors[k++] = link.other(othNode).index();
+
+			Arrays.sort(othNeighbors, 0, k);
+
+			for(int j = 0; j < k; j++)
+				if(othNeighbors[j] != neighbor(i, j))
+					return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Creates a CSRUGraph with the same labels and structure as the given
+	 * graph. If the argument is directed, the link directions are ignored.
+	 *
+	 * @param graph
+	 * @return
+	 */
+	public static <L> CSRUGraph<L> copy(Graph<L> graph)
+	{
+		if(graph instanceof CSRUGraph<?>)
+		{
+			// * The arrays are never modified, so they can be shared
+			CSRUGraph<L> other = (CSRUGraph<L>) graph;
+			return new CSRUGraph<L>(other.labels, other.offsets, other.targets, other.numLinks);
+		}
+
+		int n = graph.size();
+
+		List<L> labels = CSRDGraph.labels(graph);
+
+		// * Count the degrees
+		long entries = 0;
+		int[] offsets = new int[n + 1];
+		for(Link<L> link : graph.links())
+		{
+			int first = link.first().index(), second = link.second().index();
+
+			offsets[first + 1] ++;
+			entries ++;
+
+			if(first != second)
+			{
+				offsets[second + 1] ++;
+				entries ++;
+			}
+		}
+
+		if(entries > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Graph has "+graph.numLinks()+" links. CSRUGraph supports at most "+Integer.MAX_VALUE+" neighbor entries.");
+
+		// * Turn the degrees into offsets
+		for(int i = 0; i < n; i++)
+			offsets[i + 1] += offsets[i];
+
+		// * Fill the rows
+		int[] targets = new int[(int) entries];
+		int[] pos = Arrays.copyOf(offsets, n);
+
+		long numLinks = 0;
+		for(Link<L> link : graph.links())
+		{
+			int first = link.first().index(), second = link.second().index();
+
+			targets[pos[first]++] = second;
+			if(first != second)
+				targets[pos[second]++] = first;
+
+			numLinks++;
+		}
+
+		for(int i = 0; i < n; i++)
+			Arrays.sort(targets, offsets[i], offsets[i + 1]);
+
+		return new CSRUGraph<L>(labels, offsets, targets, numLinks);
+	}
+
+	/**
+	 * Returns a sorted segment of an int array as an array without duplicates.
+	 */
+	private static int[] distinct(int[] array, int from, int to)
+	{
+		return CSRDGraph.union(array, from, to, array, to, to);
+	}
+}
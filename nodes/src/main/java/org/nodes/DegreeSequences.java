@@ -0,0 +1,287 @@
+package org.nodes;
+
+/**
+ * Utilities for degree sequences as primitive arrays: extracting them from
+ * graphs, and checking whether they are graphical.
+ *
+ * The graphicality checks sort the sequence by counting sort, and evaluate
+ * the inequalities incrementally, so they take linear time.
+ *
+ * @author Peter
+ *
+ */
+public class DegreeSequences
+{
+	/**
+	 * The degrees of the nodes of the graph, in order of index.
+	 */
+	public static int[] degrees(Graph<?> graph)
+	{
+		int n = graph.size();
+		int[] degrees = new int[n];
+
+		if(graph instanceof LightUGraph<?>)
+		{
+			LightUGraph<?> light = (LightUGraph<?>) graph;
+			for(int i = 0; i < n; i++)
+				degrees[i] = light.neighbors.get(i).size();
+		} else if(graph instanceof CSRUGraph<?>)
+		{
+			CSRUGraph<?> csr = (CSRUGraph<?>) graph;
+			for(int i = 0; i < n; i++)
+				degrees[i] = csr.degree(i);
+		} else if(graph instanceof MappedUGraph)
+		{
+			MappedUGraph mapped = (MappedUGraph) graph;
+			for(int i = 0; i < n; i++)
+				degrees[i] = mapped.degree(i);
+		} else
+		{
+			int i = 0;
+			for(Node<?> node : graph.nodes())
+				degrees[i++] = node.degree();
+		}
+
+		return degrees;
+	}
+
+	/**
+	 * The in degrees of the nodes of the graph, in order of index.
+	 */
+	public static int[] inDegrees(DGraph<?> graph)
+	{
+		int n = graph.size();
+		int[] degrees = new int[n];
+
+		if(graph instanceof LightDGraph<?>)
+		{
+			LightDGraph<?> light = (LightDGraph<?>) graph;
+			for(int i = 0; i < n; i++)
+				degrees[i] = light.inDegree(i);
+		} else if(graph instanceof CSRDGraph<?>)
+		{
+			CSRDGraph<?> csr = (CSRDGraph<?>) graph;
+			for(int i = 0; i < n; i++)
+				degrees[i] = csr.inDegree(i);
+		} else if(graph instanceof MappedDGraph)
+		{
+			MappedDGraph mapped = (MappedDGraph) graph;
+			for(int i = 0; i < n; i++)
+				degrees[i] = mapped.inDegree(i);
+		} else
+		{
+			int i = 0;
+			for(DNode<?> node : graph.nodes())
+				degrees[i++] = node.inDegree();
+		}
+
+		return degrees;
+	}
+
+	/**
+	 * The out degrees of the nodes of the graph, in order of index.
+	 */
+	public static int[] outDegrees(DGraph<?> graph)
+	{
+		int n = graph.size();
+		int[] degrees = new int[n];
+
+		if(graph instanceof LightDGraph<?>)
+		{
+			LightDGraph<?> light = (LightDGraph<?>) graph;
+			for(int i = 0; i < n; i++)
+				degrees[i] = light.outDegree(i);
+		} else if(graph instanceof CSRDGraph<?>)
+		{
+			CSRDGraph<?> csr = (CSRDGraph<?>) graph;
+			for(int i = 0; i < n; i++)
+				degrees[i] = csr.outDegree(i);
+		} else if(graph instanceof MappedDGraph)
+		{
+			MappedDGraph mapped = (MappedDGraph) graph;
+			for(int i = 0; i < n; i++)
+				degrees[i] = mapped.outDegree(i);
+		} else
+		{
+			int i = 0;
+			for(DNode<?> node : graph.nodes())
+				degrees[i++] = node.outDegree();
+		}
+
+		return degrees;
+	}
+
+	public static long sum(int[] degrees)
+	{
+		long sum = 0;
+		for(int degree : degrees)
+			sum += degree;
+
+		return sum;
+	}
+
+	/**
+	 * Whether the degree sequence is graphical: whether there is an undirected
+	 * simple graph with these degrees (Erdős–Gallai).
+	 */
+	public static boolean isGraphical(int[] degrees)
+	{
+		int n = degrees.length;
+
+		long total = 0;
+		for(int degree : degrees)
+		{
+			if(degree < 0 || degree > n - 1)
+				return false;
+			total += degree;
+		}
+
+		if(total % 2 != 0)
+			return false;
+
+		int[] sorted = sortDescending(degrees, n);
+
+		// * atLeast[k]: the number of degrees of at least k
+		int[] atLeast = atLeast(degrees, n);
+
+		// * suffix[i]: the sum of sorted[i], sorted[i+1], ...
+		long[] suffix = new long[n + 1];
+		for(int i = n - 1; i >= 0; i--)
+			suffix[i] = suffix[i + 1] + sorted[i];
+
+		long left = 0;
+		for(int k = 1; k <= n; k++)
+		{
+			left += sorted[k - 1];
+
+			// * The sum over i > k of min(d_i, k): the degrees of at least k
+			//   are the first atLeast[k] of the sorted sequence
+			int c = atLeast[k];
+			long right = (long) k * (k - 1) + (long) k * Math.max(0, c - k) + suffix[Math.max(k, c)];
+
+			if(left > right)
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Whether the pair of sequences is digraphical: whether there is a
+	 * directed simple graph (without self-loops) in which node i has in degree
+	 * in[i] and out degree out[i] (Fulkerson–Chen–Anstee).
+	 */
+	public static boolean isGraphical(int[] in, int[] out)
+	{
+		if(in.length != out.length)
+			throw new IllegalArgumentException("Sequences should have the same length (were "+in.length+" and "+out.length+").");
+
+		int n = in.length;
+
+		long inTotal = 0, outTotal = 0;
+		for(int i = 0; i < n; i++)
+		{
+			if(in[i] < 0 || in[i] > n - 1 || out[i] < 0 || out[i] > n - 1)
+				return false;
+
+			inTotal += in[i];
+			outTotal += out[i];
+		}
+
+		if(inTotal != outTotal)
+			return false;
+
+		// * Order the nodes by out degree, and by in degree among equal out
+		//   degrees, both descending: counting sort by the secondary key, and
+		//   then a stable counting sort by the primary key
+		int[] order = orderDescending(out, orderDescending(in, null, n), n);
+
+		// * atLeast[k]: the number of in degrees of at least k
+		int[] atLeast = atLeast(in, n);
+
+		// * We check, for each k,
+		//     sum_{i<=k} a_i <= sum_{i<=k} min(b_i, k-1) + sum_{i>k} min(b_i, k)
+		//   with a the sorted out degrees and b the in degrees. The right hand
+		//   side is sum_i min(b_i, k) minus the number of i <= k with b_i >= k.
+		int[] prefixCounts = new int[n + 1];
+		long left = 0, all = 0;
+		int prefixAtLeast = 0;
+
+		for(int k = 1; k <= n; k++)
+		{
+			int node = order[k - 1];
+
+			left += out[node];
+			all += atLeast[k];
+
+			// * update the number of i <= k with b_i >= k
+			prefixAtLeast -= prefixCounts[k - 1];
+			prefixCounts[in[node]]++;
+			if(in[node] >= k)
+				prefixAtLeast++;
+
+			if(left > all - prefixAtLeast)
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Sorts values in the range [0, n) in descending order.
+	 */
+	private static int[] sortDescending(int[] values, int n)
+	{
+		int[] counts = new int[n];
+		for(int value : values)
+			counts[value]++;
+
+		int[] sorted = new int[values.length];
+		int i = 0;
+		for(int value = n - 1; value >= 0; value--)
+			for(int c = 0; c < counts[value]; c++)
+				sorted[i++] = value;
+
+		return sorted;
+	}
+
+	/**
+	 * Stably orders indices by the given values (in the range [0, n)) in
+	 * descending order.
+	 *
+	 * @param order The order of the indices to start from, or null for the
+	 * natural order.
+	 */
+	private static int[] orderDescending(int[] values, int[] order, int n)
+	{
+		// * start[v]: the first position for value v
+		int[] start = new int[n + 1];
+		for(int value : values)
+			start[n - 1 - value + 1]++;
+		for(int v = 1; v <= n; v++)
+			start[v] += start[v - 1];
+
+		int[] result = new int[values.length];
+		for(int j = 0; j < values.length; j++)
+		{
+			int index = order == null ? j : order[j];
+			result[start[n - 1 - values[index]]++] = index;
+		}
+
+		return result;
+	}
+
+	/**
+	 * result[k] is the number of values at least k, for k in [0, n+1].
+	 */
+	private static int[] atLeast(int[] values, int n)
+	{
+		int[] atLeast = new int[n + 2];
+		for(int value : values)
+			atLeast[value]++;
+		for(int k = n; k >= 0; k--)
+			atLeast[k] += atLeast[k + 1];
+
+		return atLeast;
+	}
+}
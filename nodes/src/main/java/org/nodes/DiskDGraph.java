@@ -4,18 +4,15 @@ import static java.lang.Math.max;
 import static nl.peterbloem.kit.Functions.concat;
 import static nl.peterbloem.kit.Series.series;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.nio.charset.Charset;
 import java.util.AbstractCollection;
 import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.ConcurrentModificationException;
 import java.util.Deque;
 import java.util.HashSet;
@@ -23,6 +20,7 @@ import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Random;
 import java.util.Set;
@@ -39,8 +37,6 @@ import org.mapdb.serializer.GroupSerializer;
 import org.mapdb.serializer.GroupSerializerObjectArray;
 import org.mapdb.serializer.SerializerUtils;
 
-import com.google.code.externalsorting.ExternalSort;
-
 import nl.peterbloem.kit.FrequencyModel;
 import nl.peterbloem.kit.Functions;
 import nl.peterbloem.kit.Global;
@@ -86,7 +82,15 @@ public class DiskDGraph implements DGraph<String>, FastWalkable<String, DNode<St
 	private int hash;
 	private Long hashMod = null;
 	
-	private boolean sorted = false;
+	// * The rows of in and out that may be out of order (see IndexLists). These
+	//   are stored in the db by close(). If a graph wasn't closed, all rows 
+	//   are marked when it is opened.
+	private BitSet unsortedOut = new BitSet();
+	private BitSet unsortedIn = new BitSet();
+	
+	// * maps labels to node indices, if switched on (see indexLabels()). The 
+	//   index is stored in the db.
+	private LabelIndex<String> labelIndex = null;
 		
 	public DiskDGraph(File dbFile)
 	{
@@ -119,6 +123,23 @@ public class DiskDGraph implements DGraph<String>, FastWalkable<String, DNode<St
 		else
 			for(List<Integer> list : in)
 				numLinks += list.size();
+		
+		if(db.exists("unsortedStored") && db.atomicBoolean("unsortedStored").createOrOpen().get())
+		{
+			unsortedIn = BitSet.valueOf(db.atomicVar("unsortedIn", Serializer.LONG_ARRAY).createOrOpen().get());
+			unsortedOut = BitSet.valueOf(db.atomicVar("unsortedOut", Serializer.LONG_ARRAY).createOrOpen().get());
+		} else
+		{
+			unsortedIn.set(0, in.size());
+			unsortedOut.set(0, out.size());
+		}
+		
+		// * The stored marks go stale as soon as the graph changes, so they
+		//   only count until close() stores them again.
+		db.atomicBoolean("unsortedStored").createOrOpen().set(false);
+		
+		if(!nullLabels && db.exists("labelsIndexed") && db.atomicBoolean("labelsIndexed").createOrOpen().get())
+			labelIndex = new LabelIndex<String>(labelIndexMap());
 	}
 	
 	@Override
@@ -136,7 +157,7 @@ public class DiskDGraph implements DGraph<String>, FastWalkable<String, DNode<St
 	@Override
 	public DNode<String> node(String label)
 	{
-		int i = labels.indexOf(label);
+		int i = (labelIndex == null || label == null) ? labels.indexOf(label) : labelIndex.first(label);
 		if(i == -1)
 			return null;
 			
@@ -230,13 +251,18 @@ public class DiskDGraph implements DGraph<String>, FastWalkable<String, DNode<St
 			in.remove((int)index);
 			out.remove((int)index);
 			if(! nullLabels)
+			{
+				if(labelIndex != null)
+					labelIndex.remove(labels.get(index), index);
 				labels.remove((int)index);
+			}
+			
+			IndexLists.removeRow(unsortedIn, index);
+			IndexLists.removeRow(unsortedOut, index);
 
 			dead = true;
 			modCount++;
 			nodeModCount++;
-			
-			sorted = false;
 		}
 
 		private void check()
@@ -380,18 +406,20 @@ public class DiskDGraph implements DGraph<String>, FastWalkable<String, DNode<St
 			
 			List<Integer> neighbors;
 			neighbors = new ArrayList<Integer>(out.get(fromIndex));
+			if(! neighbors.isEmpty() && neighbors.get(neighbors.size() - 1) > toIndex)
+				unsortedOut.set(fromIndex);
 			neighbors.add(toIndex);
 			out.set(fromIndex, neighbors);
 			
 			neighbors = new ArrayList<Integer>(in.get(toIndex));
+			if(! neighbors.isEmpty() && neighbors.get(neighbors.size() - 1) > fromIndex)
+				unsortedIn.set(toIndex);
 			neighbors.add(fromIndex);
 			in.set(toIndex, neighbors);
 			
 			modCount++;			
 			numLinks++;
 			
-			sorted = false;
-			
 			return new DiskDLink(index(), to.index());
 		}
 
@@ -404,28 +432,16 @@ public class DiskDGraph implements DGraph<String>, FastWalkable<String, DNode<St
 			
 			int links = 0;
 			
-			List<Integer> myOut = new ArrayList<Integer>(out.get(mine));
-			while(myOut.remove((Integer)his))
-				links++;
-			out.set(mine, myOut);
+			links += IndexLists.removeAllStored(out, unsortedOut, mine, his);
+			if(mine != his)
+				links += IndexLists.removeAllStored(out, unsortedOut, his, mine);
 			
-			List<Integer> hisOut = new ArrayList<Integer>(out.get(his));
-			while(hisOut.remove((Integer)mine))
-				links++;
-			out.set(his, hisOut);
-			
-			List<Integer> myIn = new ArrayList<Integer>(in.get(mine));
-			while(myIn.remove((Integer)his));
-			in.set(mine, myIn);
-				
-			List<Integer> hisIn = new ArrayList<Integer>(in.get(his));
-			while(hisIn.remove((Integer)mine));
-			in.set(his, hisIn);
+			IndexLists.removeAllStored(in, unsortedIn, mine, his);
+			if(mine != his)
+				IndexLists.removeAllStored(in, unsortedIn, his, mine);
 
 			numLinks -= links;			
 			modCount++;
-			
-			sorted = false;
 		}
 
 		@Override
@@ -448,10 +464,7 @@ public class DiskDGraph implements DGraph<String>, FastWalkable<String, DNode<St
 			
 			int mine = index, his = to.index();
 			
-			if(out.get(mine).contains(his))
-				return true;
-			
-			return false;
+			return IndexLists.contains(out, unsortedOut, mine, his);
 		}
 
 		@Override
@@ -578,17 +591,16 @@ public class DiskDGraph implements DGraph<String>, FastWalkable<String, DNode<St
 		{
 			check();
 			
-			List<DLink<String>> list = new ArrayList<DLink<String>>();
-			
 			int o = other.index();
-			for(int neighbor : out.get((int)index))
-				if(neighbor == o)
-					list.add(new DiskDLink(index, neighbor));
+			int nOut = IndexLists.count(out, unsortedOut, index, o);
+			int nIn = index == o ? 0 : IndexLists.count(in, unsortedIn, index, o);
+			
+			List<DLink<String>> list = new ArrayList<DLink<String>>(nOut + nIn);
 			
-			if(index != o)
-				for(int neighbor : in.get((int)index))
-					if(neighbor == o)
-						list.add(new DiskDLink(neighbor, index));
+			for(int i : series(nOut))
+				list.add(new DiskDLink(index, o));
+			for(int i : series(nIn))
+				list.add(new DiskDLink(o, index));
 			
 			return list;
 		}
@@ -598,12 +610,12 @@ public class DiskDGraph implements DGraph<String>, FastWalkable<String, DNode<St
 		{
 			check();
 			
-			List<DLink<String>> list = new ArrayList<DLink<String>>(outDegree());
-			
 			int o = other.index();
-			for(int neighbor : out.get((int)index))
-				if(((int)neighbor) == ((int)o))
-					list.add(new DiskDLink(index, neighbor));
+			int n = IndexLists.count(out, unsortedOut, index, o);
+			
+			List<DLink<String>> list = new ArrayList<DLink<String>>(n);
+			for(int i : series(n))
+				list.add(new DiskDLink(index, o));
 			
 			return list;
 		}
@@ -613,12 +625,12 @@ public class DiskDGraph implements DGraph<String>, FastWalkable<String, DNode<St
 		{
 			check();
 			
-			List<DLink<String>> list = new ArrayList<DLink<String>>(inDegree());
-			
 			int o = other.index();
-			for(int neighbor : in.get((int)index))
-				if(neighbor == o)
-					list.add(new DiskDLink(neighbor, index));
+			int n = IndexLists.count(in, unsortedIn, index, o);
+			
+			List<DLink<String>> list = new ArrayList<DLink<String>>(n);
+			for(int i : series(n))
+				list.add(new DiskDLink(o, index));
 			
 			return list;
 		}
@@ -676,8 +688,6 @@ public class DiskDGraph implements DGraph<String>, FastWalkable<String, DNode<St
 			
 			modCount++;
 			dead = true;
-			
-			sorted = false;
 		}
 
 		@Override
@@ -807,6 +817,9 @@ public class DiskDGraph implements DGraph<String>, FastWalkable<String, DNode<St
 				return Collections.emptyList();
 		}
 		
+		if(labelIndex != null && label != null)
+			return new NodeList(labelIndex.indices(label));
+		
 		// * count the occurrences so that we can set the ArrayList's capacity 
 		//   accurately
 		int frq = 0;
@@ -925,14 +938,62 @@ public class DiskDGraph implements DGraph<String>, FastWalkable<String, DNode<St
 			throw new IllegalArgumentException("Graph is set to null labels only.");
 		
 		if(! nullLabels)
+		{
 			labels.add(label);
+			if(labelIndex != null)
+				labelIndex.add(label, labels.size() - 1);
+		}
 		
 		in.add(new ArrayList<Integer>(2));
 		out.add(new ArrayList<Integer>(2));
 		
-		sorted = false;
 		return new DiskDNode(in.size() - 1);
 	}
+	
+	/**
+	 * Switches the label index on or off. With the index, node(label) and 
+	 * nodes(label) take constant time, instead of a scan over all labels on 
+	 * disk. The index is stored in the db, so it only needs to be built once, 
+	 * and it stays on when the graph is re-opened. 
+	 * 
+	 * The index is off by default.
+	 * 
+	 * @throws IllegalStateException If the graph uses null labels.
+	 */
+	public void indexLabels(boolean index)
+	{
+		if(nullLabels)
+			throw new IllegalStateException("Graph is set to null labels only.");
+		
+		if(index == (labelIndex != null))
+			return;
+		
+		if(index)
+		{
+			labelIndex = new LabelIndex<String>(labelIndexMap());
+			labelIndex.clear();
+			labelIndex.addAll(labels);
+		} else
+		{
+			labelIndex.clear();
+			labelIndex = null;
+		}
+		
+		db.atomicBoolean("labelsIndexed").createOrOpen().set(index);
+	}
+	
+	/**
+	 * Whether the label index is switched on.
+	 */
+	public boolean labelsIndexed()
+	{
+		return labelIndex != null;
+	}
+	
+	private Map<String, int[]> labelIndexMap()
+	{
+		return db.hashMap("labelIndex", Serializer.STRING, Serializer.INT_ARRAY).createOrOpen();
+	}
 
 	@Override
 	public Set<String> labels()
@@ -1022,34 +1083,19 @@ public class DiskDGraph implements DGraph<String>, FastWalkable<String, DNode<St
 	/**
 	 * Sorts all neighbour lists
 	 * 
-	 * @param margin
+	 * Only the lists that may have gone out of order are checked, and only 
+	 * those that are actually out of order are rewritten. Lookups on lists 
+	 * that may be out of order fall back to a linear scan, so calling this 
+	 * method is never required, but it makes those lookups fast again. This 
+	 * is the only method that reorders the lists without changing them: it 
+	 * should not be called while other threads read the graph.
 	 */
 	public void sort()
 	{
-		if(sorted)
-			return;
-		
-		for(int i : Series.series(in.size()))
-		{
-			List<Integer> old = in.get(i);
-			Collections.sort(old);
-			
-			in.set(i, old);
-		}
-		
-		for(int i : Series.series(out.size()))
-		{
-			List<Integer> old = out.get(i);
-			Collections.sort(old);
-			
-			out.set(i, old);
-		}
-		
-		sorted = true;
+		IndexLists.sortStored(in, unsortedIn);
+		IndexLists.sortStored(out, unsortedOut);
 	}
 	
-	
-	
 	/**
 	 * Creates a copy of the given graph as a LightDGraph object. 
 	 * 
@@ -1156,6 +1202,28 @@ public class DiskDGraph implements DGraph<String>, FastWalkable<String, DNode<St
 		return new NodeList(indices);
 	}
 	
+	@Override
+	public int numNeighborsFast(int node)
+	{
+		return in.get(node).size() + out.get(node).size();
+	}
+	
+	@Override
+	public int neighborFast(int node, int i)
+	{
+		List<Integer> inRow = in.get(node);
+		if(i < inRow.size())
+			return inRow.get(i);
+		
+		return out.get(node).get(i - inRow.size());
+	}
+	
+	@Override
+	public IntCursor neighborCursor()
+	{
+		return new ListCursor(in, out);
+	}
+	
 	/**
 	 * Loads a previous converted graph.
 	 * 
@@ -1195,184 +1263,72 @@ public class DiskDGraph implements DGraph<String>, FastWalkable<String, DNode<St
 	
 	public static DiskDGraph fromFile(File file, File tmpDir, File dbFile)
 			throws IOException
-		{
-		DiskDGraph graph = new DiskDGraph(dbFile, true);
-
-		// * sort the input file by first element
-        File forward = new File(tmpDir, "forward.edgelist");
-        
-        
-        List<File> files = ExternalSort.sortInBatch(
-        		file, 
-        		new LComp(true), ExternalSort.DEFAULTMAXTEMPFILES, 
-        		Charset.defaultCharset(), tmpDir, false);
-        ExternalSort.mergeSortedFiles(files, forward, new LComp(true), Charset.defaultCharset());
-        
-        System.out.println("Forward sort finished");
-        
-        readSorted(graph.out, forward, true);
-        
-        System.out.println("Forward list read");
-
-        forward.delete();
-        File backward = new File(tmpDir, "backward.edgelist");
-        
-        files = ExternalSort.sortInBatch(
-        		file, 
-        		new LComp(false), ExternalSort.DEFAULTMAXTEMPFILES, 
-        		Charset.defaultCharset(), tmpDir, false);
-        ExternalSort.mergeSortedFiles(files, backward, new LComp(false), Charset.defaultCharset());
-        
-        System.out.println("Backward sort finished");
-        
-        long links = readSorted(graph.in, backward, false);
-        
-        System.out.println("Backward list read");
-        
-        backward.delete();
-        
-        int max = Math.max(graph.in.size(), graph.out.size());
-        while(graph.in.size() < max)
-        	graph.in.add(Collections.EMPTY_LIST);
-        while(graph.out.size() < max)
-        	graph.out.add(Collections.EMPTY_LIST);
-
-        graph.numLinks = links;
-        graph.nullLabels = true;
-        
-		Global.log().info("Graph loaded and sorted.");
-
-		return graph;
+	{
+		return fromFile(file, tmpDir, dbFile, new IngestStats());
 	}
 	
-	public void close()
+	/**
+	 * Reads a (large) edgelist-encoded file into a DiskDGraph.
+	 * 
+	 * The file is parsed once into binary runs, which are sorted in parallel 
+	 * for both directions and merged straight into the graph (see 
+	 * EdgeListSort). Nodes are numbered by the integers in the file.
+	 * 
+	 * @param tmpDir Where to put temporary files, used in reading the graph
+	 * @param stats Receives the throughput counters of the load.
+	 */
+	public static DiskDGraph fromFile(File file, File tmpDir, File dbFile, IngestStats stats)
+			throws IOException
 	{
-		db.atomicLong("numLinks").createOrOpen().set(numLinks);
-		
-		db.close();
+		return fromFile(file, tmpDir, dbFile, stats, EdgeListSort.RUN_SIZE, EdgeListSort.FAN_IN);
 	}
 	
-	private static long readSorted(List<List<Integer>> list, File file, boolean forward)
-		throws IOException
+	static DiskDGraph fromFile(File file, File tmpDir, File dbFile, IngestStats stats, int runSize, int fanIn)
+			throws IOException
 	{
-		BufferedReader reader = new BufferedReader(new FileReader(file));
-		
-		String line;
-		int i = 0;
-		
-		long links = 0;
-		
-		Integer current = 0;
-		List<Integer> neighbors = new ArrayList<Integer>();
-		
-		do
-		 {
-			line = reader.readLine();
-			i++;
-		
-			if(line == null)
-				continue;
-			if(line.trim().isEmpty())
-				continue;
-			if(line.trim().startsWith("#"))
-				continue;
-			if(line.trim().startsWith("%"))
-				continue;
-			
-			String[] split = line.split("\\s");
-			if(split.length < 2)
-				throw new IllegalArgumentException("Line "+i+" does not split into two elements.");
-			
-			Integer a, b = null;
-			try {
-				a = Integer.parseInt(split[0]);
-			} catch(NumberFormatException e)
-			{
-				throw new RuntimeException("The first element on line "+i+" ("+split[0]+") cannot be parsed into an integer.", e);
-			}
-			
-			try {
-				b = Integer.parseInt(split[1]);
-			} catch(NumberFormatException e)
-			{
-				throw new RuntimeException("The second element on line "+i+" ("+split[1]+") cannot be parsed into an integer.", e);
-			}
-			
-			if(! forward) // * Switch the two integers
-			{
-				int t = a;
-				a = b;
-				b = t;
-			}
-				
-			if(current == null)
-				current = a;
-			
-			if(a != (int) current)
-			{
-				try {
-					list.add(neighbors);
-				} catch(AssertionError e)
-				{
-					throw new AssertionError("Failed to add list to IndexTreeList. current list size: "+list.size()+", list to be added "+neighbors);
-				}
-				neighbors.clear();
-				
-				if(a < list.size())
-					throw new IllegalStateException("Next index is "+a+", while list size is already " + list.size() + ". It seems like the sorting ot the file went wrong.");
-				
-				while(list.size() < a)
-					list.add(Collections.EMPTY_LIST);
-				
-				current = a;
-			}
-			
-			neighbors.add(b);
-			links++;
-			
-			if(links % 50000 == 0)
-				Global.log().info((forward? "Forward ":"Backward ")+": loaded " + links + " links.");
-			
-		} while(line != null);
-		
-		list.add(neighbors);
-		
-		Global.log().info((forward? "Forward ":"Backward ")+": loaded " + links + " links.");
+		DiskDGraph graph = new DiskDGraph(dbFile, true);
 
+		long links = new EdgeListSort(tmpDir, runSize, fanIn).sort(file, graph.out, graph.in, stats);
+
+		int max = Math.max(graph.in.size(), graph.out.size());
+		while(graph.in.size() < max)
+			graph.in.add(Collections.<Integer>emptyList());
+		while(graph.out.size() < max)
+			graph.out.add(Collections.<Integer>emptyList());
+
+		graph.numLinks = links;
+		graph.nullLabels = true;
 		
-		return links;
+		// * The rows come out of the merge sorted, so unsortedIn and 
+		//   unsortedOut can stay empty.
+
+		Global.log().info("Graph loaded and sorted: " + stats + ".");
+
+		return graph;
 	}
 	
-	private static class LComp implements Comparator<String>
+	/**
+	 * Writes this graph to the given directory in the memory-mapped format 
+	 * of MappedDGraph. The neighbor lists are read from the db one by one, so this
+	 * works for graphs of any size. Open the result with {@link MappedDGraph#open(File)}.
+	 * 
+	 * @param varint Whether to delta-code the rows as variable length integers.
+	 */
+	public void writeMapped(File dir, boolean varint)
+		throws IOException
 	{
-
-		private boolean forward;
-		
-		public LComp(boolean forward) 
-		{
-			this.forward = forward;
-		}
-
-		@Override
-		public int compare(String s1, String s2) 
-		{
-			boolean s1c = comment(s1), s2c = comment(s2);
-			
-			if(s1c && s2c) return 0;
-			if(s1c && !s2c) return -1;
-			if(s2c) return 1;
-			
-			int ind = forward ? 0 :1;
-			int i1 = Integer.parseInt(s1.split("\\s")[ind]);
-			int i2 = Integer.parseInt(s2.split("\\s")[ind]);
-			
-			return Integer.compare(i1, i2);
-		}
+		MappedDGraph.write(nullLabels ? null : labels, in, out, numLinks, dir, varint);
+	}
 	
-		private boolean comment(String s)
-		{
-			return s.trim().startsWith("#") || s.trim().startsWith("%");
-		}
+	public void close()
+	{
+		db.atomicLong("numLinks").createOrOpen().set(numLinks);
+		
+		db.atomicVar("unsortedIn", Serializer.LONG_ARRAY).createOrOpen().set(unsortedIn.toLongArray());
+		db.atomicVar("unsortedOut", Serializer.LONG_ARRAY).createOrOpen().set(unsortedOut.toLongArray());
+		db.atomicBoolean("unsortedStored").createOrOpen().set(true);
+		
+		db.close();
 	}
 	
 	/** 
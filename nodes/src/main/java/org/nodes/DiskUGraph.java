@@ -13,6 +13,7 @@ import java.util.AbstractCollection;
 import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -83,7 +84,10 @@ public class DiskUGraph implements UGraph<String>, FastWalkable<String, UNode<St
 	private int hash;
 	private Long hashMod = null;
 	
-	private boolean sorted = false;
+	// * The rows of neighbors that may be out of order (see IndexLists). These
+	//   are stored in the db by close(). If a graph wasn't closed, all rows 
+	//   are marked when it is opened.
+	private BitSet unsorted = new BitSet();
 	
 	public DiskUGraph(File dbFile)
 	{
@@ -115,6 +119,15 @@ public class DiskUGraph implements UGraph<String>, FastWalkable<String, UNode<St
 		else
 			for(List<Integer> list : neighbors)
 				numLinks += list.size();
+		
+		if(db.exists("unsortedStored") && db.atomicBoolean("unsortedStored").createOrOpen().get())
+			unsorted = BitSet.valueOf(db.atomicVar("unsorted", Serializer.LONG_ARRAY).createOrOpen().get());
+		else
+			unsorted.set(0, neighbors.size());
+		
+		// * The stored marks go stale as soon as the graph changes, so they
+		//   only count until close() stores them again.
+		db.atomicBoolean("unsortedStored").createOrOpen().set(false);
 	}
 	
 	@Override
@@ -204,11 +217,11 @@ public class DiskUGraph implements UGraph<String>, FastWalkable<String, UNode<St
 			if(! nullLabels)
 				labels.remove((int)index);
 			
+			IndexLists.removeRow(unsorted, index);
+			
 			dead = true;
 			modCount++;
 			nodeModCount++;
-			
-			sorted = false;
 		}
 
 		private void check()
@@ -278,12 +291,16 @@ public class DiskUGraph implements UGraph<String>, FastWalkable<String, UNode<St
 			int fromIndex = index, toIndex = to.index();
 			
 			List<Integer> nn = new ArrayList<Integer>(neighbors.get(fromIndex));
+			if(! nn.isEmpty() && nn.get(nn.size() - 1) > toIndex)
+				unsorted.set(fromIndex);
 			nn.add(toIndex);
 			neighbors.set(fromIndex, nn);
 			
 			if(fromIndex != toIndex)
 			{				
 				nn = new ArrayList<Integer>(neighbors.get(toIndex));
+				if(! nn.isEmpty() && nn.get(nn.size() - 1) > fromIndex)
+					unsorted.set(toIndex);
 				nn.add(fromIndex);
 				neighbors.set(toIndex, nn);
 
@@ -292,8 +309,6 @@ public class DiskUGraph implements UGraph<String>, FastWalkable<String, UNode<St
 			modCount++;			
 			numLinks++;
 			
-			sorted = false;
-			
 			return new DiskULink(index(), to.index());
 		}
 
@@ -303,18 +318,10 @@ public class DiskUGraph implements UGraph<String>, FastWalkable<String, UNode<St
 			check();
 			
 			int mine = index, his = other.index();
-			int removed = 0;
-		
-			List<Integer> nn;
+			int removed = IndexLists.removeAllStored(neighbors, unsorted, mine, his);
 			
-			nn = new ArrayList<Integer>(neighbors.get(mine));
-			while(nn.remove((Integer)his))
-				removed ++;
-			neighbors.set(mine, nn);
-
-			nn = new ArrayList<Integer>(neighbors.get(his));
-			while(nn.remove((Integer)mine));
-			neighbors.set(his, nn);
+			if(mine != his)
+				IndexLists.removeAllStored(neighbors, unsorted, his, mine);
 
 			numLinks -= removed;
 			modCount++;
@@ -330,10 +337,7 @@ public class DiskUGraph implements UGraph<String>, FastWalkable<String, UNode<St
 			
 			int mine = index, his = other.index();
 			
-			if(neighbors.get(mine).contains(his))
-				return true;
-			
-			return false;
+			return IndexLists.contains(neighbors, unsorted, mine, his);
 		}
 
 		@Override
@@ -416,12 +420,12 @@ public class DiskUGraph implements UGraph<String>, FastWalkable<String, UNode<St
 		{
 			check();
 			
-			List<ULink<String>> list = new ArrayList<ULink<String>>();
-			
 			int o = other.index();
-			for(int neighbor : neighbors.get(index))
-				if(neighbor == o)
-					list.add(new DiskULink(index, neighbor));
+			int n = IndexLists.count(neighbors, unsorted, index, o);
+			
+			List<ULink<String>> list = new ArrayList<ULink<String>>(n);
+			for(int i : series(n))
+				list.add(new DiskULink(index, o));
 						
 			return list;
 		}
@@ -482,8 +486,6 @@ public class DiskUGraph implements UGraph<String>, FastWalkable<String, UNode<St
 			numLinks--;
 			modCount++;
 			dead = true;
-			
-			sorted = false;
 		}
 
 		@Override
@@ -716,7 +718,6 @@ public class DiskUGraph implements UGraph<String>, FastWalkable<String, UNode<St
 				
 		neighbors.add(new ArrayList<Integer>(NEIGHBOR_CAPACITY));
 		
-		sorted = false;
 		return new DiskUNode(neighbors.size() - 1);
 	}
 
@@ -817,21 +818,16 @@ public class DiskUGraph implements UGraph<String>, FastWalkable<String, UNode<St
 	/**
 	 * Sorts all neighbour lists
 	 * 
-	 * @param margin
+	 * Only the lists that may have gone out of order are checked, and only 
+	 * those that are actually out of order are rewritten. Lookups on lists 
+	 * that may be out of order fall back to a linear scan, so calling this 
+	 * method is never required, but it makes those lookups fast again. This 
+	 * is the only method that reorders the lists without changing them: it 
+	 * should not be called while other threads read the graph.
 	 */
 	public void sort()
 	{
-		if(sorted)
-			return;
-		
-		for(int i : Series.series(neighbors.size()))
-		{
-			List<Integer> nn = new ArrayList<Integer>(neighbors.get(i));
-			Collections.sort(nn);
-			neighbors.set(i, nn);
-		}
-		
-		sorted = true;
+		IndexLists.sortStored(neighbors, unsorted);
 	}
 	
 	/**
@@ -932,7 +928,7 @@ public class DiskUGraph implements UGraph<String>, FastWalkable<String, UNode<St
 	@Override
 	public Class<? extends UGraph<String>> level()
 	{
-		Object obj = DGraph.class;
+		Object obj = UGraph.class;
 		return (Class<? extends UGraph<String>>) obj;
 	}
 
@@ -947,6 +943,24 @@ public class DiskUGraph implements UGraph<String>, FastWalkable<String, UNode<St
 		return new NodeList(indices);
 	}
 	
+	@Override
+	public int numNeighborsFast(int node)
+	{
+		return neighbors.get(node).size();
+	}
+	
+	@Override
+	public int neighborFast(int node, int i)
+	{
+		return neighbors.get(node).get(i);
+	}
+	
+	@Override
+	public IntCursor neighborCursor()
+	{
+		return new ListCursor(neighbors);
+	}
+	
 	/**
 	 * Loads a previous converted graph.
 	 * 
@@ -1028,16 +1042,34 @@ public class DiskUGraph implements UGraph<String>, FastWalkable<String, UNode<St
         graph.numLinks = links;
         graph.nullLabels = true;
         
+        graph.unsorted.set(0, graph.neighbors.size());
+        
 		Global.log().info("Graph loaded and sorted.");
 
 		
 		return graph;
 	}
 	
+	/**
+	 * Writes this graph to the given directory in the memory-mapped format 
+	 * of MappedUGraph. The neighbor lists are read from the db one by one, so this
+	 * works for graphs of any size. Open the result with {@link MappedUGraph#open(File)}.
+	 * 
+	 * @param varint Whether to delta-code the rows as variable length integers.
+	 */
+	public void writeMapped(File dir, boolean varint)
+		throws IOException
+	{
+		MappedUGraph.write(nullLabels ? null : labels, neighbors, numLinks, dir, varint);
+	}
+	
 	public void close()
 	{
 		db.atomicLong("numLinks").createOrOpen().set(numLinks);
 		
+		db.atomicVar("unsorted", Serializer.LONG_ARRAY).createOrOpen().set(unsorted.toLongArray());
+		db.atomicBoolean("unsortedStored").createOrOpen().set(true);
+		
 		db.close();
 	}
 	
@@ -0,0 +1,476 @@
+package org.nodes;
+
+import static nl.peterbloem.kit.Series.series;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.nodes.data.EdgeListParser;
+
+import nl.peterbloem.kit.Global;
+
+/**
+ * An external sort for large edge lists, used to bulk load disk graphs.
+ *
+ * The text is parsed once, in parallel chunks (see EdgeListParser). Each edge
+ * (a, b) is stored as two longs: a << 32 | b for the forward direction and
+ * b << 32 | a for the backward direction, so that sorting the longs sorts the
+ * edges by their first node and then by their second. Each chunk is cut into
+ * runs, which are sorted and written to binary temporary files by the same
+ * thread that parsed the chunk. The runs of each direction are then
+ * merged (k-way, in several passes if there are many runs) and streamed into
+ * the adjacency lists, both directions at the same time.
+ *
+ * Lines that are empty, or start with # or %, are skipped. Any columns after
+ * the first two are ignored.
+ *
+ * @author Peter
+ *
+ */
+class EdgeListSort
+{
+	// * the number of edges per run
+	public static final int RUN_SIZE = 1 << 20;
+	// * the maximum number of runs merged at once
+	public static final int FAN_IN = 128;
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private File tmpDir;
+	private int runSize, fanIn;
+
+	private int numThreads = Runtime.getRuntime().availableProcessors();
+
+	private List<File> forwardRuns = new ArrayList<File>();
+	private List<File> backwardRuns = new ArrayList<File>();
+
+	private ExecutorService executor;
+
+	public EdgeListSort(File tmpDir, int runSize, int fanIn)
+	{
+		if(runSize < 1)
+			throw new IllegalArgumentException("Run size must be positive (was "+runSize+").");
+		if(fanIn < 2)
+			throw new IllegalArgumentException("Fan-in must be at least 2 (was "+fanIn+").");
+
+		this.tmpDir = tmpDir;
+		this.runSize = runSize;
+		this.fanIn = fanIn;
+	}
+
+	/**
+	 * Reads the given edge list, and appends its rows to the given lists: the
+	 * out-neighbors of each node to out and the in-neighbors to in. The rows
+	 * are written in order of node index (with empty rows for missing nodes),
+	 * and each row is sorted.
+	 *
+	 * @return The number of edges read.
+	 */
+	public long sort(File file, final List<List<Integer>> out, final List<List<Integer>> in, IngestStats stats)
+		throws IOException
+	{
+		executor = Executors.newFixedThreadPool(numThreads);
+
+		try
+		{
+			long t0 = System.nanoTime();
+
+			parse(file, stats);
+
+			long t1 = System.nanoTime();
+			stats.parseNanos = t1 - t0;
+			stats.runs = forwardRuns.size();
+
+			Global.log().info("Parsed " + stats.edges + " edges into " + stats.runs + " runs per direction.");
+
+			// * merge the two directions concurrently
+			Future<Long> forward = executor.submit(new Callable<Long>() {
+				public Long call() throws IOException
+				{
+					return rows(merge(forwardRuns), out);
+				}
+			});
+			Future<Long> backward = executor.submit(new Callable<Long>() {
+				public Long call() throws IOException
+				{
+					return rows(merge(backwardRuns), in);
+				}
+			});
+
+			long links = get(forward);
+			get(backward);
+
+			stats.mergeNanos = System.nanoTime() - t1;
+
+			return links;
+		} finally
+		{
+			executor.shutdownNow();
+
+			for(File run : forwardRuns)
+				run.delete();
+			for(File run : backwardRuns)
+				run.delete();
+		}
+	}
+
+	/**
+	 * Parses the file into sorted runs. The chunks of the file are parsed in
+	 * parallel, and each chunk is cut into runs of at most runSize edges.
+	 */
+	private void parse(File file, IngestStats stats)
+		throws IOException
+	{
+		final EdgeListParser parser = new EdgeListParser(file, EdgeListParser.CHUNK_SIZE, numThreads);
+
+		List<Future<Integer>> chunks = new ArrayList<Future<Integer>>(parser.numChunks());
+		for(final int chunk : series(parser.numChunks()))
+			chunks.add(executor.submit(new Callable<Integer>() {
+				public Integer call() throws IOException
+				{
+					return runs(parser.ints(chunk));
+				}
+			}));
+
+		long edges = 0;
+		for(Future<Integer> chunk : chunks)
+			edges += get(chunk);
+
+		stats.bytes = file.length();
+		stats.edges = edges;
+	}
+
+	/**
+	 * Sorts the given edges in both directions, and writes them to run files.
+	 *
+	 * @param edges A flat array of pairs
+	 * @return The number of edges
+	 */
+	private int runs(int[] edges)
+		throws IOException
+	{
+		int m = edges.length / 2;
+
+		for(int from = 0; from < m; from += runSize)
+		{
+			int n = Math.min(runSize, m - from);
+
+			long[] forward = new long[n], backward = new long[n];
+			for(int i = 0; i < n; i++)
+			{
+				long a = edges[2 * (from + i)], b = edges[2 * (from + i) + 1];
+
+				forward[i]  = a << 32 | b;
+				backward[i] = b << 32 | a;
+			}
+
+			Arrays.sort(forward);
+			Arrays.sort(backward);
+
+			write(forward, n, newRun(forwardRuns));
+			write(backward, n, newRun(backwardRuns));
+		}
+
+		return m;
+	}
+
+	/**
+	 * Creates a new run file, and adds it to the given list.
+	 */
+	private File newRun(List<File> runs)
+		throws IOException
+	{
+		File file = newRun();
+		synchronized(runs)
+		{
+			runs.add(file);
+		}
+
+		return file;
+	}
+
+	private File newRun()
+		throws IOException
+	{
+		return File.createTempFile("edges.", ".run", tmpDir);
+	}
+
+	/**
+	 * Merges the given runs into a single sorted sequence. If there are more
+	 * than fanIn runs, they are first merged in groups into larger runs.
+	 */
+	private Merge merge(List<File> runs)
+		throws IOException
+	{
+		List<File> current = runs;
+
+		while(current.size() > fanIn)
+		{
+			List<File> next = new ArrayList<File>();
+
+			for(int from = 0; from < current.size(); from += fanIn)
+			{
+				List<File> group = current.subList(from, Math.min(from + fanIn, current.size()));
+				File file = newRun();
+
+				Merge merge = new Merge(group);
+				try
+				{
+					RunWriter writer = new RunWriter(file);
+					try
+					{
+						while(merge.hasNext())
+							writer.write(merge.next());
+					} finally
+					{
+						writer.close();
+					}
+				} finally
+				{
+					merge.close();
+				}
+
+				for(File run : group)
+					run.delete();
+
+				next.add(file);
+			}
+
+			// * keep track of the new runs, so they are deleted at the end
+			runs.addAll(next);
+			current = next;
+		}
+
+		return new Merge(current);
+	}
+
+	/**
+	 * Streams a sorted sequence of edges into rows of the given list.
+	 *
+	 * @return The number of edges.
+	 */
+	private static long rows(Merge merge, List<List<Integer>> list)
+		throws IOException
+	{
+		long links = 0;
+
+		int current = 0;
+		List<Integer> neighbors = new ArrayList<Integer>();
+
+		try
+		{
+			while(merge.hasNext())
+			{
+				long value = merge.next();
+				int a = (int)(value >>> 32), b = (int) value;
+
+				if(a != current)
+				{
+					list.add(neighbors);
+					neighbors = new ArrayList<Integer>();
+
+					while(list.size() < a)
+						list.add(Collections.<Integer>emptyList());
+
+					current = a;
+				}
+
+				neighbors.add(b);
+				links++;
+			}
+
+			list.add(neighbors);
+		} finally
+		{
+			merge.close();
+		}
+
+		return links;
+	}
+
+	private static <T> T get(Future<T> future)
+		throws IOException
+	{
+		try
+		{
+			return future.get();
+		} catch (InterruptedException e)
+		{
+			throw new RuntimeException(e);
+		} catch (ExecutionException e)
+		{
+			Throwable cause = e.getCause();
+			if(cause instanceof IOException)
+				throw (IOException) cause;
+			if(cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			throw new RuntimeException(cause);
+		}
+	}
+
+	private static void write(long[] values, int n, File file)
+		throws IOException
+	{
+		RunWriter writer = new RunWriter(file);
+		try
+		{
+			for(int i = 0; i < n; i++)
+				writer.write(values[i]);
+		} finally
+		{
+			writer.close();
+		}
+	}
+
+	/**
+	 * A k-way merge of sorted run files.
+	 */
+	private static class Merge
+	{
+		private PriorityQueue<RunReader> queue;
+		private List<RunReader> readers = new ArrayList<RunReader>();
+
+		public Merge(List<File> runs)
+			throws IOException
+		{
+			queue = new PriorityQueue<RunReader>(Math.max(1, runs.size()), new Comparator<RunReader>()
+			{
+				@Override
+				public int compare(RunReader first, RunReader second)
+				{
+					return Long.compare(first.head, second.head);
+				}
+			});
+
+			for(File run : runs)
+			{
+				RunReader reader = new RunReader(run);
+				readers.add(reader);
+
+				if(reader.advance())
+					queue.add(reader);
+			}
+		}
+
+		public boolean hasNext()
+		{
+			return ! queue.isEmpty();
+		}
+
+		public long next()
+			throws IOException
+		{
+			RunReader reader = queue.poll();
+			long value = reader.head;
+
+			if(reader.advance())
+				queue.add(reader);
+
+			return value;
+		}
+
+		public void close()
+			throws IOException
+		{
+			for(RunReader reader : readers)
+				reader.close();
+		}
+	}
+
+	private static class RunReader
+	{
+		private FileChannel channel;
+		private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+		long head;
+
+		public RunReader(File file)
+			throws IOException
+		{
+			channel = new RandomAccessFile(file, "r").getChannel();
+			buffer.flip();
+		}
+
+		/**
+		 * Reads the next value into head.
+		 *
+		 * @return False if the run is exhausted.
+		 */
+		public boolean advance()
+			throws IOException
+		{
+			if(buffer.remaining() < 8)
+			{
+				buffer.compact();
+				while(buffer.position() < 8)
+					if(channel.read(buffer) < 0)
+						break;
+				buffer.flip();
+
+				if(buffer.remaining() < 8)
+					return false;
+			}
+
+			head = buffer.getLong();
+			return true;
+		}
+
+		public void close()
+			throws IOException
+		{
+			channel.close();
+		}
+	}
+
+	private static class RunWriter
+	{
+		private FileChannel channel;
+		private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+		public RunWriter(File file)
+			throws IOException
+		{
+			channel = new RandomAccessFile(file, "rw").getChannel();
+			channel.truncate(0);
+		}
+
+		public void write(long value)
+			throws IOException
+		{
+			if(buffer.remaining() < 8)
+				flush();
+
+			buffer.putLong(value);
+		}
+
+		private void flush()
+			throws IOException
+		{
+			buffer.flip();
+			while(buffer.hasRemaining())
+				channel.write(buffer);
+			buffer.clear();
+		}
+
+		public void close()
+			throws IOException
+		{
+			flush();
+			channel.close();
+		}
+	}
+}
@@ -7,6 +7,10 @@ import java.util.List;
  * A FastWalkable graph allows fast, random access to the nodes neighboring a
  * given node, but only as a list containing duplicates 
  * 
+ * The neighbors can also be accessed by index, through numNeighborsFast(), 
+ * neighborFast() and neighborCursor(). These methods don't create node 
+ * objects, so they are the better choice in tight loops.
+ * 
  * @author Peter
  */
 public interface FastWalkable<L, N extends Node<L>>
@@ -19,4 +23,21 @@ public interface FastWalkable<L, N extends Node<L>>
 	 * The returned list should support fast random access.
 	 */
 	public List<N> neighborsFast(Node<L> node);
+	
+	/**
+	 * The size of neighborsFast() for the node with the given index.
+	 */
+	public int numNeighborsFast(int node);
+	
+	/**
+	 * The index of the i-th element of neighborsFast() for the node with the 
+	 * given index.
+	 */
+	public int neighborFast(int node, int i);
+	
+	/**
+	 * Returns a new cursor over the indices in neighborsFast(). The cursor can 
+	 * be reset to another node any number of times.
+	 */
+	public IntCursor neighborCursor();
 }
@@ -0,0 +1,85 @@
+package org.nodes;
+
+import java.util.List;
+
+/**
+ * A structural fingerprint for graphs: an order-independent hash of the
+ * multiset of (index, label) pairs and the multiset of links.
+ *
+ * Since the fingerprint is a sum of independent terms, a graph can keep it up
+ * to date as it is edited, by adding the term of each new node or link and
+ * subtracting the term of each removed link. Only removing a node (which
+ * changes the indices of other nodes) requires it to be recomputed.
+ *
+ * Graphs of different types that are equal have the same fingerprint, so long
+ * as they compute it from the same labels and links.
+ *
+ * @author Peter
+ *
+ */
+class Fingerprint
+{
+	private static final long NODE_SEED = 0x9e3779b97f4a7c15L;
+	private static final long LINK_SEED = 0xc2b2ae3d27d4eb4fL;
+
+	/**
+	 * The term for a node with the given index and label.
+	 */
+	public static long node(int index, Object label)
+	{
+		long labelHash = label == null ? 0 : label.hashCode() & 0xffffffffL;
+		return mix(((long) index << 32 | labelHash) + NODE_SEED);
+	}
+
+	/**
+	 * The term for a directed link.
+	 */
+	public static long link(int from, int to)
+	{
+		return mix(((long) from << 32 | (to & 0xffffffffL)) ^ LINK_SEED);
+	}
+
+	/**
+	 * The term for an undirected link. This is independent of the order of
+	 * the nodes.
+	 */
+	public static long ulink(int a, int b)
+	{
+		return a <= b ? link(a, b) : link(b, a);
+	}
+
+	/**
+	 * The combined term for all nodes with the given labels.
+	 */
+	public static long nodes(List<?> labels)
+	{
+		long sum = 0;
+		int i = 0;
+		for(Object label : labels)
+			sum += node(i++, label);
+
+		return sum;
+	}
+
+	/**
+	 * Folds a fingerprint into an int, for use as a hash code.
+	 */
+	public static int hash(long fingerprint)
+	{
+		return (int)(fingerprint ^ (fingerprint >>> 32));
+	}
+
+	/**
+	 * The finalizer of MurmurHash3: spreads the bits of x over the result.
+	 */
+	private static long mix(long x)
+	{
+		x ^= x >>> 33;
+		x *= 0xff51afd7ed558ccdL;
+		x ^= x >>> 33;
+		x *= 0xc4ceb9fe1a85ec53L;
+		x ^= x >>> 33;
+
+		return x;
+	}
+}
@@ -0,0 +1,438 @@
+package org.nodes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Builds large graphs from a list of links, given as pairs of node indices.
+ *
+ * Adding links to a graph one by one makes each neighbor list grow as it
+ * goes, which wastes memory and time. The builder instead makes a counting
+ * pass over the links to find the exact degree of every node, allocates rows
+ * of exactly the right size, fills them in a second pass, and sorts the rows
+ * in parallel. The resulting graphs need no compaction or sorting.
+ *
+ * If simple is set, self-loops and multiple links are removed during the
+ * build, as in {@link Graphs#toSimpleDGraph(DGraph)} and
+ * {@link Graphs#toSimpleUGraph(Graph)}.
+ *
+ * The nodes of the resulting graphs are labeled null, unless a list of labels
+ * is given. The number of nodes is the highest index in the links plus one,
+ * or the size given by {@link #size(int)} or the number of labels, if that is
+ * larger.
+ *
+ * <pre>
+ *   LightDGraph<String> graph = new GraphBuilder(edges).simple(true).directed();
+ * </pre>
+ *
+ * @author Peter
+ *
+ */
+public class GraphBuilder
+{
+	// * the links, as a flat array of pairs
+	private int[] links;
+	private int m;
+
+	private int size = 0;
+	private boolean simple = false;
+	private int numThreads = Runtime.getRuntime().availableProcessors();
+
+	public GraphBuilder()
+	{
+		links = new int[64];
+		m = 0;
+	}
+
+	/**
+	 * Creates a builder for the given links. The i-th link is (links[2i],
+	 * links[2i+1]). The array is not copied, and should not be modified while
+	 * the builder is in use.
+	 */
+	public GraphBuilder(int[] links)
+	{
+		if(links.length % 2 != 0)
+			throw new IllegalArgumentException("The array of links should have even length (was "+links.length+").");
+
+		for(int index : links)
+			if(index < 0)
+				throw new IllegalArgumentException("Negative node index ("+index+").");
+
+		this.links = links;
+		this.m = links.length / 2;
+	}
+
+	/**
+	 * Adds a link. For the undirected graphs, the direction is ignored.
+	 */
+	public GraphBuilder add(int from, int to)
+	{
+		if(from < 0 || to < 0)
+			throw new IllegalArgumentException("Negative node index ("+from+", "+to+").");
+
+		if(2 * m + 2 > links.length)
+			links = Arrays.copyOf(links, Math.max(2 * m + 2, links.length * 2));
+
+		links[2 * m] = from;
+		links[2 * m + 1] = to;
+		m++;
+
+		return this;
+	}
+
+	/**
+	 * Sets the minimum number of nodes in the graph, so that the graph can
+	 * contain nodes without links.
+	 */
+	public GraphBuilder size(int size)
+	{
+		this.size = size;
+		return this;
+	}
+
+	/**
+	 * Whether to remove self-loops and multiple links.
+	 */
+	public GraphBuilder simple(boolean simple)
+	{
+		this.simple = simple;
+		return this;
+	}
+
+	/**
+	 * The number of threads used to sort the rows.
+	 */
+	public GraphBuilder threads(int numThreads)
+	{
+		if(numThreads < 1)
+			throw new IllegalArgumentException("Number of threads must be positive (was "+numThreads+").");
+
+		this.numThreads = numThreads;
+		return this;
+	}
+
+	/**
+	 * The number of links added so far (before removing any multiple links or
+	 * self-loops).
+	 */
+	public int numLinks()
+	{
+		return m;
+	}
+
+	/**
+	 * The number of nodes the graph will have.
+	 */
+	public int size()
+	{
+		int max = size - 1;
+		for(int i = 0; i < 2 * m; i++)
+			max = Math.max(max, links[i]);
+
+		return max + 1;
+	}
+
+	public <L> LightDGraph<L> directed()
+	{
+		return directed(null);
+	}
+
+	/**
+	 * @param labels The labels of the nodes. The graph will have one node per
+	 *   label, so there should be at least size() labels.
+	 */
+	public <L> LightDGraph<L> directed(List<L> labels)
+	{
+		int n = size(labels);
+
+		Rows out = rows(n, 0, 1, false);
+		Rows in = rows(n, 1, 0, false);
+
+		return new LightDGraph<L>(
+				new ArrayList<L>(labels(labels, n)),
+				out.lists(), in.lists(), out.targets.length);
+	}
+
+	public <L> LightUGraph<L> undirected()
+	{
+		return undirected(null);
+	}
+
+	/**
+	 * @param labels The labels of the nodes. The graph will have one node per
+	 *   label, so there should be at least size() labels.
+	 */
+	public <L> LightUGraph<L> undirected(List<L> labels)
+	{
+		int n = size(labels);
+
+		Rows rows = rows(n, 0, 1, true);
+
+		return new LightUGraph<L>(
+				new ArrayList<L>(labels(labels, n)),
+				rows.lists(), rows.numLinks);
+	}
+
+	public <L> CSRDGraph<L> csrDirected()
+	{
+		return csrDirected(null);
+	}
+
+	public <L> CSRDGraph<L> csrDirected(List<L> labels)
+	{
+		int n = size(labels);
+
+		Rows out = rows(n, 0, 1, false);
+		Rows in = rows(n, 1, 0, false);
+
+		return new CSRDGraph<L>(labels(labels, n), out.offsets, out.targets, in.offsets, in.targets);
+	}
+
+	public <L> CSRUGraph<L> csrUndirected()
+	{
+		return csrUndirected(null);
+	}
+
+	public <L> CSRUGraph<L> csrUndirected(List<L> labels)
+	{
+		int n = size(labels);
+
+		Rows rows = rows(n, 0, 1, true);
+
+		return new CSRUGraph<L>(labels(labels, n), rows.offsets, rows.targets, rows.numLinks);
+	}
+
+	private int size(List<?> labels)
+	{
+		int n = size();
+		if(labels == null)
+			return n;
+
+		if(labels.size() < n)
+			throw new IllegalArgumentException("There are "+labels.size()+" labels for a graph of "+n+" nodes.");
+
+		return labels.size();
+	}
+
+	/**
+	 * An immutable list of labels for the given number of nodes.
+	 */
+	private static <L> List<L> labels(List<L> labels, int n)
+	{
+		if(labels == null)
+			return Collections.<L>nCopies(n, null);
+
+		return Collections.unmodifiableList(new ArrayList<L>(labels));
+	}
+
+	/**
+	 * Builds the rows of one direction of the graph.
+	 *
+	 * @param first The offset within each pair of the node that owns the row
+	 * @param second The offset within each pair of the node that is added to
+	 *   the row
+	 * @param both Whether to add each link to the rows of both its nodes (for
+	 *   undirected graphs). Self-loops are then added once.
+	 */
+	private Rows rows(int n, int first, int second, boolean both)
+	{
+		// * Count the degrees
+		int[] offsets = new int[n + 1];
+		long entries = 0;
+		for(int i = 0; i < m; i++)
+		{
+			int a = links[2 * i + first], b = links[2 * i + second];
+
+			if(a == b && simple)
+				continue;
+
+			offsets[a + 1] ++;
+			entries ++;
+
+			if(both && a != b)
+			{
+				offsets[b + 1] ++;
+				entries ++;
+			}
+		}
+
+		if(entries > Integer.MAX_VALUE)
+			throw new IllegalStateException("Too many links ("+m+"): the rows would have more than "+Integer.MAX_VALUE+" entries.");
+
+		// * Turn the degrees into offsets
+		for(int i = 0; i < n; i++)
+			offsets[i + 1] += offsets[i];
+
+		// * Fill the rows
+		final int[] targets = new int[(int) entries];
+		int[] pos = Arrays.copyOf(offsets, n);
+		long numLinks = 0;
+
+		for(int i = 0; i < m; i++)
+		{
+			int a = links[2 * i + first], b = links[2 * i + second];
+
+			if(a == b && simple)
+				continue;
+
+			targets[pos[a]++] = b;
+			if(both && a != b)
+				targets[pos[b]++] = a;
+
+			numLinks++;
+		}
+
+		// * Sort the rows, and remove duplicates
+		final int[] o = offsets;
+		final int[] lengths = simple ? new int[n] : null;
+		parallel(n, new Block() {
+			public void run(int from, int to)
+			{
+				for(int i = from; i < to; i++)
+				{
+					Arrays.sort(targets, o[i], o[i + 1]);
+
+					if(simple)
+						lengths[i] = dedup(targets, o[i], o[i + 1]);
+				}
+			}
+		});
+
+		if(! simple)
+			return new Rows(offsets, targets, numLinks);
+
+		// * Shift the deduplicated rows together
+		int[] newOffsets = new int[n + 1];
+		for(int i = 0; i < n; i++)
+		{
+			newOffsets[i + 1] = newOffsets[i] + lengths[i];
+			System.arraycopy(targets, offsets[i], targets, newOffsets[i], lengths[i]);
+		}
+
+		int total = newOffsets[n];
+
+		// * In a simple graph, each undirected link is in two rows
+		numLinks = both ? total / 2 : total;
+
+		return new Rows(newOffsets, Arrays.copyOf(targets, total), numLinks);
+	}
+
+	/**
+	 * Removes duplicates from a sorted segment of an array, moving the
+	 * distinct values to the start of the segment.
+	 *
+	 * @return The number of distinct values.
+	 */
+	private static int dedup(int[] values, int from, int to)
+	{
+		if(from == to)
+			return 0;
+
+		int k = from + 1;
+		for(int j = from + 1; j < to; j++)
+			if(values[j] != values[k - 1])
+				values[k++] = values[j];
+
+		return k - from;
+	}
+
+	private interface Block
+	{
+		public void run(int from, int to);
+	}
+
+	/**
+	 * Runs the given block over the range 0 to n, divided into blocks for the
+	 * available threads.
+	 */
+	private void parallel(int n, final Block block)
+	{
+		int threads = Math.min(numThreads, Math.max(1, n / 1024));
+
+		if(threads == 1)
+		{
+			block.run(0, n);
+			return;
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try
+		{
+			int step = (n + threads - 1) / threads;
+
+			List<Future<Void>> futures = new ArrayList<Future<Void>>(threads);
+			for(int from = 0; from < n; from += step)
+			{
+				final int f = from, t = Math.min(n, from + step);
+				futures.add(executor.submit(new Callable<Void>() {
+					public Void call()
+					{
+						block.run(f, t);
+						return null;
+					}
+				}));
+			}
+
+			for(Future<Void> future : futures)
+				future.get();
+
+		} catch (InterruptedException e)
+		{
+			throw new RuntimeException(e);
+		} catch (ExecutionException e)
+		{
+			throw new RuntimeException(e.getCause());
+		} finally
+		{
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * One direction of a graph in compressed sparse row form.
+	 */
+	private class Rows
+	{
+		int[] offsets, targets;
+		long numLinks;
+
+		public Rows(int[] offsets, int[] targets, long numLinks)
+		{
+			this.offsets = offsets;
+			this.targets = targets;
+			this.numLinks = numLinks;
+		}
+
+		/**
+		 * Converts the rows to exactly sized lists.
+		 */
+		public List<List<Integer>> lists()
+		{
+			final int n = offsets.length - 1;
+			final List<List<Integer>> lists = new ArrayList<List<Integer>>(Collections.<List<Integer>>nCopies(n, null));
+
+			parallel(n, new Block() {
+				public void run(int from, int to)
+				{
+					for(int i = from; i < to; i++)
+					{
+						List<Integer> row = new ArrayList<Integer>(offsets[i + 1] - offsets[i]);
+						for(int j = offsets[i]; j < offsets[i + 1]; j++)
+							row.add(targets[j]);
+
+						lists.set(i, row);
+					}
+				}
+			});
+
+			return lists;
+		}
+	}
+}
@@ -0,0 +1,270 @@
+package org.nodes;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Static helpers for the lists of neighbor indices used by the Light and Disk
+ * graphs.
+ *
+ * Each graph keeps a BitSet of the rows that may be out of order. A row that
+ * is not in this set is sorted, so that lookups can use a binary search.
+ * Appending a value that is at least as large as the last one keeps a row
+ * sorted, and removing values never unsorts it, so for most workloads (like
+ * loading a sorted edge list) rows are never marked.
+ *
+ * Lookups on a marked row fall back to a linear scan. They never reorder the
+ * row, so they are safe to use from several threads, and while iterating 
+ * over the row. Only an explicit sort() of the graph reorders its rows. The
+ * Disk graphs, which rewrite a whole row on every change, also sort a marked
+ * row when they remove values from it.
+ *
+ * @author Peter
+ *
+ */
+class IndexLists
+{
+	/**
+	 * Appends a value to the given row, and marks the row as unsorted if the
+	 * value breaks the order.
+	 */
+	static void add(List<List<Integer>> rows, BitSet unsorted, int row, int value)
+	{
+		List<Integer> list = rows.get(row);
+
+		if(! list.isEmpty() && list.get(list.size() - 1) > value)
+			unsorted.set(row);
+
+		list.add(value);
+	}
+
+	/**
+	 * Whether the given value occurs in the given row. Uses a binary search if
+	 * the row is sorted, and a linear scan if it is marked as unsorted. The 
+	 * row is not modified.
+	 */
+	static boolean contains(List<List<Integer>> rows, BitSet unsorted, int row, int value)
+	{
+		List<Integer> list = rows.get(row);
+
+		if(! unsorted.get(row))
+			return contains(list, value);
+
+		for(int v : list)
+			if(v == value)
+				return true;
+
+		return false;
+	}
+
+	/**
+	 * The number of times the given value occurs in the given row. The row is
+	 * not modified.
+	 */
+	static int count(List<List<Integer>> rows, BitSet unsorted, int row, int value)
+	{
+		List<Integer> list = rows.get(row);
+
+		if(! unsorted.get(row))
+			return count(list, value);
+
+		int n = 0;
+		for(int v : list)
+			if(v == value)
+				n++;
+
+		return n;
+	}
+
+	/**
+	 * Removes all occurrences of the given value from the given row. The order
+	 * of the remaining values is kept, so the row stays marked as it was.
+	 *
+	 * @return The number of elements removed
+	 */
+	static int removeAll(List<List<Integer>> rows, BitSet unsorted, int row, int value)
+	{
+		List<Integer> list = rows.get(row);
+
+		if(! unsorted.get(row))
+			return removeAll(list, value);
+
+		int n = 0;
+		for(Iterator<Integer> it = list.iterator(); it.hasNext(); )
+			if(it.next() == value)
+			{
+				it.remove();
+				n++;
+			}
+
+		return n;
+	}
+
+	/**
+	 * The given row in sorted order: the row itself if it is sorted, and a
+	 * sorted copy if it is marked as unsorted. The row is not modified.
+	 */
+	static List<Integer> sorted(List<List<Integer>> rows, BitSet unsorted, int row)
+	{
+		List<Integer> list = rows.get(row);
+
+		if(! unsorted.get(row))
+			return list;
+
+		List<Integer> copy = new ArrayList<Integer>(list);
+		Collections.sort(copy);
+
+		return copy;
+	}
+
+	/**
+	 * Sorts all rows that are marked as unsorted, and clears the marks.
+	 */
+	static void sort(List<List<Integer>> rows, BitSet unsorted)
+	{
+		for(int i = unsorted.nextSetBit(0); i >= 0; i = unsorted.nextSetBit(i + 1))
+			Collections.sort(rows.get(i));
+
+		unsorted.clear();
+	}
+
+	/**
+	 * Removes all occurrences of the given value from a row that is stored by
+	 * value (like the db-backed rows of the Disk graphs). A row that is
+	 * rewritten is sorted first, and its mark cleared. If the value doesn't 
+	 * occur, the row is left as it is.
+	 *
+	 * @return The number of elements removed
+	 */
+	static int removeAllStored(List<List<Integer>> rows, BitSet unsorted, int row, int value)
+	{
+		List<Integer> list = new ArrayList<Integer>(rows.get(row));
+
+		boolean marked = unsorted.get(row);
+		if(marked)
+			Collections.sort(list);
+
+		int removed = removeAll(list, value);
+		if(removed > 0)
+		{
+			rows.set(row, list);
+			unsorted.clear(row);
+		}
+
+		return removed;
+	}
+
+	/**
+	 * Sorts all marked rows of a list of rows that are stored by value, and 
+	 * clears the marks. Only rows that are actually out of order are 
+	 * rewritten.
+	 */
+	static void sortStored(List<List<Integer>> rows, BitSet unsorted)
+	{
+		for(int i = unsorted.nextSetBit(0); i >= 0; i = unsorted.nextSetBit(i + 1))
+		{
+			List<Integer> list = rows.get(i);
+			if(! isSorted(list))
+			{
+				list = new ArrayList<Integer>(list);
+				Collections.sort(list);
+				rows.set(i, list);
+			}
+		}
+
+		unsorted.clear();
+	}
+
+	/**
+	 * Whether the given value occurs in the list
+	 * @param list A sorted list
+	 */
+	static boolean contains(List<Integer> list, int value)
+	{
+		int i = lowerBound(list, value);
+		return i < list.size() && list.get(i) == value;
+	}
+
+	/**
+	 * The number of times the given value occurs in the list
+	 * @param list A sorted list
+	 */
+	static int count(List<Integer> list, int value)
+	{
+		int lo = lowerBound(list, value);
+		int hi = lo;
+
+		while(hi < list.size() && list.get(hi) == value)
+			hi++;
+
+		return hi - lo;
+	}
+
+	/**
+	 * Removes all occurrences of the given value from the list
+	 *
+	 * @param list A sorted list
+	 * @return The number of elements removed
+	 */
+	static int removeAll(List<Integer> list, int value)
+	{
+		int lo = lowerBound(list, value);
+		int n = count(list, value);
+
+		if(n > 0)
+			list.subList(lo, lo + n).clear();
+
+		return n;
+	}
+
+	/**
+	 * The index of the first element in the list that is equal to or larger
+	 * than the given value (or the list's size if there is none).
+	 *
+	 * @param list A sorted list
+	 */
+	static int lowerBound(List<Integer> list, int value)
+	{
+		int lo = 0, hi = list.size();
+
+		while(lo < hi)
+		{
+			int mid = (lo + hi) >>> 1;
+			if(list.get(mid) < value)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+
+		return lo;
+	}
+
+	/**
+	 * Whether the list is sorted
+	 */
+	static boolean isSorted(List<Integer> list)
+	{
+		for(int i = 1; i < list.size(); i++)
+			if(list.get(i - 1) > list.get(i))
+				return false;
+
+		return true;
+	}
+
+	/**
+	 * Removes the bit for a removed row, shifting the bits of all higher rows
+	 * down by one.
+	 */
+	static void removeRow(BitSet unsorted, int row)
+	{
+		for(int i = unsorted.nextSetBit(row); i >= 0; i = unsorted.nextSetBit(i + 1))
+		{
+			unsorted.clear(i);
+			if(i > row)
+				unsorted.set(i - 1);
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package org.nodes;
+
+/**
+ * Throughput counters for a bulk load of an edge list (see
+ * {@link DiskDGraph#fromFile(java.io.File, java.io.File, java.io.File, IngestStats)}).
+ *
+ * The load consists of two phases: parsing, in which the text is read once
+ * and cut into sorted binary runs, and merging, in which the runs are merged
+ * and written to the graph.
+ *
+ * @author Peter
+ *
+ */
+public class IngestStats
+{
+	long bytes = 0, edges = 0;
+	int runs = 0;
+	long parseNanos = 0, mergeNanos = 0;
+
+	/**
+	 * The number of bytes of text read.
+	 */
+	public long bytes()
+	{
+		return bytes;
+	}
+
+	/**
+	 * The number of edges read.
+	 */
+	public long edges()
+	{
+		return edges;
+	}
+
+	/**
+	 * The number of sorted runs written per direction.
+	 */
+	public int runs()
+	{
+		return runs;
+	}
+
+	public double parseSeconds()
+	{
+		return parseNanos / 1.0e9;
+	}
+
+	public double mergeSeconds()
+	{
+		return mergeNanos / 1.0e9;
+	}
+
+	public double seconds()
+	{
+		return parseSeconds() + mergeSeconds();
+	}
+
+	/**
+	 * The number of edges loaded per second, over the whole load.
+	 */
+	public double edgesPerSecond()
+	{
+		return edges / seconds();
+	}
+
+	/**
+	 * The number of bytes of text loaded per second, over the whole load.
+	 */
+	public double bytesPerSecond()
+	{
+		return bytes / seconds();
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format(
+				"%d edges, %d bytes, %d runs; parse %.2fs, merge %.2fs; %.0f edges/s, %.0f bytes/s",
+				edges, bytes, runs, parseSeconds(), mergeSeconds(), edgesPerSecond(), bytesPerSecond());
+	}
+}
@@ -0,0 +1,37 @@
+package org.nodes;
+
+/**
+ * A reusable cursor over the indices of the neighbors of a node, in the order 
+ * of {@link FastWalkable#neighborsFast(Node)}. 
+ * 
+ * A cursor can be moved from node to node with reset(), so that walking over 
+ * a graph doesn't create any objects per step. 
+ * 
+ * <pre>
+ * IntCursor cursor = graph.neighborCursor();
+ * cursor.reset(node);
+ * while(cursor.hasNext())
+ *     int neighbor = cursor.next();
+ * </pre>
+ * 
+ * @author Peter
+ */
+public interface IntCursor
+{
+	/**
+	 * Moves the cursor to before the first neighbor of the given node.
+	 */
+	public void reset(int node);
+	
+	/**
+	 * The number of neighbors of the current node. 
+	 */
+	public int size();
+	
+	public boolean hasNext();
+	
+	/**
+	 * The index of the next neighbor.
+	 */
+	public int next();
+}
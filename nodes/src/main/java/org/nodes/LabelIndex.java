@@ -0,0 +1,144 @@
+package org.nodes;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A hash index from labels to the indices of the nodes with that label, used
+ * by the Light and Disk graphs to look up nodes by label in constant time.
+ *
+ * Each label maps to an int array, whose first element is the number of
+ * indices stored, followed by the indices in increasing order (with some
+ * spare capacity at the end). Arrays are always written back to the map after
+ * they are changed, so the map can be a persistent one (like a MapDB map)
+ * that returns copies.
+ *
+ * @author Peter
+ *
+ */
+class LabelIndex<L>
+{
+	private Map<L, int[]> map;
+
+	/**
+	 * @param map The map to store the index in. Any existing entries are kept.
+	 */
+	public LabelIndex(Map<L, int[]> map)
+	{
+		this.map = map;
+	}
+
+	/**
+	 * Adds all given labels, with their position in the list as index.
+	 */
+	public void addAll(List<L> labels)
+	{
+		for(int i = 0; i < labels.size(); i++)
+			add(labels.get(i), i);
+	}
+
+	/**
+	 * Registers a node. The index must be larger than all indices currently
+	 * stored for the label (which is always the case for a node that is
+	 * added to the end of the graph).
+	 */
+	public void add(L label, int index)
+	{
+		int[] entry = map.get(label);
+
+		if(entry == null)
+			entry = new int[] {0, 0};
+		else if(entry[0] + 1 == entry.length)
+		{
+			int[] larger = new int[entry.length * 2 - 1];
+			System.arraycopy(entry, 0, larger, 0, entry.length);
+			entry = larger;
+		}
+
+		entry[entry[0] + 1] = index;
+		entry[0]++;
+
+		map.put(label, entry);
+	}
+
+	/**
+	 * Removes a node, and shifts the indices of all nodes after it down by one.
+	 */
+	public void remove(L label, int index)
+	{
+		int[] entry = map.get(label);
+		if(entry == null)
+			throw new IllegalStateException("Label "+label+" is not in the index.");
+
+		int n = entry[0];
+		int i = 1;
+		while(i <= n && entry[i] != index)
+			i++;
+
+		if(i > n)
+			throw new IllegalStateException("Node "+index+" is not in the index under label " + label + ".");
+
+		if(n == 1)
+			map.remove(label);
+		else
+		{
+			System.arraycopy(entry, i + 1, entry, i, n - i);
+			entry[0]--;
+			map.put(label, entry);
+		}
+
+		// * shift the higher indices
+		List<L> changed = new ArrayList<L>();
+		for(Map.Entry<L, int[]> e : map.entrySet())
+		{
+			int[] other = e.getValue();
+			if(other[other[0]] > index)
+				changed.add(e.getKey());
+		}
+
+		for(L key : changed)
+		{
+			int[] other = map.get(key);
+			for(int j = 1; j <= other[0]; j++)
+				if(other[j] > index)
+					other[j]--;
+
+			map.put(key, other);
+		}
+	}
+
+	/**
+	 * The index of the first node with the given label, or -1 if there is no
+	 * such node.
+	 */
+	public int first(L label)
+	{
+		int[] entry = map.get(label);
+
+		return entry == null ? -1 : entry[1];
+	}
+
+	/**
+	 * The indices of all nodes with the given label, in increasing order. The
+	 * list is a copy, which is not affected by later changes to the index.
+	 */
+	public List<Integer> indices(L label)
+	{
+		int[] entry = map.get(label);
+
+		if(entry == null)
+			return new ArrayList<Integer>(0);
+
+		List<Integer> indices = new ArrayList<Integer>(entry[0]);
+		for(int i = 1; i <= entry[0]; i++)
+			indices.add(entry[i]);
+
+		return indices;
+	}
+
+	public void clear()
+	{
+		map.clear();
+	}
+}
@@ -7,10 +7,11 @@ import java.util.AbstractCollection;
 import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.ConcurrentModificationException;
 import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
@@ -19,7 +20,6 @@ import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Set;
 
-import nl.peterbloem.kit.FrequencyModel;
 import nl.peterbloem.kit.Functions;
 import nl.peterbloem.kit.Pair;
 import nl.peterbloem.kit.Series;
@@ -54,10 +54,17 @@ public class LightDGraph<L> implements DGraph<L>, FastWalkable<L, DNode<L>>
 	//   objects lose persistence 
 	private long nodeModCount = 0;
 
-	private int hash;
-	private Long hashMod = null;
+	// * the structural fingerprint (see Fingerprint), kept up to date under 
+	//   edits. Node removal invalidates it until the next call to hashCode()
+	private long fingerprint = 0;
+	private boolean fingerprinted = true;
 	
-	private boolean sorted = false;
+	// * The rows of in and out that may be out of order (see IndexLists)
+	private BitSet unsortedOut = new BitSet();
+	private BitSet unsortedIn = new BitSet();
+	
+	// * maps labels to node indices, if switched on (see indexLabels())
+	private LabelIndex<L> labelIndex = null;
 	
 	public LightDGraph()
 	{
@@ -72,6 +79,19 @@ public class LightDGraph<L> implements DGraph<L>, FastWalkable<L, DNode<L>>
 		labels = new ArrayList<L>(capacity);
 	}
 	
+	/**
+	 * Creates a graph directly from its neighbor lists (see GraphBuilder). The 
+	 * lists are used as is, and each row must be sorted.
+	 */
+	LightDGraph(List<L> labels, List<List<Integer>> out, List<List<Integer>> in, long numLinks)
+	{
+		this.labels = labels;
+		this.out = out;
+		this.in = in;
+		this.numLinks = numLinks;
+		this.fingerprinted = false;
+	}
+	
 	@Override
 	public int size()
 	{
@@ -84,10 +104,26 @@ public class LightDGraph<L> implements DGraph<L>, FastWalkable<L, DNode<L>>
 		return numLinks;
 	}
 
+	/**
+	 * The in degree of the given node, without creating a node object.
+	 */
+	int inDegree(int node)
+	{
+		return in.get(node).size();
+	}
+
+	/**
+	 * The out degree of the given node, without creating a node object.
+	 */
+	int outDegree(int node)
+	{
+		return out.get(node).size();
+	}
+
 	@Override
 	public DNode<L> node(L label)
 	{
-		int i = labels.indexOf(label);
+		int i = labelIndex == null ? labels.indexOf(label) : labelIndex.first(label);
 		if(i == -1)
 			return null;
 		
@@ -158,13 +194,17 @@ public class LightDGraph<L> implements DGraph<L>, FastWalkable<L, DNode<L>>
 			
 			in.remove((int)index);
 			out.remove((int)index);
+			if(labelIndex != null)
+				labelIndex.remove(labels.get(index), index);
 			labels.remove((int)index);
+			
+			IndexLists.removeRow(unsortedIn, index);
+			IndexLists.removeRow(unsortedOut, index);
 
+			fingerprinted = false;
 			dead = true;
 			modCount++;
 			nodeModCount++;
-			
-			sorted = false;
 		}
 
 		private void check()
@@ -288,17 +328,13 @@ public class LightDGraph<L> implements DGraph<L>, FastWalkable<L, DNode<L>>
 			check();
 			int fromIndex = index, toIndex = to.index();
 			
-			out.get(fromIndex).add(toIndex);
-			in.get(toIndex).add(fromIndex);
-			
-			// Collections.sort(out.get(fromIndex));
-			// Collections.sort(out.get(toIndex));
+			IndexLists.add(out, unsortedOut, fromIndex, toIndex);
+			IndexLists.add(in, unsortedIn, toIndex, fromIndex);
 			
+			fingerprint += Fingerprint.link(fromIndex, toIndex);
 			modCount++;			
 			numLinks++;
 			
-			sorted = false;
-			
 			return new LightDLink(index(), to.index());
 		}
 
@@ -309,20 +345,19 @@ public class LightDGraph<L> implements DGraph<L>, FastWalkable<L, DNode<L>>
 			
 			int mine = index, his = other.index();
 			
-			int links = 0;
-			
-			while(out.get(mine).remove((Integer)his))
-				links++;
-			while(out.get(his).remove((Integer)mine))
-				links++;
+			int forward = IndexLists.removeAll(out, unsortedOut, mine, his);
+			int backward = 0;
+			if(mine != his)
+				backward = IndexLists.removeAll(out, unsortedOut, his, mine);
 			
-			while(in.get(mine).remove((Integer)his));
-			while(in.get(his).remove((Integer)mine));
+			IndexLists.removeAll(in, unsortedIn, mine, his);
+			if(mine != his)
+				IndexLists.removeAll(in, unsortedIn, his, mine);
 
-			numLinks -= links;			
+			fingerprint -= forward * Fingerprint.link(mine, his) 
+					+ backward * Fingerprint.link(his, mine);
+			numLinks -= forward + backward;			
 			modCount++;
-			
-			sorted = false;
 		}
 
 		@Override
@@ -345,10 +380,7 @@ public class LightDGraph<L> implements DGraph<L>, FastWalkable<L, DNode<L>>
 			
 			int mine = index, his = to.index();
 			
-			if(out.get(mine).contains(his))
-				return true;
-			
-			return false;
+			return IndexLists.contains(out, unsortedOut, mine, his);
 		}
 
 		@Override
@@ -473,17 +505,16 @@ public class LightDGraph<L> implements DGraph<L>, FastWalkable<L, DNode<L>>
 		{
 			check();
 			
-			List<DLink<L>> list = new ArrayList<DLink<L>>();
-			
 			int o = other.index();
-			for(int neighbor : out.get(index))
-				if(neighbor == o)
-					list.add(new LightDLink(index, neighbor));
+			int nOut = IndexLists.count(out, unsortedOut, index, o);
+			int nIn = index == o ? 0 : IndexLists.count(in, unsortedIn, index, o);
 			
-			if(index != o)
-				for(int neighbor : in.get(index))
-					if(neighbor == o)
-						list.add(new LightDLink(neighbor, index));
+			List<DLink<L>> list = new ArrayList<DLink<L>>(nOut + nIn);
+			
+			for(int i : series(nOut))
+				list.add(new LightDLink(index, o));
+			for(int i : series(nIn))
+				list.add(new LightDLink(o, index));
 			
 			return list;
 		}
@@ -493,12 +524,12 @@ public class LightDGraph<L> implements DGraph<L>, FastWalkable<L, DNode<L>>
 		{
 			check();
 			
-			List<DLink<L>> list = new ArrayList<DLink<L>>(outDegree());
-			
 			int o = other.index();
-			for(int neighbor : out.get(index))
-				if(neighbor == o)
-					list.add(new LightDLink(index, neighbor));
+			int n = IndexLists.count(out, unsortedOut, index, o);
+			
+			List<DLink<L>> list = new ArrayList<DLink<L>>(n);
+			for(int i : series(n))
+				list.add(new LightDLink(index, o));
 			
 			return list;
 		}
@@ -508,12 +539,12 @@ public class LightDGraph<L> implements DGraph<L>, FastWalkable<L, DNode<L>>
 		{
 			check();
 			
-			List<DLink<L>> list = new ArrayList<DLink<L>>(inDegree());
-			
 			int o = other.index();
-			for(int neighbor : in.get(index))
-				if(neighbor == o)
-					list.add(new LightDLink(neighbor, index));
+			int n = IndexLists.count(in, unsortedIn, index, o);
+			
+			List<DLink<L>> list = new ArrayList<DLink<L>>(n);
+			for(int i : series(n))
+				list.add(new LightDLink(o, index));
 			
 			return list;
 		}
@@ -569,11 +600,10 @@ public class LightDGraph<L> implements DGraph<L>, FastWalkable<L, DNode<L>>
 			
 			assert(removed);
 			
+			fingerprint -= Fingerprint.link(from.index(), to.index());
 			numLinks--;
 			modCount++;
 			dead = true;
-			
-			sorted = false;
 		}
 
 		@Override
@@ -694,6 +724,9 @@ public class LightDGraph<L> implements DGraph<L>, FastWalkable<L, DNode<L>>
 	@Override
 	public Collection<? extends DNode<L>> nodes(L label)
 	{
+		if(labelIndex != null)
+			return new NodeList(labelIndex.indices(label));
+		
 		// * count the occurrences so that we can set the ArrayList's capacity 
 		//   accurately
 		int frq = 0;
@@ -809,14 +842,48 @@ public class LightDGraph<L> implements DGraph<L>, FastWalkable<L, DNode<L>>
 	public DNode<L> add(L label)
 	{
 		labels.add(label);
+		fingerprint += Fingerprint.node(labels.size() - 1, label);
+		if(labelIndex != null)
+			labelIndex.add(label, labels.size() - 1);
 		
 		in.add(new ArrayList<Integer>(NEIGHBOR_CAPACITY));
 		out.add(new ArrayList<Integer>(NEIGHBOR_CAPACITY));
 		
-		sorted = false;
 		return new LightDNode(in.size() - 1);
 	}
 
+	/**
+	 * Switches the label index on or off. With the index, node(label) and 
+	 * nodes(label) take constant time, instead of time linear in the size of 
+	 * the graph, which helps when building a graph by looking up the 
+	 * endpoints of each link by label. The price is some memory, and slightly 
+	 * slower node removal.
+	 * 
+	 * The index is off by default.
+	 */
+	public void indexLabels(boolean index)
+	{
+		if(! index)
+		{
+			labelIndex = null;
+			return;
+		}
+		
+		if(labelIndex != null)
+			return;
+		
+		labelIndex = new LabelIndex<L>(new HashMap<L, int[]>());
+		labelIndex.addAll(labels);
+	}
+	
+	/**
+	 * Whether the label index is switched on.
+	 */
+	public boolean labelsIndexed()
+	{
+		return labelIndex != null;
+	}
+
 	@Override
 	public Set<L> labels()
 	{
@@ -908,22 +975,28 @@ public class LightDGraph<L> implements DGraph<L>, FastWalkable<L, DNode<L>>
 	}
 	
 	/**
-	 * Sorts all neighbour lists
+	 * Sorts all neighbour lists. 
 	 * 
-	 * @param margin
+	 * Only the lists that have gone out of order since the last sort are 
+	 * sorted. Lookups on lists that are out of order fall back to a linear 
+	 * scan, so calling this method is never required, but it makes those 
+	 * lookups fast again. This is the only method that reorders the lists: it 
+	 * should not be called while iterating over the neighbors of a node, or 
+	 * while other threads read the graph.
 	 */
 	public void sort()
 	{
-		if(sorted)
-			return;
-		
-		for(int i : Series.series(in.size()))
-			Collections.sort(in.get(i));
-		
-		for(int i : Series.series(out.size()))
-			Collections.sort(out.get(i));
-		
-		sorted = true;
+		IndexLists.sort(in, unsortedIn);
+		IndexLists.sort(out, unsortedOut);
+	}
+	
+	/**
+	 * Returns the out-list of the given node in sorted order, without 
+	 * modifying the graph.
+	 */
+	private List<Integer> sortedOut(int node)
+	{
+		return IndexLists.sorted(out, unsortedOut, node);
 	}
 	
 	/**
@@ -948,26 +1021,33 @@ public class LightDGraph<L> implements DGraph<L>, FastWalkable<L, DNode<L>>
 		return copy;
 	}
 	
+	/**
+	 * The hash is derived from a structural fingerprint of the labels and 
+	 * links (see Fingerprint), which is kept up to date as the graph is 
+	 * edited, so that this method usually takes constant time.
+	 */
 	@Override 
 	public int hashCode()
 	{
-		if(hashMod != null && hashMod == modCount)
-			return hash;
-		
-		hash = 1;
-		sort();
-		
-		for(int i : Series.series(size()))
+		if(! fingerprinted)
 		{
-		    hash = 31 * hash + (labels.get(i) == null ? 0 : labels.get(i).hashCode());
-		   //  hash = 31 * hash + (in.get(i) == null ? 0 : in.get(i).hashCode());
+			fingerprint = Fingerprint.nodes(labels);
+			for(int i = 0; i < out.size(); i++)
+				for(int j : out.get(i))
+					fingerprint += Fingerprint.link(i, j);
+			
+			fingerprinted = true;
 		}
 		
-		return hash;
+		return Fingerprint.hash(fingerprint);
 	}	
 	
+	@SuppressWarnings("unchecked")
 	public boolean equals(Object other)
 	{	
+		if(other == this)
+			return true;
+		
 		if(!(other instanceof DGraph<?>))
 			return false;
 		
@@ -981,30 +1061,58 @@ public class LightDGraph<L> implements DGraph<L>, FastWalkable<L, DNode<L>>
 		if(numLinks() != oth.numLinks())
 			return false;
 		
+		if(other instanceof LightDGraph<?>)
+			return equals((LightDGraph<?>) other);
+		
 		if(labels().size() != oth.labels().size())
 			return false;
 		
-		for(DNode<L> node : nodes())
+		int[] othOuts = new int[0];
+		for(int i = 0; i < size(); i++)
 		{
-			DNode<Object> othNode = oth.get(node.index());
+			DNode<Object> othNode = oth.get(i);
 			
-			if(! Functions.equals(node.label(), othNode.label()))
+			if(! Functions.equals(labels.get(i), othNode.label()))
 				return false;
 			
-			FrequencyModel<Integer> outs = new FrequencyModel<Integer>(),
-			                        othOuts = new FrequencyModel<Integer>();
-			for(DNode<L> neighbor : node.out())
-				outs.add(neighbor.index());
+			List<Integer> row = sortedOut(i);
+			if(othNode.outDegree() != row.size())
+				return false;
+			
+			if(othOuts.length < row.size())
+				othOuts = new int[row.size()];
 			
+			int k = 0;
 			for(DNode<Object> othNeighbor : othNode.out())
-				othOuts.add(othNeighbor.index());
+				othOuts[k++] = othNeighbor.index();
 			
-			if(! outs.equals(othOuts))
-				return false;
+			Arrays.sort(othOuts, 0, k);
+			
+			for(int j = 0; j < k; j++)
+				if(othOuts[j] != row.get(j))
+					return false;
 		}
 		
 		return true;
+	}
+	
+	/**
+	 * Two LightDGraphs are compared by their fingerprints first, and then by 
+	 * their labels and sorted out-rows.
+	 */
+	private boolean equals(LightDGraph<?> other)
+	{
+		if(hashCode() != other.hashCode())
+			return false;
+		
+		if(! labels.equals(other.labels))
+			return false;
 		
+		for(int i = 0; i < size(); i++)
+			if(! sortedOut(i).equals(other.sortedOut(i)))
+				return false;
+		
+		return true;
 	}
 
 	@Override
@@ -1033,4 +1141,26 @@ public class LightDGraph<L> implements DGraph<L>, FastWalkable<L, DNode<L>>
 		
 		return new NodeList(indices);
 	}
+	
+	@Override
+	public int numNeighborsFast(int node)
+	{
+		return in.get(node).size() + out.get(node).size();
+	}
+	
+	@Override
+	public int neighborFast(int node, int i)
+	{
+		List<Integer> inRow = in.get(node);
+		if(i < inRow.size())
+			return inRow.get(i);
+		
+		return out.get(node).get(i - inRow.size());
+	}
+	
+	@Override
+	public IntCursor neighborCursor()
+	{
+		return new ListCursor(in, out);
+	}
 }
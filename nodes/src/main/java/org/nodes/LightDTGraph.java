@@ -1,12 +1,18 @@
 package org.nodes;
 
+import static nl.peterbloem.kit.Functions.concat;
+
 import java.util.AbstractCollection;
 import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.ConcurrentModificationException;
 import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -25,7 +31,7 @@ import nl.peterbloem.kit.Series;
  * @param <L>
  * @param <T>
  */
-public class LightDTGraph<L,T> implements DTGraph<L, T> {
+public class LightDTGraph<L,T> implements DTGraph<L, T>, FastWalkable<L, DTNode<L, T>> {
 	// * the initial capacity reserved for neighbors
 	public static final int NEIGHBOR_CAPACITY = 5;
 
@@ -48,7 +54,14 @@ public class LightDTGraph<L,T> implements DTGraph<L, T> {
 	private int hash;
 	private Long hashMod = null;
 
-	private boolean sorted = false;
+	// * The rows of in and out that may be out of order (see IndexLists). Since 
+	//   links refer to their tags by position, rows are only reordered by an 
+	//   explicit call to sort().
+	private BitSet unsortedOut = new BitSet();
+	private BitSet unsortedIn = new BitSet();
+	
+	// * maps labels to node indices, if switched on (see indexLabels())
+	private LabelIndex<L> labelIndex = null;
 
 	public LightDTGraph()
 	{
@@ -91,7 +104,7 @@ public class LightDTGraph<L,T> implements DTGraph<L, T> {
 
 	@Override
 	public DTNode<L, T> node(L label) {
-		int i = labels.indexOf(label);
+		int i = labelIndex == null ? labels.indexOf(label) : labelIndex.first(label);
 		if(i == -1)
 			return null;
 
@@ -100,6 +113,9 @@ public class LightDTGraph<L,T> implements DTGraph<L, T> {
 
 	@Override
 	public Collection<? extends DTNode<L, T>> nodes(L label) {
+		if(labelIndex != null)
+			return new NodeList(labelIndex.indices(label));
+		
 		// * count the occurrences so that we can set the ArrayList's capacity 
 		//   accurately
 		int frq = 0;
@@ -134,6 +150,8 @@ public class LightDTGraph<L,T> implements DTGraph<L, T> {
 	@Override
 	public DTNode<L, T> add(L label) {
 		labels.add(label);
+		if(labelIndex != null)
+			labelIndex.add(label, labels.size() - 1);
 
 		in.add(new ArrayList<Integer>(NEIGHBOR_CAPACITY));
 		out.add(new ArrayList<Integer>(NEIGHBOR_CAPACITY));
@@ -141,10 +159,41 @@ public class LightDTGraph<L,T> implements DTGraph<L, T> {
 		inTags.add(new ArrayList<T>(NEIGHBOR_CAPACITY));
 		outTags.add(new ArrayList<T>(NEIGHBOR_CAPACITY));
 
-		sorted = false;
 		return new LightDTNode(in.size() - 1);
 	}
 
+	/**
+	 * Switches the label index on or off. With the index, node(label) and 
+	 * nodes(label) take constant time, instead of time linear in the size of 
+	 * the graph, which helps when building a graph by looking up the 
+	 * endpoints of each link by label. The price is some memory, and slightly 
+	 * slower node removal.
+	 * 
+	 * The index is off by default.
+	 */
+	public void indexLabels(boolean index)
+	{
+		if(! index)
+		{
+			labelIndex = null;
+			return;
+		}
+		
+		if(labelIndex != null)
+			return;
+		
+		labelIndex = new LabelIndex<L>(new HashMap<L, int[]>());
+		labelIndex.addAll(labels);
+	}
+	
+	/**
+	 * Whether the label index is switched on.
+	 */
+	public boolean labelsIndexed()
+	{
+		return labelIndex != null;
+	}
+
 	@Override
 	public long numLinks() {
 		return numLinks;
@@ -240,13 +289,16 @@ public class LightDTGraph<L,T> implements DTGraph<L, T> {
 			inTags.remove((int)index);
 			outTags.remove((int)index);
 
+			if(labelIndex != null)
+				labelIndex.remove(labels.get(index), index);
 			labels.remove((int)index);
 
+			IndexLists.removeRow(unsortedIn, index);
+			IndexLists.removeRow(unsortedOut, index);
+
 			dead = true;
 			modCount++;
 			nodeModCount++;
-
-			sorted = false;
 		}
 
 		private void check()
@@ -377,20 +429,15 @@ public class LightDTGraph<L,T> implements DTGraph<L, T> {
 			check();
 			int fromIndex = index, toIndex = other.index();
 
-			out.get(fromIndex).add(toIndex);
-			in.get(toIndex).add(fromIndex);
+			IndexLists.add(out, unsortedOut, fromIndex, toIndex);
+			IndexLists.add(in, unsortedIn, toIndex, fromIndex);
 
 			outTags.get(fromIndex).add(tag);
 			inTags.get(toIndex).add(tag);
 
-			// Collections.sort(out.get(fromIndex));
-			// Collections.sort(out.get(toIndex));
-
 			modCount++;			
 			numLinks++;
 
-			sorted = false;
-
 			return new LightDTLink(fromIndex, toIndex, outTags.get(fromIndex).size()-1, false);
 		}
 
@@ -447,8 +494,6 @@ public class LightDTGraph<L,T> implements DTGraph<L, T> {
 
 			numLinks -= links;			
 			modCount++;
-
-			sorted = false;
 		}
 
 		@Override
@@ -477,6 +522,9 @@ public class LightDTGraph<L,T> implements DTGraph<L, T> {
 		{
 			int mine = index, his = to.index();
 
+			if(! unsortedOut.get(mine))
+				return IndexLists.contains(out.get(mine), his);
+			
 			if(out.get(mine).contains(his))
 				return true;
 
@@ -491,7 +539,14 @@ public class LightDTGraph<L,T> implements DTGraph<L, T> {
 			List<Integer> nb = out.get(mine);
 			List<T> nbT = outTags.get(mine);
 
-			for (int i = 0; i < nb.size(); i++) {
+			int from = 0, to = nb.size();
+			if(! unsortedOut.get(mine))
+			{
+				from = IndexLists.lowerBound(nb, his);
+				to = from + IndexLists.count(nb, his);
+			}
+			
+			for (int i = from; i < to; i++) {
 				if (nb.get(i).equals(his) && nbT.get(i).equals(tag)) {
 					return true;
 				}
@@ -618,57 +673,40 @@ public class LightDTGraph<L,T> implements DTGraph<L, T> {
 		@Override
 		public Collection<? extends DTLink<L,T>> links(Node<L> other)
 				{
-			List<DTLink<L,T>> list = new ArrayList<DTLink<L,T>>(degree());
+			List<DTLink<L,T>> list = new ArrayList<DTLink<L,T>>();
 
 			int o = other.index();
-			List<Integer> nb = out.get(index);
-
-			for (int i = 0; i < nb.size(); i++)  {
-				if ((int) nb.get(i) == o) {
-					list.add(new LightDTLink(index, (int) nb.get(i), i, false));
-				}
-			}
-
-			o = other.index();
-			nb = in.get(index);
+			for (int i : positions(out, unsortedOut, index, o))
+				list.add(new LightDTLink(index, o, i, false));
 
-			for (int i = 0; i < nb.size(); i++)  {
-				if ((int) nb.get(i) != (int) index && (int) nb.get(i) == o) { // no double reflexive
-					list.add(new LightDTLink((int) nb.get(i), index, i, true));
-				}
-			}
+			if(o != (int) index) // no double reflexive
+				for (int i : positions(in, unsortedIn, index, o))
+					list.add(new LightDTLink(o, index, i, true));
+			
 			return list;
 				}
 
 		@Override
 		public Collection<? extends DTLink<L,T>> linksOut(DNode<L> other)
 				{
-			List<DTLink<L,T>> list = new ArrayList<DTLink<L,T>>(outDegree());
+			List<DTLink<L,T>> list = new ArrayList<DTLink<L,T>>();
 
 			int o = other.index();
-			List<Integer> nb = out.get(index);
-
-			for (int i = 0; i < nb.size(); i++)  {
-				if ((int) nb.get(i) == o) {
-					list.add(new LightDTLink(index, (int) nb.get(i), i, false));
-				}
-			}		
+			for (int i : positions(out, unsortedOut, index, o))
+				list.add(new LightDTLink(index, o, i, false));
+			
 			return list;
 				}
 
 		@Override
 		public Collection<? extends DTLink<L,T>> linksIn(DNode<L> other)
 				{
-			List<DTLink<L,T>> list = new ArrayList<DTLink<L,T>>(inDegree());
+			List<DTLink<L,T>> list = new ArrayList<DTLink<L,T>>();
 
 			int o = other.index();
-			List<Integer> nb = in.get(index);
-
-			for (int i = 0; i < nb.size(); i++)  {
-				if ((int) nb.get(i) == o) {
-					list.add(new LightDTLink((int) nb.get(i), index, i, true));
-				}
-			}		
+			for (int i : positions(in, unsortedIn, index, o))
+				list.add(new LightDTLink(o, index, i, true));
+			
 			return list;
 				}
 
@@ -814,8 +852,6 @@ public class LightDTGraph<L,T> implements DTGraph<L, T> {
 
 			modCount++;
 			dead = true;
-
-			sorted = false;
 		}
 
 		@Override
@@ -1033,6 +1069,76 @@ public class LightDTGraph<L,T> implements DTGraph<L, T> {
 		}	
 	}
 
+	/**
+	 * Returns the positions at which the given value occurs in the given row. 
+	 * If the row is sorted, these are found by binary search.
+	 */
+	private List<Integer> positions(List<List<Integer>> rows, BitSet unsorted, int row, int value)
+	{
+		List<Integer> list = rows.get(row);
+		
+		if(! unsorted.get(row))
+		{
+			int from = IndexLists.lowerBound(list, value);
+			return Series.series(from, from + IndexLists.count(list, value));
+		}
+		
+		List<Integer> positions = new ArrayList<Integer>();
+		for(int i = 0; i < list.size(); i++)
+			if(list.get(i) == value)
+				positions.add(i);
+		
+		return positions;
+	}
+	
+	/**
+	 * Sorts all neighbour lists, so that lookups can use binary search. 
+	 * 
+	 * Only the lists that have gone out of order since the last sort are 
+	 * sorted. Since this changes the positions of links in their lists, link 
+	 * objects created before sorting should not be used afterwards.
+	 */
+	public void sort()
+	{
+		for(int i = unsortedIn.nextSetBit(0); i >= 0; i = unsortedIn.nextSetBit(i + 1))
+			sort(in.get(i), inTags.get(i));
+		
+		for(int i = unsortedOut.nextSetBit(0); i >= 0; i = unsortedOut.nextSetBit(i + 1))
+			sort(out.get(i), outTags.get(i));
+		
+		unsortedIn.clear();
+		unsortedOut.clear();
+	}
+	
+	/**
+	 * Sorts a list of indices, and reorders its list of tags in the same way.
+	 */
+	private void sort(final List<Integer> indices, List<T> tags)
+	{
+		List<Integer> order = new ArrayList<Integer>(Series.series(indices.size()));
+		Collections.sort(order, new Comparator<Integer>() 
+		{
+			@Override
+			public int compare(Integer a, Integer b)
+			{
+				return Integer.compare(indices.get(a), indices.get(b));
+			}
+		});
+		
+		List<Integer> sortedIndices = new ArrayList<Integer>(indices.size());
+		List<T> sortedTags = new ArrayList<T>(tags.size());
+		for(int i : order)
+		{
+			sortedIndices.add(indices.get(i));
+			sortedTags.add(tags.get(i));
+		}
+		
+		indices.clear();
+		indices.addAll(sortedIndices);
+		tags.clear();
+		tags.addAll(sortedTags);
+	}
+
 	private boolean eq(Object a, Object b)
 	{
 		if(a == null && b == null)
@@ -1121,5 +1227,39 @@ public class LightDTGraph<L,T> implements DTGraph<L, T> {
 		
 		return sb.toString();
 	}
+
+	@Override
+	public List<DTNode<L, T>> neighborsFast(Node<L> node)
+	{
+		if(node.graph() != this)
+			throw new IllegalArgumentException("Cannot call with node from another graph.");
+		
+		int index = node.index();
+		
+		List<Integer> indices = concat(in.get(index), out.get(index));
+		
+		return new NodeList(indices);
+	}
 	
+	@Override
+	public int numNeighborsFast(int node)
+	{
+		return in.get(node).size() + out.get(node).size();
+	}
+	
+	@Override
+	public int neighborFast(int node, int i)
+	{
+		List<Integer> inRow = in.get(node);
+		if(i < inRow.size())
+			return inRow.get(i);
+		
+		return out.get(node).get(i - inRow.size());
+	}
+	
+	@Override
+	public IntCursor neighborCursor()
+	{
+		return new ListCursor(in, out);
+	}
 }
@@ -9,10 +9,12 @@ import java.util.AbstractCollection;
 import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.ConcurrentModificationException;
 import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
@@ -23,7 +25,6 @@ import java.util.Set;
 
 import org.nodes.data.Data;
 
-import nl.peterbloem.kit.FrequencyModel;
 import nl.peterbloem.kit.Functions;
 import nl.peterbloem.kit.Pair;
 import nl.peterbloem.kit.Series;
@@ -57,10 +58,16 @@ public class LightUGraph<L> implements UGraph<L>, FastWalkable<L, UNode<L>>
 	//   objects lose persistence 
 	private long nodeModCount = 0;
 
-	private int hash;
-	private Long hashMod = null;
+	// * the structural fingerprint (see Fingerprint), kept up to date under 
+	//   edits. Node removal invalidates it until the next call to hashCode()
+	private long fingerprint = 0;
+	private boolean fingerprinted = true;
 	
-	private boolean sorted = false;
+	// * The rows of neighbors that may be out of order (see IndexLists)
+	private BitSet unsorted = new BitSet();
+	
+	// * maps labels to node indices, if switched on (see indexLabels())
+	private LabelIndex<L> labelIndex = null;
 	
 	public LightUGraph()
 	{
@@ -74,6 +81,18 @@ public class LightUGraph<L> implements UGraph<L>, FastWalkable<L, UNode<L>>
 		labels = new ArrayList<L>(capacity);
 	}
 	
+	/**
+	 * Creates a graph directly from its neighbor lists (see GraphBuilder). The 
+	 * lists are used as is, and each row must be sorted.
+	 */
+	LightUGraph(List<L> labels, List<List<Integer>> neighbors, long numLinks)
+	{
+		this.labels = labels;
+		this.neighbors = neighbors;
+		this.numLinks = numLinks;
+		this.fingerprinted = false;
+	}
+	
 	@Override
 	public int size()
 	{
@@ -89,7 +108,7 @@ public class LightUGraph<L> implements UGraph<L>, FastWalkable<L, UNode<L>>
 	@Override
 	public UNode<L> node(L label)
 	{
-		int i = labels.indexOf(label);
+		int i = labelIndex == null ? labels.indexOf(label) : labelIndex.first(label);
 		if(i == -1)
 			return null;
 		
@@ -121,8 +140,8 @@ public class LightUGraph<L> implements UGraph<L>, FastWalkable<L, UNode<L>>
 		{
 			check();
 			
+			// * self-loops are stored once, so each entry is one link
 			int linksRemoved = degree();
-			linksRemoved -= links(this).size();
 			
 			for(List<Integer> neighbor : neighbors)
 			{
@@ -143,16 +162,19 @@ public class LightUGraph<L> implements UGraph<L>, FastWalkable<L, UNode<L>>
 				}		
 			
 			neighbors.remove((int)index);
+			if(labelIndex != null)
+				labelIndex.remove(labels.get(index), index);
 			labels.remove((int)index);
+			
+			IndexLists.removeRow(unsorted, index);
 
 			numLinks -= linksRemoved;
 			
+			fingerprinted = false;
 			dead = true;
 			
 			modCount++;
 			nodeModCount++;
-			
-			sorted = false;
 		}
 
 		private void check()
@@ -221,15 +243,14 @@ public class LightUGraph<L> implements UGraph<L>, FastWalkable<L, UNode<L>>
 			
 			int fromIndex = index, toIndex = to.index();
 			
-			neighbors.get(fromIndex).add(toIndex);
+			IndexLists.add(neighbors, unsorted, fromIndex, toIndex);
 			if(fromIndex != toIndex)
-				neighbors.get(toIndex).add(fromIndex);
+				IndexLists.add(neighbors, unsorted, toIndex, fromIndex);
 						
+			fingerprint += Fingerprint.ulink(fromIndex, toIndex);
 			modCount++;			
 			numLinks++;
 			
-			sorted = false;
-			
 			return new LightULink(index(), to.index());
 		}
 
@@ -239,12 +260,12 @@ public class LightUGraph<L> implements UGraph<L>, FastWalkable<L, UNode<L>>
 			check();
 			
 			int mine = index, his = other.index();
-			int removed = 0;
 		
-			while(neighbors.get(mine).remove((Integer)his))
-				removed ++;
-			while(neighbors.get(his).remove((Integer)mine));
+			int removed = IndexLists.removeAll(neighbors, unsorted, mine, his);
+			if(mine != his)
+				IndexLists.removeAll(neighbors, unsorted, his, mine);
 			
+			fingerprint -= removed * Fingerprint.ulink(mine, his);
 			numLinks -= removed;
 			
 			modCount++;
@@ -260,10 +281,7 @@ public class LightUGraph<L> implements UGraph<L>, FastWalkable<L, UNode<L>>
 			
 			int mine = index, his = other.index();
 			
-			if(neighbors.get(mine).contains(his))
-				return true;
-			
-			return false;
+			return IndexLists.contains(neighbors, unsorted, mine, his);
 		}
 
 		@Override
@@ -344,12 +362,12 @@ public class LightUGraph<L> implements UGraph<L>, FastWalkable<L, UNode<L>>
 		{
 			check();
 			
-			List<ULink<L>> list = new ArrayList<ULink<L>>();
-			
 			int o = other.index();
-			for(int neighbor : neighbors.get(index))
-				if(neighbor == o)
-					list.add(new LightULink(index, neighbor));
+			int n = IndexLists.count(neighbors, unsorted, index, o);
+			
+			List<ULink<L>> list = new ArrayList<ULink<L>>(n);
+			for(int i : series(n))
+				list.add(new LightULink(index, o));
 						
 			return list;
 		}
@@ -398,15 +416,16 @@ public class LightUGraph<L> implements UGraph<L>, FastWalkable<L, UNode<L>>
 			check();
 			boolean removed = 
 				neighbors.get(to.index()).remove((Integer)from.index());
-			neighbors.get(from.index()).remove((Integer)to.index());
+			// * self-loops are stored once
+			if(from.index() != to.index())
+				neighbors.get(from.index()).remove((Integer)to.index());
 			
 			assert(removed);
 			
+			fingerprint -= Fingerprint.ulink(from.index(), to.index());
 			numLinks--;
 			modCount++;
 			dead = true;
-			
-			sorted = false;
 		}
 
 		@Override
@@ -509,6 +528,9 @@ public class LightUGraph<L> implements UGraph<L>, FastWalkable<L, UNode<L>>
 	@Override
 	public Collection<? extends UNode<L>> nodes(L label)
 	{
+		if(labelIndex != null)
+			return new NodeList(labelIndex.indices(label));
+		
 		// * count the occurrences so that we can set the ArrayList's capacity 
 		//   accurately
 		int frq = 0;
@@ -623,13 +645,47 @@ public class LightUGraph<L> implements UGraph<L>, FastWalkable<L, UNode<L>>
 	public UNode<L> add(L label)
 	{
 		labels.add(label);
+		fingerprint += Fingerprint.node(labels.size() - 1, label);
+		if(labelIndex != null)
+			labelIndex.add(label, labels.size() - 1);
 		
 		neighbors.add(new ArrayList<Integer>(NEIGHBOR_CAPACITY));
 		
-		sorted = false;
 		return new LightUNode(neighbors.size() - 1);
 	}
 
+	/**
+	 * Switches the label index on or off. With the index, node(label) and 
+	 * nodes(label) take constant time, instead of time linear in the size of 
+	 * the graph, which helps when building a graph by looking up the 
+	 * endpoints of each link by label. The price is some memory, and slightly 
+	 * slower node removal.
+	 * 
+	 * The index is off by default.
+	 */
+	public void indexLabels(boolean index)
+	{
+		if(! index)
+		{
+			labelIndex = null;
+			return;
+		}
+		
+		if(labelIndex != null)
+			return;
+		
+		labelIndex = new LabelIndex<L>(new HashMap<L, int[]>());
+		labelIndex.addAll(labels);
+	}
+	
+	/**
+	 * Whether the label index is switched on.
+	 */
+	public boolean labelsIndexed()
+	{
+		return labelIndex != null;
+	}
+
 	@Override
 	public Set<L> labels()
 	{
@@ -720,17 +776,25 @@ public class LightUGraph<L> implements UGraph<L>, FastWalkable<L, UNode<L>>
 	/**
 	 * Sorts all neighbour lists
 	 * 
-	 * @param margin
+	 * Only the lists that have gone out of order since the last sort are 
+	 * sorted. Lookups on lists that are out of order fall back to a linear 
+	 * scan, so calling this method is never required, but it makes those 
+	 * lookups fast again. This is the only method that reorders the lists: it 
+	 * should not be called while iterating over the neighbors of a node, or 
+	 * while other threads read the graph.
 	 */
 	public void sort()
 	{
-		if(sorted)
-			return;
-		
-		for(int i : Series.series(neighbors.size()))
-			Collections.sort(neighbors.get(i));
-		
-		sorted = true;
+		IndexLists.sort(neighbors, unsorted);
+	}
+	
+	/**
+	 * Returns the neighbor list of the given node in sorted order, without 
+	 * modifying the graph.
+	 */
+	private List<Integer> sorted(int node)
+	{
+		return IndexLists.sorted(neighbors, unsorted, node);
 	}
 	
 	
@@ -754,18 +818,13 @@ public class LightUGraph<L> implements UGraph<L>, FastWalkable<L, UNode<L>>
 				copy.neighbors.add(new ArrayList<Integer>(nb));
 			
 			copy.numLinks = other.numLinks;
-			copy.hash = other.hash;
+			copy.fingerprint = other.fingerprint;
+			copy.fingerprinted = other.fingerprinted;
 			
 			copy.modCount++;
 			copy.nodeModCount++;
 			
-			if(other.hashMod == null)
-				copy.hashMod = null;
-			else
-				copy.hashMod = 
-					other.hashMod == other.modCount ? copy.modCount : copy.modCount - 1;
-			
-			copy.sorted = other.sorted;
+			copy.unsorted = (BitSet) other.unsorted.clone();
 			
 			return copy;
 		}
@@ -782,36 +841,38 @@ public class LightUGraph<L> implements UGraph<L>, FastWalkable<L, UNode<L>>
 		return copy;
 	}
 	
+	/**
+	 * The hash is derived from a structural fingerprint of the labels and 
+	 * links (see Fingerprint), which is kept up to date as the graph is 
+	 * edited, so that this method usually takes constant time.
+	 */
 	@Override 
 	public int hashCode()
 	{
-		if(hashMod != null && hashMod == modCount)
-			return hash;
-		
-		hash = 1;
-		sort();
-		
-		for(int i : Series.series(size()))
-		    hash = 31 * hash + (labels.get(i) == null ? 0 : labels.get(i).hashCode());
-		
-		// * structure
-		for(UNode<L> node : nodes())
+		if(! fingerprinted)
 		{
-			List<Integer> nbIndices = new ArrayList<Integer>(node.degree());
-			for(UNode<L> neighbor : node.neighbors())
-				nbIndices.add(neighbor.index());
+			fingerprint = Fingerprint.nodes(labels);
+			for(int i = 0; i < neighbors.size(); i++)
+				for(int j : neighbors.get(i))
+					if(j >= i) // * count each link once
+						fingerprint += Fingerprint.ulink(i, j);
 			
-			Collections.sort(nbIndices);
-			hash = 31 * hash + nbIndices.hashCode();
+			fingerprinted = true;
 		}
 		
-		hashMod = modCount;
-		
-		return hash;
+		return Fingerprint.hash(fingerprint);
 	}	
 	
+	/**
+	 * Two undirected graphs are equal if they have the same labels, and each 
+	 * pair of nodes is connected by the same number of links.
+	 */
+	@SuppressWarnings("unchecked")
 	public boolean equals(Object other)
 	{	
+		if(other == this)
+			return true;
+		
 		if(!(other instanceof UGraph<?>))
 			return false;
 		
@@ -825,30 +886,58 @@ public class LightUGraph<L> implements UGraph<L>, FastWalkable<L, UNode<L>>
 		if(numLinks() != oth.numLinks())
 			return false;
 		
+		if(other instanceof LightUGraph<?>)
+			return equals((LightUGraph<?>) other);
+		
 		if(labels().size() != oth.labels().size())
 			return false;
 		
-		for(UNode<L> node : nodes())
+		int[] othNeighbors = new int[0];
+		for(int i = 0; i < size(); i++)
 		{
-			UNode<Object> othNode = oth.get(node.index());
+			UNode<Object> othNode = oth.get(i);
 			
-			if(! Functions.equals(node.label(), othNode.label()))
+			if(! Functions.equals(labels.get(i), othNode.label()))
 				return false;
 			
-			FrequencyModel<Integer> myNeighbors = new FrequencyModel<Integer>(),
-			                        hisNeighbors = new FrequencyModel<Integer>();
-			for(UNode<L> myNeighbor : node.neighbors())
-				myNeighbors.add(myNeighbor.index());
-			
-			for(UNode<Object> hisNeighbor : othNode.neighbors())
-				hisNeighbors.add(hisNeighbor.index());
-						
-			if(! myNeighbors.equals(hisNeighbors))
+			List<Integer> row = sorted(i);
+			if(othNode.degree() != row.size())
 				return false;
+			
+			if(othNeighbors.length < row.size())
+				othNeighbors = new int[row.size()];
+			
+			int k = 0;
+			for(ULink<Object> link : othNode.links())
+				othNeighbors[k++] = link.other(othNode).index();
+			
+			Arrays.sort(othNeighbors, 0, k);
+			
+			for(int j = 0; j < k; j++)
+				if(othNeighbors[j] != row.get(j))
+					return false;
 		}
 		
 		return true;
+	}
+	
+	/**
+	 * Two LightUGraphs are compared by their fingerprints first, and then by 
+	 * their labels and sorted rows.
+	 */
+	private boolean equals(LightUGraph<?> other)
+	{
+		if(hashCode() != other.hashCode())
+			return false;
+		
+		if(! labels.equals(other.labels))
+			return false;
 		
+		for(int i = 0; i < size(); i++)
+			if(! sorted(i).equals(other.sorted(i)))
+				return false;
+		
+		return true;
 	}
 
 	@Override
@@ -861,7 +950,7 @@ public class LightUGraph<L> implements UGraph<L>, FastWalkable<L, UNode<L>>
 	@Override
 	public Class<? extends UGraph<L>> level()
 	{
-		Object obj = DGraph.class;
+		Object obj = UGraph.class;
 		return (Class<? extends UGraph<L>>) obj;
 	}
 
@@ -875,4 +964,22 @@ public class LightUGraph<L> implements UGraph<L>, FastWalkable<L, UNode<L>>
 		
 		return new NodeList(indices);
 	}
+	
+	@Override
+	public int numNeighborsFast(int node)
+	{
+		return neighbors.get(node).size();
+	}
+	
+	@Override
+	public int neighborFast(int node, int i)
+	{
+		return neighbors.get(node).get(i);
+	}
+	
+	@Override
+	public IntCursor neighborCursor()
+	{
+		return new ListCursor(neighbors);
+	}
 }
@@ -0,0 +1,70 @@
+package org.nodes;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * An IntCursor over one or two lists of neighbor lists (like the in and out 
+ * lists of LightDGraph). The row of the current node is retrieved once on 
+ * reset, which matters for the Disk graphs, where each retrieval reads from 
+ * the db.
+ * 
+ * @author Peter
+ */
+class ListCursor implements IntCursor
+{
+	private List<List<Integer>> first, second;
+	
+	private List<Integer> firstRow, secondRow;
+	private int i, firstSize, size;
+	
+	public ListCursor(List<List<Integer>> rows)
+	{
+		this(rows, null);
+	}
+	
+	/**
+	 * @param second May be null.
+	 */
+	public ListCursor(List<List<Integer>> first, List<List<Integer>> second)
+	{
+		this.first = first;
+		this.second = second;
+	}
+
+	@Override
+	public void reset(int node)
+	{
+		firstRow = first.get(node);
+		secondRow = second == null ? null : second.get(node);
+		
+		firstSize = firstRow.size();
+		size = firstSize + (secondRow == null ? 0 : secondRow.size());
+		
+		i = 0;
+	}
+
+	@Override
+	public int size()
+	{
+		return size;
+	}
+
+	@Override
+	public boolean hasNext()
+	{
+		return i < size;
+	}
+
+	@Override
+	public int next()
+	{
+		if(i >= size)
+			throw new NoSuchElementException();
+		
+		int value = i < firstSize ? firstRow.get(i) : secondRow.get(i - firstSize);
+		i++;
+		
+		return value;
+	}
+}
@@ -0,0 +1,1057 @@
+package org.nodes;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.AbstractCollection;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import nl.peterbloem.kit.Functions;
+
+/**
+ * A read-only directed graph, stored in memory-mapped files.
+ *
+ * The graph is stored in a directory, in compressed sparse row form (see
+ * MappedRows): one structure for the outgoing links and one for the incoming
+ * links, each consisting of an offsets file and a targets file. The rows can
+ * optionally be delta-coded as variable length integers, which usually makes
+ * the files about half as big, at the price of linear-time random access
+ * within a row.
+ *
+ * Neighbors are read directly from the mapped files, so opening a graph takes
+ * almost no time or heap space (except for the labels, if any), and the OS
+ * page cache takes care of the rest. Scans over all links read the files
+ * sequentially. The number of links is limited only by the disk, but each
+ * node's in- and out-degree must be below Integer.MAX_VALUE.
+ *
+ * Use {@link #write(DGraph, File, boolean)} or
+ * {@link DiskDGraph#writeMapped(File, boolean)} to create the files, and
+ * {@link #open(File)} to read them. All methods that would modify the graph
+ * throw an UnsupportedOperationException.
+ *
+ * @author Peter
+ *
+ */
+public class MappedDGraph implements DGraph<String>, FastWalkable<String, DNode<String>>
+{
+	static final int MAGIC = 0x4e4f4453;
+	static final int VERSION = 1;
+
+	private List<String> labels;
+
+	private MappedRows out, in;
+
+	private int hash;
+	private boolean hashed = false;
+
+	private MappedDGraph(List<String> labels, MappedRows out, MappedRows in)
+	{
+		this.labels = labels;
+		this.out = out;
+		this.in = in;
+	}
+
+	@Override
+	public int size()
+	{
+		return out.size();
+	}
+
+	@Override
+	public long numLinks()
+	{
+		return out.numElements();
+	}
+
+	/**
+	 * The number of links going out of the given node.
+	 */
+	public int outDegree(int node)
+	{
+		return out.length(node);
+	}
+
+	/**
+	 * The number of links coming into the given node.
+	 */
+	public int inDegree(int node)
+	{
+		return in.length(node);
+	}
+
+	/**
+	 * The index of the j-th node (in order of index) that the given node links
+	 * to.
+	 */
+	public int out(int node, int j)
+	{
+		return out.get(node, j);
+	}
+
+	/**
+	 * The index of the j-th node (in order of index) that links to the given
+	 * node.
+	 */
+	public int in(int node, int j)
+	{
+		return in.get(node, j);
+	}
+
+	/**
+	 * Whether there is at least one link from the first node to the second.
+	 */
+	public boolean connectedTo(int from, int to)
+	{
+		return out.contains(from, to);
+	}
+
+	@Override
+	public DNode<String> node(String label)
+	{
+		for(int i = 0; i < labels.size(); i++)
+			if(Functions.equals(labels.get(i), label))
+				return new MappedDNode(i);
+
+		return null;
+	}
+
+	@Override
+	public Collection<? extends DNode<String>> nodes(String label)
+	{
+		List<Integer> indices = new ArrayList<Integer>();
+
+		for(int i = 0; i < labels.size(); i++)
+			if(Functions.equals(labels.get(i), label))
+				indices.add(i);
+
+		int[] array = new int[indices.size()];
+		for(int i = 0; i < array.length; i++)
+			array[i] = indices.get(i);
+
+		return new NodeList(array);
+	}
+
+	@Override
+	public List<? extends DNode<String>> nodes()
+	{
+		return new AllNodes();
+	}
+
+	@Override
+	public DNode<String> get(int i)
+	{
+		if(i < 0 || i >= size())
+			throw new IndexOutOfBoundsException("Index "+i+" is out of bounds for graph of size "+size()+".");
+
+		return new MappedDNode(i);
+	}
+
+	@Override
+	public Iterable<? extends DLink<String>> links()
+	{
+		return new LinkCollection();
+	}
+
+	@Override
+	public DNode<String> add(String label)
+	{
+		throw new UnsupportedOperationException("MappedDGraph is read-only.");
+	}
+
+	@Override
+	public Set<String> labels()
+	{
+		return new HashSet<String>(labels);
+	}
+
+	@Override
+	public boolean connected(String from, String to)
+	{
+		for(DNode<String> a : nodes(from))
+			for(DNode<String> b : nodes(to))
+				if(a.connected(b))
+					return true;
+
+		return false;
+	}
+
+	/**
+	 * Since the graph is read-only, its state never changes.
+	 */
+	@Override
+	public long state()
+	{
+		return 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public Class<? extends DGraph<String>> level()
+	{
+		Object obj = DGraph.class;
+		return (Class<? extends DGraph<String>>) obj;
+	}
+
+	@Override
+	public List<DNode<String>> neighborsFast(Node<String> node)
+	{
+		if(node.graph() != this)
+			throw new IllegalArgumentException("Cannot call with node from another graph.");
+
+		int i = node.index();
+
+		return new NodeList(concat(in.row(i), out.row(i)));
+	}
+
+	@Override
+	public int numNeighborsFast(int node)
+	{
+		return inDegree(node) + outDegree(node);
+	}
+
+	@Override
+	public int neighborFast(int node, int i)
+	{
+		int in = inDegree(node);
+
+		return i < in ? in(node, i) : out(node, i - in);
+	}
+
+	@Override
+	public IntCursor neighborCursor()
+	{
+		return new Cursor();
+	}
+
+	/**
+	 * Walks over the in-row, and then the out-row of a node.
+	 */
+	private class Cursor implements IntCursor
+	{
+		private IntCursor inCursor = in.new Cursor(), outCursor = out.new Cursor();
+
+		@Override
+		public void reset(int node)
+		{
+			inCursor.reset(node);
+			outCursor.reset(node);
+		}
+
+		@Override
+		public int size()
+		{
+			return inCursor.size() + outCursor.size();
+		}
+
+		@Override
+		public boolean hasNext()
+		{
+			return inCursor.hasNext() || outCursor.hasNext();
+		}
+
+		@Override
+		public int next()
+		{
+			if(inCursor.hasNext())
+				return inCursor.next();
+
+			return outCursor.next();
+		}
+	}
+
+	private class MappedDNode implements DNode<String>
+	{
+		private int index;
+
+		public MappedDNode(int index)
+		{
+			this.index = index;
+		}
+
+		@Override
+		public String label()
+		{
+			return labels.get(index);
+		}
+
+		@Override
+		public Collection<? extends DNode<String>> neighbors()
+		{
+			int[] inRow = in.row(index), outRow = out.row(index);
+
+			return new NodeList(CSRDGraph.union(inRow, 0, inRow.length, outRow, 0, outRow.length));
+		}
+
+		@Override
+		public DNode<String> neighbor(String label)
+		{
+			for(int i : concat(in.row(index), out.row(index)))
+				if(Functions.equals(labels.get(i), label))
+					return new MappedDNode(i);
+
+			return null;
+		}
+
+		@Override
+		public Collection<? extends DNode<String>> neighbors(String label)
+		{
+			int[] inRow = in.row(index), outRow = out.row(index);
+
+			return withLabel(CSRDGraph.union(inRow, 0, inRow.length, outRow, 0, outRow.length), label);
+		}
+
+		@Override
+		public Collection<? extends DNode<String>> out()
+		{
+			return new NodeList(out.row(index));
+		}
+
+		@Override
+		public Collection<? extends DNode<String>> out(String label)
+		{
+			return withLabel(out.row(index), label);
+		}
+
+		@Override
+		public Collection<? extends DNode<String>> in()
+		{
+			return new NodeList(in.row(index));
+		}
+
+		@Override
+		public Collection<? extends DNode<String>> in(String label)
+		{
+			return withLabel(in.row(index), label);
+		}
+
+		@Override
+		public Collection<? extends DLink<String>> links()
+		{
+			List<DLink<String>> list = new ArrayList<DLink<String>>(degree());
+
+			for(int i : out.row(index))
+				list.add(new MappedDLink(index, i));
+
+			for(int i : in.row(index))
+				if(i != index) // no double reflexive links
+					list.add(new MappedDLink(i, index));
+
+			return list;
+		}
+
+		@Override
+		public Collection<? extends DLink<String>> linksOut()
+		{
+			List<DLink<String>> list = new ArrayList<DLink<String>>(outDegree());
+
+			for(int i : out.row(index))
+				list.add(new MappedDLink(index, i));
+
+			return list;
+		}
+
+		@Override
+		public Collection<? extends DLink<String>> linksOut(DNode<String> other)
+		{
+			int o = other.index();
+			int n = out.count(index, o);
+
+			List<DLink<String>> list = new ArrayList<DLink<String>>(n);
+			for(int i = 0; i < n; i++)
+				list.add(new MappedDLink(index, o));
+
+			return list;
+		}
+
+		@Override
+		public Collection<? extends DLink<String>> linksIn()
+		{
+			List<DLink<String>> list = new ArrayList<DLink<String>>(inDegree());
+
+			for(int i : in.row(index))
+				list.add(new MappedDLink(i, index));
+
+			return list;
+		}
+
+		@Override
+		public Collection<? extends DLink<String>> linksIn(DNode<String> other)
+		{
+			int o = other.index();
+			int n = in.count(index, o);
+
+			List<DLink<String>> list = new ArrayList<DLink<String>>(n);
+			for(int i = 0; i < n; i++)
+				list.add(new MappedDLink(o, index));
+
+			return list;
+		}
+
+		@Override
+		public Collection<? extends DLink<String>> links(Node<String> other)
+		{
+			int o = other.index();
+
+			int nOut = out.count(index, o);
+			int nIn = index == o ? 0 : in.count(index, o);
+
+			List<DLink<String>> list = new ArrayList<DLink<String>>(nOut + nIn);
+			for(int i = 0; i < nOut; i++)
+				list.add(new MappedDLink(index, o));
+			for(int i = 0; i < nIn; i++)
+				list.add(new MappedDLink(o, index));
+
+			return list;
+		}
+
+		@Override
+		public DLink<String> connect(Node<String> to)
+		{
+			throw new UnsupportedOperationException("MappedDGraph is read-only.");
+		}
+
+		@Override
+		public void disconnect(Node<String> other)
+		{
+			throw new UnsupportedOperationException("MappedDGraph is read-only.");
+		}
+
+		@Override
+		public void remove()
+		{
+			throw new UnsupportedOperationException("MappedDGraph is read-only.");
+		}
+
+		@Override
+		public boolean connected(Node<String> other)
+		{
+			if(other.graph() != MappedDGraph.this)
+				return false;
+
+			int o = other.index();
+			return MappedDGraph.this.connectedTo(index, o) || MappedDGraph.this.connectedTo(o, index);
+		}
+
+		@Override
+		public boolean connectedTo(DNode<String> to)
+		{
+			if(to.graph() != MappedDGraph.this)
+				return false;
+
+			return MappedDGraph.this.connectedTo(index, to.index());
+		}
+
+		@Override
+		public DGraph<String> graph()
+		{
+			return MappedDGraph.this;
+		}
+
+		@Override
+		public int index()
+		{
+			return index;
+		}
+
+		@Override
+		public boolean dead()
+		{
+			return false;
+		}
+
+		@Override
+		public int degree()
+		{
+			return inDegree() + outDegree();
+		}
+
+		@Override
+		public int inDegree()
+		{
+			return MappedDGraph.this.inDegree(index);
+		}
+
+		@Override
+		public int outDegree()
+		{
+			return MappedDGraph.this.outDegree(index);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + index;
+			result = prime * result + ((label() == null) ? 0 : label().hashCode());
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (this == obj)
+				return true;
+
+			if (obj == null)
+				return false;
+
+			if (getClass() != obj.getClass())
+				return false;
+
+			MappedDNode other = (MappedDNode) obj;
+
+			if (graph() != other.graph())
+				return false;
+
+			return index == other.index;
+		}
+
+		public String toString()
+		{
+			return label() == null ? ("n"+index()) : label().toString() + "_" +index();
+		}
+	}
+
+	private class MappedDLink implements DLink<String>
+	{
+		private int from, to;
+
+		public MappedDLink(int from, int to)
+		{
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		public Collection<? extends Node<String>> nodes()
+		{
+			return Arrays.asList(first(), second());
+		}
+
+		@Override
+		public Graph<String> graph()
+		{
+			return MappedDGraph.this;
+		}
+
+		@Override
+		public void remove()
+		{
+			throw new UnsupportedOperationException("MappedDGraph is read-only.");
+		}
+
+		@Override
+		public boolean dead()
+		{
+			return false;
+		}
+
+		@Override
+		public DNode<String> first()
+		{
+			return new MappedDNode(from);
+		}
+
+		@Override
+		public DNode<String> second()
+		{
+			return new MappedDNode(to);
+		}
+
+		@Override
+		public DNode<String> from()
+		{
+			return first();
+		}
+
+		@Override
+		public DNode<String> to()
+		{
+			return second();
+		}
+
+		@Override
+		public DNode<String> other(Node<String> current)
+		{
+			if(current.index() != from)
+				return first();
+			return second();
+		}
+
+		@Override
+		public int hashCode()
+		{
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + from;
+			result = prime * result + to;
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (this == obj)
+				return true;
+			if (obj == null)
+				return false;
+			if (getClass() != obj.getClass())
+				return false;
+
+			MappedDLink other = (MappedDLink) obj;
+			if (graph() != other.graph())
+				return false;
+
+			return from == other.from && to == other.to;
+		}
+
+		public String toString()
+		{
+			return first() + " -> " + second();
+		}
+	}
+
+	/**
+	 * A list of nodes backed by an int array of indices.
+	 */
+	private class NodeList extends AbstractList<DNode<String>>
+	{
+		private int[] indices;
+
+		public NodeList(int[] indices)
+		{
+			this.indices = indices;
+		}
+
+		@Override
+		public DNode<String> get(int i)
+		{
+			if(i < 0 || i >= size())
+				throw new IndexOutOfBoundsException("Index "+i+" out of bounds for list of size " + size() + ".");
+
+			return new MappedDNode(indices[i]);
+		}
+
+		@Override
+		public int size()
+		{
+			return indices.length;
+		}
+	}
+
+	private class AllNodes extends AbstractList<DNode<String>>
+	{
+		@Override
+		public DNode<String> get(int index)
+		{
+			return MappedDGraph.this.get(index);
+		}
+
+		@Override
+		public int size()
+		{
+			return MappedDGraph.this.size();
+		}
+	}
+
+	/**
+	 * A collection of all links in this graph. The links are read from the
+	 * out-structure in order, so iterating over them scans the files
+	 * sequentially.
+	 */
+	private class LinkCollection extends AbstractCollection<DLink<String>>
+	{
+		@Override
+		public Iterator<DLink<String>> iterator()
+		{
+			return new LinkIterator();
+		}
+
+		@Override
+		public int size()
+		{
+			return (int)Math.min(numLinks(), Integer.MAX_VALUE);
+		}
+
+		private class LinkIterator implements Iterator<DLink<String>>
+		{
+			// * the node from which the next link originates
+			private int from = -1;
+			private MappedRows.Cursor cursor = out.new Cursor();
+
+			public LinkIterator()
+			{
+				seek();
+			}
+
+			private void seek()
+			{
+				while(! cursor.hasNext() && from < MappedDGraph.this.size() - 1)
+					cursor.reset(++from);
+			}
+
+			@Override
+			public boolean hasNext()
+			{
+				return cursor.hasNext();
+			}
+
+			@Override
+			public DLink<String> next()
+			{
+				if(! hasNext())
+					throw new NoSuchElementException();
+
+				DLink<String> link = new MappedDLink(from, cursor.next());
+				seek();
+
+				return link;
+			}
+
+			@Override
+			public void remove()
+			{
+				throw new UnsupportedOperationException("MappedDGraph is read-only.");
+			}
+		}
+	}
+
+	/**
+	 * Returns a representation of the graph in Dot language format.
+	 */
+	public String toString()
+	{
+		StringBuffer sb = new StringBuffer();
+		sb.append("digraph {");
+
+		Set<DNode<String>> nodes = new HashSet<DNode<String>>(nodes());
+
+		for(DLink<String> link : links())
+		{
+			if(sb.length() != 9)
+				sb.append("; ");
+
+			sb.append(link);
+
+			nodes.remove(link.first());
+			nodes.remove(link.second());
+		}
+
+		for(DNode<String> node : nodes)
+			sb.append("; " + node);
+
+		sb.append("}");
+
+		return sb.toString();
+	}
+
+	/**
+	 * The hash is the structural fingerprint used by LightDGraph (see
+	 * Fingerprint), so that equal graphs of the two types have the same hash.
+	 */
+	@Override
+	public int hashCode()
+	{
+		if(hashed)
+			return hash;
+
+		long fingerprint = Fingerprint.nodes(labels);
+		MappedRows.Cursor cursor = out.new Cursor();
+		for(int i = 0; i < size(); i++)
+		{
+			cursor.reset(i);
+			while(cursor.hasNext())
+				fingerprint += Fingerprint.link(i, cursor.next());
+		}
+
+		hash = Fingerprint.hash(fingerprint);
+		hashed = true;
+
+		return hash;
+	}
+
+	@SuppressWarnings("unchecked")
+	public boolean equals(Object other)
+	{
+		if(!(other instanceof DGraph<?>))
+			return false;
+
+		DGraph<Object> oth = (DGraph<Object>) other;
+		if(! oth.level().equals(level()))
+			return false;
+
+		if(size() != oth.size())
+			return false;
+
+		if(numLinks() != oth.numLinks())
+			return false;
+
+		if(labels().size() != oth.labels().size())
+			return false;
+
+		int[] othOuts = new int[0];
+		MappedRows.Cursor cursor = out.new Cursor();
+		for(int i = 0; i < size(); i++)
+		{
+			DNode<Object> othNode = oth.get(i);
+
+			if(! Functions.equals(labels.get(i), othNode.label()))
+				return false;
+
+			if(othNode.outDegree() != outDegree(i))
+				return false;
+
+			if(othOuts.length < outDegree(i))
+				othOuts = new int[outDegree(i)];
+
+			int k = 0;
+			for(DNode<Object> othNeighbor : othNode.out())
+				othOuts[k++] = othNeighbor.index();
+
+			Arrays.sort(othOuts, 0, k);
+
+			cursor.reset(i);
+			for(int j = 0; j < k; j++)
+				if(othOuts[j] != cursor.next())
+					return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Opens a graph written by {@link #write(DGraph, File, boolean)}.
+	 *
+	 * @param dir The directory containing the graph's files.
+	 */
+	public static MappedDGraph open(File dir)
+		throws IOException
+	{
+		Header header = Header.read(dir);
+		if(! header.directed)
+			throw new IllegalArgumentException("Directory " + dir + " contains an undirected graph. Use MappedUGraph.");
+
+		MappedRows out = rows(dir, "out", header.varint);
+		MappedRows in  = rows(dir, "in",  header.varint);
+
+		return new MappedDGraph(readLabels(dir, header.size), out, in);
+	}
+
+	/**
+	 * Writes the given graph to the given directory, so that it can be opened
+	 * as a MappedDGraph.
+	 *
+	 * @param varint Whether to delta-code the rows as variable length integers.
+	 */
+	public static void write(DGraph<String> graph, File dir, boolean varint)
+		throws IOException
+	{
+		List<List<Integer>> out = new ArrayList<List<Integer>>(graph.size()),
+		                    in  = new ArrayList<List<Integer>>(graph.size());
+		for(int i = 0; i < graph.size(); i++)
+		{
+			out.add(new ArrayList<Integer>());
+			in.add(new ArrayList<Integer>());
+		}
+
+		for(DLink<String> link : graph.links())
+		{
+			out.get(link.from().index()).add(link.to().index());
+			in.get(link.to().index()).add(link.from().index());
+		}
+
+		write(CSRDGraph.labels(graph), in, out, graph.numLinks(), dir, varint);
+	}
+
+	/**
+	 * Writes a directed graph given as in- and out-lists. The rows don't need
+	 * to be sorted.
+	 *
+	 * @param labels The labels, or null if all labels are null.
+	 */
+	static void write(
+			List<String> labels, List<? extends List<Integer>> in, List<? extends List<Integer>> out,
+			long numLinks, File dir, boolean varint)
+		throws IOException
+	{
+		dir.mkdirs();
+
+		new Header(true, varint, out.size(), numLinks).write(dir);
+		writeLabels(dir, labels);
+
+		writeRows(dir, "out", out, varint);
+		writeRows(dir, "in", in, varint);
+	}
+
+	static void writeRows(File dir, String name, List<? extends List<Integer>> rows, boolean varint)
+		throws IOException
+	{
+		MappedRows.write(rows,
+				new File(dir, name + ".offsets"),
+				varint ? new File(dir, name + ".positions") : null,
+				new File(dir, name + ".targets"));
+	}
+
+	static MappedRows rows(File dir, String name, boolean varint)
+		throws IOException
+	{
+		return new MappedRows(
+				new File(dir, name + ".offsets"),
+				varint ? new File(dir, name + ".positions") : null,
+				new File(dir, name + ".targets"));
+	}
+
+	/**
+	 * Writes the labels, if there are any non-null ones.
+	 */
+	static void writeLabels(File dir, List<String> labels)
+		throws IOException
+	{
+		File file = new File(dir, "labels");
+		file.delete();
+
+		if(labels == null)
+			return;
+
+		boolean allNull = true;
+		for(String label : labels)
+			allNull = allNull && label == null;
+		if(allNull)
+			return;
+
+		DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try
+		{
+			for(String label : labels)
+			{
+				stream.writeBoolean(label != null);
+				if(label != null)
+					stream.writeUTF(label);
+			}
+		} finally
+		{
+			stream.close();
+		}
+	}
+
+	/**
+	 * Reads the labels into memory. If there is no labels file, all labels are
+	 * null.
+	 */
+	static List<String> readLabels(File dir, int size)
+		throws IOException
+	{
+		File file = new File(dir, "labels");
+		if(! file.exists())
+			return Collections.nCopies(size, null);
+
+		List<String> labels = new ArrayList<String>(size);
+
+		DataInputStream stream = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try
+		{
+			for(int i = 0; i < size; i++)
+				labels.add(stream.readBoolean() ? stream.readUTF() : null);
+		} finally
+		{
+			stream.close();
+		}
+
+		return Collections.unmodifiableList(labels);
+	}
+
+	/**
+	 * The header file of a mapped graph.
+	 */
+	static class Header
+	{
+		boolean directed, varint;
+		int size;
+		long numLinks;
+
+		Header(boolean directed, boolean varint, int size, long numLinks)
+		{
+			this.directed = directed;
+			this.varint = varint;
+			this.size = size;
+			this.numLinks = numLinks;
+		}
+
+		void write(File dir)
+			throws IOException
+		{
+			DataOutputStream stream = new DataOutputStream(new FileOutputStream(new File(dir, "header")));
+			try
+			{
+				stream.writeInt(MAGIC);
+				stream.writeInt(VERSION);
+				stream.writeBoolean(directed);
+				stream.writeBoolean(varint);
+				stream.writeInt(size);
+				stream.writeLong(numLinks);
+			} finally
+			{
+				stream.close();
+			}
+		}
+
+		static Header read(File dir)
+			throws IOException
+		{
+			DataInputStream stream = new DataInputStream(new FileInputStream(new File(dir, "header")));
+			try
+			{
+				if(stream.readInt() != MAGIC)
+					throw new IOException("Directory " + dir + " does not contain a mapped graph.");
+
+				int version = stream.readInt();
+				if(version != VERSION)
+					throw new IOException("Mapped graph has version " + version + ", expected " + VERSION + ".");
+
+				boolean directed = stream.readBoolean();
+				boolean varint = stream.readBoolean();
+
+				return new Header(directed, varint, stream.readInt(), stream.readLong());
+			} finally
+			{
+				stream.close();
+			}
+		}
+	}
+
+	/**
+	 * Returns the nodes with the given label among the given indices.
+	 */
+	private Collection<? extends DNode<String>> withLabel(int[] indices, String label)
+	{
+		int n = 0;
+		for(int i : indices)
+			if(Functions.equals(labels.get(i), label))
+				indices[n++] = i;
+
+		return new NodeList(Arrays.copyOf(indices, n));
+	}
+
+	private static int[] concat(int[] a, int[] b)
+	{
+		int[] result = Arrays.copyOf(a, a.length + b.length);
+		System.arraycopy(b, 0, result, a.length, b.length);
+
+		return result;
+	}
+}
@@ -0,0 +1,370 @@
+package org.nodes;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Read-only access to a list of rows of sorted node indices, stored in
+ * memory-mapped files. This is the storage used by MappedDGraph and
+ * MappedUGraph.
+ *
+ * The rows are stored in compressed sparse row form: an offsets file holds,
+ * for each row, the number of elements before it (n+1 longs), and a targets
+ * file holds the elements of all rows, one after the other. In the plain
+ * encoding each element is a 4-byte int. In the varint encoding, each row
+ * stores its first element, followed by the differences between consecutive
+ * elements, as variable length integers (7 bits per byte). This requires an
+ * additional positions file, holding the byte position of each row (n+1
+ * longs).
+ *
+ * All values are big-endian. Files of more than 2GB are mapped in several
+ * segments, so the number of elements is only limited by the address space.
+ *
+ * @author Peter
+ *
+ */
+class MappedRows
+{
+	private Segments offsets, positions, targets;
+	private int n;
+
+	/**
+	 * @param positions The positions file, or null for the plain encoding.
+	 */
+	public MappedRows(File offsets, File positions, File targets)
+		throws IOException
+	{
+		this.offsets = new Segments(offsets);
+		this.positions = positions == null ? null : new Segments(positions);
+		this.targets = new Segments(targets);
+
+		n = (int)(this.offsets.size() / 8) - 1;
+	}
+
+	/**
+	 * The number of rows.
+	 */
+	public int size()
+	{
+		return n;
+	}
+
+	/**
+	 * The total number of elements in all rows.
+	 */
+	public long numElements()
+	{
+		return start(n);
+	}
+
+	/**
+	 * The number of elements before the given row.
+	 */
+	public long start(int row)
+	{
+		return offsets.getLong(row * 8L);
+	}
+
+	public int length(int row)
+	{
+		return (int)(start(row + 1) - start(row));
+	}
+
+	/**
+	 * The j-th element of the given row. For the varint encoding, this takes
+	 * time linear in j.
+	 */
+	public int get(int row, int j)
+	{
+		if(j < 0 || j >= length(row))
+			throw new IndexOutOfBoundsException("Index "+j+" out of bounds for row of length " + length(row) + ".");
+
+		if(positions == null)
+			return targets.getInt((start(row) + j) * 4L);
+
+		Cursor cursor = new Cursor();
+		cursor.reset(row);
+
+		int value = cursor.next();
+		for(int i = 0; i < j; i++)
+			value = cursor.next();
+
+		return value;
+	}
+
+	/**
+	 * Copies the given row into a new array.
+	 */
+	public int[] row(int row)
+	{
+		int[] result = new int[length(row)];
+
+		Cursor cursor = new Cursor();
+		cursor.reset(row);
+
+		for(int i = 0; i < result.length; i++)
+			result[i] = cursor.next();
+
+		return result;
+	}
+
+	/**
+	 * The number of times the given value occurs in the given row.
+	 */
+	public int count(int row, int value)
+	{
+		if(positions == null)
+		{
+			// * binary search for the first occurrence
+			long lo = start(row), hi = start(row + 1), end = hi;
+			while(lo < hi)
+			{
+				long mid = (lo + hi) >>> 1;
+				if(targets.getInt(mid * 4L) < value)
+					lo = mid + 1;
+				else
+					hi = mid;
+			}
+
+			int count = 0;
+			while(lo < end && targets.getInt(lo * 4L) == value)
+			{
+				count++;
+				lo++;
+			}
+
+			return count;
+		}
+
+		// * The row is sorted, so we can stop at the first larger value
+		Cursor cursor = new Cursor();
+		cursor.reset(row);
+
+		int count = 0;
+		while(cursor.hasNext())
+		{
+			int next = cursor.next();
+			if(next > value)
+				break;
+			if(next == value)
+				count++;
+		}
+
+		return count;
+	}
+
+	public boolean contains(int row, int value)
+	{
+		return count(row, value) > 0;
+	}
+
+	/**
+	 * A reusable cursor over the elements of a row.
+	 */
+	public class Cursor implements IntCursor
+	{
+		// * the position of the next element: an element index for the plain
+		//   encoding, a byte position for the varint encoding
+		private long pos;
+		private int remaining, size, last;
+
+		@Override
+		public void reset(int row)
+		{
+			size = length(row);
+			remaining = size;
+
+			pos = positions == null ? start(row) : positions.getLong(row * 8L);
+			last = 0;
+		}
+
+		@Override
+		public int size()
+		{
+			return size;
+		}
+
+		@Override
+		public boolean hasNext()
+		{
+			return remaining > 0;
+		}
+
+		@Override
+		public int next()
+		{
+			if(remaining <= 0)
+				throw new NoSuchElementException();
+
+			remaining--;
+
+			if(positions == null)
+				return targets.getInt(4L * pos++);
+
+			int value = 0, shift = 0;
+			byte b;
+			do {
+				b = targets.get(pos++);
+				value |= (b & 0x7f) << shift;
+				shift += 7;
+			} while(b < 0);
+
+			last += value;
+			return last;
+		}
+	}
+
+	/**
+	 * Writes the given rows to the given files. Each row is sorted before it is
+	 * written, so they need not be sorted in the input.
+	 *
+	 * @param positions The positions file, or null for the plain encoding.
+	 * @return The total number of elements written.
+	 */
+	public static long write(List<? extends List<Integer>> rows, File offsets, File positions, File targets)
+		throws IOException
+	{
+		DataOutputStream offsetsOut = stream(offsets);
+		DataOutputStream positionsOut = positions == null ? null : stream(positions);
+		DataOutputStream targetsOut = stream(targets);
+
+		long elements = 0, bytes = 0;
+		int[] buffer = new int[16];
+
+		try
+		{
+			for(List<Integer> list : rows)
+			{
+				offsetsOut.writeLong(elements);
+				if(positionsOut != null)
+					positionsOut.writeLong(bytes);
+
+				int size = list.size();
+				if(buffer.length < size)
+					buffer = new int[Math.max(size, buffer.length * 2)];
+
+				int k = 0;
+				for(int value : list)
+					buffer[k++] = value;
+				Arrays.sort(buffer, 0, size);
+
+				int last = 0;
+				for(int i = 0; i < size; i++)
+				{
+					if(positionsOut == null)
+						targetsOut.writeInt(buffer[i]);
+					else
+						bytes += writeVarint(targetsOut, buffer[i] - last);
+
+					last = buffer[i];
+				}
+
+				elements += size;
+			}
+
+			offsetsOut.writeLong(elements);
+			if(positionsOut != null)
+				positionsOut.writeLong(bytes);
+		} finally
+		{
+			offsetsOut.close();
+			if(positionsOut != null)
+				positionsOut.close();
+			targetsOut.close();
+		}
+
+		return elements;
+	}
+
+	/**
+	 * Writes a non-negative int as a variable length integer.
+	 *
+	 * @return The number of bytes written
+	 */
+	private static int writeVarint(DataOutputStream out, int value)
+		throws IOException
+	{
+		int bytes = 1;
+		while((value & ~0x7f) != 0)
+		{
+			out.writeByte((value & 0x7f) | 0x80);
+			value >>>= 7;
+			bytes++;
+		}
+		out.writeByte(value);
+
+		return bytes;
+	}
+
+	private static DataOutputStream stream(File file)
+		throws IOException
+	{
+		return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+	}
+
+	/**
+	 * A read-only file, mapped into memory in segments of 1GB. Since the
+	 * segment size is a multiple of 8, an aligned int or long never straddles
+	 * two segments.
+	 */
+	private static class Segments
+	{
+		private static final int SHIFT = 30;
+		private static final long SEGMENT = 1L << SHIFT;
+		private static final long MASK = SEGMENT - 1;
+
+		private MappedByteBuffer[] buffers;
+		private long size;
+
+		public Segments(File file)
+			throws IOException
+		{
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try
+			{
+				FileChannel channel = raf.getChannel();
+				size = channel.size();
+
+				buffers = new MappedByteBuffer[(int)((size + SEGMENT - 1) >>> SHIFT)];
+				for(int i = 0; i < buffers.length; i++)
+				{
+					long from = i * SEGMENT;
+					buffers[i] = channel.map(FileChannel.MapMode.READ_ONLY, from, Math.min(SEGMENT, size - from));
+				}
+			} finally
+			{
+				// * the mappings stay valid after the channel is closed
+				raf.close();
+			}
+		}
+
+		public long size()
+		{
+			return size;
+		}
+
+		public byte get(long pos)
+		{
+			return buffers[(int)(pos >>> SHIFT)].get((int)(pos & MASK));
+		}
+
+		public int getInt(long pos)
+		{
+			return buffers[(int)(pos >>> SHIFT)].getInt((int)(pos & MASK));
+		}
+
+		public long getLong(long pos)
+		{
+			return buffers[(int)(pos >>> SHIFT)].getLong((int)(pos & MASK));
+		}
+	}
+}
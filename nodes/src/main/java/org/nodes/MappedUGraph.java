@@ -0,0 +1,751 @@
+package org.nodes;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.AbstractCollection;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.nodes.MappedDGraph.Header;
+
+import nl.peterbloem.kit.Functions;
+
+/**
+ * A read-only undirected graph, stored in memory-mapped files.
+ *
+ * The graph is stored in a directory in the same format as MappedDGraph,
+ * with a single structure of neighbor rows. Each link is stored in the rows of
+ * both its nodes, except for self-loops, which are stored once.
+ *
+ * Use {@link #write(UGraph, File, boolean)} or
+ * {@link DiskUGraph#writeMapped(File, boolean)} to create the files, and
+ * {@link #open(File)} to read them. All methods that would modify the graph
+ * throw an UnsupportedOperationException.
+ *
+ * @author Peter
+ *
+ */
+public class MappedUGraph implements UGraph<String>, FastWalkable<String, UNode<String>>
+{
+	private List<String> labels;
+
+	private MappedRows neighbors;
+
+	private long numLinks;
+
+	private int hash;
+	private boolean hashed = false;
+
+	private MappedUGraph(List<String> labels, MappedRows neighbors, long numLinks)
+	{
+		this.labels = labels;
+		this.neighbors = neighbors;
+		this.numLinks = numLinks;
+	}
+
+	@Override
+	public int size()
+	{
+		return neighbors.size();
+	}
+
+	@Override
+	public long numLinks()
+	{
+		return numLinks;
+	}
+
+	/**
+	 * The degree of the given node. A self-loop counts once.
+	 */
+	public int degree(int node)
+	{
+		return neighbors.length(node);
+	}
+
+	/**
+	 * The index of the j-th neighbor (in order of index) of the given node.
+	 */
+	public int neighbor(int node, int j)
+	{
+		return neighbors.get(node, j);
+	}
+
+	/**
+	 * Whether there is at least one link between the two given nodes.
+	 */
+	public boolean connected(int first, int second)
+	{
+		return neighbors.contains(first, second);
+	}
+
+	@Override
+	public UNode<String> node(String label)
+	{
+		for(int i = 0; i < labels.size(); i++)
+			if(Functions.equals(labels.get(i), label))
+				return new MappedUNode(i);
+
+		return null;
+	}
+
+	@Override
+	public Collection<? extends UNode<String>> nodes(String label)
+	{
+		int n = 0;
+		for(String l : labels)
+			if(Functions.equals(l, label))
+				n++;
+
+		int[] indices = new int[n];
+		n = 0;
+		for(int i = 0; i < labels.size(); i++)
+			if(Functions.equals(labels.get(i), label))
+				indices[n++] = i;
+
+		return new NodeList(indices);
+	}
+
+	@Override
+	public List<? extends UNode<String>> nodes()
+	{
+		return new AllNodes();
+	}
+
+	@Override
+	public UNode<String> get(int i)
+	{
+		if(i < 0 || i >= size())
+			throw new IndexOutOfBoundsException("Index "+i+" is out of bounds for graph of size "+size()+".");
+
+		return new MappedUNode(i);
+	}
+
+	@Override
+	public Iterable<? extends ULink<String>> links()
+	{
+		return new LinkCollection();
+	}
+
+	@Override
+	public UNode<String> add(String label)
+	{
+		throw new UnsupportedOperationException("MappedUGraph is read-only.");
+	}
+
+	@Override
+	public Set<String> labels()
+	{
+		return new HashSet<String>(labels);
+	}
+
+	@Override
+	public boolean connected(String first, String second)
+	{
+		for(UNode<String> a : nodes(first))
+			for(UNode<String> b : nodes(second))
+				if(a.connected(b))
+					return true;
+
+		return false;
+	}
+
+	/**
+	 * Since the graph is read-only, its state never changes.
+	 */
+	@Override
+	public long state()
+	{
+		return 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public Class<? extends UGraph<String>> level()
+	{
+		Object obj = UGraph.class;
+		return (Class<? extends UGraph<String>>) obj;
+	}
+
+	@Override
+	public List<UNode<String>> neighborsFast(Node<String> node)
+	{
+		if(node.graph() != this)
+			throw new IllegalArgumentException("Cannot call with node from another graph.");
+
+		return new NodeList(neighbors.row(node.index()));
+	}
+
+	@Override
+	public int numNeighborsFast(int node)
+	{
+		return degree(node);
+	}
+
+	@Override
+	public int neighborFast(int node, int i)
+	{
+		return neighbor(node, i);
+	}
+
+	@Override
+	public IntCursor neighborCursor()
+	{
+		return neighbors.new Cursor();
+	}
+
+	private class MappedUNode implements UNode<String>
+	{
+		private int index;
+
+		public MappedUNode(int index)
+		{
+			this.index = index;
+		}
+
+		@Override
+		public String label()
+		{
+			return labels.get(index);
+		}
+
+		@Override
+		public Collection<? extends UNode<String>> neighbors()
+		{
+			return new NodeList(distinct(neighbors.row(index)));
+		}
+
+		@Override
+		public UNode<String> neighbor(String label)
+		{
+			for(int i : neighbors.row(index))
+				if(Functions.equals(labels.get(i), label))
+					return new MappedUNode(i);
+
+			return null;
+		}
+
+		@Override
+		public Collection<? extends UNode<String>> neighbors(String label)
+		{
+			int[] all = distinct(neighbors.row(index));
+
+			int n = 0;
+			for(int i : all)
+				if(Functions.equals(labels.get(i), label))
+					all[n++] = i;
+
+			return new NodeList(Arrays.copyOf(all, n));
+		}
+
+		@Override
+		public Collection<? extends ULink<String>> links()
+		{
+			List<ULink<String>> list = new ArrayList<ULink<String>>(degree());
+
+			for(int i : neighbors.row(index))
+				list.add(new MappedULink(index, i));
+
+			return list;
+		}
+
+		@Override
+		public Collection<? extends ULink<String>> links(Node<String> other)
+		{
+			int o = other.index();
+			int n = neighbors.count(index, o);
+
+			List<ULink<String>> list = new ArrayList<ULink<String>>(n);
+			for(int i = 0; i < n; i++)
+				list.add(new MappedULink(index, o));
+
+			return list;
+		}
+
+		@Override
+		public ULink<String> connect(Node<String> to)
+		{
+			throw new UnsupportedOperationException("MappedUGraph is read-only.");
+		}
+
+		@Override
+		public void disconnect(Node<String> other)
+		{
+			throw new UnsupportedOperationException("MappedUGraph is read-only.");
+		}
+
+		@Override
+		public void remove()
+		{
+			throw new UnsupportedOperationException("MappedUGraph is read-only.");
+		}
+
+		@Override
+		public boolean connected(Node<String> other)
+		{
+			if(other.graph() != MappedUGraph.this)
+				return false;
+
+			return MappedUGraph.this.connected(index, other.index());
+		}
+
+		@Override
+		public UGraph<String> graph()
+		{
+			return MappedUGraph.this;
+		}
+
+		@Override
+		public int index()
+		{
+			return index;
+		}
+
+		@Override
+		public boolean dead()
+		{
+			return false;
+		}
+
+		@Override
+		public int degree()
+		{
+			return MappedUGraph.this.degree(index);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + index;
+			result = prime * result + ((label() == null) ? 0 : label().hashCode());
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (this == obj)
+				return true;
+
+			if (obj == null)
+				return false;
+
+			if (getClass() != obj.getClass())
+				return false;
+
+			MappedUNode other = (MappedUNode) obj;
+
+			if (graph() != other.graph())
+				return false;
+
+			return index == other.index;
+		}
+
+		public String toString()
+		{
+			return label() == null ? ("n"+index()) : label().toString();
+		}
+	}
+
+	private class MappedULink implements ULink<String>
+	{
+		private int first, second;
+
+		public MappedULink(int first, int second)
+		{
+			this.first = first;
+			this.second = second;
+		}
+
+		@Override
+		public Collection<? extends UNode<String>> nodes()
+		{
+			return Arrays.asList(first(), second());
+		}
+
+		@Override
+		public Graph<String> graph()
+		{
+			return MappedUGraph.this;
+		}
+
+		@Override
+		public void remove()
+		{
+			throw new UnsupportedOperationException("MappedUGraph is read-only.");
+		}
+
+		@Override
+		public boolean dead()
+		{
+			return false;
+		}
+
+		@Override
+		public UNode<String> first()
+		{
+			return new MappedUNode(first);
+		}
+
+		@Override
+		public UNode<String> second()
+		{
+			return new MappedUNode(second);
+		}
+
+		@Override
+		public UNode<String> other(Node<String> current)
+		{
+			if(current.index() != first)
+				return first();
+			return second();
+		}
+
+		@Override
+		public int hashCode()
+		{
+			// * symmetric in the two nodes
+			return 31 * (first + second) + first * second;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (this == obj)
+				return true;
+			if (obj == null)
+				return false;
+			if (getClass() != obj.getClass())
+				return false;
+
+			MappedULink other = (MappedULink) obj;
+			if (graph() != other.graph())
+				return false;
+
+			if(first == other.first && second == other.second)
+				return true;
+
+			return first == other.second && second == other.first;
+		}
+
+		public String toString()
+		{
+			return first() + " -- " + second();
+		}
+	}
+
+	/**
+	 * A list of nodes backed by an int array of indices.
+	 */
+	private class NodeList extends AbstractList<UNode<String>>
+	{
+		private int[] indices;
+
+		public NodeList(int[] indices)
+		{
+			this.indices = indices;
+		}
+
+		@Override
+		public UNode<String> get(int i)
+		{
+			if(i < 0 || i >= size())
+				throw new IndexOutOfBoundsException("Index "+i+" out of bounds for list of size " + size() + ".");
+
+			return new MappedUNode(indices[i]);
+		}
+
+		@Override
+		public int size()
+		{
+			return indices.length;
+		}
+	}
+
+	private class AllNodes extends AbstractList<UNode<String>>
+	{
+		@Override
+		public UNode<String> get(int index)
+		{
+			return MappedUGraph.this.get(index);
+		}
+
+		@Override
+		public int size()
+		{
+			return MappedUGraph.this.size();
+		}
+	}
+
+	/**
+	 * A collection of all links in this graph. Each link is returned once, from
+	 * the node with the lowest index. The rows are read in order, so iterating
+	 * over the links scans the files sequentially.
+	 */
+	private class LinkCollection extends AbstractCollection<ULink<String>>
+	{
+		@Override
+		public Iterator<ULink<String>> iterator()
+		{
+			return new LinkIterator();
+		}
+
+		@Override
+		public int size()
+		{
+			return (int)Math.min(numLinks, Integer.MAX_VALUE);
+		}
+
+		private class LinkIterator implements Iterator<ULink<String>>
+		{
+			// * the node whose row we are currently in
+			private int from = -1;
+			private MappedRows.Cursor cursor = neighbors.new Cursor();
+
+			// * the next link is (from, to), if to >= 0
+			private int to = -1;
+
+			public LinkIterator()
+			{
+				seek();
+			}
+
+			/**
+			 * Moves to the next link (from, to) with to >= from.
+			 */
+			private void seek()
+			{
+				to = -1;
+				while(to < 0)
+				{
+					while(! cursor.hasNext())
+					{
+						if(from >= MappedUGraph.this.size() - 1)
+							return;
+
+						cursor.reset(++from);
+					}
+
+					int next = cursor.next();
+					if(next >= from)
+						to = next;
+				}
+			}
+
+			@Override
+			public boolean hasNext()
+			{
+				return to >= 0;
+			}
+
+			@Override
+			public ULink<String> next()
+			{
+				if(! hasNext())
+					throw new NoSuchElementException();
+
+				ULink<String> link = new MappedULink(from, to);
+				seek();
+
+				return link;
+			}
+
+			@Override
+			public void remove()
+			{
+				throw new UnsupportedOperationException("MappedUGraph is read-only.");
+			}
+		}
+	}
+
+	/**
+	 * Returns a representation of the graph in Dot language format.
+	 */
+	public String toString()
+	{
+		StringBuffer sb = new StringBuffer();
+		sb.append("graph {");
+
+		Set<UNode<String>> nodes = new HashSet<UNode<String>>(nodes());
+
+		int i = 0;
+		for(ULink<String> link : links())
+		{
+			if(i++ != 0)
+				sb.append(";");
+
+			sb.append(link);
+
+			nodes.remove(link.first());
+			nodes.remove(link.second());
+		}
+
+		for(UNode<String> node : nodes)
+		{
+			if(i++ != 0)
+				sb.append(";");
+
+			sb.append(node);
+		}
+
+		sb.append("}");
+
+		return sb.toString();
+	}
+
+	/**
+	 * The hash is the structural fingerprint used by LightUGraph (see
+	 * Fingerprint), so that equal graphs of the two types have the same hash.
+	 */
+	@Override
+	public int hashCode()
+	{
+		if(hashed)
+			return hash;
+
+		long fingerprint = Fingerprint.nodes(labels);
+		MappedRows.Cursor cursor = neighbors.new Cursor();
+		for(int i = 0; i < size(); i++)
+		{
+			cursor.reset(i);
+			while(cursor.hasNext())
+			{
+				int j = cursor.next();
+				if(j >= i) // * count each link once
+					fingerprint += Fingerprint.ulink(i, j);
+			}
+		}
+
+		hash = Fingerprint.hash(fingerprint);
+		hashed = true;
+
+		return hash;
+	}
+
+	@SuppressWarnings("unchecked")
+	public boolean equals(Object other)
+	{
+		if(!(other instanceof UGraph<?>))
+			return false;
+
+		UGraph<Object> oth = (UGraph<Object>) other;
+		if(! oth.level().equals(level()))
+			return false;
+
+		if(size() != oth.size())
+			return false;
+
+		if(numLinks() != oth.numLinks())
+			return false;
+
+		if(labels().size() != oth.labels().size())
+			return false;
+
+		int[] othNeighbors = new int[0];
+		MappedRows.Cursor cursor = neighbors.new Cursor();
+		for(int i = 0; i < size(); i++)
+		{
+			UNode<Object> othNode = oth.get(i);
+
+			if(! Functions.equals(labels.get(i), othNode.label()))
+				return false;
+
+			if(othNode.degree() != degree(i))
+				return false;
+
+			if(othNeighbors.length < degree(i))
+				othNeighbors = new int[degree(i)];
+
+			int k = 0;
+			for(ULink<Object> link : othNode.links())
+				othNeighbors[k++] = link.other(othNode).index();
+
+			Arrays.sort(othNeighbors, 0, k);
+
+			cursor.reset(i);
+			for(int j = 0; j < k; j++)
+				if(othNeighbors[j] != cursor.next())
+					return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Opens a graph written by {@link #write(UGraph, File, boolean)}.
+	 *
+	 * @param dir The directory containing the graph's files.
+	 */
+	public static MappedUGraph open(File dir)
+		throws IOException
+	{
+		Header header = Header.read(dir);
+		if(header.directed)
+			throw new IllegalArgumentException("Directory " + dir + " contains a directed graph. Use MappedDGraph.");
+
+		MappedRows neighbors = MappedDGraph.rows(dir, "neighbors", header.varint);
+
+		return new MappedUGraph(MappedDGraph.readLabels(dir, header.size), neighbors, header.numLinks);
+	}
+
+	/**
+	 * Writes the given graph to the given directory, so that it can be opened
+	 * as a MappedUGraph.
+	 *
+	 * @param varint Whether to delta-code the rows as variable length integers.
+	 */
+	public static void write(UGraph<String> graph, File dir, boolean varint)
+		throws IOException
+	{
+		List<List<Integer>> neighbors = new ArrayList<List<Integer>>(graph.size());
+		for(int i = 0; i < graph.size(); i++)
+			neighbors.add(new ArrayList<Integer>());
+
+		for(ULink<String> link : graph.links())
+		{
+			int first = link.first().index(), second = link.second().index();
+
+			neighbors.get(first).add(second);
+			if(first != second)
+				neighbors.get(second).add(first);
+		}
+
+		write(CSRDGraph.labels(graph), neighbors, graph.numLinks(), dir, varint);
+	}
+
+	/**
+	 * Writes an undirected graph given as neighbor lists, with self-loops
+	 * occurring once. The rows don't need to be sorted.
+	 *
+	 * @param labels The labels, or null if all labels are null.
+	 */
+	static void write(
+			List<String> labels, List<? extends List<Integer>> neighbors,
+			long numLinks, File dir, boolean varint)
+		throws IOException
+	{
+		dir.mkdirs();
+
+		new Header(false, varint, neighbors.size(), numLinks).write(dir);
+		MappedDGraph.writeLabels(dir, labels);
+
+		MappedDGraph.writeRows(dir, "neighbors", neighbors, varint);
+	}
+
+	/**
+	 * Returns a sorted array without duplicates.
+	 */
+	private static int[] distinct(int[] sorted)
+	{
+		return CSRDGraph.union(sorted, 0, sorted.length, sorted, 0, 0);
+	}
+}
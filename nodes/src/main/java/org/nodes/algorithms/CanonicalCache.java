@@ -0,0 +1,348 @@
+package org.nodes.algorithms;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.nodes.DGraph;
+import org.nodes.DNode;
+import org.nodes.Graph;
+import org.nodes.Graphs;
+import org.nodes.Node;
+import org.nodes.UGraph;
+
+import nl.peterbloem.kit.Order;
+
+/**
+ * Caches canonical orderings of small graphs, for settings like motif
+ * extraction, where many sampled subgraphs are isomorphic to a few frequent
+ * shapes.
+ *
+ * The cache has two levels. The first is a bounded LRU cache from graphs (as
+ * they are, including the order of their nodes) to their canonical orders.
+ * The second maps a cheap invariant of the graph (its size, number of links,
+ * sorted degree sequence and sorted labels) to a short list of canonical
+ * graphs that have been seen with that invariant. A graph that misses the
+ * first level is matched against these with VF2, and only if none matches,
+ * is it canonized by {@link Nauty}.
+ *
+ * When the graph has automorphisms, several orders turn it into the same
+ * canonical graph. The cache always returns the first mapping VF2 finds onto
+ * the canonical graph (or Nauty's order, if VF2 finds none), also on a miss.
+ * The order therefore depends only on the graph, not on what the cache has
+ * seen before, or on which thread got there first.
+ *
+ * The cache is safe to use from several threads. The graphs passed to it
+ * should not be modified afterwards.
+ *
+ * @author Peter
+ *
+ */
+public class CanonicalCache<L>
+{
+	public static final int DEFAULT_CAPACITY = 10000;
+	public static final int DEFAULT_REPRESENTATIVES = 16;
+
+	private Comparator<L> comp;
+	private int maxRepresentatives;
+
+	private Map<Graph<L>, Result> orders;
+	private Map<Invariant, List<Graph<L>>> representatives =
+			new HashMap<Invariant, List<Graph<L>>>();
+
+	private long orderHits = 0, isomorphismHits = 0, misses = 0;
+
+	public CanonicalCache(Comparator<L> comp)
+	{
+		this(comp, DEFAULT_CAPACITY, DEFAULT_REPRESENTATIVES);
+	}
+
+	/**
+	 * @param capacity The maximum number of graphs to remember the canonical
+	 * 	order of.
+	 * @param maxRepresentatives The maximum number of canonical graphs to
+	 * 	keep per invariant.
+	 */
+	public CanonicalCache(Comparator<L> comp, final int capacity, int maxRepresentatives)
+	{
+		if(capacity < 1)
+			throw new IllegalArgumentException("Capacity must be positive (was "+capacity+").");
+		if(maxRepresentatives < 0)
+			throw new IllegalArgumentException("Number of representatives cannot be negative (was "+maxRepresentatives+").");
+
+		this.comp = comp;
+		this.maxRepresentatives = maxRepresentatives;
+
+		this.orders = new LinkedHashMap<Graph<L>, Result>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 7001637468262218531L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Graph<L>, Result> eldest)
+			{
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * Finds the canonical order of the given graph, and the graph in that
+	 * order.
+	 */
+	public Result canonize(Graph<L> graph)
+	{
+		synchronized(this)
+		{
+			Result result = orders.get(graph);
+			if(result != null)
+			{
+				orderHits++;
+				return result;
+			}
+		}
+
+		Invariant invariant = new Invariant(graph, comp);
+
+		List<Graph<L>> candidates;
+		synchronized(this)
+		{
+			List<Graph<L>> list = representatives.get(invariant);
+			candidates = list == null ?
+					Collections.<Graph<L>>emptyList() : new ArrayList<Graph<L>>(list);
+		}
+
+		// * Try to match the graph to one of the canonical graphs we know
+		for(Graph<L> candidate : candidates)
+		{
+			Order order = match(graph, candidate);
+			if(order != null)
+			{
+				Result result = new Result(candidate, order);
+				synchronized(this)
+				{
+					isomorphismHits++;
+					orders.put(graph, result);
+				}
+
+				return result;
+			}
+		}
+
+		Order order = Nauty.order(graph, comp);
+		Graph<L> canonical = Graphs.reorder(graph, order);
+
+		// * Use the same order a later hit would find
+		Order matched = match(graph, canonical);
+		Result result = new Result(canonical, matched != null ? matched : order);
+
+		synchronized(this)
+		{
+			misses++;
+			orders.put(graph, result);
+
+			List<Graph<L>> list = representatives.get(invariant);
+			if(list == null)
+			{
+				list = new ArrayList<Graph<L>>();
+				representatives.put(invariant, list);
+			}
+
+			// - Another thread may have added the same shape in the meantime,
+			//   in which case the list will simply hold it twice
+			if(list.size() < maxRepresentatives)
+				list.add(canonical);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Maps the graph onto the canonical graph, if they are isomorphic.
+	 *
+	 * @return The order that turns the graph into the canonical graph, or null.
+	 */
+	@SuppressWarnings("unchecked")
+	private Order match(Graph<L> graph, Graph<L> canonical)
+	{
+		List<Integer> mapping;
+		if(graph instanceof DGraph<?>)
+		{
+			DVF2<L> vf2 = new DVF2<L>((DGraph<L>) graph, (DGraph<L>) canonical, true);
+			if(! vf2.matches())
+				return null;
+			mapping = vf2.mapping().first();
+		} else if(graph instanceof UGraph<?>)
+		{
+			UVF2<L> vf2 = new UVF2<L>((UGraph<L>) graph, (UGraph<L>) canonical, true);
+			if(! vf2.matches())
+				return null;
+			mapping = vf2.mapping().first();
+		} else
+			throw new IllegalArgumentException("Can only handle graphs of type UGraph or DGraph");
+
+		// * mapping.get(i) is the index in the canonical graph of node i
+		Order order = new Order(new ArrayList<Integer>(mapping));
+
+		// * VF2 does not check the number of links between two nodes, so we
+		//   check the result
+		if(! Graphs.reorder(graph, order).equals(canonical))
+			return null;
+
+		return order;
+	}
+
+	/**
+	 * The number of graphs found in the cache of orders.
+	 */
+	public synchronized long orderHits()
+	{
+		return orderHits;
+	}
+
+	/**
+	 * The number of graphs matched to a known canonical graph by VF2.
+	 */
+	public synchronized long isomorphismHits()
+	{
+		return isomorphismHits;
+	}
+
+	/**
+	 * The number of graphs that were canonized by Nauty.
+	 */
+	public synchronized long misses()
+	{
+		return misses;
+	}
+
+	public synchronized long lookups()
+	{
+		return orderHits + isomorphismHits + misses;
+	}
+
+	/**
+	 * The fraction of lookups that did not require Nauty.
+	 */
+	public synchronized double hitRate()
+	{
+		long lookups = lookups();
+		return lookups == 0 ? 0.0 : (orderHits + isomorphismHits) / (double) lookups;
+	}
+
+	/**
+	 * The number of graphs in the cache of orders.
+	 */
+	public synchronized int size()
+	{
+		return orders.size();
+	}
+
+	public synchronized void clear()
+	{
+		orders.clear();
+		representatives.clear();
+	}
+
+	public String toString()
+	{
+		return "lookups: " + lookups() + ", order hits: " + orderHits()
+				+ ", isomorphism hits: " + isomorphismHits() + ", misses: " + misses()
+				+ ", hit rate: " + hitRate();
+	}
+
+	/**
+	 * A canonical graph, and the order that turns the original graph into it.
+	 */
+	public class Result
+	{
+		private Graph<L> graph;
+		private Order order;
+
+		public Result(Graph<L> graph, Order order)
+		{
+			this.graph = graph;
+			this.order = order;
+		}
+
+		/**
+		 * The canonical graph. This is shared between lookups, so it should
+		 * not be modified.
+		 */
+		public Graph<L> graph()
+		{
+			return graph;
+		}
+
+		public Order order()
+		{
+			return order;
+		}
+	}
+
+	/**
+	 * An isomorphism invariant: the size, the number of links, the sorted
+	 * degrees (in and out degrees for directed graphs) and the sorted labels.
+	 */
+	private static class Invariant
+	{
+		private int size;
+		private long numLinks;
+		private long[] degrees;
+		private List<Object> labels;
+		private int hash;
+
+		public <L> Invariant(Graph<L> graph, Comparator<L> comp)
+		{
+			size = graph.size();
+			numLinks = graph.numLinks();
+
+			degrees = new long[size];
+			List<L> sorted = new ArrayList<L>(size);
+
+			int i = 0;
+			for(Node<L> node : graph.nodes())
+			{
+				if(node instanceof DNode<?>)
+				{
+					DNode<L> dnode = (DNode<L>) node;
+					degrees[i] = ((long) dnode.inDegree() << 32) | dnode.outDegree();
+				} else
+					degrees[i] = node.degree();
+
+				sorted.add(node.label());
+				i++;
+			}
+
+			Arrays.sort(degrees);
+			Collections.sort(sorted, comp);
+			labels = new ArrayList<Object>(sorted);
+
+			hash = 31 * (31 * (31 * size + (int) numLinks) + Arrays.hashCode(degrees)) + labels.hashCode();
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if(this == obj)
+				return true;
+			if(!(obj instanceof Invariant))
+				return false;
+
+			Invariant other = (Invariant) obj;
+
+			return hash == other.hash && size == other.size && numLinks == other.numLinks
+					&& Arrays.equals(degrees, other.degrees) && labels.equals(other.labels);
+		}
+	}
+}
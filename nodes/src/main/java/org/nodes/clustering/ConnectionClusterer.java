@@ -4,6 +4,7 @@ import static nl.peterbloem.kit.Series.series;
 
 import java.util.AbstractCollection;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Deque;
@@ -19,7 +20,9 @@ import nl.peterbloem.kit.Series;
 import nl.peterbloem.kit.data.classification.Classification;
 import nl.peterbloem.kit.data.classification.Classified;
 
+import org.nodes.FastWalkable;
 import org.nodes.Graph;
+import org.nodes.IntCursor;
 import org.nodes.Node;
 import org.nodes.Subgraph;
 
@@ -84,8 +87,14 @@ public class ConnectionClusterer<N> implements Clusterer<N>
 			
 			clusterLists = new ArrayList<List<Integer>>();
 			
-			for(Node<N> node : data.nodes())
-				search(data, node);
+			if(data instanceof FastWalkable<?, ?>)
+			{
+				IntCursor cursor = ((FastWalkable<?, ?>) data).neighborCursor();
+				for(int i : series(data.size()))
+					search(cursor, i);
+			} else
+				for(Node<N> node : data.nodes())
+					search(data, node);
 			
 			for(List<Integer> members : clusterLists)
 			 	Collections.sort(members);
@@ -146,12 +155,61 @@ public class ConnectionClusterer<N> implements Clusterer<N>
 			}
 		}
 		
+		/**
+		 * A version of search for FastWalkable graphs, which works on node 
+		 * indices only. 
+		 */
+		private void search(IntCursor cursor, int node)
+		{
+			if(maskedOut(node))
+				return;
+			
+			if(clusters.get(node) != null)
+				return;
+			
+			maxCluster ++;
+			clusterLists.add(new LinkedList<Integer>());
+			
+			int cluster = maxCluster;
+			
+			// * Nodes are assigned when they are pushed, so each node is on 
+			//   the stack at most once
+			int[] stack = new int[16];
+			int top = 0;
+			
+			stack[top++] = node;
+			set(node, cluster);
+			
+			while(top > 0)
+			{
+				cursor.reset(stack[--top]);
+				
+				while(cursor.hasNext())
+				{
+					int neighbor = cursor.next();
+					if(! maskedOut(neighbor) && clusters.get(neighbor) == null)
+					{
+						set(neighbor, cluster);
+						
+						if(top == stack.length)
+							stack = Arrays.copyOf(stack, stack.length * 2);
+						stack[top++] = neighbor;
+					}
+				}
+			}
+		}
+		
 		private boolean maskedOut(Node<N> node)
+		{
+			return maskedOut(node.index());
+		}
+		
+		private boolean maskedOut(int index)
 		{
 			if(mask == null)
 				return false;
 			
-			return ! mask.get(node.index());
+			return ! mask.get(index);
 		}
 		
 		private void set(int nodeIndex, int cluster)
@@ -1,7 +1,7 @@
 package org.nodes.compression;
 
 import static nl.peterbloem.kit.Functions.log2;
-import static nl.peterbloem.kit.Functions.log2Choose;
+import static org.nodes.util.LogFactorials.log2Choose;
 import static nl.peterbloem.kit.Functions.prefix;
 
 import java.util.List;
@@ -56,7 +56,7 @@ public class BinomialCompressor<N> extends AbstractGraphCompressor<N>
 		double n = graph.size();
 		double t = simple ? n * (n - 1) / 2 : n * (n + 1) / 2;
 		
-		return (withPrior ? Functions.prefix((int)n) + log2(t): 0) + log2Choose(graph.numLinks(), t);
+		return (withPrior ? Functions.prefix((int)n) + log2(t): 0) + log2Choose(graph.numLinks(), (long) t);
 	}
 
 	public static <N> double directed(DGraph<N> graph) 
@@ -86,6 +86,6 @@ public class BinomialCompressor<N> extends AbstractGraphCompressor<N>
 		
 		// Global.log().info("Choose bits: " +  log2Choose(graph.numLinks(), t));
 		
-		return (withPrior ? Functions.prefix(graph.size()) + log2(t) : 0) + log2Choose(graph.numLinks(), t);
+		return (withPrior ? Functions.prefix(graph.size()) + log2(t) : 0) + log2Choose(graph.numLinks(), (long) t);
 	}
 }
@@ -1,7 +1,7 @@
 package org.nodes.compression;
 
 import static nl.peterbloem.kit.Functions.log2;
-import static nl.peterbloem.kit.Functions.logFactorial;
+import static org.nodes.util.LogFactorials.log2Factorial;
 import static nl.peterbloem.kit.Functions.prefix;
 import static nl.peterbloem.kit.Series.series;
 
@@ -81,7 +81,7 @@ public class EdgeListCompressor<N> extends AbstractGraphCompressor<N>
 			bits += -log2(p);
 		}
 		
-		return bits - logFactorial(graph.numLinks(), 2.0);
+		return bits - log2Factorial(graph.numLinks());
 	}	
 
 	public static <N> double directed(DGraph<N> graph)
@@ -111,7 +111,7 @@ public class EdgeListCompressor<N> extends AbstractGraphCompressor<N>
 			bits += -log2(p);
 		}
 		
-		bits -= logFactorial(graph.numLinks(), 2.0);
+		bits -= log2Factorial(graph.numLinks());
 		
 		return bits;
 	}	
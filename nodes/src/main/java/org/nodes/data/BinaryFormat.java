@@ -0,0 +1,890 @@
+package org.nodes.data;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.nodes.DGraph;
+import org.nodes.DLink;
+import org.nodes.DNode;
+import org.nodes.DTGraph;
+import org.nodes.DTLink;
+import org.nodes.Graph;
+import org.nodes.GraphBuilder;
+import org.nodes.LightDTGraph;
+import org.nodes.Link;
+import org.nodes.MapUTGraph;
+import org.nodes.Node;
+import org.nodes.TGraph;
+import org.nodes.TLink;
+import org.nodes.TNode;
+import org.nodes.UGraph;
+import org.nodes.UTGraph;
+
+/**
+ * Reads and writes graphs in a compact, versioned binary format.
+ *
+ * The file consists of four sections:
+ * <ul>
+ * <li>A header: a magic number, the format version, the kind of graph
+ *  (directed or undirected, with or without tags), a set of flags, the number
+ *  of nodes and the number of links.</li>
+ * <li>A label dictionary: every distinct label once, followed by the label id
+ *  of each node.</li>
+ * <li>A tag dictionary (only for tagged graphs).</li>
+ * <li>The adjacency: for each node, its number of links followed by the
+ *  sorted neighbor indices, gap-coded. For directed graphs, a node's row holds
+ *  its outgoing links, for undirected graphs the links to neighbors with an
+ *  index greater than or equal to its own. In tagged graphs, each neighbor is
+ *  followed by a tag id.</li>
+ * </ul>
+ * All counts, ids and gaps are stored as variable-length integers (7 bits per
+ * byte). Labels and tags are stored as strings (their toString() value), id 0
+ * is reserved for null. If checksums are enabled, every section is followed
+ * by its CRC32.
+ *
+ * Both writing and reading are streaming: the writer visits a directed graph
+ * one node at a time, and the reader builds the graph directly from the
+ * adjacency section. Undirected graphs are gathered into rows in memory before
+ * writing, so that each link is seen once. Reading from a file memory-maps
+ * it.
+ *
+ * Graphs read with {@link #read(File)} are returned as a LightDGraph,
+ * LightUGraph, LightDTGraph or MapUTGraph, depending on the kind. To load
+ * into another graph (a DiskDGraph, or a MapDTGraph) use
+ * {@link #readInto(File, Graph)}.
+ *
+ * @author Peter
+ *
+ */
+public class BinaryFormat
+{
+	public static final int MAGIC = 0x4e474246; // * "NGBF"
+	public static final int VERSION = 1;
+
+	public static final int DIRECTED = 0;
+	public static final int UNDIRECTED = 1;
+	public static final int DIRECTED_TAGGED = 2;
+	public static final int UNDIRECTED_TAGGED = 3;
+
+	private static final int FLAG_CHECKSUMS = 1;
+
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final int SEGMENT_SIZE = 1 << 30;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * Writes the graph to the given file, with checksums.
+	 */
+	public static void write(Graph<?> graph, File file)
+		throws IOException
+	{
+		write(graph, file, true);
+	}
+
+	public static void write(Graph<?> graph, File file, boolean checksums)
+		throws IOException
+	{
+		OutputStream out = new FileOutputStream(file);
+		try
+		{
+			write(graph, out, checksums);
+		} finally
+		{
+			out.close();
+		}
+	}
+
+	/**
+	 * Writes the graph to the given stream. The stream is flushed, but not
+	 * closed.
+	 */
+	public static void write(Graph<?> graph, OutputStream stream, boolean checksums)
+		throws IOException
+	{
+		int kind = kind(graph);
+		boolean tagged = kind == DIRECTED_TAGGED || kind == UNDIRECTED_TAGGED;
+		int n = graph.size();
+
+		// * Tags
+		Map<Object, Integer> tagIds = new HashMap<Object, Integer>();
+		List<String> tags = new ArrayList<String>();
+		if(tagged)
+			for(Object tag : ((TGraph<?, ?>) graph).tags())
+				id(tag, tagIds, tags);
+
+		// * The undirected rows are gathered before the header, so that we
+		//   know the exact number of links
+		Rows rows = graph instanceof DGraph<?> ? null : new Rows(graph, tagged, tagIds, tags);
+		long numLinks = rows == null ? graph.numLinks() : rows.entries.length;
+
+		Out out = new Out(stream, checksums);
+
+		// * Header
+		out.integer(MAGIC);
+		out.write(VERSION);
+		out.write(kind);
+		out.write(checksums ? FLAG_CHECKSUMS : 0);
+		out.integer(n);
+		out.longInteger(numLinks);
+		out.endSection();
+
+		// * Labels
+		Map<Object, Integer> labelIds = new HashMap<Object, Integer>();
+		List<String> labels = new ArrayList<String>();
+		int[] ids = new int[n];
+
+		for(int i = 0; i < n; i++)
+			ids[i] = id(graph.get(i).label(), labelIds, labels);
+
+		out.varint(labels.size());
+		for(String label : labels)
+			out.string(label);
+		for(int id : ids)
+			out.varint(id);
+		out.endSection();
+
+		ids = null;
+		labelIds = null;
+		labels = null;
+
+		if(tagged)
+		{
+			out.varint(tags.size());
+			for(String tag : tags)
+				out.string(tag);
+			out.endSection();
+		}
+
+		// * Adjacency
+		if(rows == null)
+			directedRows((DGraph<?>) graph, tagged, tagIds, out);
+		else
+			rows.write(out);
+		out.endSection();
+
+		out.flush();
+	}
+
+	private static int kind(Graph<?> graph)
+	{
+		if(graph instanceof DTGraph<?, ?>)
+			return DIRECTED_TAGGED;
+		if(graph instanceof UTGraph<?, ?>)
+			return UNDIRECTED_TAGGED;
+		if(graph instanceof DGraph<?>)
+			return DIRECTED;
+		if(graph instanceof UGraph<?>)
+			return UNDIRECTED;
+
+		throw new IllegalArgumentException("Graph of type "+graph.getClass()+" is neither directed nor undirected.");
+	}
+
+	/**
+	 * Returns the id of the given object in the dictionary, adding it if
+	 * necessary. Null has id 0.
+	 */
+	private static int id(Object object, Map<Object, Integer> ids, List<String> dictionary)
+	{
+		if(object == null)
+			return 0;
+
+		Integer id = ids.get(object);
+		if(id == null)
+		{
+			dictionary.add(object.toString());
+			id = dictionary.size();
+			ids.put(object, id);
+		}
+
+		return id;
+	}
+
+	private static int tagId(Object tag, Map<Object, Integer> tagIds)
+	{
+		if(tag == null)
+			return 0;
+
+		Integer id = tagIds.get(tag);
+		if(id == null)
+			throw new IllegalStateException("Link has tag ("+tag+") that is not in graph.tags().");
+
+		return id;
+	}
+
+	/**
+	 * Writes the out-links of each node, one node at a time.
+	 */
+	private static void directedRows(DGraph<?> graph, boolean tagged, Map<Object, Integer> tagIds, Out out)
+		throws IOException
+	{
+		long[] row = new long[16];
+
+		for(int i = 0; i < graph.size(); i++)
+		{
+			DNode<?> node = graph.get(i);
+
+			int k = 0;
+			for(DLink<?> link : node.linksOut())
+			{
+				if(k == row.length)
+					row = Arrays.copyOf(row, row.length * 2);
+
+				int tag = tagged ? tagId(((DTLink<?, ?>) link).tag(), tagIds) : 0;
+				row[k++] = pack(link.to().index(), tag);
+			}
+
+			Arrays.sort(row, 0, k);
+			writeRow(row, 0, k, 0, tagged, out);
+		}
+	}
+
+	/**
+	 * The links of each node to neighbors with an equal or higher index. To
+	 * see each link once, the links are gathered from graph.links() and sorted
+	 * into rows in memory.
+	 */
+	private static class Rows
+	{
+		int[] offsets;
+		long[] entries;
+		boolean tagged;
+
+		public Rows(Graph<?> graph, boolean tagged, Map<Object, Integer> tagIds, List<String> tags)
+		{
+			int n = graph.size();
+			this.tagged = tagged;
+
+			offsets = new int[n + 1];
+			for(Link<?> link : graph.links())
+				offsets[Math.min(link.first().index(), link.second().index()) + 1] ++;
+
+			for(int i = 0; i < n; i++)
+				offsets[i + 1] += offsets[i];
+
+			entries = new long[offsets[n]];
+			int[] pos = Arrays.copyOf(offsets, n);
+
+			for(Link<?> link : graph.links())
+			{
+				int a = link.first().index(), b = link.second().index();
+				int tag = tagged ? id(((TLink<?, ?>) link).tag(), tagIds, tags) : 0;
+
+				entries[pos[Math.min(a, b)]++] = pack(Math.max(a, b), tag);
+			}
+		}
+
+		public void write(Out out)
+			throws IOException
+		{
+			int n = offsets.length - 1;
+			for(int i = 0; i < n; i++)
+			{
+				Arrays.sort(entries, offsets[i], offsets[i + 1]);
+				writeRow(entries, offsets[i], offsets[i + 1], i, tagged, out);
+			}
+		}
+	}
+
+	private static long pack(int target, int tag)
+	{
+		return ((long) target << 32) | (tag & 0xffffffffL);
+	}
+
+	/**
+	 * Writes a sorted range of packed entries, gap-coded.
+	 *
+	 * @param base The value from which the first gap is taken
+	 */
+	private static void writeRow(long[] row, int from, int to, int base, boolean tagged, Out out)
+		throws IOException
+	{
+		out.varint(to - from);
+
+		int previous = base;
+		for(int j = from; j < to; j++)
+		{
+			int target = (int)(row[j] >>> 32);
+			out.varint(target - previous);
+			if(tagged)
+				out.varint((int) row[j]);
+
+			previous = target;
+		}
+	}
+
+	/**
+	 * Reads a graph from the given file. The file is memory-mapped.
+	 *
+	 * @return A LightDGraph, LightUGraph, LightDTGraph or MapUTGraph, depending
+	 * 	on the kind of graph stored in the file.
+	 */
+	public static Graph<String> read(File file)
+		throws IOException
+	{
+		In in = new MappedIn(file);
+		try
+		{
+			return new Reader(in).graph();
+		} finally
+		{
+			in.close();
+		}
+	}
+
+	/**
+	 * Reads a graph from the given stream. The stream is not closed.
+	 */
+	public static Graph<String> read(InputStream stream)
+		throws IOException
+	{
+		return new Reader(new StreamIn(stream)).graph();
+	}
+
+	/**
+	 * Reads the graph in the given file into the given graph, which should be
+	 * empty. The target should be directed if the stored graph is directed
+	 * and undirected otherwise. If the target is tagged, the tags are copied,
+	 * otherwise they are ignored.
+	 *
+	 * This can be used to load a graph into a DiskDGraph or a MapDTGraph.
+	 */
+	public static void readInto(File file, Graph<String> target)
+		throws IOException
+	{
+		In in = new MappedIn(file);
+		try
+		{
+			new Reader(in).into(target);
+		} finally
+		{
+			in.close();
+		}
+	}
+
+	private static class Reader
+	{
+		private In in;
+
+		private int kind;
+		private boolean tagged, checksums;
+		private int n;
+		private long m;
+
+		private List<String> labels;
+		private List<String> tags;
+
+		public Reader(In in)
+			throws IOException
+		{
+			this.in = in;
+
+			// * Header
+			int magic = in.integer();
+			if(magic != MAGIC)
+				throw new IOException("Not a binary graph file (magic number "+Integer.toHexString(magic)+").");
+
+			int version = in.read();
+			if(version != VERSION)
+				throw new IOException("Unsupported format version ("+version+"), expected "+VERSION+".");
+
+			kind = in.read();
+			if(kind < DIRECTED || kind > UNDIRECTED_TAGGED)
+				throw new IOException("Unknown graph kind ("+kind+").");
+			tagged = kind == DIRECTED_TAGGED || kind == UNDIRECTED_TAGGED;
+
+			checksums = (in.read() & FLAG_CHECKSUMS) != 0;
+			n = in.integer();
+			m = in.longInteger();
+
+			if(n < 0 || m < 0)
+				throw new IOException("Negative size ("+n+") or number of links ("+m+").");
+
+			section("header");
+
+			// * Labels
+			List<String> dictionary = dictionary();
+			labels = new ArrayList<String>(n);
+			for(int i = 0; i < n; i++)
+				labels.add(lookup(dictionary, in.varint(), "label"));
+			section("labels");
+
+			// * Tags
+			if(tagged)
+			{
+				tags = dictionary();
+				section("tags");
+			}
+		}
+
+		private List<String> dictionary()
+			throws IOException
+		{
+			int size = in.varint();
+			List<String> dictionary = new ArrayList<String>(size + 1);
+			dictionary.add(null);
+			for(int i = 0; i < size; i++)
+				dictionary.add(in.string());
+
+			return dictionary;
+		}
+
+		private String lookup(List<String> dictionary, int id, String what)
+			throws IOException
+		{
+			if(id >= dictionary.size())
+				throw new IOException("Unknown "+what+" id ("+id+").");
+
+			return dictionary.get(id);
+		}
+
+		private void section(String name)
+			throws IOException
+		{
+			int expected = in.endSection();
+			if(checksums)
+			{
+				int stored = in.integer();
+				if(stored != expected)
+					throw new IOException("Checksum mismatch in the "+name+" section.");
+			}
+
+			in.startSection();
+		}
+
+		private boolean directed()
+		{
+			return kind == DIRECTED || kind == DIRECTED_TAGGED;
+		}
+
+		/**
+		 * Reads the adjacency section, passing each link to the given sink.
+		 */
+		private void links(Sink sink)
+			throws IOException
+		{
+			long read = 0;
+			for(int i = 0; i < n; i++)
+			{
+				int k = in.varint();
+				int target = directed() ? 0 : i;
+
+				for(int j = 0; j < k; j++)
+				{
+					target += in.varint();
+					if(target >= n || target < 0)
+						throw new IOException("Node "+i+" links to a node outside the graph ("+target+").");
+
+					String tag = tagged ? lookup(tags, in.varint(), "tag") : null;
+
+					sink.link(i, target, tag);
+				}
+
+				read += k;
+			}
+
+			if(read != m)
+				throw new IOException("Header specifies "+m+" links, adjacency contains "+read+".");
+
+			section("adjacency");
+		}
+
+		public Graph<String> graph()
+			throws IOException
+		{
+			if(! tagged)
+			{
+				if(2 * m > Integer.MAX_VALUE - 8)
+					throw new IllegalStateException("Too many links ("+m+") to load into memory, use readInto() with a DiskDGraph.");
+
+				final int[] pairs = new int[(int)(2 * m)];
+				links(new Sink() {
+					int i = 0;
+					public void link(int from, int to, String tag)
+					{
+						pairs[i++] = from;
+						pairs[i++] = to;
+					}
+				});
+
+				GraphBuilder builder = new GraphBuilder(pairs).size(n);
+				return directed() ? builder.directed(labels) : builder.undirected(labels);
+			}
+
+			if(directed())
+			{
+				final LightDTGraph<String, String> graph = new LightDTGraph<String, String>(n);
+				for(String label : labels)
+					graph.add(label);
+
+				links(new Sink() {
+					public void link(int from, int to, String tag)
+					{
+						graph.get(from).connect(graph.get(to), tag);
+					}
+				});
+
+				return graph;
+			}
+
+			final MapUTGraph<String, String> graph = new MapUTGraph<String, String>();
+			for(String label : labels)
+				graph.add(label);
+
+			links(new Sink() {
+				public void link(int from, int to, String tag)
+				{
+					graph.get(from).connect(graph.get(to), tag);
+				}
+			});
+
+			return graph;
+		}
+
+		@SuppressWarnings("unchecked")
+		public void into(final Graph<String> graph)
+			throws IOException
+		{
+			if(graph.size() != 0)
+				throw new IllegalArgumentException("Target graph should be empty (has "+graph.size()+" nodes).");
+			if(directed() != graph instanceof DGraph<?>)
+				throw new IllegalArgumentException("Cannot load a"+(directed() ? " directed" : "n undirected")+" graph into a graph of type "+graph.getClass()+".");
+
+			for(String label : labels)
+				graph.add(label);
+
+			final boolean copyTags = tagged && graph instanceof TGraph<?, ?>;
+
+			links(new Sink() {
+				public void link(int from, int to, String tag)
+				{
+					Node<String> a = graph.get(from), b = graph.get(to);
+
+					if(copyTags)
+						((TNode<String, String>) a).connect((TNode<String, String>) b, tag);
+					else
+						a.connect(b);
+				}
+			});
+		}
+	}
+
+	private interface Sink
+	{
+		public void link(int from, int to, String tag);
+	}
+
+	/**
+	 * A buffered output stream that writes varints, and keeps a checksum for
+	 * the current section.
+	 */
+	private static class Out
+	{
+		private OutputStream stream;
+		private byte[] buffer = new byte[BUFFER_SIZE];
+		private int n = 0;
+
+		// * the bytes before mark have been added to the checksum
+		private CRC32 crc;
+		private int mark = 0;
+
+		public Out(OutputStream stream, boolean checksums)
+		{
+			this.stream = stream;
+			this.crc = checksums ? new CRC32() : null;
+		}
+
+		public void write(int b)
+			throws IOException
+		{
+			if(n == buffer.length)
+				drain();
+
+			buffer[n++] = (byte) b;
+		}
+
+		public void integer(int value)
+			throws IOException
+		{
+			write(value >>> 24);
+			write(value >>> 16);
+			write(value >>> 8);
+			write(value);
+		}
+
+		public void longInteger(long value)
+			throws IOException
+		{
+			integer((int)(value >>> 32));
+			integer((int) value);
+		}
+
+		public void varint(long value)
+			throws IOException
+		{
+			if(value < 0)
+				throw new IllegalArgumentException("Cannot write negative value "+value+" as varint.");
+
+			while((value & ~0x7fL) != 0)
+			{
+				write((int)(value & 0x7f) | 0x80);
+				value >>>= 7;
+			}
+			write((int) value);
+		}
+
+		public void string(String string)
+			throws IOException
+		{
+			byte[] bytes = string.getBytes(UTF8);
+			varint(bytes.length);
+			for(byte b : bytes)
+				write(b);
+		}
+
+		/**
+		 * Writes the checksum of the current section (if checksums are
+		 * enabled), and starts a new section.
+		 */
+		public void endSection()
+			throws IOException
+		{
+			if(crc == null)
+				return;
+
+			if(n + 4 > buffer.length)
+				drain();
+
+			crc.update(buffer, mark, n - mark);
+			int value = (int) crc.getValue();
+			crc.reset();
+
+			buffer[n++] = (byte)(value >>> 24);
+			buffer[n++] = (byte)(value >>> 16);
+			buffer[n++] = (byte)(value >>> 8);
+			buffer[n++] = (byte) value;
+
+			mark = n;
+		}
+
+		private void drain()
+			throws IOException
+		{
+			if(crc != null)
+				crc.update(buffer, mark, n - mark);
+
+			stream.write(buffer, 0, n);
+			n = 0;
+			mark = 0;
+		}
+
+		public void flush()
+			throws IOException
+		{
+			drain();
+			stream.flush();
+		}
+	}
+
+	/**
+	 * Reads from a sequence of byte buffers, and keeps a checksum for the
+	 * current section.
+	 */
+	private static abstract class In
+	{
+		protected ByteBuffer buffer;
+
+		private CRC32 crc = new CRC32();
+		private boolean checking = true;
+		private int mark = 0;
+
+		/**
+		 * Loads the next buffer.
+		 *
+		 * @return False if the end of the input has been reached.
+		 */
+		protected abstract boolean fill() throws IOException;
+
+		public void close() throws IOException
+		{
+		}
+
+		public int read()
+			throws IOException
+		{
+			if(! buffer.hasRemaining())
+			{
+				update();
+				if(! fill())
+					throw new EOFException("Unexpected end of input.");
+				mark = buffer.position();
+			}
+
+			return buffer.get() & 0xff;
+		}
+
+		public int integer()
+			throws IOException
+		{
+			return (read() << 24) | (read() << 16) | (read() << 8) | read();
+		}
+
+		public long longInteger()
+			throws IOException
+		{
+			return ((long) integer() << 32) | (integer() & 0xffffffffL);
+		}
+
+		public long varlong()
+			throws IOException
+		{
+			long value = 0;
+			for(int shift = 0; shift < 64; shift += 7)
+			{
+				int b = read();
+				value |= (long)(b & 0x7f) << shift;
+
+				if(b < 0x80)
+					return value;
+			}
+
+			throw new IOException("Malformed varint.");
+		}
+
+		public int varint()
+			throws IOException
+		{
+			long value = varlong();
+			if(value > Integer.MAX_VALUE)
+				throw new IOException("Value "+value+" is too large.");
+
+			return (int) value;
+		}
+
+		public String string()
+			throws IOException
+		{
+			byte[] bytes = new byte[varint()];
+			for(int i = 0; i < bytes.length; i++)
+				bytes[i] = (byte) read();
+
+			return new String(bytes, UTF8);
+		}
+
+		private void update()
+		{
+			if(! checking)
+				return;
+
+			ByteBuffer range = buffer.duplicate();
+			range.limit(buffer.position());
+			range.position(mark);
+			crc.update(range);
+
+			mark = buffer.position();
+		}
+
+		/**
+		 * Stops checksumming, and returns the checksum of the bytes read
+		 * since the start of the section.
+		 */
+		public int endSection()
+		{
+			update();
+			checking = false;
+
+			return (int) crc.getValue();
+		}
+
+		public void startSection()
+		{
+			crc.reset();
+			checking = true;
+			mark = buffer.position();
+		}
+	}
+
+	private static class StreamIn extends In
+	{
+		private InputStream stream;
+		private byte[] bytes = new byte[BUFFER_SIZE];
+
+		public StreamIn(InputStream stream)
+		{
+			this.stream = stream;
+			this.buffer = ByteBuffer.wrap(bytes);
+			buffer.limit(0);
+		}
+
+		@Override
+		protected boolean fill()
+			throws IOException
+		{
+			int r;
+			do {
+				r = stream.read(bytes);
+			} while(r == 0);
+
+			if(r < 0)
+				return false;
+
+			buffer.position(0);
+			buffer.limit(r);
+			return true;
+		}
+	}
+
+	/**
+	 * Maps the file into memory in segments of at most 1GB.
+	 */
+	private static class MappedIn extends In
+	{
+		private RandomAccessFile file;
+		private FileChannel channel;
+		private long size, offset = 0;
+
+		public MappedIn(File file)
+			throws IOException
+		{
+			this.file = new RandomAccessFile(file, "r");
+			this.channel = this.file.getChannel();
+			this.size = channel.size();
+			this.buffer = ByteBuffer.allocate(0);
+		}
+
+		@Override
+		protected boolean fill()
+			throws IOException
+		{
+			if(offset >= size)
+				return false;
+
+			long length = Math.min(SEGMENT_SIZE, size - offset);
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+			offset += length;
+
+			return true;
+		}
+
+		@Override
+		public void close()
+			throws IOException
+		{
+			file.close();
+		}
+	}
+}
@@ -1,9 +1,7 @@
 package org.nodes.data;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.HashMap;
@@ -16,6 +14,7 @@ import org.nodes.DTGraph;
 import org.nodes.DTNode;
 import org.nodes.DiskDGraph;
 import org.nodes.Graph;
+import org.nodes.GraphBuilder;
 import org.nodes.LightDGraph;
 import org.nodes.LightUGraph;
 import org.nodes.Link;
@@ -51,66 +50,47 @@ public class Data {
 		return edgeList(file, bipartite, false);
 	}
 	
-	public static UTGraph<String, String> edgeList(File file, boolean bipartite, boolean blank)
+	public static UTGraph<String, String> edgeList(File file, final boolean bipartite, final boolean blank)
 			throws IOException
 	{
-		BufferedReader reader = new BufferedReader(new FileReader(file));
-		UTGraph<String, String> graph = new MapUTGraph<String, String>();
-				
-		String line;
-		int i = 0;
+		final UTGraph<String, String> graph = new MapUTGraph<String, String>();
 		
-		Map<String, UNode<String>> map = new HashMap<String, UNode<String>>();
+		final Map<String, UNode<String>> map = new HashMap<String, UNode<String>>();
 		
-		do {
-			line = reader.readLine();
-			i++;
-			
-			if(line == null)
-				continue;
-			if(line.trim().isEmpty())
-				continue;
-			if(line.trim().startsWith("#"))
-				continue;
-			if(line.trim().startsWith("%"))
-				continue;
-			
-			String[] split = line.split("\\s");
-			if(split.length < 2)
-				throw new IllegalArgumentException("Line "+i+" does not split into two (or more) elements.");
-			
-			String a, b, c = null;
-			a = split[0];
-			b = split[1];
-			
-			if(bipartite)
+		new EdgeListParser(file).strings(new EdgeListParser.Handler<String[]>()
+		{
+			public void edges(String[] edges)
 			{
-				a = "l"+a;
-				b = "r"+b;
+				for(int i = 0; i < edges.length; i += 2)
+				{
+					String a = edges[i], b = edges[i + 1];
+					
+					if(bipartite)
+					{
+						a = "l"+a;
+						b = "r"+b;
+					}
+		
+					UNode<String> nodeA;
+					if(! map.containsKey(a))
+					{
+						nodeA = graph.add(blank ? "" : a);
+						map.put(a, nodeA);
+					} else
+						nodeA = map.get(a);
+						
+					UNode<String> nodeB;
+					if(! map.containsKey(b))
+					{
+						nodeB = graph.add(blank ? "" : b);
+						map.put(b, nodeB);
+					} else
+						nodeB = map.get(b);
+					
+					nodeA.connect(nodeB);
+				}
 			}
-
-			if(split.length > 2)
-				c = split[2];
-
-			UNode<String> nodeA;
-			if(! map.containsKey(a))
-			{
-				nodeA = graph.add(blank ? "" : a);
-				map.put(a, nodeA);
-			} else
-				nodeA = map.get(a);
-				
-			UNode<String> nodeB;
-			if(! map.containsKey(b))
-			{
-				nodeB = graph.add(blank ? "" : b);
-				map.put(b, nodeB);
-			} else
-				nodeB = map.get(b);
-			
-			nodeA.connect(nodeB);
-			
-		} while(line != null);
+		});
 		
 		System.out.println("\nFinished. Read " + graph.numLinks() + "edges");
 		return graph;
@@ -130,60 +110,41 @@ public class Data {
 		return edgeListDirected(file, false);
 	}
 	
-	public static DTGraph<String, String> edgeListDirected(File file, boolean blank)
+	public static DTGraph<String, String> edgeListDirected(File file, final boolean blank)
 		throws IOException
 	{
-		BufferedReader reader = new BufferedReader(new FileReader(file));
-		DTGraph<String, String> graph = new MapDTGraph<String, String>();
-				
-		String line;
-		int i = 0;
+		final DTGraph<String, String> graph = new MapDTGraph<String, String>();
 		
-		Map<String, DNode<String>> map = new HashMap<String, DNode<String>>();
+		final Map<String, DNode<String>> map = new HashMap<String, DNode<String>>();
 		
-		do {
-			line = reader.readLine();
-			i++;
-
-			if(line == null)
-				continue;
-			if(line.trim().isEmpty())
-				continue;
-			if(line.trim().startsWith("#"))
-				continue;
-			if(line.trim().startsWith("%"))
-				continue;
-
-			
-			String[] split = line.split("\\s");
-			if(split.length < 2)
-				throw new IllegalArgumentException("Line "+i+" does not split into two elements.");
-			
-			String a, b = null;
-		
-			a = split[0];			
-			b = split[1];
-				
-			DNode<String> nodeA, nodeB;
-			
-			if(! map.containsKey(a))
-			{
-				nodeA = graph.add(blank ? "" : a);
-				map.put(a,  nodeA);
-			} else
-				nodeA= map.get(a);
-
-			if(! map.containsKey(b))
+		new EdgeListParser(file).strings(new EdgeListParser.Handler<String[]>()
+		{
+			public void edges(String[] edges)
 			{
-				nodeB = graph.add(blank ? "" : b);
-				map.put(b,  nodeB);
-			} else
-				nodeB = map.get(b);
-			
-			nodeA.connect(nodeB);
-			
-
-		} while(line != null);
+				for(int i = 0; i < edges.length; i += 2)
+				{
+					String a = edges[i], b = edges[i + 1];
+						
+					DNode<String> nodeA, nodeB;
+					
+					if(! map.containsKey(a))
+					{
+						nodeA = graph.add(blank ? "" : a);
+						map.put(a,  nodeA);
+					} else
+						nodeA= map.get(a);
+		
+					if(! map.containsKey(b))
+					{
+						nodeB = graph.add(blank ? "" : b);
+						map.put(b,  nodeB);
+					} else
+						nodeB = map.get(b);
+					
+					nodeA.connect(nodeB);
+				}
+			}
+		});
 		
 		System.out.println("\nFinished. Read " + graph.numLinks() + "edges");
 		return graph;
@@ -201,97 +162,79 @@ public class Data {
 	 * @return 
 	 * @throws IOException
 	 */
+	public static DGraph<String> edgeListDirectedUnlabeled(File file)
+			throws IOException
+	{
+		return edgeListDirectedUnlabeled(file, (File) null);
+	}
+	
+	/**
+	 * @param clean Ignored. This used to control whether the graph was 
+	 * 	compacted after loading. Graphs are now always built with exactly 
+	 * 	sized rows.
+	 * @deprecated Use {@link #edgeListDirectedUnlabeled(File)}.
+	 */
+	@Deprecated
 	public static DGraph<String> edgeListDirectedUnlabeled(File file, boolean clean)
 			throws IOException
 	{
-		return edgeListDirectedUnlabeled(file, clean, null);
+		return edgeListDirectedUnlabeled(file, (File) null);
 	}
-		
+	
+	/**
+	 * @param clean Ignored (see {@link #edgeListDirectedUnlabeled(File, boolean)}).
+	 * @deprecated Use {@link #edgeListDirectedUnlabeled(File, File)}.
+	 */
+	@Deprecated
 	public static DGraph<String> edgeListDirectedUnlabeled(
 			File file, boolean clean, File store)
 		throws IOException
 	{
-		BufferedReader reader = new BufferedReader(new FileReader(file));
-		
-		DGraph<String> graph;
+		return edgeListDirectedUnlabeled(file, store);
+	}
+	
+	/**
+	 * @param store If not null, the graph is stored on disk, in this file. The 
+	 * 	edge list is then read a chunk at a time, so it does not need to fit 
+	 * 	in memory.
+	 */
+	public static DGraph<String> edgeListDirectedUnlabeled(File file, File store)
+		throws IOException
+	{
 		if(store == null)
-			graph = new LightDGraph<String>();
-		else
-			graph = new DiskDGraph(store);
-				
-		String line;
-		int i = 0;
+		{
+			// * The builder allocates exactly sized, sorted rows, so the graph
+			//   needs no compacting.
+			LightDGraph<String> graph = new GraphBuilder(new EdgeListParser(file).ints()).directed();
+			
+			Global.log().info("Graph loaded (n="+graph.size()+", l="+graph.numLinks()+").");
+			return graph;
+		}
 		
-		do
-		 {
-			line = reader.readLine();
-			i++;
+		final DiskDGraph graph = new DiskDGraph(store);
 		
-			if(line == null)
-				continue;
-			if(line.trim().isEmpty())
-				continue;
-			if(line.trim().startsWith("#"))
-				continue;
-			if(line.trim().startsWith("%"))
-				continue;
-			
-			String[] split = line.split("\\s");
-			if(split.length < 2)
-				throw new IllegalArgumentException("Line "+i+" does not split into two elements.");
-			
-			Integer a, b, c = null;
-			try {
-				a = Integer.parseInt(split[0]);
-			} catch(NumberFormatException e)
-			{
-				throw new RuntimeException("The first element on line "+i+" ("+split[0]+") cannot be parsed into an integer.", e);
-			}
-			
-			try {
-				b = Integer.parseInt(split[1]);
-			} catch(NumberFormatException e)
+		new EdgeListParser(file).ints(new EdgeListParser.Handler<int[]>()
+		{
+			public void edges(int[] edges)
 			{
-				throw new RuntimeException("The second element on line "+i+" ("+split[1]+") cannot be parsed into an integer.", e);
-			}
-						
-			ensure(graph, Math.max(a, b));
-			
-			DNode<String> nodeA = graph.get(a);
-			DNode<String> nodeB = graph.get(b);
-
-			nodeA.connect(nodeB);
-			
-			long links = graph.numLinks();
-			if(links%50000 == 0)
-				Global.log().info("Loaded " + links + " links (n="+graph.size()+", l="+graph.numLinks()+")");
-			if(links%5000000 == 0)
-			{			
-				Global.log().info("Compacting");
-				if(store == null)
-					((LightDGraph<?>)graph).compact(5);
+				ensure(graph, max(edges));
 				
-				Global.log().info("Done");
+				for(int i = 0; i < edges.length; i += 2)
+				{
+					DNode<String> nodeA = graph.get(edges[i]);
+					DNode<String> nodeB = graph.get(edges[i + 1]);
+		
+					nodeA.connect(nodeB);
+				}
+				
+				Global.log().info("Loaded " + graph.numLinks() + " links (n="+graph.size()+")");
 			}
-			
-		} while(line != null);
+		});
 		
 		Global.log().info("Graph loaded (n="+graph.size()+", l="+graph.numLinks()+").");
 
 		Global.log().info("Sorting");
-		if(store == null)
-			((LightDGraph<?>)graph).sort();
-		else
-			((DiskDGraph)graph).sort();
-		
-		if(clean)
-		{
-			Global.log().info("Compacting");
-			if(store == null)
-				((LightDGraph<?>)graph).compact(0);
-
-			Global.log().info("Done");
-		}
+		graph.sort();
 		
 		return graph;
 	}
@@ -308,76 +251,10 @@ public class Data {
 	public static DGraph<String> edgeListDirectedUnlabeledSimple(File file)
 			throws IOException
 	{
-		BufferedReader reader = new BufferedReader(new FileReader(file));
-		LightDGraph<String> graph = new LightDGraph<String>();
-				
-		String line;
-		int i = 0;
-		
-		do
-		 {
-			line = reader.readLine();
-			i++;
-		
-			if(line == null)
-				continue;
-			if(line.trim().isEmpty())
-				continue;
-			if(line.trim().startsWith("#"))
-				continue;
-			if(line.trim().startsWith("%"))
-				continue;
-			
-			String[] split = line.split("\\s");
-			if(split.length < 2)
-				throw new IllegalArgumentException("Line "+i+" does not split into two elements.");
-			
-			Integer a, b, c = null;
-			try {
-				a = Integer.parseInt(split[0]);
-			} catch(NumberFormatException e)
-			{
-				throw new RuntimeException("The first element on line "+i+" ("+split[0]+") cannot be parsed into an integer.", e);
-			}
-			
-			try {
-				b = Integer.parseInt(split[1]);
-			} catch(NumberFormatException e)
-			{
-				throw new RuntimeException("The second element on line "+i+" ("+split[1]+") cannot be parsed into an integer.", e);
-			}
-			
-			if(!a.equals(b))
-			{	
-				ensure(graph, Math.max(a, b));
-				
-				DNode<String> nodeA = graph.get(a);
-				DNode<String> nodeB = graph.get(b);
-				
-				if(!nodeA.connectedTo(nodeB))
-					nodeA.connect(nodeB);
-			}
-			
-			long links = graph.numLinks();
-			if(links%500000 == 0)
-				Global.log().info("Loaded " + links + " links (n="+graph.size()+", l="+graph.numLinks()+")");
-			if(links%5000000 == 0)
-			{			
-				Global.log().info("Compacting");
-				graph.compact(5);
-				Global.log().info("Done");
-			}
-			
-		} while(line != null);
+		int[] edges = new EdgeListParser(file).ints();
+		LightDGraph<String> graph = new GraphBuilder(edges).simple(true).directed();
 		
 		Global.log().info("Graph loaded (n="+graph.size()+", l="+graph.numLinks()+").");
-
-		Global.log().info("Sorting");
-		graph.sort();
-
-		Global.log().info("Compacting");
-		graph.compact(0);
-		Global.log().info("Done");
 		
 		return graph;
 	}
@@ -392,80 +269,47 @@ public class Data {
 	 * @return 
 	 * @throws IOException
 	 */
-	public static UGraph<String> edgeListUndirectedUnlabeled(File file, boolean clean)
+	public static UGraph<String> edgeListUndirectedUnlabeled(File file)
 			throws IOException
 	{
-		BufferedReader reader = new BufferedReader(new FileReader(file));
-		LightUGraph<String> graph = new LightUGraph<String>();
-				
-		String line;
-		int i = 0;
+		int[] edges = new EdgeListParser(file).ints();
 		
-		do {
-			line = reader.readLine();
-			i++;
+		// * The builder allocates exactly sized, sorted rows, so the graph
+		//   needs no compacting.
+		LightUGraph<String> graph = new GraphBuilder(edges).undirected();
 		
-			if(line == null)
-				continue;
-			if(line.trim().isEmpty())
-				continue;
-			if(line.trim().startsWith("#"))
-				continue;
-			if(line.trim().startsWith("%"))
-				continue;
-			
-			String[] split = line.split("\\s");
-			if(split.length < 2)
-				throw new IllegalArgumentException("Line "+i+" does not split into two elements.");
-			
-			Integer a, b, c = null;
-			try {
-				a = Integer.parseInt(split[0]);
-			} catch(NumberFormatException e)
-			{
-				throw new RuntimeException("The first element on line "+i+" ("+split[0]+", line = "+line+") cannot be parsed into an integer.", e);
-			}
-			
-			try {
-				b = Integer.parseInt(split[1]);
-			} catch(NumberFormatException e)
-			{
-				throw new RuntimeException("The second element on line "+i+" ("+split[1]+") cannot be parsed into an integer.", e);
-			}
-						
-			ensure(graph, Math.max(a, b));
-			
-			UNode<String> nodeA = graph.get(a);
-			UNode<String> nodeB = graph.get(b);
-
-			nodeA.connect(nodeB);
-			
-			long links = graph.numLinks();
-			if(links%100000 == 0)
-				Global.log().info("Loaded " + links + " links (n="+graph.size()+", l="+graph.numLinks()+")");
-			
-			
-		} while(line != null);
-		
-		Global.log().info("Sorting");
-		graph.sort();
-		
-		if(clean)
-		{
-			Global.log().info("Compacting");
-			graph.compact(0);
-			Global.log().info("Done");
-
-		}
+		Global.log().info("Graph loaded (n="+graph.size()+", l="+graph.numLinks()+").");
 		
 		return graph;
 	}	
+	
+	/**
+	 * @param clean Ignored. This used to control whether the graph was 
+	 * 	compacted after loading. Graphs are now always built with exactly 
+	 * 	sized rows.
+	 * @deprecated Use {@link #edgeListUndirectedUnlabeled(File)}.
+	 */
+	@Deprecated
+	public static UGraph<String> edgeListUndirectedUnlabeled(File file, boolean clean)
+			throws IOException
+	{
+		return edgeListUndirectedUnlabeled(file);
+	}
 
 	private static void ensure(Graph<String> graph, int max)
 	{
 		while(graph.size() < max + 1)
 			graph.add(null);
-	}		
+	}
+	
+	private static int max(int[] values)
+	{
+		int max = -1;
+		for(int value : values)
+			max = Math.max(max, value);
+		
+		return max;
+	}
 	
 	/**
 	 * Writes the graph structure to the file as an edge list. 
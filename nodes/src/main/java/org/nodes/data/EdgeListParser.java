@@ -0,0 +1,484 @@
+package org.nodes.data;
+
+import static nl.peterbloem.kit.Series.series;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A fast parser for large files in edge-list format.
+ *
+ * The file is cut into chunks of a fixed number of bytes, which are
+ * memory-mapped and parsed independently, so that several threads can parse
+ * a file at once. A line belongs to the chunk that contains its first byte.
+ * Tokens are located byte by byte, and integers are parsed directly from the
+ * bytes, without creating Strings.
+ *
+ * Empty lines and lines starting with # or % are skipped. The first two
+ * tokens of each other line are the edge, any further tokens are ignored.
+ * Since the chunks are parsed out of order, errors report the byte offset of
+ * the offending line, rather than its line number.
+ *
+ * The edges can be collected into a single array with {@link #ints()} and
+ * {@link #strings()}, or passed to a {@link Handler} one chunk at a time, for
+ * files that do not fit in memory.
+ *
+ * @author Peter
+ *
+ */
+public class EdgeListParser
+{
+	public static final int CHUNK_SIZE = 1 << 24;
+
+	// * The number of bytes mapped beyond the end of a chunk, to finish its
+	//   last line.
+	private static final int MAX_LINE = 1 << 16;
+
+	private File file;
+	private long size;
+	private int chunkSize;
+	private int numThreads;
+
+	public EdgeListParser(File file)
+	{
+		this(file, CHUNK_SIZE, Runtime.getRuntime().availableProcessors());
+	}
+
+	public EdgeListParser(File file, int chunkSize, int numThreads)
+	{
+		if(chunkSize < 1 || chunkSize > Integer.MAX_VALUE - MAX_LINE - 1)
+			throw new IllegalArgumentException("Chunk size must be positive, and below 2GB (was "+chunkSize+").");
+		if(numThreads < 1)
+			throw new IllegalArgumentException("Number of threads must be positive (was "+numThreads+").");
+
+		this.file = file;
+		this.size = file.length();
+		this.chunkSize = chunkSize;
+		this.numThreads = numThreads;
+	}
+
+	public int numChunks()
+	{
+		return (int)((size + chunkSize - 1) / chunkSize);
+	}
+
+	/**
+	 * Parses the whole file as integers.
+	 *
+	 * @return The edges, as a flat array of pairs: the i-th edge is
+	 * (result[2i], result[2i+1]).
+	 */
+	public int[] ints()
+		throws IOException
+	{
+		List<int[]> chunks = all(new Parse<int[]>() {
+			public int[] chunk(int i) throws IOException
+			{
+				return ints(i);
+			}
+		});
+
+		long total = 0;
+		for(int[] chunk : chunks)
+			total += chunk.length;
+
+		if(total > Integer.MAX_VALUE - 8)
+			throw new IllegalStateException("File contains too many edges ("+(total/2)+") to store in an array.");
+
+		int[] result = new int[(int) total];
+		int n = 0;
+		for(int[] chunk : chunks)
+		{
+			System.arraycopy(chunk, 0, result, n, chunk.length);
+			n += chunk.length;
+		}
+
+		return result;
+	}
+
+	/**
+	 * Parses the whole file as string tokens.
+	 *
+	 * @return The edges, as a flat array of pairs: the i-th edge is
+	 * (result[2i], result[2i+1]).
+	 */
+	public String[] strings()
+		throws IOException
+	{
+		List<String[]> chunks = all(new Parse<String[]>() {
+			public String[] chunk(int i) throws IOException
+			{
+				return strings(i);
+			}
+		});
+
+		int total = 0;
+		for(String[] chunk : chunks)
+			total += chunk.length;
+
+		String[] result = new String[total];
+		int n = 0;
+		for(String[] chunk : chunks)
+		{
+			System.arraycopy(chunk, 0, result, n, chunk.length);
+			n += chunk.length;
+		}
+
+		return result;
+	}
+
+	/**
+	 * Parses the given chunk as integers.
+	 *
+	 * @return The edges in the chunk, as a flat array of pairs.
+	 */
+	public int[] ints(int chunk)
+		throws IOException
+	{
+		Chunk c = new Chunk(chunk);
+
+		int[] result = new int[1024];
+		int n = 0;
+
+		while(c.next())
+		{
+			if(n + 2 > result.length)
+				result = Arrays.copyOf(result, result.length * 2);
+
+			result[n++] = c.integer(c.s1, c.e1, "first");
+			result[n++] = c.integer(c.s2, c.e2, "second");
+		}
+
+		return Arrays.copyOf(result, n);
+	}
+
+	/**
+	 * Parses the given chunk as string tokens.
+	 *
+	 * @return The edges in the chunk, as a flat array of pairs.
+	 */
+	public String[] strings(int chunk)
+		throws IOException
+	{
+		Chunk c = new Chunk(chunk);
+
+		String[] result = new String[1024];
+		int n = 0;
+
+		while(c.next())
+		{
+			if(n + 2 > result.length)
+				result = Arrays.copyOf(result, result.length * 2);
+
+			result[n++] = c.string(c.s1, c.e1);
+			result[n++] = c.string(c.s2, c.e2);
+		}
+
+		return Arrays.copyOf(result, n);
+	}
+
+	/**
+	 * Receives the edges of a file, one chunk at a time.
+	 */
+	public interface Handler<T>
+	{
+		/**
+		 * @param edges The edges in a chunk, as a flat array of pairs.
+		 */
+		public void edges(T edges) throws IOException;
+	}
+
+	/**
+	 * Parses the whole file as integers, and passes the edges to the handler
+	 * one chunk at a time, in file order. The handler is called on the
+	 * calling thread. At most one chunk per thread is held in memory at a
+	 * time, so the file does not need to fit in memory.
+	 */
+	public void ints(Handler<int[]> handler)
+		throws IOException
+	{
+		each(new Parse<int[]>() {
+			public int[] chunk(int i) throws IOException
+			{
+				return ints(i);
+			}
+		}, handler);
+	}
+
+	/**
+	 * Parses the whole file as string tokens, and passes the edges to the
+	 * handler one chunk at a time, in file order (see
+	 * {@link #ints(Handler)}).
+	 */
+	public void strings(Handler<String[]> handler)
+		throws IOException
+	{
+		each(new Parse<String[]>() {
+			public String[] chunk(int i) throws IOException
+			{
+				return strings(i);
+			}
+		}, handler);
+	}
+
+	private interface Parse<T>
+	{
+		public T chunk(int i) throws IOException;
+	}
+
+	/**
+	 * Parses all chunks in parallel.
+	 *
+	 * @return The results, in order of chunk.
+	 */
+	private <T> List<T> all(final Parse<T> parse)
+		throws IOException
+	{
+		final List<T> results = new ArrayList<T>(numChunks());
+
+		each(parse, new Handler<T>() {
+			public void edges(T edges)
+			{
+				results.add(edges);
+			}
+		});
+
+		return results;
+	}
+
+	/**
+	 * Parses the chunks in parallel, and passes the results to the handler in
+	 * order of chunk. Only as many chunks as there are threads are parsed
+	 * ahead of the handler.
+	 */
+	private <T> void each(final Parse<T> parse, Handler<T> handler)
+		throws IOException
+	{
+		int n = numChunks();
+
+		if(n <= 1 || numThreads == 1)
+		{
+			for(int i : series(n))
+				handler.edges(parse.chunk(i));
+
+			return;
+		}
+
+		int window = Math.min(n, numThreads);
+		ExecutorService executor = Executors.newFixedThreadPool(window);
+		try
+		{
+			LinkedList<Future<T>> pending = new LinkedList<Future<T>>();
+			int next = 0;
+
+			while(next < n || ! pending.isEmpty())
+			{
+				while(next < n && pending.size() < window)
+				{
+					final int i = next++;
+					pending.add(executor.submit(new Callable<T>() {
+						public T call() throws IOException
+						{
+							return parse.chunk(i);
+						}
+					}));
+				}
+
+				handler.edges(get(pending.removeFirst()));
+			}
+		} finally
+		{
+			executor.shutdownNow();
+		}
+	}
+
+	private static <T> T get(Future<T> future)
+		throws IOException
+	{
+		try
+		{
+			return future.get();
+		} catch (InterruptedException e)
+		{
+			throw new RuntimeException(e);
+		} catch (ExecutionException e)
+		{
+			Throwable cause = e.getCause();
+			if(cause instanceof IOException)
+				throw (IOException) cause;
+			if(cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			throw new RuntimeException(cause);
+		}
+	}
+
+	private static boolean space(int c)
+	{
+		return c == ' ' || c == '\t' || c == '\r' || c == '\f' || c == 0x0B;
+	}
+
+	/**
+	 * A single mapped chunk, with a cursor over its lines.
+	 */
+	private class Chunk
+	{
+		private MappedByteBuffer buffer;
+		// * the position of the start of the buffer in the file
+		private long base;
+		// * lines starting at or after end belong to the next chunk
+		private int pos, end, limit;
+		// * whether the buffer extends to the end of the file
+		private boolean last;
+
+		// * the start and end of the two tokens of the current line
+		int s1, e1, s2, e2;
+
+		public Chunk(int i)
+			throws IOException
+		{
+			long start = (long) i * chunkSize;
+			long stop = Math.min(size, start + chunkSize);
+			long mapEnd = Math.min(size, stop + MAX_LINE);
+
+			// * we include the byte before the chunk, to see if the chunk
+			//   starts on a new line
+			base = Math.max(0, start - 1);
+			last = mapEnd == size;
+
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try
+			{
+				buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, base, mapEnd - base);
+			} finally
+			{
+				raf.close();
+			}
+
+			limit = buffer.limit();
+			end = (int)(stop - base);
+
+			pos = 0;
+			if(start > 0) // * skip the line that started in the previous chunk
+				skipLine();
+		}
+
+		private int at(int p)
+		{
+			return p < limit ? buffer.get(p) & 0xff : -1;
+		}
+
+		/**
+		 * Moves to the next edge.
+		 *
+		 * @return False if there are no more edges in this chunk.
+		 */
+		public boolean next()
+		{
+			while(pos < end)
+			{
+				while(space(at(pos)))
+					pos++;
+
+				int c = at(pos);
+
+				if(c == -1)
+					return false;
+
+				if(c == '\n')
+				{
+					pos++;
+					continue;
+				}
+
+				if(c == '#' || c == '%')
+				{
+					skipLine();
+					continue;
+				}
+
+				long line = base + pos;
+
+				s1 = pos;
+				e1 = token();
+
+				while(space(at(pos)))
+					pos++;
+
+				c = at(pos);
+				if(c == -1 && ! last)
+					throw new IllegalArgumentException("Line at byte "+line+" is too long.");
+				if(c == -1 || c == '\n')
+					throw new IllegalArgumentException("Line at byte "+line+" does not split into two elements.");
+
+				s2 = pos;
+				e2 = token();
+
+				if(pos == limit && ! last)
+					throw new IllegalArgumentException("Line at byte "+line+" is too long.");
+
+				skipLine();
+				return true;
+			}
+
+			return false;
+		}
+
+		private int token()
+		{
+			int c = at(pos);
+			while(c != -1 && c != '\n' && ! space(c))
+				c = at(++pos);
+
+			return pos;
+		}
+
+		/**
+		 * Moves to the start of the next line.
+		 */
+		private void skipLine()
+		{
+			while(pos < limit && buffer.get(pos) != '\n')
+				pos++;
+			pos++;
+		}
+
+		public int integer(int from, int to, String which)
+		{
+			long value = 0;
+			for(int p = from; p < to; p++)
+			{
+				int c = buffer.get(p);
+				if(c < '0' || c > '9')
+					throw new IllegalArgumentException("The "+which+" element at byte "+(base + from)+" ("+string(from, to)+") cannot be parsed into a non-negative integer.");
+
+				value = value * 10 + (c - '0');
+				if(value > Integer.MAX_VALUE)
+					throw new IllegalArgumentException("The "+which+" element at byte "+(base + from)+" ("+string(from, to)+") is too large.");
+			}
+
+			return (int) value;
+		}
+
+		public String string(int from, int to)
+		{
+			byte[] bytes = new byte[to - from];
+			for(int p = from; p < to; p++)
+				bytes[p - from] = buffer.get(p);
+
+			return new String(bytes, Charset.defaultCharset());
+		}
+	}
+}
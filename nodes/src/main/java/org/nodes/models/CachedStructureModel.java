@@ -0,0 +1,262 @@
+package org.nodes.models;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.nodes.DGraph;
+import org.nodes.DegreeSequences;
+import org.nodes.Graph;
+import org.nodes.UGraph;
+
+/**
+ * Caches the code lengths of a structure model by degree sequence.
+ *
+ * This is only valid for models whose code length depends on nothing but the
+ * degree sequence, up to a reordering of the nodes, like
+ * {@link DegreeSequenceModel}, {@link EdgeListModel} and
+ * {@link ERSimpleModel}. For a directed graph, the key is the multiset of
+ * (in, out) pairs, since the in and out degree of a node are not independent.
+ *
+ * The cache holds a bounded number of sequences and evicts the least recently
+ * used one when it is full. It is safe to use from several threads.
+ *
+ * @author Peter
+ *
+ */
+public class CachedStructureModel<G extends Graph<?>> implements StructureModel<G>
+{
+	public static final int DEFAULT_CAPACITY = 10000;
+
+	private StructureModel<G> model;
+	private ExecutorService executor;
+
+	private Map<Key, Double> cache;
+	private long hits = 0, misses = 0;
+
+	public CachedStructureModel(StructureModel<G> model)
+	{
+		this(model, DEFAULT_CAPACITY, null);
+	}
+
+	/**
+	 * @param capacity The maximum number of degree sequences to remember.
+	 * @param executor The executor to use for the batch computations. If null,
+	 * the common fork/join pool is used. If the model runs tasks of its own 
+	 * (like a {@link DegreeSequenceModel}), the two executors must not be the
+	 * same bounded pool: a batch task that waits for the model's tasks would 
+	 * hold a thread they need, and with enough batch tasks this deadlocks. A 
+	 * {@link ForkJoinPool} can be shared.
+	 */
+	public CachedStructureModel(StructureModel<G> model, final int capacity, ExecutorService executor)
+	{
+		if(capacity < 1)
+			throw new IllegalArgumentException("Capacity must be positive (was "+capacity+").");
+
+		this.model = model;
+		this.executor = executor == null ? ForkJoinPool.commonPool() : executor;
+
+		this.cache = new LinkedHashMap<Key, Double>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = -2413387466263598224L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Double> eldest)
+			{
+				return size() > capacity;
+			}
+		};
+	}
+
+	@Override
+	public double codelength(G graph)
+	{
+		Key key = new Key(graph);
+
+		Double cached = get(key);
+		if(cached != null)
+			return cached;
+
+		double codelength = model.codelength(graph);
+		put(key, codelength);
+
+		return codelength;
+	}
+
+	/**
+	 * Computes the code lengths of many graphs in parallel. Graphs with the
+	 * same degree sequence are only computed once.
+	 *
+	 * @return The code lengths, in the order of the graphs.
+	 */
+	public List<Double> codelengths(List<? extends G> graphs)
+	{
+		final double[] result = new double[graphs.size()];
+
+		// * Group the graphs that are not in the cache by degree sequence
+		final Map<Key, List<Integer>> todo = new LinkedHashMap<Key, List<Integer>>();
+		for(int i = 0; i < graphs.size(); i++)
+		{
+			Key key = new Key(graphs.get(i));
+
+			Double cached = get(key);
+			if(cached != null)
+			{
+				result[i] = cached;
+				continue;
+			}
+
+			if(! todo.containsKey(key))
+				todo.put(key, new ArrayList<Integer>());
+			todo.get(key).add(i);
+		}
+
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(todo.size());
+		for(final Map.Entry<Key, List<Integer>> entry : todo.entrySet())
+		{
+			final G graph = graphs.get(entry.getValue().get(0));
+
+			tasks.add(new Callable<Void>()
+			{
+				public Void call()
+				{
+					double codelength = model.codelength(graph);
+					put(entry.getKey(), codelength);
+
+					for(int i : entry.getValue())
+						result[i] = codelength;
+
+					return null;
+				}
+			});
+		}
+
+		try
+		{
+			for(Future<Void> future : executor.invokeAll(tasks))
+				future.get();
+		} catch (InterruptedException e)
+		{
+			throw new RuntimeException(e);
+		} catch (ExecutionException e)
+		{
+			throw new RuntimeException(e.getCause());
+		}
+
+		List<Double> list = new ArrayList<Double>(result.length);
+		for(double codelength : result)
+			list.add(codelength);
+
+		return list;
+	}
+
+	private synchronized Double get(Key key)
+	{
+		Double value = cache.get(key);
+
+		if(value == null)
+			misses++;
+		else
+			hits++;
+
+		return value;
+	}
+
+	private synchronized void put(Key key, double value)
+	{
+		cache.put(key, value);
+	}
+
+	public StructureModel<G> model()
+	{
+		return model;
+	}
+
+	public synchronized int size()
+	{
+		return cache.size();
+	}
+
+	public synchronized long hits()
+	{
+		return hits;
+	}
+
+	public synchronized long misses()
+	{
+		return misses;
+	}
+
+	public synchronized void clear()
+	{
+		cache.clear();
+	}
+
+	/**
+	 * A canonical form of the degree sequence of a graph: the sorted degrees,
+	 * or for directed graphs the sorted (in, out) pairs.
+	 */
+	private static class Key
+	{
+		private boolean directed;
+		private long[] degrees;
+		private int hash;
+
+		public Key(Graph<?> graph)
+		{
+			if(graph instanceof DGraph<?>)
+			{
+				directed = true;
+
+				int[] in = DegreeSequences.inDegrees((DGraph<?>) graph);
+				int[] out = DegreeSequences.outDegrees((DGraph<?>) graph);
+
+				degrees = new long[in.length];
+				for(int i = 0; i < degrees.length; i++)
+					degrees[i] = ((long) in[i] << 32) | out[i];
+
+			} else if(graph instanceof UGraph<?>)
+			{
+				directed = false;
+
+				int[] all = DegreeSequences.degrees(graph);
+
+				degrees = new long[all.length];
+				for(int i = 0; i < degrees.length; i++)
+					degrees[i] = all[i];
+
+			} else
+				throw new IllegalArgumentException("Can only handle graphs of type UGraph or DGraph");
+
+			Arrays.sort(degrees);
+			hash = 31 * Arrays.hashCode(degrees) + (directed ? 1 : 0);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if(this == obj)
+				return true;
+			if(!(obj instanceof Key))
+				return false;
+
+			Key other = (Key) obj;
+
+			return hash == other.hash && directed == other.directed &&
+					Arrays.equals(degrees, other.degrees);
+		}
+	}
+}
@@ -28,22 +28,23 @@ import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.PriorityQueue;
+import java.util.Random;
 import java.util.Set;
 import java.util.Vector;
-import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 
 import org.apache.commons.math3.distribution.NormalDistribution;
 import org.apache.commons.math3.distribution.TDistribution;
 import org.nodes.DGraph;
 import org.nodes.DNode;
+import org.nodes.DegreeSequences;
 import org.nodes.Graph;
 import org.nodes.MapDTGraph;
 import org.nodes.MapUTGraph;
 import org.nodes.Node;
 import org.nodes.UGraph;
 
-import nl.peterbloem.kit.Functions;
 import nl.peterbloem.kit.Generator;
 import nl.peterbloem.kit.Global;
 import nl.peterbloem.kit.LogNum;
@@ -67,19 +68,21 @@ public class DSequenceEstimator<L>
 	private List<D> sequence;
 	
 	private List<Double> logSamples = new Vector<Double>();
+	
+	// * The samplers reuse their workspace, so each thread gets its own
+	private ThreadLocal<DSequenceSampler> samplers = new ThreadLocal<DSequenceSampler>() {
+		protected DSequenceSampler initialValue()
+		{
+			return new DSequenceSampler(in(sequence), out(sequence));
+		}
+	};
 
 	public DSequenceEstimator(DGraph<?> data, int samples)
 	{
 		this(data);
 		
-		int dotPer = (int)Math.ceil(samples/100.0);
 		for(int i : series(samples))
-		{
-			if(i % dotPer == 0)
-				System.out.print('.');
-			nonuniform();
-		}
-		System.out.println();
+			sample();
 	}
 	
 	public DSequenceEstimator(DGraph<?> data)
@@ -98,13 +101,8 @@ public class DSequenceEstimator<L>
 	{
 		this(inSequence, outSequence);
 
-		Functions.tic();
 		for(int i : series(samples))
-		{
-			nonuniform();
-			if(Functions.toc() > 10)
-				System.out.println("\r " + logSamples.size() + "samples completed");
-		}
+			sample();
 	}
 	
 	public DSequenceEstimator(List<Integer> inSequence, List<Integer> outSequence)
@@ -126,7 +124,7 @@ public class DSequenceEstimator<L>
 	}
 	
 	public static final int BOOTSTRAP_SAMPLES = 10000;
-	private static final double SMOOTH = 0.0;
+	static final double SMOOTH = 0.0;
 	
 	public double effectiveSampleSize()
 	{
@@ -205,173 +203,87 @@ public class DSequenceEstimator<L>
 	 * Samples the given number of graphs from this sequence model. The 
 	 * resulting log-probabilities are stored in the model.
 	 * 
-	 * Multithreaded
+	 * The samples are drawn in numThreads tasks on the common fork/join pool, 
+	 * so repeated calls do not create threads.
 	 */
-	public void nonuniform(final int samples, final int numThreads)
+	public void nonuniform(int samples, int numThreads)
 	{
-		final int perThread = samples/numThreads;
-		final int rem = samples - perThread * numThreads;
-		
-		List<Thread> threads = new ArrayList<Thread>(numThreads);
-		for(final int t : series(numThreads))
-		{
-			Thread thread = new Thread() {
-				public void run()
-				{
-					for(int i : series(perThread + (t == 0 ? rem : 0)))
-						nonuniform();
-				}
-			};
-			threads.add(thread);
-		}
-		
-		for(Thread thread : threads)
-		{
-			thread.start();
-		}
-
-		// * Wait until all threads are finished
-		try
-		{
-			for(Thread thread : threads)
-				thread.join();
-		} catch (InterruptedException e)
-		{
-			throw new RuntimeException(e);
-		}
+		nonuniform(samples, numThreads, null);
 	}
 	
 	/**
 	 * Samples the given number of graphs from this sequence model. The 
 	 * resulting log-probabilities are stored in the model.
 	 * 
-	 *
-	 * Multithreaded
+	 * @param numThreads The number of tasks to sample in.
+	 * @param executor The executor to run the sampling tasks on. If null, the 
+	 *   common fork/join pool is used.
 	 */
-	public void nonuniform(final int samples, final int numThreads, ExecutorService executor)
+	public void nonuniform(int samples, int numThreads, ExecutorService executor)
 	{
 		if(executor == null)
-		{
-			nonuniform(samples, numThreads);
-			return;
-		}	
-		
-		final int perThread = samples/numThreads;
-		final int rem = samples - perThread * numThreads;
-		
-		List<Callable<Void>> todo = new ArrayList<Callable<Void>>(numThreads);
-		for(final int t : series(numThreads))
-		{
-			Callable<Void> thread = new Callable<Void>() {
-				public Void call()
-				{
-					for(int i : series(perThread + (t == 0 ? rem : 0)))
-						nonuniform();
-					
-					return null;
-				}
-			};
-			todo.add(thread);
-		}
+			executor = ForkJoinPool.commonPool();
 		
-		try {
-			executor.invokeAll(todo);
-		} catch (InterruptedException e) {
-			throw new RuntimeException(e);
-		}
+		nonuniform(SampleBudget.samples(samples), Global.random().nextLong(), executor, numThreads);
 	}
 	
 	/**
-	 * Generates a random graph with the given degree  
+	 * Samples graphs from this sequence model until the budget is exhausted. 
+	 * The resulting log-probabilities are stored in the model. 
 	 * 
-	 * @return
+	 * For a given seed, the samples do not depend on the executor or the number
+	 * of threads (unless the budget contains a time limit).
+	 * 
+	 * @param executor The executor to run the sampling tasks on. If null, the 
+	 *   common fork/join pool is used.
 	 */
-	public Result nonuniform()
+	public void nonuniform(SampleBudget budget, long seed, ExecutorService executor)
 	{
-		// * Create an empty graph
-		DGraph<L> graph = new MapDTGraph<L, String>();
-		
-		int n = sequence.size();
-		
-		for(int i : Series.series(n))
-			graph.add(label);
-		
-		// * Residual degrees
-		List<D> sequence = new ArrayList<D>(this.sequence);
-		
-		// * The log number of edge sequences producing the graph that will be
-		//   sampled
-		double logCY = 0; 
-		// * The log probability of the edge sequence that we've sampled 
-		double logSigY = 0;
+		if(executor == null)
+			executor = ForkJoinPool.commonPool();
 		
-		while(sum(sequence) > 0) // TODO: keep running value of sum
-		{			
-			// * Find the smallest i whose index is nonzero and minimal
-			int fromIndex = -1, fromOut = Integer.MAX_VALUE;
-			for(int index : Series.series(n))
+		nonuniform(budget, seed, executor, ParallelSampler.parallelism(executor));
+	}
+	
+	private void nonuniform(SampleBudget budget, long seed, ExecutorService executor, int numTasks)
+	{
+		double[] samples = ParallelSampler.sample(new ParallelSampler.Source() {
+			public double sample(Random random)
 			{
-				int outDegree = sequence.get(index).out();
-
-				if(outDegree != 0 && outDegree < fromOut)
-				{
-					fromIndex = index;
-					fromOut = outDegree;
-				}
+				return samplers.get().sample(random);
 			}
-			
-			logCY += Functions.logFactorial(fromOut, 2.0);
-			
-			while(sequence.get(fromIndex).out() > 0)
-			{
-				DNode<L> from = graph.get(fromIndex);
-				
-				List<Integer> toCandidates = findAcceptableSet(sequence, graph, from);
-//				System.out.println("candidates: " + toCandidates);
-				
-				int i;
-				if(toCandidates.isEmpty())
-				{
-					throw new IllegalStateException("Candidates is empty. Residual degree sequence: " + sequence);
-				}
-				
-				if(PICK_CANDIDATE_BY_DEGREE) // * choose the candidate by weighted indegree
-				{
-					List<Double> candidateWeights = new ArrayList<Double>(n);
-					int sum = 0;
-					
-					for(int toIndex : toCandidates)
-					{
-						candidateWeights.add((double)sequence.get(toIndex).in() + SMOOTH);
-						sum += sequence.get(toIndex).in() + SMOOTH;
-					}
-					
-					i = choose(candidateWeights, sum);
-					logSigY += log2(candidateWeights.get(i)/sum);
-
-				} else // * uniform choice
-				{
-					i = Global.random().nextInt(toCandidates.size());
-					logSigY += - log2(toCandidates.size());
-				}
-				
-				
-				int toIndex = toCandidates.get(i);
-//				System.out.println("candidate: " + toIndex);
-				
-				Node<L> to = graph.get(toIndex);
-				
-				from.connect(to);
-				
-				sequence.set(fromIndex, sequence.get(fromIndex).decOut());
-				sequence.set(toIndex, sequence.get(toIndex).decIn());
-
-			}
-		}
+		}, budget, seed, numTasks, executor);
+		
+		List<Double> list = new ArrayList<Double>(samples.length);
+		for(double sample : samples)
+			list.add(sample);
 		
-		logSamples.add(- logCY - logSigY);
+		logSamples.addAll(list);
+	}
+	
+	/**
+	 * Generates a random graph with the given degree sequences, and stores 
+	 * the log-probability of the sample.
+	 * 
+	 * The graph is only created if it is requested from the result.
+	 * 
+	 * @return
+	 */
+	public Result nonuniform()
+	{
+		DSequenceSampler sampler = samplers.get();
+		logSamples.add(sampler.sample(Global.random()));
 		
-		return new Result(graph, logCY, logSigY);
+		return new Result(sampler.links(), sampler.logC(), sampler.logSigma());
+	}
+	
+	/**
+	 * Draws a sample and stores its log-probability, without creating a 
+	 * result.
+	 */
+	private void sample()
+	{
+		logSamples.add(samplers.get().sample(Global.random()));
 	}
 	
 	private static int numZeroes(List<Integer> seq)
@@ -516,7 +428,8 @@ public class DSequenceEstimator<L>
 	}	
 	
 	/**
-	 * TODO: sort the input
+	 * Whether the pair of sequences is graphical (see 
+	 * {@link DegreeSequences#isGraphical(int[], int[])}).
 	 * 
 	 * @param in
 	 * @param out
@@ -524,50 +437,13 @@ public class DSequenceEstimator<L>
 	 */
 	public static boolean isGraphical(List<Integer> in, List<Integer> out)
 	{
-		assert(in.size() == out.size());
-		
-		int n = in.size();
-		
-		// * the basics
-		for(int d : in)
-			if(d > n - 1)
-				return false;
-		
-		for(int d : out)
-			if(d > n - 1)
-				return false;
-		
-		if(sums(in) != sums(out))
-			return false;
-		
-		List<Integer> g1 = g1(out);
-		List<Integer> s = s(out);
-
-		int lk = 0;
-		int rk = 0;
-		int squigk = 0;
-		
-		for(int k : series(1, n))
-		{
-			// * update lk, squigk, rk
-			lk += in.get(k - 1);
-				
-			if(k == 1)
-				rk = n - 1 - g(1, 0, out);
-			else
-			    rk += n - squigk - i(out.get(k-1) >= k); 
-			
-			if(lk > rk)
-				return false;
-			
-			// * update squigk
-			if(k == 1)
-				squigk = g(1, 0, out) + g(1, 1, out); 
-			else	
-				squigk += g1.get(k-1) + s.get(k-1);
-		}
+		int[] inArray = new int[in.size()], outArray = new int[out.size()];
+		for(int i = 0; i < inArray.length; i++)
+			inArray[i] = in.get(i);
+		for(int i = 0; i < outArray.length; i++)
+			outArray[i] = out.get(i);
 		
-		return true;
+		return DegreeSequences.isGraphical(inArray, outArray);
 	}
 	
 	protected static List<Integer> g1(List<Integer> out)
@@ -766,18 +642,11 @@ public class DSequenceEstimator<L>
 		return sum;
 	}
 	
-	private static int sums(List<Integer> seq)
-	{
-		int sum = 0;
-		for(int p : seq)
-			sum += p;
-		
-		return sum; 
-	}
-	
 	public class Result 
 	{
-		private DGraph<L> graph;
+		private DGraph<L> graph = null;
+		// * the links of the graph, if it hasn't been created yet
+		private int[] links;
 		private double c;
 		private double sigma;
 		
@@ -788,8 +657,27 @@ public class DSequenceEstimator<L>
 			this.sigma = sigma;
 		}
 		
+		private Result(int[] links, double c, double sigma)
+		{
+			this.links = links;
+			this.c = c;
+			this.sigma = sigma;
+		}
+		
 		public DGraph<L> graph()
 		{
+			if(graph == null)
+			{
+				graph = new MapDTGraph<L, String>();
+				for(int i : series(sequence.size()))
+					graph.add(label);
+				
+				for(int i = 0; i < links.length; i += 2)
+					graph.get(links[i]).connect(graph.get(links[i + 1]));
+				
+				links = null;
+			}
+			
 			return graph;
 		}
 		public double logC()
@@ -804,7 +692,7 @@ public class DSequenceEstimator<L>
 		@Override
 		public String toString()
 		{
-			return graph + " c=" + c + ", sig=" + sigma + "]";
+			return graph() + " c=" + c + ", sig=" + sigma + "]";
 		}
 		
 		
@@ -0,0 +1,632 @@
+package org.nodes.models;
+
+import static nl.peterbloem.kit.Functions.log2;
+import static nl.peterbloem.kit.Series.series;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.nodes.util.LogFactorials;
+
+/**
+ * The sampling core of {@link DSequenceEstimator}: draws a directed graph from
+ * the sequential importance sampling distribution for a pair of in- and
+ * out-degree sequences, using only primitive arrays.
+ *
+ * The residual in- and out-degrees are kept in parallel int arrays. The nodes
+ * are kept in an order sorted by residual degree (in-degree first, then
+ * out-degree, both descending), which is repaired after every link, instead of
+ * sorting the whole sequence for every step. To find the acceptable set, only
+ * the few nodes that the hub affects are sorted, and merged into this order.
+ *
+ * The sampler and all its scratch space form a workspace that is allocated
+ * once, and reset between samples. A sampler is not thread-safe: each thread
+ * should use its own.
+ *
+ * @author Peter
+ *
+ */
+class DSequenceSampler
+{
+	private int n;
+	private int[] inSequence, outSequence;
+	private int total;
+
+	private int[] in, out;
+	private int remaining;
+
+	// * The nodes sorted by residual degree (descending) and then by index
+	private int[] order;
+	private int[] rank;
+	private int[] initialOrder;
+
+	// * The out-neighbors of each node so far, in rows of the final out-degree
+	private int[] offsets;
+	private int[] adjacency;
+	private int[] outDegrees;
+
+	// * The links sampled so far, as a flat array of pairs
+	private int[] links;
+	private int numLinks;
+
+	// * An indexed min-heap of the nodes with nonzero residual out-degree,
+	//   ordered by residual out-degree and then by index
+	private int[] heap;
+	private int[] position;
+	private int heapSize;
+
+	// * Scratch space for the acceptable set
+	private int[] forbidden, taken;
+	private int stamp = 0;
+	private int[] modified;
+	private long[] modifiedKeys;
+	private int[] sortedIn, sortedOut;
+	private boolean[] sortedAllowed;
+	private int[] g1, s;
+	private int[] candidates;
+	private double[] weights;
+	private int failIn, failOut;
+
+	private double logC, logSigma;
+
+	public DSequenceSampler(List<Integer> inSequence, List<Integer> outSequence)
+	{
+		if(inSequence.size() != outSequence.size())
+			throw new IllegalArgumentException("In- and out-sequence should have the same size ("+inSequence.size()+", "+outSequence.size()+").");
+
+		n = inSequence.size();
+		this.inSequence = new int[n];
+		this.outSequence = new int[n];
+
+		int inTotal = 0;
+		for(int i = 0; i < n; i++)
+		{
+			int inDegree = inSequence.get(i), outDegree = outSequence.get(i);
+			if(inDegree < 0 || outDegree < 0)
+				throw new IllegalArgumentException("Negative degree ("+inDegree+", "+outDegree+") at index " + i + ".");
+
+			this.inSequence[i] = inDegree;
+			this.outSequence[i] = outDegree;
+			inTotal += inDegree;
+			total += outDegree;
+		}
+
+		if(inTotal != total)
+			throw new IllegalArgumentException("Sum of the in-sequence ("+inTotal+") does not equal the sum of the out-sequence ("+total+").");
+
+		in = new int[n];
+		out = new int[n];
+
+		order = new int[n];
+		rank = new int[n];
+
+		// * The order at the start of each sample
+		List<Integer> nodes = new ArrayList<Integer>(series(n));
+		Collections.sort(nodes, new Comparator<Integer>()
+		{
+			public int compare(Integer a, Integer b)
+			{
+				int c = - Integer.compare(DSequenceSampler.this.inSequence[a], DSequenceSampler.this.inSequence[b]);
+				if(c != 0)
+					return c;
+				c = - Integer.compare(DSequenceSampler.this.outSequence[a], DSequenceSampler.this.outSequence[b]);
+				if(c != 0)
+					return c;
+				return Integer.compare(a, b);
+			}
+		});
+		initialOrder = new int[n];
+		for(int r = 0; r < n; r++)
+			initialOrder[r] = nodes.get(r);
+
+		offsets = new int[n + 1];
+		for(int i = 0; i < n; i++)
+			offsets[i + 1] = offsets[i] + this.outSequence[i];
+		adjacency = new int[total];
+		outDegrees = new int[n];
+
+		links = new int[2 * total];
+
+		heap = new int[n];
+		position = new int[n];
+
+		forbidden = new int[n];
+		taken = new int[n];
+		modified = new int[n];
+		modifiedKeys = new long[n];
+		sortedIn = new int[n];
+		sortedOut = new int[n];
+		sortedAllowed = new boolean[n];
+		g1 = new int[n + 1];
+		s = new int[n + 1];
+		candidates = new int[n];
+		weights = new double[n];
+
+		reset();
+	}
+
+	/**
+	 * Resets the workspace to the start of a sample: full residual degrees
+	 * and no links.
+	 */
+	void reset()
+	{
+		System.arraycopy(inSequence, 0, in, 0, n);
+		System.arraycopy(outSequence, 0, out, 0, n);
+		remaining = total;
+
+		Arrays.fill(outDegrees, 0);
+		numLinks = 0;
+
+		logC = 0.0;
+		logSigma = 0.0;
+
+		System.arraycopy(initialOrder, 0, order, 0, n);
+		for(int r = 0; r < n; r++)
+			rank[order[r]] = r;
+
+		heapSize = 0;
+		for(int i = 0; i < n; i++)
+			if(out[i] > 0)
+			{
+				heap[heapSize] = i;
+				position[i] = heapSize;
+				heapSize++;
+			}
+		for(int i = heapSize/2 - 1; i >= 0; i--)
+			down(i);
+	}
+
+	/**
+	 * Samples a graph.
+	 *
+	 * @return The log (base 2) of the importance weight of the sample:
+	 *   - logC() - logSigma().
+	 */
+	public double sample(Random random)
+	{
+		reset();
+
+		while(remaining > 0)
+		{
+			int hub = hub();
+
+			logC += LogFactorials.log2Factorial(out[hub]);
+
+			while(out[hub] > 0)
+			{
+				int k = acceptable(hub, candidates);
+				if(k == 0)
+					throw new IllegalStateException("No acceptable nodes to connect node " + hub + " to. The degree sequences are probably not graphical.");
+
+				int to;
+				if(DSequenceEstimator.PICK_CANDIDATE_BY_DEGREE)
+				{
+					double sum = 0.0;
+					for(int j = 0; j < k; j++)
+					{
+						weights[j] = in[candidates[j]] + DSequenceEstimator.SMOOTH;
+						sum += weights[j];
+					}
+
+					if(sum <= 0.0)
+						throw new IllegalStateException("No acceptable nodes with nonzero in-degree to connect node " + hub + " to.");
+
+					double draw = random.nextDouble() * sum;
+					int j = 0;
+					double cumulative = weights[0];
+					while(cumulative <= draw && j < k - 1)
+						cumulative += weights[++j];
+
+					to = candidates[j];
+					logSigma += log2(weights[j] / sum);
+				} else
+				{
+					to = candidates[random.nextInt(k)];
+					logSigma += - log2(k);
+				}
+
+				connect(hub, to);
+			}
+		}
+
+		return - logC - logSigma;
+	}
+
+	/**
+	 * The node to connect next: the node with the smallest nonzero residual
+	 * out-degree (and the smallest index among those), or -1 if the sample is
+	 * complete.
+	 */
+	int hub()
+	{
+		return heapSize == 0 ? -1 : heap[0];
+	}
+
+	/**
+	 * Adds a link to the current sample, and updates the residual degrees.
+	 */
+	void connect(int from, int to)
+	{
+		adjacency[offsets[from] + outDegrees[from]++] = to;
+
+		links[2 * numLinks] = from;
+		links[2 * numLinks + 1] = to;
+		numLinks++;
+
+		out[from]--;
+		if(out[from] == 0)
+			remove(from);
+		else
+			up(position[from]);
+		moveDown(from);
+
+		in[to]--;
+		moveDown(to);
+
+		remaining--;
+	}
+
+	/**
+	 * Computes the set of nodes that the hub can be connected to, without
+	 * making the residual degree sequences ungraphical. See
+	 * {@link DSequenceEstimator#findAcceptableSet(List, org.nodes.DGraph, org.nodes.DNode)}
+	 * for the algorithm.
+	 *
+	 * @param result The indices of the acceptable nodes are written to this
+	 *   array, in increasing order.
+	 * @return The number of acceptable nodes.
+	 */
+	int acceptable(int hub, int[] result)
+	{
+		// * Mark the forbidden nodes: the hub and its out-neighbors
+		stamp++;
+		for(int j = offsets[hub]; j < offsets[hub] + outDegrees[hub]; j++)
+			forbidden[adjacency[j]] = stamp;
+		forbidden[hub] = stamp;
+
+		// * Pretend that we've connected all but one of the leftmost adjacency
+		//   set to the hub: these are the largest allowed nodes (followed by
+		//   the largest forbidden ones, if there are too few). Each loses one
+		//   in-degree, and becomes forbidden. The hub's out-degree is set to
+		//   one.
+		int need = out[hub] - 1;
+		for(int r = 0; r < n && need > 0; r++)
+			if(forbidden[order[r]] != stamp)
+			{
+				taken[order[r]] = stamp;
+				need--;
+			}
+
+		while(need > 0)
+		{
+			// * Not enough allowed nodes: take the largest forbidden one
+			int best = -1;
+			long bestKey = -1;
+			for(int r = 0; r < n; r++)
+			{
+				int node = order[r];
+				if(taken[node] == stamp)
+					continue;
+
+				long key = key(in[node], node == hub ? 1 : out[node], false);
+				if(key > bestKey || (key == bestKey && node < best))
+				{
+					best = node;
+					bestKey = key;
+				}
+			}
+
+			if(best < 0)
+				break;
+
+			taken[best] = stamp;
+			need--;
+		}
+
+		// * Collect the nodes whose entries change, and sort them by their new
+		//   keys
+		int m = 0;
+		for(int r = 0; r < n; r++)
+			if(modified(order[r]))
+				modified[m++] = order[r];
+
+		for(int i = 0; i < m; i++)
+			modifiedKeys[i] = modifiedKey(modified[i], hub);
+		Arrays.sort(modifiedKeys, 0, m);
+
+		// * Merge them into the sorted order of the unchanged nodes
+		int len = 0, r = 0, i = m - 1;
+		while(len < n)
+		{
+			while(r < n && modified(order[r]))
+				r++;
+
+			long next = r < n ? key(in[order[r]], out[order[r]], true) : -1;
+			if(i >= 0 && modifiedKeys[i] > next)
+			{
+				long key = modifiedKeys[i--];
+				sortedIn[len] = (int)(key >>> 32) - 1;
+				sortedOut[len] = (int)((key & 0xffffffffL) >>> 1);
+				sortedAllowed[len] = (key & 1L) == 1L;
+			} else
+			{
+				sortedIn[len] = in[order[r]];
+				sortedOut[len] = out[order[r]];
+				sortedAllowed[len] = true;
+				r++;
+			}
+
+			len++;
+		}
+
+		// * The hub's position in the sorted sequence only matters insofar as
+		//   it is first or not. Ties are broken by index.
+		long hubKey = modifiedKey(hub, hub);
+		boolean hubFirst = key(sortedIn[0], sortedOut[0], sortedAllowed[0]) == hubKey;
+		for(int j = 0; j < m && hubFirst; j++)
+			if(modified[j] < hub && modifiedKey(modified[j], hub) == hubKey)
+				hubFirst = false;
+
+		maxFailDegree(hubFirst);
+
+		int k = 0;
+		for(int node = 0; node < n; node++)
+			if(forbidden[node] != stamp &&
+					(in[node] > failIn || (in[node] == failIn && out[node] > failOut)))
+				result[k++] = node;
+
+		return k;
+	}
+
+	/**
+	 * Whether the entry of a node changes when the leftmost nodes are
+	 * connected to the hub.
+	 */
+	private boolean modified(int node)
+	{
+		return forbidden[node] == stamp || taken[node] == stamp;
+	}
+
+	/**
+	 * The key of a node in the sorted sequence after the leftmost nodes have
+	 * been connected to the hub.
+	 */
+	private long modifiedKey(int node, int hub)
+	{
+		int i = in[node], o = out[node];
+		if(node == hub)
+			o = 1;
+
+		if(taken[node] == stamp)
+			i--;
+
+		return key(i, o, false);
+	}
+
+	/**
+	 * A sort key for a node in the residual degree sequence: by in-degree,
+	 * out-degree and then whether the node is allowed. The in-degree may be -1.
+	 */
+	private static long key(int in, int out, boolean allowed)
+	{
+		return (long)(in + 1) << 32 | (long) out << 1 | (allowed ? 1L : 0L);
+	}
+
+	/**
+	 * See {@link DSequenceEstimator#findMaxFailDegree(List, int)}. The result
+	 * is stored in failIn and failOut.
+	 */
+	private void maxFailDegree(boolean hubFirst)
+	{
+		failIn = -1;
+		failOut = -1;
+
+		if(n == 0)
+			return;
+
+		// * g1
+		Arrays.fill(g1, 0, n + 1, 0);
+		g1[sortedOut[0]] = 1;
+		for(int i = 1; i < n; i++)
+			if(sortedOut[i] > 0)
+				g1[sortedOut[i] - 1]++;
+
+		// * s
+		Arrays.fill(s, 0, n, 0);
+		for(int t = 2; t <= n; t++)
+		{
+			int dt = sortedOut[t - 1];
+			if(t <= dt)
+			{
+				s[dt]++;
+				s[dt - 1]--;
+			}
+		}
+
+		// * G_1(0) and G_1(1)
+		int g10 = 0, g11 = sortedOut[0] == 0 ? 1 : 0;
+		for(int i = 1; i < n; i++)
+		{
+			if(sortedOut[i] == 0)
+				g10++;
+			if(sortedOut[i] == 1)
+				g11++;
+		}
+
+		int lk = 0, rk = 0, squigk = 0;
+		for(int k = 1; k < n; k++)
+		{
+			lk += sortedIn[k - 1];
+
+			if(k == 1)
+				rk = n - 1 - g10;
+			else
+				rk += n - squigk - (sortedOut[k - 1] >= k ? 1 : 0);
+
+			if(!(k == 1 && hubFirst))
+				if(lk == rk)
+				{
+					int index = k;
+					while(index < n && ! sortedAllowed[index])
+						index++;
+
+					if(index < n)
+					{
+						failIn = sortedIn[index];
+						failOut = sortedOut[index];
+					}
+
+					return;
+				}
+
+			if(k == 1)
+				squigk = g10 + g11;
+			else
+				squigk += g1[k - 1] + s[k - 1];
+		}
+	}
+
+	/**
+	 * Moves a node whose residual degree has just decreased to its place in
+	 * the sorted order.
+	 */
+	private void moveDown(int node)
+	{
+		int r = rank[node];
+		while(r + 1 < n && before(order[r + 1], node))
+		{
+			order[r] = order[r + 1];
+			rank[order[r]] = r;
+			r++;
+		}
+
+		order[r] = node;
+		rank[node] = r;
+	}
+
+	/**
+	 * Whether node a comes before node b in the sorted order.
+	 */
+	private boolean before(int a, int b)
+	{
+		if(in[a] != in[b])
+			return in[a] > in[b];
+		if(out[a] != out[b])
+			return out[a] > out[b];
+		return a < b;
+	}
+
+	private boolean less(int a, int b)
+	{
+		return out[a] < out[b] || (out[a] == out[b] && a < b);
+	}
+
+	private void up(int i)
+	{
+		int node = heap[i];
+		while(i > 0)
+		{
+			int parent = (i - 1) / 2;
+			if(! less(node, heap[parent]))
+				break;
+
+			heap[i] = heap[parent];
+			position[heap[i]] = i;
+			i = parent;
+		}
+
+		heap[i] = node;
+		position[node] = i;
+	}
+
+	private void down(int i)
+	{
+		int node = heap[i];
+		while(true)
+		{
+			int child = 2 * i + 1;
+			if(child >= heapSize)
+				break;
+
+			if(child + 1 < heapSize && less(heap[child + 1], heap[child]))
+				child++;
+
+			if(! less(heap[child], node))
+				break;
+
+			heap[i] = heap[child];
+			position[heap[i]] = i;
+			i = child;
+		}
+
+		heap[i] = node;
+		position[node] = i;
+	}
+
+	private void remove(int node)
+	{
+		int i = position[node];
+
+		heapSize--;
+		if(i == heapSize)
+			return;
+
+		int last = heap[heapSize];
+		heap[i] = last;
+		position[last] = i;
+
+		up(i);
+		down(position[last]);
+	}
+
+	public int size()
+	{
+		return n;
+	}
+
+	/**
+	 * The residual in-degree of a node in the current sample.
+	 */
+	int in(int node)
+	{
+		return in[node];
+	}
+
+	/**
+	 * The residual out-degree of a node in the current sample.
+	 */
+	int out(int node)
+	{
+		return out[node];
+	}
+
+	/**
+	 * The log of the number of link orderings that produce the last sample.
+	 */
+	public double logC()
+	{
+		return logC;
+	}
+
+	/**
+	 * The log probability of the link ordering of the last sample.
+	 */
+	public double logSigma()
+	{
+		return logSigma;
+	}
+
+	/**
+	 * A copy of the links of the last sample, as a flat array of (from, to)
+	 * pairs.
+	 */
+	public int[] links()
+	{
+		return Arrays.copyOf(links, 2 * numLinks);
+	}
+}
@@ -5,6 +5,7 @@ import static org.nodes.models.DSequenceEstimator.in;
 import static org.nodes.models.DSequenceEstimator.out;
 
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 import org.nodes.DGraph;
 import org.nodes.Graph;
@@ -36,10 +37,11 @@ public class DegreeSequenceModel implements StructureModel<Graph<? extends Objec
 	 */
 	public static enum Prior {NONE, ML, COMPLETE}; 
 	
-	private int iterations;
+	private SampleBudget budget;
 	private double alpha;
 	private Margin margin;
 	private Prior prior;
+	private ExecutorService executor;
 		
 	/**
 	 * 
@@ -49,10 +51,36 @@ public class DegreeSequenceModel implements StructureModel<Graph<? extends Objec
 	 */
 	public DegreeSequenceModel(int iterations, double alpha, Prior prior, Margin margin)
 	{
-		this.iterations = iterations;
+		this(SampleBudget.samples(iterations), alpha, prior, margin, null);
+	}
+	
+	/**
+	 * Adaptive sampling: samples in batches until the confidence interval of 
+	 * the estimate (at the given alpha) is within the given number of bits of
+	 * the estimate, or until maxIterations samples have been drawn.
+	 */
+	public DegreeSequenceModel(int maxIterations, double bits, double alpha, Prior prior, Margin margin)
+	{
+		this(SampleBudget.samples(maxIterations).halfWidth(bits, alpha), alpha, prior, margin, null);
+	}
+	
+	/**
+	 * @param budget When to stop sampling for each graph.
+	 * @param executor The executor to sample on. This can be shared between 
+	 *   models, and between calls. If null, the common fork/join pool is used.
+	 *   Since codelength() waits for its sampling tasks, it should not be 
+	 *   called from a task on the same bounded pool (for instance by a 
+	 *   {@link CachedStructureModel} with the same executor): with enough 
+	 *   such calls, all threads wait and none are left to sample. A 
+	 *   {@link java.util.concurrent.ForkJoinPool} can be shared.
+	 */
+	public DegreeSequenceModel(SampleBudget budget, double alpha, Prior prior, Margin margin, ExecutorService executor)
+	{
+		this.budget = budget;
 		this.alpha = alpha;
 		this.margin = margin;
 		this.prior = prior;
+		this.executor = executor;
 	}
 
 	@Override
@@ -74,18 +102,15 @@ public class DegreeSequenceModel implements StructureModel<Graph<? extends Objec
 	
 	private LogNormalCI directed(DGraph<?> graph)
 	{
-		int numThreads = Global.numThreads();
-		
 		DSequenceEstimator<? extends Object> model = new DSequenceEstimator<Object>(graph);
-		model.nonuniform(iterations, numThreads);
+		model.nonuniform(budget, Global.random().nextLong(), executor);
 		return new LogNormalCI(model.logSamples());
 	}
 	 
 	private LogNormalCI undirected(UGraph<?> graph)
 	{
-		int numThreads = Runtime.getRuntime().availableProcessors();
 		USequenceEstimator<? extends Object> model = new USequenceEstimator<Object>(graph);
-		model.nonuniform(iterations, numThreads);
+		model.nonuniform(budget, Global.random().nextLong(), executor);
 		return new LogNormalCI(model.logSamples());
 	}
 	
@@ -1,7 +1,7 @@
 package org.nodes.models;
 
 import static nl.peterbloem.kit.Functions.log2;
-import static nl.peterbloem.kit.Functions.log2Choose;
+import static org.nodes.util.LogFactorials.log2Choose;
 import static nl.peterbloem.kit.Functions.prefix;
 
 import org.nodes.DGraph;
@@ -34,7 +34,7 @@ public class ERSimpleModel implements StructureModel<Graph<? extends Object>>, R
 			double t = n * (n - 1) / 2;
 			
 			try {
-				return (withPrior ? prefix((long)n) + log2(t + 1) : 0.0) + log2Choose(graph.numLinks(), t);	
+				return (withPrior ? prefix((long)n) + log2(t + 1) : 0.0) + log2Choose(graph.numLinks(), (long) t);	
 			} catch (RuntimeException e)
 			{
 				System.out.println(graph);
@@ -46,7 +46,7 @@ public class ERSimpleModel implements StructureModel<Graph<? extends Object>>, R
 			double n = graph.size();
 			double t = n * n - n;
 			
-			return (withPrior ? Functions.prefix(graph.size()) + log2(t + 1) : 0) + log2Choose(graph.numLinks(), t);
+			return (withPrior ? Functions.prefix(graph.size()) + log2(t + 1) : 0) + log2Choose(graph.numLinks(), (long) t);
 		}
 	}
 	
@@ -54,7 +54,7 @@ public class ERSimpleModel implements StructureModel<Graph<? extends Object>>, R
 	{
 		double n = size;
 		double t = n * (n - 1) / 2;
-		return (withPrior ? Functions.prefix(size) + log2(t + 1) : 0) + log2Choose(numLinks, t);	
+		return (withPrior ? Functions.prefix(size) + log2(t + 1) : 0) + log2Choose(numLinks, (long) t);	
 	}
 	
 	
@@ -62,7 +62,7 @@ public class ERSimpleModel implements StructureModel<Graph<? extends Object>>, R
 	{
 		double n = size;
 		double t = n * n - n;
-		return (withPrior ? Functions.prefix(size) + log2(t + 1) : 0) + log2Choose(numLinks, t);
+		return (withPrior ? Functions.prefix(size) + log2(t + 1) : 0) + log2Choose(numLinks, (long) t);
 	}
 
 }
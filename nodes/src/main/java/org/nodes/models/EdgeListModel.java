@@ -1,9 +1,9 @@
 package org.nodes.models;
 
-import static nl.peterbloem.kit.Functions.log2Factorial;
 import static org.nodes.Graphs.degrees;
 import static org.nodes.Graphs.inDegrees;
 import static org.nodes.Graphs.outDegrees;
+import static org.nodes.util.LogFactorials.log2Factorial;
 
 import java.util.List;
 
@@ -14,6 +14,7 @@ import org.nodes.UGraph;
 import org.nodes.compression.EdgeListCompressor;
 import org.nodes.models.DSequenceEstimator.D;
 import org.nodes.models.DegreeSequenceModel.Prior;
+import org.nodes.util.LogFactorials;
 
 import nl.peterbloem.kit.Functions;
 import nl.peterbloem.kit.OnlineModel;
@@ -68,8 +69,7 @@ public class EdgeListModel implements StructureModel<Graph<? extends Object>>, R
 		bits -= log2Factorial(m);
 		bits -= m;
 		
-		for(int degree : degrees)
-			bits -= log2Factorial(degree);
+		bits -= LogFactorials.sum(degrees);
 		
 		
 		switch(prior)
@@ -97,12 +97,10 @@ public class EdgeListModel implements StructureModel<Graph<? extends Object>>, R
 			m += degree;
 		
 		double bits = 0.0;		
-		bits += Functions.log2Factorial(m);
+		bits += log2Factorial(m);
 		
-		for(int degree : degreesIn)
-			bits -= Functions.log2Factorial(degree);
-		for(int degree : degreesOut)
-			bits -= Functions.log2Factorial(degree);
+		bits -= LogFactorials.sum(degreesIn);
+		bits -= LogFactorials.sum(degreesOut);
 		
 		switch(prior)
 		{
@@ -0,0 +1,312 @@
+package org.nodes.models;
+
+import static nl.peterbloem.kit.Functions.log2Sum;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.nodes.util.bootstrap.OnlineLogNormal;
+
+import nl.peterbloem.kit.Global;
+
+/**
+ * Draws importance samples in parallel, for the sequential importance
+ * sampling estimators.
+ *
+ * The samples are divided into batches, which the tasks claim one by one, so
+ * that fast threads never wait for slow ones. Each batch has its own random
+ * number generator, derived from the seed and the index of the batch, and the
+ * result is made up of the batches in order. With a fixed number of samples,
+ * the result is therefore the same for the same seed, whatever the number of
+ * threads. The relative error and the confidence interval are also computed
+ * over the batches in order, so stopping by those is reproducible too. Only
+ * the time budget depends on the speed of the threads.
+ *
+ * @author Peter
+ *
+ */
+class ParallelSampler
+{
+	public static final int BATCH_SIZE = 16;
+	// * The stopping criteria are not checked before this many batches are 
+	//   complete, whatever the minimum number of samples of the budget
+	public static final int MIN_BATCHES = 4;
+
+	/**
+	 * A source of samples: returns the log (base 2) importance weight of a
+	 * sample drawn with the given random number generator. This is called
+	 * from several threads at once.
+	 */
+	public static interface Source
+	{
+		public double sample(Random random);
+	}
+
+	/**
+	 * The number of tasks to use for the given executor.
+	 */
+	public static int parallelism(ExecutorService executor)
+	{
+		if(executor instanceof ForkJoinPool)
+			return ((ForkJoinPool) executor).getParallelism();
+
+		return Global.numThreads();
+	}
+
+	/**
+	 * Draws samples until the budget is exhausted.
+	 *
+	 * @param numTasks The number of tasks to submit to the executor.
+	 * @return The log importance weights of the samples.
+	 */
+	public static double[] sample(
+			final Source source, SampleBudget budget, final long seed,
+			int numTasks, ExecutorService executor)
+	{
+		if(numTasks < 1)
+			throw new IllegalArgumentException("Number of tasks must be positive (was "+numTasks+").");
+
+		final State state = new State(budget);
+
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(numTasks);
+		for(int t = 0; t < numTasks; t++)
+			tasks.add(new Callable<Void>()
+			{
+				public Void call()
+				{
+					try {
+						int batch;
+						while((batch = state.claim()) >= 0)
+						{
+							Random random = new SplitRandom(seed(seed, batch));
+
+							double[] values = new double[state.size(batch)];
+							for(int i = 0; i < values.length; i++)
+								values[i] = source.sample(random);
+
+							state.complete(batch, values);
+						}
+					} catch(RuntimeException e)
+					{
+						state.stop();
+						throw e;
+					}
+
+					return null;
+				}
+			});
+
+		try
+		{
+			for(Future<Void> future : executor.invokeAll(tasks))
+				future.get();
+		} catch (InterruptedException e)
+		{
+			throw new RuntimeException(e);
+		} catch (ExecutionException e)
+		{
+			throw new RuntimeException(e.getCause());
+		}
+
+		return state.result();
+	}
+
+	/**
+	 * The seed for a given batch.
+	 */
+	private static long seed(long seed, int batch)
+	{
+		long x = seed + (batch + 1) * 0x9e3779b97f4a7c15L;
+
+		x ^= x >>> 33;
+		x *= 0xff51afd7ed558ccdL;
+		x ^= x >>> 33;
+		x *= 0xc4ceb9fe1a85ec53L;
+		x ^= x >>> 33;
+
+		return x;
+	}
+
+	/**
+	 * Keeps track of the batches that have been claimed and completed, and
+	 * of the estimate over the completed batches in order.
+	 */
+	private static class State
+	{
+		private SampleBudget budget;
+		private int batchSize;
+		private int maxBatches;
+		private long deadline;
+
+		private AtomicInteger next = new AtomicInteger(0);
+		private volatile boolean stopped = false;
+
+		private List<double[]> batches = new ArrayList<double[]>();
+		// * The number of batches, in order, that make up the result
+		private int prefix = 0;
+		private boolean closed = false;
+		private long n = 0;
+		private double logSum = Double.NEGATIVE_INFINITY;
+		private double logSumSq = Double.NEGATIVE_INFINITY;
+		private OnlineLogNormal logNormal = new OnlineLogNormal();
+
+		public State(SampleBudget budget)
+		{
+			this.budget = budget;
+
+			// * Make sure that there are enough batches to go round. The batch
+			//   size may not depend on the number of tasks, since it determines
+			//   the random number generators.
+			int samples = budget.samples();
+			batchSize = samples == Integer.MAX_VALUE ? BATCH_SIZE :
+				Math.max(1, Math.min(BATCH_SIZE, samples / 64));
+
+			maxBatches = samples == Integer.MAX_VALUE ? Integer.MAX_VALUE :
+				(int)((samples + (long) batchSize - 1) / batchSize);
+
+			deadline = Double.isInfinite(budget.seconds()) ? Long.MAX_VALUE :
+				System.nanoTime() + (long)(budget.seconds() * 1.0e9);
+		}
+
+		/**
+		 * Claims the next batch.
+		 *
+		 * @return The index of the batch, or -1 if sampling should stop.
+		 */
+		public int claim()
+		{
+			if(stopped)
+				return -1;
+
+			if(System.nanoTime() > deadline)
+			{
+				stopped = true;
+				return -1;
+			}
+
+			int batch = next.getAndIncrement();
+			if(batch >= maxBatches || batch < 0)
+				return -1;
+
+			return batch;
+		}
+
+		public void stop()
+		{
+			stopped = true;
+		}
+
+		public int size(int batch)
+		{
+			if(budget.samples() == Integer.MAX_VALUE)
+				return batchSize;
+
+			return (int) Math.min(batchSize, budget.samples() - (long) batch * batchSize);
+		}
+
+		public synchronized void complete(int batch, double[] values)
+		{
+			while(batches.size() <= batch)
+				batches.add(null);
+			batches.set(batch, values);
+
+			// * Extend the prefix of completed batches
+			while(! closed && prefix < batches.size() && batches.get(prefix) != null)
+			{
+				for(double value : batches.get(prefix))
+				{
+					logSum = log2Sum(logSum, value);
+					logSumSq = log2Sum(logSumSq, 2.0 * value);
+					logNormal.add(value);
+				}
+				n += batches.get(prefix).length;
+				prefix++;
+
+				if(n < budget.minSamples() || prefix < MIN_BATCHES)
+					continue;
+
+				if((budget.relativeError() > 0.0 && relativeError() <= budget.relativeError()) ||
+						(budget.halfWidth() > 0.0 && logNormal.halfWidth(budget.alpha()) <= budget.halfWidth()))
+				{
+					closed = true;
+					stopped = true;
+				}
+			}
+		}
+
+		/**
+		 * The relative standard error of the mean of the importance weights,
+		 * over the prefix.
+		 */
+		private double relativeError()
+		{
+			// * The sum of the squared weights over the squared sum
+			double ratio = Math.pow(2.0, logSumSq - 2.0 * logSum);
+
+			return Math.sqrt(Math.max(0.0, (n * ratio - 1.0) / (n - 1.0)));
+		}
+
+		public synchronized double[] result()
+		{
+			double[] result = new double[(int) n];
+
+			int i = 0;
+			for(int batch = 0; batch < prefix; batch++)
+			{
+				double[] values = batches.get(batch);
+				System.arraycopy(values, 0, result, i, values.length);
+				i += values.length;
+			}
+
+			return result;
+		}
+	}
+
+	/**
+	 * A Random backed by a SplittableRandom, without the synchronization of
+	 * java.util.Random.
+	 */
+	private static class SplitRandom extends Random
+	{
+		private static final long serialVersionUID = 3826466215458339012L;
+
+		private SplittableRandom random;
+
+		public SplitRandom(long seed)
+		{
+			random = new SplittableRandom(seed);
+		}
+
+		@Override
+		protected int next(int bits)
+		{
+			return random.nextInt() >>> (32 - bits);
+		}
+
+		@Override
+		public double nextDouble()
+		{
+			return random.nextDouble();
+		}
+
+		@Override
+		public int nextInt(int bound)
+		{
+			return random.nextInt(bound);
+		}
+
+		@Override
+		public long nextLong()
+		{
+			return random.nextLong();
+		}
+	}
+}
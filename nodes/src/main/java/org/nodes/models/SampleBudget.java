@@ -0,0 +1,177 @@
+package org.nodes.models;
+
+/**
+ * Describes when to stop drawing samples for an importance sampling estimate:
+ * after a number of samples, after a time budget, when the relative standard
+ * error of the estimate drops below a target, or when the log-normal
+ * confidence interval of the estimate is narrow enough. Sampling stops as soon
+ * as any of the given criteria is met.
+ *
+ * <pre>
+ *   // * at most 10000 samples, but stop early if the relative error is 5%
+ *   SampleBudget budget = SampleBudget.samples(10000).relativeError(0.05);
+ * </pre>
+ *
+ * @author Peter
+ *
+ */
+public class SampleBudget
+{
+	// * the default minimum number of samples before the relative error or the
+	//   confidence interval is trusted
+	public static final int MIN_SAMPLES = 100;
+
+	private int samples = Integer.MAX_VALUE;
+	private double seconds = Double.POSITIVE_INFINITY;
+	private double relativeError = 0.0;
+	private double halfWidth = 0.0;
+	private double alpha = 0.05;
+	private int minSamples = MIN_SAMPLES;
+
+	private SampleBudget()
+	{
+	}
+
+	/**
+	 * A budget of a fixed number of samples.
+	 */
+	public static SampleBudget samples(int samples)
+	{
+		return new SampleBudget().maxSamples(samples);
+	}
+
+	/**
+	 * A budget of a number of seconds.
+	 */
+	public static SampleBudget seconds(double seconds)
+	{
+		return new SampleBudget().maxSeconds(seconds);
+	}
+
+	/**
+	 * Sample until the relative standard error of the estimate is below the
+	 * given value.
+	 */
+	public static SampleBudget relativeError(double relativeError, int maxSamples)
+	{
+		return samples(maxSamples).relativeError(relativeError);
+	}
+
+	public SampleBudget maxSamples(int samples)
+	{
+		if(samples < 0)
+			throw new IllegalArgumentException("Number of samples cannot be negative (was "+samples+").");
+
+		this.samples = samples;
+		return this;
+	}
+
+	public SampleBudget maxSeconds(double seconds)
+	{
+		if(seconds <= 0.0)
+			throw new IllegalArgumentException("Time budget should be positive (was "+seconds+").");
+
+		this.seconds = seconds;
+		return this;
+	}
+
+	/**
+	 * Stop when the relative standard error of the estimate (the standard
+	 * error of the mean of the importance weights, divided by that mean) is
+	 * below the given value. 0 disables this criterion.
+	 */
+	public SampleBudget relativeError(double relativeError)
+	{
+		if(relativeError < 0.0)
+			throw new IllegalArgumentException("Relative error cannot be negative (was "+relativeError+").");
+
+		this.relativeError = relativeError;
+		return this;
+	}
+
+	/**
+	 * Stop when the log-normal confidence interval for the log (base 2) of the 
+	 * estimate is within the given number of bits of the estimate. See 
+	 * {@link org.nodes.util.bootstrap.OnlineLogNormal#halfWidth(double)}. 0 
+	 * disables this criterion.
+	 * 
+	 * The interval is not checked before {@link #minSamples()} samples have 
+	 * been drawn ({@link #MIN_SAMPLES} unless set otherwise). With fewer, the
+	 * estimate of the variance is too unreliable, and a lucky first batch 
+	 * would stop the sampling.
+	 * 
+	 * @param alpha The significance level of the (one-sided) interval.
+	 */
+	public SampleBudget halfWidth(double bits, double alpha)
+	{
+		return halfWidth(bits, alpha, minSamples);
+	}
+	
+	/**
+	 * As {@link #halfWidth(double, double)}, with the number of samples to draw
+	 * before the interval is checked. 
+	 */
+	public SampleBudget halfWidth(double bits, double alpha, int minSamples)
+	{
+		if(bits < 0.0)
+			throw new IllegalArgumentException("Half-width cannot be negative (was "+bits+").");
+		if(alpha <= 0.0 || alpha >= 1.0)
+			throw new IllegalArgumentException("Alpha should be between 0 and 1 (was "+alpha+").");
+
+		this.halfWidth = bits;
+		this.alpha = alpha;
+		return minSamples(minSamples);
+	}
+
+	/**
+	 * The minimum number of samples before the relative error or the
+	 * confidence interval is trusted. Whatever this value, the criteria are 
+	 * only checked once a few batches of samples are complete.
+	 */
+	public SampleBudget minSamples(int minSamples)
+	{
+		if(minSamples < 2)
+			throw new IllegalArgumentException("Minimum number of samples should be at least 2 (was "+minSamples+").");
+
+		this.minSamples = minSamples;
+		return this;
+	}
+
+	public int samples()
+	{
+		return samples;
+	}
+
+	public double seconds()
+	{
+		return seconds;
+	}
+
+	public double relativeError()
+	{
+		return relativeError;
+	}
+
+	public double halfWidth()
+	{
+		return halfWidth;
+	}
+
+	public double alpha()
+	{
+		return alpha;
+	}
+
+	public int minSamples()
+	{
+		return minSamples;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "[samples=" + samples + ", seconds=" + seconds
+				+ ", relativeError=" + relativeError + ", halfWidth="
+				+ halfWidth + ", minSamples=" + minSamples + "]";
+	}
+}
@@ -0,0 +1,314 @@
+package org.nodes.models;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.nodes.LightUGraph;
+import org.nodes.UGraph;
+import org.nodes.ULink;
+import org.nodes.UNode;
+import org.nodes.util.LongHashSet;
+
+/**
+ * The switch chain over undirected simple graphs with a fixed degree
+ * sequence. Each step picks two links at random, and replaces (a, b) and
+ * (c, d) by (a, d) and (c, b), unless that would create a self-loop or a
+ * multiple link. The chain converges to the uniform distribution over the
+ * graphs with the degree sequence of the starting graph.
+ *
+ * The links are kept in a primitive array, with a hash set of the links for
+ * constant time existence checks, so that a step does not allocate.
+ *
+ * The chain keeps track of its acceptance rate, and of the fraction of the
+ * links of the starting graph that it has replaced (the perturbation), as
+ * diagnostics for the mixing time.
+ *
+ * @author Peter
+ *
+ */
+public class SwitchChain
+{
+	private int size;
+	private int numLinks;
+
+	// * link i connects ends[2i] and ends[2i+1]
+	private int[] ends;
+	private LongHashSet links;
+
+	// * the sorted keys of the links of the starting graph, shared between
+	//   copies
+	private long[] initial;
+
+	private long attempts = 0;
+	private long accepted = 0;
+
+	/**
+	 * @param size The number of nodes.
+	 * @param ends The links, as pairs of node indices: link i connects
+	 * ends[2i] and ends[2i+1].
+	 */
+	public SwitchChain(int size, int[] ends)
+	{
+		if(ends.length % 2 != 0)
+			throw new IllegalArgumentException("Link array should have even length (was "+ends.length+").");
+
+		this.size = size;
+		this.numLinks = ends.length / 2;
+		this.ends = ends.clone();
+		this.links = new LongHashSet(numLinks);
+
+		for(int i = 0; i < numLinks; i++)
+		{
+			int a = this.ends[2 * i], b = this.ends[2 * i + 1];
+
+			if(a < 0 || a >= size || b < 0 || b >= size)
+				throw new IllegalArgumentException("Link ("+a+", "+b+") refers to a node outside the graph.");
+			if(a == b)
+				throw new IllegalArgumentException("Graph should be simple, found self-loop at " + a + ".");
+			if(! links.add(key(a, b)))
+				throw new IllegalArgumentException("Graph should be simple, found multiple links between " + a + " and " + b + ".");
+		}
+
+		initial = links.toArray();
+		Arrays.sort(initial);
+	}
+
+	public SwitchChain(UGraph<?> graph)
+	{
+		this(graph.size(), ends(graph));
+	}
+
+	/**
+	 * A copy of the chain in its current state, with fresh diagnostics, that
+	 * measures the perturbation from the same starting graph.
+	 */
+	public SwitchChain(SwitchChain other)
+	{
+		this.size = other.size;
+		this.numLinks = other.numLinks;
+		this.ends = other.ends.clone();
+		this.links = new LongHashSet(other.links);
+		this.initial = other.initial;
+	}
+
+	private static int[] ends(UGraph<?> graph)
+	{
+		int[] ends = new int[2 * (int) graph.numLinks()];
+
+		int i = 0;
+		for(ULink<?> link : graph.links())
+		{
+			ends[i++] = link.first().index();
+			ends[i++] = link.second().index();
+		}
+
+		return ends;
+	}
+
+	/**
+	 * Attempts a single switch.
+	 *
+	 * @return Whether the switch was accepted.
+	 */
+	public boolean step(SplittableRandom random)
+	{
+		attempts++;
+
+		if(numLinks < 2)
+			return false;
+
+		int first = random.nextInt(numLinks), second = random.nextInt(numLinks);
+		if(first == second)
+			return false;
+
+		int a = ends[2 * first], b = ends[2 * first + 1];
+		int c = ends[2 * second], d = ends[2 * second + 1];
+
+		// * choose one of the two ways to rewire
+		if(random.nextBoolean())
+		{
+			int t = c;
+			c = d;
+			d = t;
+		}
+
+		if(a == d || c == b)
+			return false;
+
+		long ad = key(a, d), cb = key(c, b);
+		if(links.contains(ad) || links.contains(cb))
+			return false;
+
+		links.remove(key(a, b));
+		links.remove(key(c, d));
+		links.add(ad);
+		links.add(cb);
+
+		ends[2 * first] = a;
+		ends[2 * first + 1] = d;
+		ends[2 * second] = c;
+		ends[2 * second + 1] = b;
+
+		accepted++;
+		return true;
+	}
+
+	/**
+	 * Attempts the given number of switches.
+	 */
+	public void run(long steps, SplittableRandom random)
+	{
+		for(long i = 0; i < steps; i++)
+			step(random);
+	}
+
+	/**
+	 * Attempts the given number of sweeps: a sweep is one attempted switch per
+	 * link.
+	 */
+	public void sweeps(int sweeps, SplittableRandom random)
+	{
+		run((long) sweeps * numLinks, random);
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	public int numLinks()
+	{
+		return numLinks;
+	}
+
+	/**
+	 * A copy of the current links, as pairs of node indices.
+	 */
+	public int[] ends()
+	{
+		return ends.clone();
+	}
+
+	public boolean connected(int a, int b)
+	{
+		return links.contains(key(a, b));
+	}
+
+	/**
+	 * The current state of the chain as a graph. All nodes get the given
+	 * label.
+	 */
+	public <L> UGraph<L> graph(L label)
+	{
+		LightUGraph<L> graph = new LightUGraph<L>(size);
+		for(int i = 0; i < size; i++)
+			graph.add(label);
+
+		for(int i = 0; i < numLinks; i++)
+		{
+			UNode<L> a = graph.get(ends[2 * i]), b = graph.get(ends[2 * i + 1]);
+			a.connect(b);
+		}
+
+		return graph;
+	}
+
+	public long attempts()
+	{
+		return attempts;
+	}
+
+	public long accepted()
+	{
+		return accepted;
+	}
+
+	public double acceptanceRate()
+	{
+		return attempts == 0 ? 0.0 : accepted / (double) attempts;
+	}
+
+	/**
+	 * The fraction of the links of the starting graph that are no longer
+	 * present. For a well mixed chain, this should be close to its value for
+	 * two independent uniform samples.
+	 */
+	public double perturbation()
+	{
+		if(numLinks == 0)
+			return 0.0;
+
+		int kept = 0;
+		for(int i = 0; i < numLinks; i++)
+			if(Arrays.binarySearch(initial, key(ends[2 * i], ends[2 * i + 1])) >= 0)
+				kept++;
+
+		return 1.0 - kept / (double) numLinks;
+	}
+
+	/**
+	 * Runs independent copies of the given chain in parallel.
+	 *
+	 * Each chain gets its own random number generator, split off from the
+	 * seed in order, so the result depends only on the seed.
+	 *
+	 * @param executor The executor to use. If null, the common fork/join pool
+	 * is used.
+	 * @return The chains after the given number of steps, in order.
+	 */
+	public static List<SwitchChain> parallel(
+			SwitchChain start, int chains, final long steps, long seed,
+			ExecutorService executor)
+	{
+		if(chains < 1)
+			throw new IllegalArgumentException("Number of chains must be positive (was "+chains+").");
+		if(executor == null)
+			executor = ForkJoinPool.commonPool();
+
+		SplittableRandom root = new SplittableRandom(seed);
+
+		final List<SwitchChain> result = new ArrayList<SwitchChain>(chains);
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(chains);
+		for(int i = 0; i < chains; i++)
+		{
+			final SwitchChain chain = new SwitchChain(start);
+			final SplittableRandom random = root.split();
+			result.add(chain);
+
+			tasks.add(new Callable<Void>()
+			{
+				public Void call()
+				{
+					chain.run(steps, random);
+					return null;
+				}
+			});
+		}
+
+		try
+		{
+			for(Future<Void> future : executor.invokeAll(tasks))
+				future.get();
+		} catch (InterruptedException e)
+		{
+			throw new RuntimeException(e);
+		} catch (ExecutionException e)
+		{
+			throw new RuntimeException(e.getCause());
+		}
+
+		return result;
+	}
+
+	private static long key(int a, int b)
+	{
+		return a < b ? ((long) a << 32) | b : ((long) b << 32) | a;
+	}
+}
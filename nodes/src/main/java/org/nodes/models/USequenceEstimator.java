@@ -31,16 +31,19 @@ import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.PriorityQueue;
+import java.util.Random;
 import java.util.Set;
+import java.util.SplittableRandom;
 import java.util.Vector;
-import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 
 import org.apache.commons.math3.distribution.BinomialDistribution;
 import org.apache.commons.math3.distribution.NormalDistribution;
 import org.apache.commons.math3.distribution.TDistribution;
 import org.nodes.DGraph;
 import org.nodes.DNode;
+import org.nodes.DegreeSequences;
 import org.nodes.Graph;
 import org.nodes.LightUGraph;
 import org.nodes.Link;
@@ -75,19 +78,21 @@ public class USequenceEstimator<L>
 	private List<Integer> sequence;
 	
 	private List<Double> logSamples = new Vector<Double>();
+	
+	// * The samplers reuse their buffers, so each thread gets its own
+	private ThreadLocal<USequenceSampler> samplers = new ThreadLocal<USequenceSampler>() {
+		protected USequenceSampler initialValue()
+		{
+			return new USequenceSampler(sequence);
+		}
+	};
 
 	public USequenceEstimator(Graph<?> data, int samples)
 	{
 		this(data);
 		
-		int dotPer = (int)Math.ceil(samples/100.0);
 		for(int i : series(samples))
-		{
-			if(i % dotPer == 0)
-				System.out.print('.');
-			nonuniform();
-		}
-		System.out.println();
+			sample();
 	}
 	
 	public USequenceEstimator(Graph<?> data)
@@ -111,7 +116,7 @@ public class USequenceEstimator<L>
 		Functions.tic();
 		for(int i : series(samples))
 		{
-			nonuniform();
+			sample();
 			if(Functions.toc() > 10 && i % (samples/100) == 0)
 				Global.log().info(logSamples.size() + " samples completed");
 		}
@@ -585,222 +590,100 @@ public class USequenceEstimator<L>
 	 * Samples the given number of graphs from this sequence model. The 
 	 * resulting log-probabilities are stored in the model.
 	 * 
-	 * Multithreaded
+	 * The samples are drawn in numThreads tasks on the common fork/join pool, 
+	 * so repeated calls do not create threads.
 	 */
-	public void nonuniform(final int samples, final int numThreads)
+	public void nonuniform(int samples, int numThreads)
 	{
-		final int perThread = samples/numThreads;
-		final int rem = samples - perThread * numThreads;
-		
-		List<Thread> threads = new ArrayList<Thread>(numThreads);
-		for(final int t : series(numThreads))
-		{
-			Thread thread = new Thread() {
-				public void run()
-				{
-					for(int i : series(perThread + (t==0 ? rem : 0) ))
-						nonuniform();
-				}
-			};
-			threads.add(thread);
-		}
-		
-		for(Thread thread : threads)
-		{
-			thread.start();
-		}
-
-		try
-		{
-			for(Thread thread : threads)
-				thread.join();
-		} catch (InterruptedException e)
-		{
-			throw new RuntimeException(e);
-		}
+		nonuniform(samples, numThreads, null);
 	}
 	
-	public void nonuniform(final int samples, final int numThreads, ExecutorService executor)
+	/**
+	 * Samples the given number of graphs from this sequence model. The 
+	 * resulting log-probabilities are stored in the model.
+	 * 
+	 * @param numThreads The number of tasks to sample in.
+	 * @param executor The executor to run the sampling tasks on. If null, the 
+	 *   common fork/join pool is used.
+	 */
+	public void nonuniform(int samples, int numThreads, ExecutorService executor)
 	{
 		if(executor == null)
-		{
-			nonuniform(samples, numThreads);
-			return;
-		}	
-		
-		final int perThread = samples/numThreads;
-		final int rem = samples - perThread * numThreads;
+			executor = ForkJoinPool.commonPool();
 		
-		List<Callable<Void>> todo = new ArrayList<Callable<Void>>(numThreads);
-		for(final int t : series(numThreads))
-		{
-			Callable<Void> thread = new Callable<Void>() {
-				public Void call()
-				{
-					for(int i : series(perThread + (t == 0 ? rem : 0)))
-						nonuniform();
-					
-					return null;
-				}
-			};
-			todo.add(thread);
-		}
-		
-		try {
-			executor.invokeAll(todo);
-		} catch (InterruptedException e) {
-			throw new RuntimeException(e);
-		}
-	}	
+		nonuniform(SampleBudget.samples(samples), Global.random().nextLong(), executor, numThreads);
+	}
 	
 	/**
-	 * Generates a random graph with the given degree  
+	 * Samples graphs from this sequence model until the budget is exhausted. 
+	 * The resulting log-probabilities are stored in the model. 
 	 * 
-	 * @return
+	 * For a given seed, the samples do not depend on the executor or the number
+	 * of threads (unless the budget contains a time limit).
+	 * 
+	 * @param executor The executor to run the sampling tasks on. If null, the 
+	 *   common fork/join pool is used.
 	 */
-	public Result nonuniform()
+	public void nonuniform(SampleBudget budget, long seed, ExecutorService executor)
 	{
-		// * Create an empty graph
-		UGraph<L> graph = new MapUTGraph<L, String>();
-		
-		int n = sequence.size();
-		
-		for(int i : Series.series(n))
-			graph.add(label);
-		
-		List<Integer> sequence = new ArrayList<Integer>(this.sequence);
-		
-		// * The log number of edge sequences producing the graph that will be
-		//   sampled
-		double logCY = 0; 
-		// * The log probability of the edge sequence that we've sampled 
-		double logSigY = 0;
+		if(executor == null)
+			executor = ForkJoinPool.commonPool();
 		
-		while(sum(sequence) > 0) // TODO: keep running value of sum
-		{			
-			// * Find the smallest i whose index is nonzero and minimal
-			int fromIndex = -1, fromVal = Integer.MAX_VALUE;
-			for(int index : Series.series(n))
+		nonuniform(budget, seed, executor, ParallelSampler.parallelism(executor));
+	}
+	
+	private void nonuniform(SampleBudget budget, long seed, ExecutorService executor, int numTasks)
+	{
+		double[] samples = ParallelSampler.sample(new ParallelSampler.Source() {
+			public double sample(Random random)
 			{
-				int val = sequence.get(index);
-
-				if(val != 0 && val < fromVal)
-				{
-					fromIndex = index;
-					fromVal = val;
-				}
+				return samplers.get().sample(random);
 			}
-			
-			logCY += Functions.logFactorial(fromVal, 2.0);
-			
-			while(sequence.get(fromIndex) > 0)
-			{
-				Node<L> from = graph.get(fromIndex);
-				
-				List<Integer> toCandidates = new ArrayList<Integer>(n);
-				
-				toCandidates = findAcceptableSet(sequence, graph, from);
-				int i;
-				
-				if(PICK_CANDIDATE_BY_DEGREE) // choose the candidate by weighted degree
-				{
-					List<Double> candidateWeights = new ArrayList<Double>(n);
-					int sum = 0;
-					
-					for(int toIndex : toCandidates)
-					{
-						candidateWeights.add((double)sequence.get(toIndex));
-						sum += sequence.get(toIndex);
-					}
-					
-					i = choose(candidateWeights, sum);
-					logSigY += log2(candidateWeights.get(i)/sum);
-
-				} else // uniform choice
-				{
-					i = Global.random().nextInt(toCandidates.size());
-					logSigY += - log2(toCandidates.size());
-				}
-				
-				int toIndex = toCandidates.get(i);
-				Node<L> to = graph.get(toIndex);
-				
-				to.connect(from);
-				
-				sub(sequence, fromIndex, toIndex);
-			}
-		}
+		}, budget, seed, numTasks, executor);
 		
-		logSamples.add(- logCY - logSigY);
+		List<Double> list = new ArrayList<Double>(samples.length);
+		for(double sample : samples)
+			list.add(sample);
 		
-		return new Result(graph, logCY, logSigY);
+		logSamples.addAll(list);
 	}
 	
-	public static boolean isGraphicalOld(List<Integer> sequence)
+	/**
+	 * Generates a random graph with the given degree sequence, and stores the 
+	 * log-probability of the sample. 
+	 * 
+	 * The graph is only created if it is requested from the result.
+	 * 
+	 * @return
+	 */
+	public Result nonuniform()
 	{
-		if(sum(sequence) % 2 != 0)
-			return false;
-
-		List<Integer> seq = new ArrayList<Integer>(sequence);
-		Collections.sort(seq, Collections.reverseOrder());
-		sequence = null; // stop myself from accidentally using the unsorted one
+		USequenceSampler sampler = samplers.get();
+		logSamples.add(sampler.sample(Global.random()));
 		
-		int sum = 0;
-		for(int k : series(1, durfee(seq) + 1))
-		{
-			int dk = seq.get(k - 1);
-			sum += dk;
-			int inSum = 0;
-			for(int i : series(k+1, seq.size() + 1))
-				inSum += min(k, seq.get(i - 1));
-						
-			if(sum > k * (k - 1) + inSum)
-				return false;
-		}
-		
-		return true;
+		return new Result(sampler.links(), sampler.logC(), sampler.logSigma());
+	}
+	
+	/**
+	 * Draws a sample and stores its log-probability, without creating a 
+	 * result.
+	 */
+	private void sample()
+	{
+		logSamples.add(samplers.get().sample(Global.random()));
 	}
 	
+	/**
+	 * Whether the sequence is graphical (see 
+	 * {@link DegreeSequences#isGraphical(int[])}).
+	 */
 	public static boolean isGraphical(List<Integer> sequence)
 	{
-		if(sum(sequence) % 2 != 0)
-			return false;
-		
-		List<Integer> seq = new ArrayList<Integer>(sequence);
-		Collections.sort(seq, Collections.reverseOrder());
-		sequence = null; // stop myself from accidentally using the unsorted one
-		
-		seq = seq.subList(0, seq.size() - numZeroes(seq));
-		
-		if(seq.size() == 0)
-			return true;
-		
-		List<Integer> xks = findxks(seq);
-		// System.out.println(xks);
-		
-		int lk = seq.get(0);
-		int rk = seq.size() - 1;
-		
-		if(lk > rk)
-			return false;
-						
-		for(int k : series(1, seq.size()))
-		{
-			// 	System.out.println("l"+(k-1) + "=" + lk + ", r"+(k-1)+"="+rk);
-			int dk = seq.get(k);
-			
-			lk = lk + dk;
-			
-			if(k < xks.size())
-				rk = rk + xks.get(k) -1;
-			else
-				rk = rk + 2*k - dk;
-			
-			if(lk > rk)
-				return false;
-		}
+		int[] degrees = new int[sequence.size()];
+		for(int i = 0; i < degrees.length; i++)
+			degrees[i] = sequence.get(i);
 		
-		return true;
+		return DegreeSequences.isGraphical(degrees);
 	}
 	
 	protected static int numZeroes(List<Integer> seq)
@@ -1070,7 +953,9 @@ public class USequenceEstimator<L>
 	
 	public class Result 
 	{
-		private UGraph<L> graph;
+		private UGraph<L> graph = null;
+		// * the links of the graph, if it hasn't been created yet
+		private int[] links;
 		private double c;
 		private double sigma;
 		
@@ -1081,8 +966,27 @@ public class USequenceEstimator<L>
 			this.sigma = sigma;
 		}
 		
+		private Result(int[] links, double c, double sigma)
+		{
+			this.links = links;
+			this.c = c;
+			this.sigma = sigma;
+		}
+		
 		public UGraph<L> graph()
 		{
+			if(graph == null)
+			{
+				graph = new MapUTGraph<L, String>();
+				for(int i : series(sequence.size()))
+					graph.add(label);
+				
+				for(int i = 0; i < links.length; i += 2)
+					graph.get(links[i]).connect(graph.get(links[i + 1]));
+				
+				links = null;
+			}
+			
 			return graph;
 		}
 		public double logC()
@@ -1097,7 +1001,7 @@ public class USequenceEstimator<L>
 		@Override
 		public String toString()
 		{
-			return graph + ", (c=" + c + ", sigma=" + sigma
+			return graph() + ", (c=" + c + ", sigma=" + sigma
 					+ ")";
 		}
 	}
@@ -1105,7 +1009,13 @@ public class USequenceEstimator<L>
 	/**
 	 * Returns a generator for uniform samples.
 	 * 
-	 * Uses the curveball algorithm for undirected simple graphs, see
+	 * Runs the switch chain (see {@link SwitchChain}) from a sample of the 
+	 * importance distribution. Between samples, the chain attempts mixingTime
+	 * switches. See {@link #uniformSweeps(int)} to scale the mixing time with 
+	 * the number of links.
+	 * 
+	 * The static {@link #step(List)} implements the curveball algorithm for
+	 * undirected simple graphs, see
 	 * 		https://researchbank.rmit.edu.au/view/rmit:161573
 	 * 		(chapter 4.2)
 	 * 
@@ -1116,54 +1026,35 @@ public class USequenceEstimator<L>
 		return new UniformGenerator(nonuniform().graph(), mixingTime);
 	}
 	
+	/**
+	 * Returns a generator for uniform samples, which attempts the given number
+	 * of sweeps (one attempted switch per link) between samples.
+	 */
+	public Generator<UGraph<L>> uniformSweeps(int sweeps)
+	{
+		UGraph<L> start = nonuniform().graph();
+		return new UniformGenerator(start, (long) sweeps * start.numLinks());
+	}
+	
 	private class UniformGenerator extends AbstractGenerator<UGraph<L>>
 	{
-		private List<Set<Integer>> adjacencies;
-		public int mixTime;
+		private SwitchChain chain;
+		private SplittableRandom random;
+		public long mixTime;
 		
-		public UniformGenerator(UGraph<L> start, int mixingTime)
+		public UniformGenerator(UGraph<L> start, long mixingTime)
 		{
-			// * Extract an adjacency-list representation from the starting graph
-			adjacencies = adjacencies(start);
+			chain = new SwitchChain(start);
+			random = new SplittableRandom(Global.random().nextLong());
 			this.mixTime = mixingTime;
 		}
 
 		@Override
 		public UGraph<L> generate() 
 		{			
-
-			for(int i : series(mixTime))
-			{
-				step(adjacencies);
-			}
+			chain.run(mixTime, random);
 			
-			return graph();			
-		}
-		
-		/**
-		 * Convert the adjacency lists to a graph
-		 * @return
-		 */
-		private UGraph<L> graph()
-		{
-			// TODO: We can speed this up by filling the adjacency lists
-			//       inside the LightUGraph directly
-			UGraph<L> graph = new LightUGraph<L>(adjacencies.size());
-			
-			for(int i : series(adjacencies.size()))
-				graph.add(label);
-			
-			for(int i : series(adjacencies.size()))
-			{
-				UNode<L> node = graph.get(i);
-				Set<Integer> indices  = adjacencies.get(i);
-				
-				for(int ind : indices)
-					if(ind > i)
-						node.connect(graph.get(ind));
-			}
-
-			return graph;
+			return chain.graph(label);			
 		}
 	}
 	
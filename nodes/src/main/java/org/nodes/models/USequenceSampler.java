@@ -0,0 +1,677 @@
+package org.nodes.models;
+
+import static nl.peterbloem.kit.Functions.log2;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.nodes.util.LogFactorials;
+
+/**
+ * The sampling core of {@link USequenceEstimator}: draws a graph from the
+ * Blitzstein/Diaconis importance distribution for a degree sequence, using
+ * only primitive arrays.
+ *
+ * All buffers (the residual degrees, the adjacency of the graph sampled so
+ * far, the scratch space for the acceptable set) are allocated once and reused
+ * for every sample. The next hub is taken from an indexed min-heap on the
+ * residual degrees. The sampled graph is only stored as a list of links.
+ *
+ * The nodes are also kept in buckets by residual degree, which are updated in
+ * constant time per link. The acceptable set for a hub is all nodes that are
+ * not forbidden and whose residual degree is above the maximum fail degree, so
+ * it is never listed explicitly: the fail degree is found from the bucket
+ * sizes (as runs of equal degree in the sorted sequence, with prefix sums),
+ * and the candidate is drawn by first choosing a bucket. Each link then costs
+ * time linear in the maximum degree and the degree of the hub, rather than in
+ * the number of nodes.
+ *
+ * A sampler is not thread-safe: each thread should use its own.
+ *
+ * @author Peter
+ *
+ */
+class USequenceSampler
+{
+	/**
+	 * If true, the residual degree sequence is checked with
+	 * {@link USequenceEstimator#isGraphical(List)} after every link. This is
+	 * very slow, and only meant for debugging.
+	 */
+	static boolean CHECK = false;
+
+	private int n;
+	private int[] sequence;
+	private int total;
+
+	private int[] residual;
+	private int remaining;
+	private int max;
+
+	// * The nodes, sorted by residual degree. The nodes with degree d are
+	//   found at sorted[start[d]] to sorted[start[d+1] - 1].
+	private int[] sorted;
+	private int[] where;
+	private int[] start;
+
+	// * The adjacency of the graph so far, in rows of the final degree
+	private int[] offsets;
+	private int[] adjacency;
+	private int[] degrees;
+
+	// * The links sampled so far, as a flat array of pairs
+	private int[] links;
+	private int numLinks;
+
+	// * An indexed min-heap of the nodes with nonzero residual degree, ordered
+	//   by residual degree and then by index
+	private int[] heap;
+	private int[] position;
+	private int heapSize;
+
+	// * Scratch space for the acceptable set. The sorted residual sequence is
+	//   represented by runs: for each degree, from high to low, a run of
+	//   allowed nodes and then a run of forbidden nodes.
+	private int[] mark;
+	private int stamp = 0;
+	private int[] excluded;
+	private int[] allowedCounts, forbiddenCounts, moved;
+	private int[] above;
+	private int[] allowedBelow;
+	private int[] prefix;
+
+	private double logC, logSigma;
+
+	public USequenceSampler(List<Integer> sequence)
+	{
+		n = sequence.size();
+		this.sequence = new int[n];
+
+		int maxDegree = 0;
+		for(int i = 0; i < n; i++)
+		{
+			int degree = sequence.get(i);
+			if(degree < 0)
+				throw new IllegalArgumentException("Negative degree ("+degree+") at index " + i + ".");
+
+			this.sequence[i] = degree;
+			total += degree;
+			maxDegree = Math.max(maxDegree, degree);
+		}
+
+		if(total % 2 != 0)
+			throw new IllegalArgumentException("Sum of the degree sequence is odd ("+total+").");
+
+		residual = new int[n];
+
+		sorted = new int[n];
+		where = new int[n];
+		start = new int[maxDegree + 2];
+
+		offsets = new int[n + 1];
+		for(int i = 0; i < n; i++)
+			offsets[i + 1] = offsets[i] + this.sequence[i];
+		adjacency = new int[total];
+		degrees = new int[n];
+
+		links = new int[total];
+
+		heap = new int[n];
+		position = new int[n];
+
+		mark = new int[n];
+		excluded = new int[maxDegree + 2];
+		allowedCounts = new int[maxDegree + 2];
+		forbiddenCounts = new int[maxDegree + 2];
+		moved = new int[maxDegree + 2];
+		above = new int[maxDegree + 2];
+		allowedBelow = new int[maxDegree + 2];
+		prefix = new int[maxDegree + 3];
+
+		reset();
+	}
+
+	/**
+	 * Resets the workspace to the start of a sample: full residual degrees
+	 * and no links.
+	 */
+	void reset()
+	{
+		System.arraycopy(sequence, 0, residual, 0, n);
+		remaining = total;
+
+		Arrays.fill(degrees, 0);
+		numLinks = 0;
+
+		logC = 0.0;
+		logSigma = 0.0;
+
+		// * Sort the nodes into buckets
+		max = 0;
+		Arrays.fill(start, 0);
+		for(int i = 0; i < n; i++)
+		{
+			start[residual[i] + 1]++;
+			max = Math.max(max, residual[i]);
+		}
+		for(int d = 1; d < start.length; d++)
+			start[d] += start[d - 1];
+		for(int i = 0; i < n; i++)
+		{
+			where[i] = start[residual[i]]++;
+			sorted[where[i]] = i;
+		}
+		for(int d = start.length - 1; d > 0; d--)
+			start[d] = start[d - 1];
+		start[0] = 0;
+
+		heapSize = 0;
+		for(int i = 0; i < n; i++)
+			if(residual[i] > 0)
+			{
+				heap[heapSize] = i;
+				position[i] = heapSize;
+				heapSize++;
+			}
+		for(int i = heapSize/2 - 1; i >= 0; i--)
+			down(i);
+	}
+
+	/**
+	 * Samples a graph.
+	 *
+	 * @return The log (base 2) of the importance weight of the sample:
+	 *   - logC() - logSigma().
+	 */
+	public double sample(Random random)
+	{
+		reset();
+
+		while(remaining > 0)
+		{
+			int hub = hub();
+
+			logC += LogFactorials.log2Factorial(residual[hub]);
+
+			while(residual[hub] > 0)
+			{
+				int failDegree = failDegree(hub);
+
+				// * Count the candidates and their total weight, per bucket
+				long count = 0, weight = 0;
+				for(int d = failDegree + 1; d <= max; d++)
+				{
+					int allowed = size(d) - excluded[d];
+					count += allowed;
+					weight += (long) d * allowed;
+				}
+
+				if(count == 0)
+					throw new IllegalStateException("No acceptable nodes to connect to node " + hub + ". The degree sequence is probably not graphical.");
+
+				int to;
+				if(USequenceEstimator.PICK_CANDIDATE_BY_DEGREE)
+				{
+					double draw = random.nextDouble() * weight;
+					int d = max;
+					double cumulative = (long) d * (size(d) - excluded[d]);
+					while(cumulative <= draw && d > failDegree + 1)
+					{
+						d--;
+						cumulative += (long) d * (size(d) - excluded[d]);
+					}
+					while(size(d) - excluded[d] == 0)
+						d++;
+
+					to = pick(d, random);
+					logSigma += log2(d / (double) weight);
+				} else
+				{
+					long draw = (long)(random.nextDouble() * count);
+					int d = max;
+					long cumulative = size(d) - excluded[d];
+					while(cumulative <= draw && d > failDegree + 1)
+					{
+						d--;
+						cumulative += size(d) - excluded[d];
+					}
+					while(size(d) - excluded[d] == 0)
+						d++;
+
+					to = pick(d, random);
+					logSigma += - log2(count);
+				}
+
+				clear(hub);
+				connect(hub, to);
+
+				if(CHECK && ! USequenceEstimator.isGraphical(residuals()))
+					throw new IllegalStateException("Residual degree sequence is not graphical after connecting node " + hub + " to node " + to + ": " + residuals());
+			}
+		}
+
+		return - logC - logSigma;
+	}
+
+	/**
+	 * Picks a uniform random node from the bucket for the given degree, which
+	 * is not forbidden.
+	 */
+	private int pick(int d, Random random)
+	{
+		int size = size(d);
+
+		// * If at most half the bucket is forbidden, use rejection sampling
+		if(2 * excluded[d] <= size)
+			while(true)
+			{
+				int node = sorted[start[d] + random.nextInt(size)];
+				if(mark[node] != stamp)
+					return node;
+			}
+
+		// * Otherwise, the bucket is small (no bigger than twice the degree of
+		//   the hub), so we walk it
+		int index = random.nextInt(size - excluded[d]);
+		for(int i = start[d]; i < start[d + 1]; i++)
+			if(mark[sorted[i]] != stamp)
+				if(index-- == 0)
+					return sorted[i];
+
+		throw new IllegalStateException("Bucket " + d + " has no allowed nodes.");
+	}
+
+	/**
+	 * The node to connect next: the node with the smallest nonzero residual
+	 * degree (and the smallest index among those), or -1 if the sample is
+	 * complete.
+	 */
+	int hub()
+	{
+		return heapSize == 0 ? -1 : heap[0];
+	}
+
+	/**
+	 * The residual degree of a node in the current sample.
+	 */
+	int residual(int node)
+	{
+		return residual[node];
+	}
+
+	/**
+	 * Adds a link to the current sample, and updates the residual degrees.
+	 */
+	void connect(int hub, int to)
+	{
+		adjacency[offsets[hub] + degrees[hub]++] = to;
+		adjacency[offsets[to] + degrees[to]++] = hub;
+
+		links[2 * numLinks] = to;
+		links[2 * numLinks + 1] = hub;
+		numLinks++;
+
+		decrement(hub);
+		decrement(to);
+		remaining -= 2;
+
+		while(max > 0 && size(max) == 0)
+			max--;
+	}
+
+	/**
+	 * Computes the set of nodes that the hub can be connected to, without
+	 * making the residual degree sequence ungraphical. This lists the nodes
+	 * explicitly, and is only used for testing.
+	 *
+	 * @param result The indices of the acceptable nodes are written to this
+	 *   array, in increasing order.
+	 * @return The number of acceptable nodes.
+	 */
+	int acceptable(int hub, int[] result)
+	{
+		int failDegree = failDegree(hub);
+
+		int k = 0;
+		for(int i = 0; i < n; i++)
+			if(residual[i] > failDegree && mark[i] != stamp)
+				result[k++] = i;
+
+		clear(hub);
+
+		return k;
+	}
+
+	/**
+	 * Computes the maximum fail degree for the hub: the nodes that the hub can
+	 * be connected to are those that are not forbidden, and have a residual
+	 * degree above it. See
+	 * {@link USequenceEstimator#findAcceptableSet(List, org.nodes.Graph, org.nodes.Node)}
+	 * for the algorithm.
+	 *
+	 * This also marks the forbidden nodes and counts them per degree in
+	 * excluded, which should be cleared afterwards.
+	 */
+	private int failDegree(int hub)
+	{
+		// * Mark the forbidden nodes (the hub and its neighbors) and count
+		//   them per degree
+		stamp++;
+		for(int j = offsets[hub]; j < offsets[hub] + degrees[hub]; j++)
+		{
+			mark[adjacency[j]] = stamp;
+			excluded[residual[adjacency[j]]]++;
+		}
+		mark[hub] = stamp;
+		excluded[residual[hub]]++;
+
+		int hubDegree = residual[hub];
+
+		for(int d = 0; d <= max; d++)
+		{
+			allowedCounts[d] = size(d) - excluded[d];
+			forbiddenCounts[d] = excluded[d];
+			moved[d] = 0;
+		}
+
+		// * The hub is counted with residual degree 1
+		forbiddenCounts[hubDegree]--;
+		forbiddenCounts[1]++;
+
+		// * Pretend that we've connected all but one of the leftmost adjacency
+		//   set to the hub: these are the hubDegree - 1 largest allowed nodes
+		//   (followed by the largest forbidden ones, if there are too few).
+		//   Each loses one degree, and becomes forbidden.
+		int need = hubDegree - 1;
+		need = take(allowedCounts, need);
+		need = take(forbiddenCounts, need);
+
+		for(int d = 0; d <= max; d++)
+			forbiddenCounts[d] += moved[d];
+
+		// * above[d] is the number of entries in the sorted sequence with
+		//   degree above d: the start of the runs for degree d.
+		//   allowedBelow[d] is the largest degree below d with allowed entries.
+		above[max] = 0;
+		for(int d = max; d >= 1; d--)
+			above[d - 1] = above[d] + allowedCounts[d] + forbiddenCounts[d];
+
+		int last = 0;
+		for(int d = 1; d <= max; d++)
+		{
+			allowedBelow[d] = last;
+			if(allowedCounts[d] > 0)
+				last = d;
+		}
+
+		// * The length of the sequence, without zeroes
+		int len = above[0];
+		if(len == 0)
+			return -1;
+
+		// * The degrees of the first entries of the sorted sequence. We never
+		//   need more than max + 2 of these.
+		int p = Math.min(len, max + 2);
+		int d = max;
+		for(int i = 0; i < p; i++)
+		{
+			while(i >= above[d - 1])
+				d--;
+			prefix[i] = d;
+		}
+
+		// * The number of entries k for which the number of entries with
+		//   degree above k is at least k + 1.
+		int numXks = 0;
+		while(numXks < prefix[0] && above[numXks] > numXks)
+			numXks++;
+
+		int lk = prefix[0];
+		int rk = len - 1;
+		int k = 0;
+
+		int maxK = 0;
+		while(maxK < len && prefix[maxK] >= maxK)
+			maxK++;
+
+		int failDegree = 0;
+		boolean finished = false;
+		while(k < maxK && ! finished)
+		{
+			if(lk > rk)
+				throw new IllegalStateException("Residual degree sequence is not graphical.");
+
+			if(lk == rk)
+			{
+				// * The first allowed entry after k
+				int c = firstAllowed(k + 1, len);
+				if(c > 0)
+					failDegree = c;
+
+				finished = true;
+			} else if(lk == rk - 1)
+			{
+				// * The first allowed entry after k with degree below k + 2
+				int c = firstAllowed(Math.max(k + 1, k + 1 <= max ? above[k + 1] : 0), len);
+				if(c > 0)
+					failDegree = c;
+			}
+
+			k++;
+			if(k >= len)
+				break;
+
+			int dk = prefix[k];
+			lk = lk + dk;
+
+			if(k < numXks)
+				rk = rk + above[k] - 1;
+			else
+				rk = rk + 2 * k - dk;
+		}
+
+		return failDegree;
+	}
+
+	/**
+	 * The degree of the first allowed entry in the sorted sequence at or after
+	 * the given position, or -1 if there is none.
+	 */
+	private int firstAllowed(int from, int len)
+	{
+		if(from >= len)
+			return -1;
+
+		// * Binary search for the degree of the entry at position from: the
+		//   smallest d with above[d] <= from
+		int lo = 1, hi = max;
+		while(lo < hi)
+		{
+			int mid = (lo + hi) / 2;
+			if(above[mid] <= from)
+				hi = mid;
+			else
+				lo = mid + 1;
+		}
+		int d = lo;
+
+		if(from < above[d] + allowedCounts[d])
+			return d;
+
+		int below = allowedBelow[d];
+		return below > 0 ? below : -1;
+	}
+
+	/**
+	 * Takes up to the given number of nodes from the given counts, highest
+	 * degree first, and moves them to the forbidden counts with one degree
+	 * less.
+	 *
+	 * @return The number of nodes still to take.
+	 */
+	private int take(int[] counts, int need)
+	{
+		for(int d = max; d >= 0 && need > 0; d--)
+		{
+			int take = Math.min(need, counts[d]);
+			counts[d] -= take;
+			if(d > 0)
+				moved[d - 1] += take;
+			need -= take;
+		}
+
+		return need;
+	}
+
+	/**
+	 * Resets the counts of the forbidden nodes of the hub.
+	 */
+	private void clear(int hub)
+	{
+		for(int j = offsets[hub]; j < offsets[hub] + degrees[hub]; j++)
+			excluded[residual[adjacency[j]]] = 0;
+		excluded[residual[hub]] = 0;
+	}
+
+	/**
+	 * The number of nodes with the given residual degree.
+	 */
+	private int size(int d)
+	{
+		return start[d + 1] - start[d];
+	}
+
+	/**
+	 * A view of the residual degrees.
+	 */
+	private List<Integer> residuals()
+	{
+		return new AbstractList<Integer>()
+		{
+			public Integer get(int index)
+			{
+				return residual[index];
+			}
+
+			public int size()
+			{
+				return n;
+			}
+		};
+	}
+
+	private void decrement(int node)
+	{
+		// * Swap the node to the start of its bucket, and move the start of
+		//   the bucket up, so that the node ends up in the bucket below
+		int d = residual[node];
+		int first = sorted[start[d]];
+
+		sorted[where[node]] = first;
+		where[first] = where[node];
+		sorted[start[d]] = node;
+		where[node] = start[d];
+		start[d]++;
+
+		residual[node]--;
+
+		if(residual[node] == 0)
+			remove(node);
+		else
+			up(position[node]);
+	}
+
+	private boolean less(int a, int b)
+	{
+		return residual[a] < residual[b] || (residual[a] == residual[b] && a < b);
+	}
+
+	private void up(int i)
+	{
+		int node = heap[i];
+		while(i > 0)
+		{
+			int parent = (i - 1) / 2;
+			if(! less(node, heap[parent]))
+				break;
+
+			heap[i] = heap[parent];
+			position[heap[i]] = i;
+			i = parent;
+		}
+
+		heap[i] = node;
+		position[node] = i;
+	}
+
+	private void down(int i)
+	{
+		int node = heap[i];
+		while(true)
+		{
+			int child = 2 * i + 1;
+			if(child >= heapSize)
+				break;
+
+			if(child + 1 < heapSize && less(heap[child + 1], heap[child]))
+				child++;
+
+			if(! less(heap[child], node))
+				break;
+
+			heap[i] = heap[child];
+			position[heap[i]] = i;
+			i = child;
+		}
+
+		heap[i] = node;
+		position[node] = i;
+	}
+
+	private void remove(int node)
+	{
+		int i = position[node];
+
+		heapSize--;
+		if(i == heapSize)
+			return;
+
+		int last = heap[heapSize];
+		heap[i] = last;
+		position[last] = i;
+
+		up(i);
+		down(position[last]);
+	}
+
+	public int size()
+	{
+		return n;
+	}
+
+	/**
+	 * The log of the number of link orderings that produce the last sample.
+	 */
+	public double logC()
+	{
+		return logC;
+	}
+
+	/**
+	 * The log probability of the link ordering of the last sample.
+	 */
+	public double logSigma()
+	{
+		return logSigma;
+	}
+
+	/**
+	 * A copy of the links of the last sample, as a flat array of pairs.
+	 */
+	public int[] links()
+	{
+		return Arrays.copyOf(links, 2 * numLinks);
+	}
+}
@@ -6,12 +6,20 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import org.nodes.DGraph;
 import org.nodes.DLink;
@@ -24,7 +32,7 @@ import org.nodes.Graphs;
 import org.nodes.MapDTGraph;
 import org.nodes.Node;
 import org.nodes.Subgraph;
-import org.nodes.algorithms.Nauty;
+import org.nodes.algorithms.CanonicalCache;
 import org.nodes.compression.EdgeListCompressor;
 import org.nodes.compression.Functions;
 import org.nodes.compression.NeighborListCompressor;
@@ -32,15 +40,13 @@ import org.nodes.compression.Functions.NaturalComparator;
 import org.nodes.random.SimpleSubgraphGenerator;
 import org.nodes.random.SubgraphGenerator;
 import org.nodes.util.Compressor;
+import org.nodes.util.LongHashSet;
 
 import au.com.bytecode.opencsv.CSVWriter;
 import nl.peterbloem.kit.AbstractGenerator;
 import nl.peterbloem.kit.BitString;
 import nl.peterbloem.kit.FrequencyModel;
-import nl.peterbloem.kit.Generator;
 import nl.peterbloem.kit.Global;
-import nl.peterbloem.kit.Order;
-import nl.peterbloem.kit.Series;
 
 /**
  * Extracts motifs from a DTGraph<String, String> by sampling.
@@ -48,6 +54,27 @@ import nl.peterbloem.kit.Series;
  * This extractor returns _masked_ motifs: ie. it takes the labels and tags into 
  * account and makes them variable where beneficial.
  * 
+ * The subgraphs are sampled and brought into canonical form in parallel, in 
+ * blocks that each have their own random number generator, derived from the 
+ * seed. The blocks are then merged in order on the calling thread, which also 
+ * applies the rule that occurrences of the same motif may not overlap. The 
+ * {@link CanonicalCache} orders a subgraph the same way, whichever thread 
+ * sees it first, so the result depends only on the seed, not on the number 
+ * of threads. 
+ * The data graph should not be modified while the extractor runs.
+ * 
+ * The occurrences are kept in an {@link OccurrenceStore}, which writes the 
+ * occurrences of infrequent motifs to disk when it outgrows its memory 
+ * budget. Whenever more than twice MAX_RETAINED motifs have been seen, the 
+ * occurrences of all but the MAX_RETAINED most frequent ones are dropped. 
+ * Their frequencies are kept, so a motif that is sampled again continues 
+ * from where it was. 
+ * 
+ * The search for the best mask of each motif is parallel as well. The code 
+ * lengths are computed with {@link IncrementalMotifVarTags}, which works from 
+ * the occurrences, rather than the whole data graph, so every mask is scored 
+ * in full. For large motifs, a random sample of the masks is searched.
+ * 
  * @author Peter
  *
  */
@@ -57,15 +84,41 @@ public class DTMotifExtractor
 	private static final int MIN_OCCURRENCES = 10;
 	private static final int MAX_MOTIFS = 10;
 	private static final boolean CORRECT_FREQUENCIES = true;
+	
+	/**
+	 * The number of samples in a block. Each block has its own random number 
+	 * generator, so this should not depend on the number of threads.
+	 */
+	public static final int BLOCK_SIZE = 1000;
+	
+	/**
+	 * Motifs with at most this many nodes and links together have all their 
+	 * masks searched. For larger motifs, MAX_MASKS masks are sampled.
+	 */
+	public static final int MAX_MASK_BITS = 14;
+	public static final int MAX_MASKS = 1 << MAX_MASK_BITS;
+	
+	/**
+	 * The number of motifs to keep the occurrences of during sampling.
+	 */
+	public static final int MAX_RETAINED = 1000;
+	
+	/**
+	 * The number of masks scored by one task.
+	 */
+	private static final int MASK_BLOCK = 256;
 
 	private DTGraph<String, String> data;
 	private int samples;
+	private int minSize, maxSize;
+	
+	private long seed;
+	private ExecutorService executor;
 
 	private Functions.NaturalComparator<String> comp;
+	private CanonicalCache<String> canonicalCache;
 
 	private List<DGraph<String>> tokens;
-
-	private Generator<Integer> intGen;
 	
 	private MotifVarTags mvTop = null;
 	
@@ -74,81 +127,65 @@ public class DTMotifExtractor
 			int numSamples,
 			int minSize,
 			int maxSize)
+	{
+		this(data, numSamples, minSize, maxSize, Global.random().nextLong(), null);
+	}
+	
+	/**
+	 * @param seed The seed for the random number generators of the sampling 
+	 * 	blocks.
+	 * @param executor The executor to sample with. If null, the common 
+	 * 	fork/join pool is used.
+	 */
+	public DTMotifExtractor(
+			DTGraph<String, String> data,
+			int numSamples,
+			int minSize,
+			int maxSize, 
+			long seed, 
+			ExecutorService executor)
 	{
 		this.data = data;
 		this.samples = numSamples;
+		this.minSize = minSize;
+		this.maxSize = maxSize;
+		this.seed = seed;
+		this.executor = executor == null ? ForkJoinPool.commonPool() : executor;
 		
 		comp = new Functions.NaturalComparator<String>();
-		intGen = new UniformGenerator(minSize, maxSize);
+		canonicalCache = new CanonicalCache<String>(comp);
 	}
 
 	public void run()
 	{
-		FrequencyModel<DGraph<String>> fm = new FrequencyModel<DGraph<String>>();
+		// * Places in the graph where each motif occurs, and their frequencies. 
+		//   The occurrences may take up a quarter of the heap.
+		OccurrenceStore<DGraph<String>> store = new OccurrenceStore<DGraph<String>>(
+				data.size(), Runtime.getRuntime().maxMemory() / 4, null);
+		
+		// * The generator for the random number generators of the sampling 
+		//   blocks and the mask searches
+		SplittableRandom random = new SplittableRandom(seed);
 		
-		// * Places in the graph where each motif occurs
-		Map<DGraph<String>, List<List<Integer>>> occurrences = new LinkedHashMap<DGraph<String>, List<List<Integer>>>();
-		// * Those nodes that have been taken by one of the occurrences. If a new occurrence contains one of these,
-		//   it will not be added
-		Map<DGraph<String>, Set<Integer>> taken = new LinkedHashMap<DGraph<String>, Set<Integer>>();
-
-		SubgraphGenerator<String> gen = new SubgraphGenerator<String>(data,
-				intGen, Collections.EMPTY_LIST);
-
 		Functions.tic();
 
-		// * Sampling
-		for (int i : Series.series(samples))
-		{
-			if (i % 1000 == 0)
-				Global.log().info("Samples finished: " + i);
-			
-			// * Sample a subgraph
-			SubgraphGenerator<String>.Result result = gen.generate();
-			DTGraph<String, String> subLabeled = Subgraph.dtSubgraphIndices(data,
-					result.indices());
-			DGraph<String> subBlanked = Graphs.blank(subLabeled, "");
-			
-			// * Check if any of the nodes of the occurrence have been used already
-			boolean overlaps;
-			if(! taken.containsKey(subBlanked))
-				overlaps = false;
-			else
-				overlaps = Functions.overlap(taken.get(subBlanked), result.indices()) > 0;
-			
-			// * Add it as an occurrence	
-			if(! overlaps)
-			{	
-				// * Reorder nodes to canonical ordering
-				Order canonical = Nauty.order(subBlanked, comp);
-				subBlanked = Graphs.reorder(subBlanked, canonical);
-				
-				List<Integer> indices = canonical.apply(result.indices());
-				
-				fm.add(subBlanked, CORRECT_FREQUENCIES ? result.invProbability() : 1.0);
-	
-				if (! occurrences.containsKey(subBlanked))
-					occurrences.put(subBlanked, new ArrayList<List<Integer>>());
-	
-				occurrences.get(subBlanked).add(indices);
-				
-				if (! taken.containsKey(subBlanked))
-					taken.put(subBlanked, new HashSet<Integer>());
-				
-				taken.get(subBlanked).addAll(indices);
-			}
-		}
+		sample(store, random);
 
-		tokens = fm.sorted();
+		tokens = store.sorted();
 		
-		for(DGraph<String> token : tokens.subList(0, 10))
+		for(DGraph<String> token : tokens.subList(0, Math.min(10, tokens.size())))
 			System.out.println("--- " + token);
 
 		System.out.println("Finished sampling. "+tokens.size()+ " tokens found. Time taken: " + Functions.toc()
 				+ " seconds.");
+		Global.log().info("Canonical form cache: " + canonicalCache);
 
 		// * Masking
 		
+		// - The parts of the code length that do not depend on the motif
+		IncrementalMotifVarTags.Statistics statistics = 
+				new IncrementalMotifVarTags.Statistics(data);
+		
 		double topBits = Double.MAX_VALUE;
 		DTGraph<String, String> topMotif = null;
 		List<List<Integer>> topOccurrences = null;
@@ -157,45 +194,20 @@ public class DTMotifExtractor
 		int i  = 0;
 		for (DGraph<String> sub : tokens)
 		{
-			System.out.println("Starting motif (" + fm.frequency(sub) + ")" + sub);
-			int nMask = sub.size() + (int)sub.numLinks();
+			System.out.println("Starting motif (" + store.frequency(sub) + ")" + sub);
 			
-			if(fm.frequency(sub) < MIN_OCCURRENCES)
+			if(store.frequency(sub) < MIN_OCCURRENCES)
 				break;
 			
-			double currentTopBits = Double.MAX_VALUE;
-			DTGraph<String, String> motif = null;
-			List<List<Integer>> occOut = null;
-			List<List<String>> labels = null;
-			double bits = -1.0;
+			MaskResult search = search(sub, store.occurrences(sub), statistics, random.split());
 			
-			DTGraph<String, String> currentTopMotif = null;
-			List<List<Integer>> currentTopOccurrences = null;
-			List<List<String>> currentTopLabels = null;
+			double currentTopBits = search.bits;
+			DTGraph<String, String> currentTopMotif = search.motif;
+			List<List<Integer>> currentTopOccurrences = search.occurrences;
+			List<List<String>> currentTopLabels = search.labels;
 			
-			for(BitString mask : BitString.all(nMask))
-			{				
-				System.out.print(".");
-				
-				occOut = new ArrayList<List<Integer>>();
-				labels = new ArrayList<List<String>>();
-
-				motif = mask(sub, mask, data,
-						occurrences.get(sub), occOut, labels);
-				
-				MotifVarTags mv = new MotifVarTags(data, motif,occOut, SPECIFY_SUBS);
-				bits = mv.size();
-				
-				if(bits < currentTopBits)
-				{
-					currentTopBits = bits;
-					currentTopMotif = motif;
-					currentTopOccurrences = occOut;
-					currentTopLabels = labels;
-				}				
-			}
-			
-			System.out.println("\nfinished: best size " + currentTopBits);
+			System.out.println("finished: " + search.masks + " masks");
+			System.out.println("          best size " + currentTopBits);
 			System.out.println("          best motif " + currentTopMotif);
 
 			List<Integer> occChoice = nl.peterbloem.kit.Functions.choose(currentTopOccurrences);
@@ -216,6 +228,8 @@ public class DTMotifExtractor
 				break;
 		}
 		
+		store.close();
+		
 		mvTop = new MotifVarTags(data, topMotif, topOccurrences, SPECIFY_SUBS);
 		Global.log().info("size with motif: " + mvTop.size());
 		
@@ -226,6 +240,321 @@ public class DTMotifExtractor
 		Global.log().info("baseline (neighbor list)" + compressor.compressedSize(data));
 	}
 	
+	/**
+	 * Samples subgraphs in parallel, and merges the blocks of samples in order.
+	 */
+	private void sample(OccurrenceStore<DGraph<String>> store, SplittableRandom root)
+	{
+		final SubgraphGenerator<String> gen = new SubgraphGenerator<String>(data,
+				new UniformGenerator(minSize, maxSize), Collections.EMPTY_LIST);
+		
+		// * Submit the blocks. The seeds are split off in order, so that each 
+		//   block gets the same generator, whatever the number of threads.
+		List<Future<List<Sample>>> blocks = new ArrayList<Future<List<Sample>>>();
+		for(int from = 0; from < samples; from += BLOCK_SIZE)
+		{
+			final int size = Math.min(BLOCK_SIZE, samples - from);
+			final long blockSeed = root.split().nextLong();
+			
+			blocks.add(executor.submit(new Callable<List<Sample>>()
+			{
+				public List<Sample> call()
+				{
+					return sampleBlock(gen, size, new Random(blockSeed));
+				}
+			}));
+		}
+		
+		// * Merge the blocks in order, as they come in
+		int done = 0;
+		try
+		{
+			for(Future<List<Sample>> block : blocks)
+			{
+				// * Add the occurrences, unless they overlap with an earlier 
+				//   occurrence of the same motif
+				for(Sample sample : block.get())
+					store.add(sample.sub, sample.indices, sample.weight);
+				
+				if(store.size() > 2 * MAX_RETAINED)
+					store.retainTop(MAX_RETAINED);
+				
+				done += BLOCK_SIZE;
+				Global.log().info("Samples finished: " + Math.min(done, samples) 
+						+ ", occurrences in memory: " + store.memory() + " bytes");
+			}
+		} catch (InterruptedException e)
+		{
+			throw new RuntimeException(e);
+		} catch (ExecutionException e)
+		{
+			throw new RuntimeException(e.getCause());
+		} finally
+		{
+			for(Future<List<Sample>> block : blocks)
+				block.cancel(true);
+		}
+	}
+	
+	/**
+	 * Draws a block of samples, and brings each into canonical form. This is 
+	 * called from several threads at once.
+	 */
+	private List<Sample> sampleBlock(SubgraphGenerator<String> base, int size, Random random)
+	{
+		SubgraphGenerator<String> gen = new SubgraphGenerator<String>(
+				base, new UniformGenerator(minSize, maxSize, random), random);
+		
+		List<Sample> block = new ArrayList<Sample>(size);
+		for(int i : series(size))
+		{
+			// * Sample a subgraph
+			SubgraphGenerator<String>.Result result = gen.generate();
+			DTGraph<String, String> subLabeled = Subgraph.dtSubgraphIndices(data,
+					result.indices());
+			DGraph<String> subBlanked = Graphs.blank(subLabeled, "");
+			
+			// * Reorder nodes to canonical ordering
+			CanonicalCache<String>.Result canonical = canonicalCache.canonize(subBlanked);
+			subBlanked = (DGraph<String>) canonical.graph();
+			
+			List<Integer> indices = canonical.order().apply(result.indices());
+			
+			block.add(new Sample(subBlanked, indices, 
+					CORRECT_FREQUENCIES ? result.invProbability() : 1.0));
+		}
+		
+		return block;
+	}
+	
+	/**
+	 * Finds the mask for the given subgraph with the smallest code length.
+	 * 
+	 * The masks are scored in parallel blocks. Each block returns its best 
+	 * mask, and ties go to the first mask, so the result does not depend on 
+	 * the number of threads.
+	 */
+	MaskResult search(
+			final DGraph<String> sub, final List<List<Integer>> occurrences, 
+			final IncrementalMotifVarTags.Statistics statistics, SplittableRandom random)
+	{
+		double labelSets = statistics.labelSets();
+		
+		final int nMask = sub.size() + (int)sub.numLinks();
+		final long[] masks = masks(nMask, random);
+		
+		// * The label sequences of the occurrences, shared by all masks
+		final List<List<String>> sequences = new ArrayList<List<String>>(occurrences.size());
+		for(List<Integer> occurrence : occurrences)
+			sequences.add(labels(data, occurrence));
+		
+		List<Callable<Scored>> tasks = new ArrayList<Callable<Scored>>();
+		for(int from = 0; from < masks.length; from += MASK_BLOCK)
+		{
+			final int start = from, end = Math.min(from + MASK_BLOCK, masks.length);
+			tasks.add(new Callable<Scored>()
+			{
+				public Scored call()
+				{
+					Scored best = null;
+					for(int i = start; i < end; i++)
+						best = best(best, score(sub, nMask, masks[i], i, sequences, occurrences, statistics));
+					
+					return best;
+				}
+			});
+		}
+		
+		Scored best = null;
+		for(Scored block : invokeAll(tasks))
+			best = best(best, block);
+		
+		// * Reconstruct the best motif
+		List<List<Integer>> occOut = new ArrayList<List<Integer>>();
+		List<List<String>> labels = new ArrayList<List<String>>();
+		DTGraph<String, String> motif = mask(sub, toArray(best.mask, nMask), 
+				sequences, occurrences, occOut, labels);
+		
+		// * The cached contributions of the occurrences are not needed for 
+		//   the next motif
+		statistics.clear();
+		
+		return new MaskResult(motif, occOut, labels, best.bits + labelSets, masks.length);
+	}
+	
+	/**
+	 * Computes the code length of a mask, without the label sets, which are 
+	 * the same for all masks.
+	 */
+	private Scored score(
+			DGraph<String> sub, int nMask, long mask, int index,
+			List<List<String>> sequences, List<List<Integer>> occurrences,
+			IncrementalMotifVarTags.Statistics statistics)
+	{
+		List<List<Integer>> occOut = new ArrayList<List<Integer>>();
+		List<List<String>> labels = new ArrayList<List<String>>();
+		
+		DTGraph<String, String> motif = mask(sub, toArray(mask, nMask), 
+				sequences, occurrences, occOut, labels);
+		
+		IncrementalMotifVarTags mv = scorer(motif, occOut, statistics);
+		double bits = mv.motif() 
+				+ mv.silhouetteStructure() + mv.silhouetteLabels() 
+				+ mv.labelSubstitutions() + mv.tagSubstitutions() + mv.wiring();
+		
+		return new Scored(mask, index, bits);
+	}
+	
+	private static Scored best(Scored a, Scored b)
+	{
+		if(a == null)
+			return b;
+		if(b == null)
+			return a;
+		
+		if(b.bits < a.bits || (b.bits == a.bits && b.index < a.index))
+			return b;
+		return a;
+	}
+	
+	/**
+	 * Scores the given occurrences without building the silhouette graph. The 
+	 * contribution of each occurrence is computed once per motif, and shared 
+	 * by all masks that match it.
+	 */
+	private static IncrementalMotifVarTags scorer(
+			DTGraph<String, String> motif, List<List<Integer>> occurrences,
+			IncrementalMotifVarTags.Statistics statistics)
+	{
+		IncrementalMotifVarTags mv = new IncrementalMotifVarTags(statistics, motif, SPECIFY_SUBS);
+		for(List<Integer> occurrence : occurrences)
+			mv.add(occurrence);
+		
+		return mv;
+	}
+	
+	/**
+	 * The masks to search: all of them for small motifs, and a sample for 
+	 * large ones. The sample always contains the empty and the full mask, and 
+	 * is sorted, so that ties are broken as in the full search.
+	 */
+	private static long[] masks(int nMask, SplittableRandom random)
+	{
+		if(nMask > 63)
+			throw new IllegalArgumentException("Motif has too many nodes and links to mask ("+nMask+").");
+		
+		if(nMask <= MAX_MASK_BITS)
+		{
+			long[] masks = new long[1 << nMask];
+			for(int i = 0; i < masks.length; i++)
+				masks[i] = i;
+			return masks;
+		}
+		
+		long full = nMask == 63 ? Long.MAX_VALUE : (1L << nMask) - 1;
+		
+		LongHashSet seen = new LongHashSet(MAX_MASKS);
+		long[] masks = new long[MAX_MASKS];
+		int n = 0;
+		
+		seen.add(0L);
+		masks[n++] = 0L;
+		seen.add(full);
+		masks[n++] = full;
+		
+		while(n < MAX_MASKS)
+		{
+			long mask = random.nextLong() & full;
+			if(seen.add(mask))
+				masks[n++] = mask;
+		}
+		
+		Arrays.sort(masks);
+		return masks;
+	}
+	
+	private static boolean[] toArray(long mask, int nMask)
+	{
+		boolean[] masked = new boolean[nMask];
+		for(int i = 0; i < nMask; i++)
+			masked[i] = ((mask >>> i) & 1L) == 1L;
+		
+		return masked;
+	}
+	
+	private <T> List<T> invokeAll(List<Callable<T>> tasks)
+	{
+		List<T> results = new ArrayList<T>(tasks.size());
+		try
+		{
+			for(Future<T> future : executor.invokeAll(tasks))
+				results.add(future.get());
+		} catch (InterruptedException e)
+		{
+			throw new RuntimeException(e);
+		} catch (ExecutionException e)
+		{
+			throw new RuntimeException(e.getCause());
+		}
+		
+		return results;
+	}
+	
+	/**
+	 * A mask and its code length.
+	 */
+	private static class Scored
+	{
+		long mask;
+		int index;
+		double bits;
+		
+		public Scored(long mask, int index, double bits)
+		{
+			this.mask = mask;
+			this.index = index;
+			this.bits = bits;
+		}
+	}
+	
+	static class MaskResult
+	{
+		DTGraph<String, String> motif;
+		List<List<Integer>> occurrences;
+		List<List<String>> labels;
+		double bits;
+		int masks;
+		
+		public MaskResult(
+				DTGraph<String, String> motif, List<List<Integer>> occurrences, 
+				List<List<String>> labels, double bits, int masks)
+		{
+			this.motif = motif;
+			this.occurrences = occurrences;
+			this.labels = labels;
+			this.bits = bits;
+			this.masks = masks;
+		}
+	}
+	
+	/**
+	 * A sampled subgraph in canonical form, with the indices of its nodes in 
+	 * the data in canonical order.
+	 */
+	private static class Sample
+	{
+		DGraph<String> sub;
+		List<Integer> indices;
+		double weight;
+		
+		public Sample(DGraph<String> sub, List<Integer> indices, double weight)
+		{
+			this.sub = sub;
+			this.indices = indices;
+			this.weight = weight;
+		}
+	}
+	
 	/**
 	 * Returns the labels of the given occurrence in canonical order
 	 * 
@@ -233,7 +562,7 @@ public class DTMotifExtractor
 	 * @param indices
 	 * @return
 	 */
-	private static List<String> labels(DTGraph<String, String> graph, List<Integer> indices)
+	static List<String> labels(DTGraph<String, String> graph, List<Integer> indices)
 	{
 		List<String> labels = new ArrayList<String>();
 		
@@ -355,43 +684,63 @@ public class DTMotifExtractor
 			DTGraph<String, String> data, List<List<Integer>> occurrences,
 			List<List<Integer>> occurrencesOut, List<List<String>> labels)
 	{
+		List<List<String>> sequences = new ArrayList<List<String>>(occurrences.size());
+		for (List<Integer> occurrence : occurrences)
+			sequences.add(labels(data, occurrence));
+		
+		boolean[] masked = new boolean[mask.size()];
+		for(int i : series(mask.size()))
+			masked[i] = mask.get(i);
+		
+		DTGraph<String, String> motif = mask(sub, masked, sequences, occurrences, 
+				occurrencesOut, labels);
+		
+		System.out.print(occurrencesOut.size());
 		
+		return motif;
+	}
+	
+	/**
+	 * Applies a mask, given the label sequences of the occurrences.
+	 */
+	static DTGraph<String, String> mask(DGraph<String> sub, boolean[] mask,
+			List<List<String>> sequences, List<List<Integer>> occurrences,
+			List<List<Integer>> occurrencesOut, List<List<String>> labels)
+	{
 		FrequencyModel<List<String>> fm = new FrequencyModel<List<String>>();
-		for (List<Integer> occurrence : occurrences)
+		for (List<String> sequence : sequences)
 		{
-			List<String> sequence = labels(data, occurrence);
+			List<String> masked = new ArrayList<String>(sequence);
 						
-			assert(sequence.size() == mask.size());
-			for(int i : series(mask.size()))
-				if(mask.get(i))
-					sequence.set(i, MotifVar.VARIABLE_SYMBOL);
+			assert(masked.size() == mask.length);
+			for(int i : series(mask.length))
+				if(mask[i])
+					masked.set(i, MotifVar.VARIABLE_SYMBOL);
 			
-			fm.add(sequence);
+			fm.add(masked);
 		}
 
 		List<String> choice = fm.maxToken();
 		
 		// * Filter out the non-matching occurrences
-		for (List<Integer> occurrence : occurrences)
+		for (int o : series(occurrences.size()))
 		{
-			List<String> sequence = labels(data, occurrence);
+			List<String> sequence = sequences.get(o);
 			
-			boolean matches = true;
+			boolean match = true;
 			for(int i : series(sequence.size()))
 				if(! (choice.get(i).equals(MotifVar.VARIABLE_SYMBOL) || choice.get(i).equals(sequence.get(i))))
 				{
-					matches = false;
+					match = false;
 					break;
 				}
 			
-			if(matches)
+			if(match)
 			{
-				occurrencesOut.add(occurrence);
+				occurrencesOut.add(occurrences.get(o));
 				labels.add(sequence);
 			}
 		}
-		
-		System.out.print(occurrencesOut.size());
 
 		// * Copy the subgraph and mask out the 1s
 		return motif(sub, choice);
@@ -402,20 +751,40 @@ public class DTMotifExtractor
 		return mvTop;
 	}
 	
+	/**
+	 * The cache of canonical forms used in sampling, for its hit rates.
+	 */
+	public CanonicalCache<String> canonicalCache()
+	{
+		return canonicalCache;
+	}
+	
 	public static class UniformGenerator extends AbstractGenerator<Integer>
 	{
 		private int lower, upper;
+		private Random random;
 
 		public UniformGenerator(int lower, int upper)
+		{
+			this(lower, upper, null);
+		}
+		
+		/**
+		 * @param random The random number generator to use. If null, the 
+		 * 	global one is used.
+		 */
+		public UniformGenerator(int lower, int upper, Random random)
 		{
 			this.lower = lower;
 			this.upper = upper;
+			this.random = random;
 		}
 		
 		@Override
 		public Integer generate()
 		{	
-			return Global.random().nextInt(upper - lower) + lower;
+			Random random = this.random == null ? Global.random() : this.random;
+			return random.nextInt(upper - lower) + lower;
 		}
 	}
 
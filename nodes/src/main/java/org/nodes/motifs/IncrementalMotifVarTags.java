@@ -0,0 +1,593 @@
+package org.nodes.motifs;
+
+import static org.nodes.compression.Functions.log2;
+import static org.nodes.motifs.MotifVarTags.VARIABLE_SYMBOL;
+import static org.nodes.util.LogFactorials.log2Factorial;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.nodes.DNode;
+import org.nodes.DTGraph;
+import org.nodes.DTLink;
+import org.nodes.DTNode;
+import org.nodes.compression.EdgeListCompressor;
+
+import nl.peterbloem.kit.Functions;
+import nl.peterbloem.kit.Pair;
+
+/**
+ * Computes the same code length as {@link MotifVarTags}, but keeps it up to
+ * date as occurrences are added and removed, without going over the whole
+ * graph.
+ *
+ * All sequences in the code are stored with KT estimators, whose code length
+ * depends only on how often each symbol occurs, not on the order of the
+ * sequence. We keep these counts, and compute the code lengths from them in
+ * closed form. The contribution of an occurrence to the silhouette and the
+ * wiring depends only on its nodes, so it is computed once, and cached in the
+ * {@link Statistics} of the graph, which can be shared by many scorers.
+ * Adding or removing an occurrence then takes time proportional to the size
+ * of the motif.
+ *
+ * As in MotifVarTags, the occurrences should not overlap. Not thread-safe.
+ *
+ * @author Peter
+ *
+ */
+public class IncrementalMotifVarTags
+{
+	// * log2(sqrt(pi))
+	private static final double LOG2_SQRT_PI = 0.5 * log2(Math.PI);
+
+	private Statistics statistics;
+	private DTGraph<String, String> motif;
+	private boolean specifySubstitutions;
+
+	private double motifBits;
+
+	// * the indices of the variable nodes in the motif
+	private List<Integer> variables = new ArrayList<Integer>();
+	// * the pairs of motif nodes that have variable links between them
+	private List<VarPair> pairs = new ArrayList<VarPair>();
+
+	private Map<List<Integer>, Integer> added = new HashMap<List<Integer>, Integer>();
+	private int count = 0;
+
+	// - Silhouette
+	private long internal = 0;
+	private double sourceG, targetG;
+	private Counts labels, tags;
+	private double wiring = 0.0;
+
+	// - Substitutions
+	private List<Counts> labelSubs = new ArrayList<Counts>();
+
+	public IncrementalMotifVarTags(
+			DTGraph<String, String> graph,
+			DTGraph<String, String> motif,
+			boolean specifySubstitutions)
+	{
+		this(new Statistics(graph), motif, specifySubstitutions);
+	}
+
+	/**
+	 * @param statistics The statistics of the data graph. These may be shared
+	 * 	between scorers, also from different threads.
+	 * @param specifySubstitutions See {@link MotifVarTags}.
+	 */
+	public IncrementalMotifVarTags(
+			Statistics statistics,
+			DTGraph<String, String> motif,
+			boolean specifySubstitutions)
+	{
+		this.statistics = statistics;
+		this.motif = motif;
+		this.specifySubstitutions = specifySubstitutions;
+
+		sourceG = statistics.sourceG;
+		targetG = statistics.targetG;
+		labels = new Counts(statistics.labelCounts, statistics.labelG, statistics.size);
+		tags = new Counts(statistics.tagCounts, statistics.tagG, statistics.numLinks);
+
+		for(DNode<String> node : motif.nodes())
+			if(VARIABLE_SYMBOL.equals(node.label()))
+			{
+				variables.add(node.index());
+				labelSubs.add(new Counts());
+			}
+
+		Set<Pair<Integer, Integer>> paired = new HashSet<Pair<Integer, Integer>>();
+		for(DTLink<String, String> link : motif.links())
+		{
+			Pair<Integer, Integer> pair =
+					new Pair<Integer, Integer>(link.first().index(), link.second().index());
+			if(! paired.add(pair))
+				continue;
+
+			VarPair varPair = new VarPair(pair.first(), pair.second());
+			if(varPair.numVars > 0)
+				pairs.add(varPair);
+		}
+
+		motifBits = motifBits();
+	}
+
+	/**
+	 * Adds an occurrence of the motif.
+	 */
+	public void add(List<Integer> occurrence)
+	{
+		if(occurrence.size() != motif.size())
+			throw new IllegalArgumentException("Occurrence has "+occurrence.size()+" nodes, motif has "+motif.size()+".");
+
+		change(occurrence, 1);
+
+		List<Integer> key = new ArrayList<Integer>(occurrence);
+		Integer n = added.get(key);
+		added.put(key, n == null ? 1 : n + 1);
+	}
+
+	/**
+	 * Removes an occurrence that was added earlier.
+	 */
+	public void remove(List<Integer> occurrence)
+	{
+		Integer n = added.get(occurrence);
+		if(n == null)
+			throw new IllegalArgumentException("Occurrence "+occurrence+" was not added.");
+
+		if(n == 1)
+			added.remove(occurrence);
+		else
+			added.put(new ArrayList<Integer>(occurrence), n - 1);
+
+		change(occurrence, -1);
+	}
+
+	private void change(List<Integer> occurrence, int delta)
+	{
+		Silhouette silhouette = statistics.silhouette(occurrence);
+
+		count += delta;
+		internal += delta * silhouette.internal;
+
+		// * The nodes of the occurrence are replaced by a single symbol node
+		sourceG += delta * (g(silhouette.outBoundary) - silhouette.sourceG);
+		targetG += delta * (g(silhouette.inBoundary) - silhouette.targetG);
+
+		for(String label : silhouette.labels)
+			labels.change(label, -delta);
+		for(String tag : silhouette.internalTags)
+			tags.change(tag, -delta);
+
+		wiring += delta * silhouette.wiring;
+
+		for(int i = 0; i < variables.size(); i++)
+			labelSubs.get(i).change(silhouette.labels.get(variables.get(i)), delta);
+
+		for(VarPair pair : pairs)
+			pair.change(occurrence, delta);
+	}
+
+	/**
+	 * The number of occurrences.
+	 */
+	public int count()
+	{
+		return count;
+	}
+
+	public double size()
+	{
+		double bits = 0.0;
+
+		bits += labelSets();
+		bits += motif();
+
+		bits += silhouetteStructure();
+		bits += silhouetteLabels();
+
+		bits += labelSubstitutions();
+		bits += tagSubstitutions();
+		bits += wiring();
+
+		return bits;
+	}
+
+	public double labelSets()
+	{
+		return statistics.labelSets;
+	}
+
+	public double motif()
+	{
+		return motifBits;
+	}
+
+	private double motifBits()
+	{
+		double bits = EdgeListCompressor.directed(motif);
+
+		Counts motifLabels = new Counts();
+		for(DNode<String> node : motif.nodes())
+			motifLabels.change(node.label(), 1);
+		bits += motifLabels.kt(statistics.numLabels + 1);
+
+		Counts motifTags = new Counts();
+		for(DTLink<String, String> link : motif.links())
+			motifTags.change(link.tag(), 1);
+		bits += motifTags.kt(statistics.numTags + 1);
+
+		return bits;
+	}
+
+	public double silhouetteStructure()
+	{
+		long size = statistics.size - (long) motif.size() * count + count;
+		long numLinks = statistics.numLinks - internal;
+
+		double bits = 0.0;
+
+		bits += Functions.prefix(size);
+		bits += Functions.prefix(numLinks);
+
+		bits += kt(numLinks, size, sourceG);
+		bits += kt(numLinks, size, targetG);
+
+		bits -= log2Factorial(numLinks);
+
+		return bits;
+	}
+
+	public double silhouetteLabels()
+	{
+		// * The symbol nodes are labeled with the motif symbol
+		double bits = kt(labels.total + count, statistics.numLabels + 1, labels.g + g(count));
+
+		bits += tags.kt(statistics.numTags);
+
+		return bits;
+	}
+
+	public double labelSubstitutions()
+	{
+		double bits = 0.0;
+		for(Counts counts : labelSubs)
+			bits += substitutions(counts, statistics.numLabels);
+
+		return bits;
+	}
+
+	public double tagSubstitutions()
+	{
+		double bits = 0.0;
+		for(VarPair pair : pairs)
+			for(Counts counts : pair.indicators)
+				// - MotifVarTags only stores the indicators that have been seen
+				if(counts.total > 0)
+					bits += substitutions(counts, statistics.numTags);
+
+		return bits;
+	}
+
+	private double substitutions(Counts counts, int alphabet)
+	{
+		double bits = 0.0;
+
+		if(specifySubstitutions)
+		{
+			bits += Functions.prefix(counts.distinct);
+			bits += log2(alphabet) * counts.distinct;
+		}
+
+		bits += counts.kt(specifySubstitutions ? counts.distinct : alphabet);
+
+		return bits;
+	}
+
+	public double wiring()
+	{
+		return wiring;
+	}
+
+	public DTGraph<String, String> motifGraph()
+	{
+		return motif;
+	}
+
+	/**
+	 * The code length of a sequence of n symbols under a KT estimator with the
+	 * given alphabet size, where g is the sum of g(c) over the counts c of the
+	 * symbols.
+	 */
+	private static double kt(long n, long alphabet, double g)
+	{
+		if(n == 0)
+			return 0.0;
+
+		return log2Gamma(2 * n + alphabet) - log2Gamma(alphabet) - g;
+	}
+
+	/**
+	 * log2(Gamma(x/2)) for positive integers x.
+	 */
+	private static double log2Gamma(long x)
+	{
+		if(x % 2 == 0)
+			return log2Factorial(x / 2 - 1);
+
+		long c = (x - 1) / 2;
+		return g(c) + LOG2_SQRT_PI;
+	}
+
+	/**
+	 * log2(Gamma(c + 1/2) / Gamma(1/2)): the contribution of a symbol that
+	 * occurs c times to the probability of a sequence under a KT estimator.
+	 */
+	private static double g(long c)
+	{
+		if(c == 0)
+			return 0.0;
+
+		return log2Factorial(2 * c) - log2Factorial(c) - 2 * c;
+	}
+
+	/**
+	 * The counts of the symbols in a sequence, possibly on top of a fixed base
+	 * of counts.
+	 */
+	private static class Counts
+	{
+		private Map<String, Integer> base;
+		private Map<String, Integer> counts = new HashMap<String, Integer>();
+
+		private double g = 0.0;
+		private long total = 0;
+		// * the number of symbols with a nonzero count (without a base)
+		private int distinct = 0;
+
+		public Counts()
+		{
+			this(Collections.<String, Integer>emptyMap(), 0.0, 0);
+		}
+
+		public Counts(Map<String, Integer> base, double g, long total)
+		{
+			this.base = base;
+			this.g = g;
+			this.total = total;
+		}
+
+		public int count(String symbol)
+		{
+			Integer count = counts.get(symbol);
+			if(count == null)
+				count = base.get(symbol);
+
+			return count == null ? 0 : count;
+		}
+
+		public void change(String symbol, int delta)
+		{
+			int old = count(symbol);
+			int count = old + delta;
+			if(count < 0)
+				throw new IllegalStateException("Count of symbol "+symbol+" would become negative.");
+
+			g += g(count) - g(old);
+			total += delta;
+
+			if(old == 0 && count > 0)
+				distinct++;
+			if(old > 0 && count == 0)
+				distinct--;
+
+			counts.put(symbol, count);
+		}
+
+		public double kt(long alphabet)
+		{
+			return IncrementalMotifVarTags.kt(total, alphabet, g);
+		}
+	}
+
+	/**
+	 * A pair of motif nodes with variable links between them, and the counts of
+	 * the substitutions for each of these links.
+	 */
+	private class VarPair
+	{
+		private int from, to;
+		private int numVars = 0;
+		// * the tags of the links that are not variable
+		private List<String> fixed = new ArrayList<String>();
+
+		private List<Counts> indicators = new ArrayList<Counts>();
+
+		public VarPair(int from, int to)
+		{
+			this.from = from;
+			this.to = to;
+
+			for(DTLink<String, String> link : motif.get(from).linksOut(motif.get(to)))
+				if(VARIABLE_SYMBOL.equals(link.tag()))
+					numVars++;
+				else
+					fixed.add(link.tag());
+		}
+
+		public void change(List<Integer> occurrence, int delta)
+		{
+			DTGraph<String, String> graph = statistics.graph;
+			DTNode<String, String> graphFrom = graph.get(occurrence.get(from)),
+			                       graphTo   = graph.get(occurrence.get(to));
+
+			List<String> occTags = new ArrayList<String>();
+			for(DTLink<String, String> link : graphFrom.linksOut(graphTo))
+				occTags.add(link.tag());
+
+			for(String tag : fixed)
+				occTags.remove(tag);
+
+			for(int i = 0; i < occTags.size(); i++)
+			{
+				while(indicators.size() <= i)
+					indicators.add(new Counts());
+
+				indicators.get(i).change(occTags.get(i), delta);
+			}
+		}
+	}
+
+	/**
+	 * The parts of the code length that depend only on the data graph, and a
+	 * cache of the contributions of single occurrences. Safe to share between
+	 * threads, provided the graph is not modified.
+	 */
+	public static class Statistics
+	{
+		private DTGraph<String, String> graph;
+
+		private int size, numLabels, numTags;
+		private long numLinks;
+		private double labelSets;
+
+		// * sums of g over the out and in degrees of all nodes
+		private double sourceG = 0.0, targetG = 0.0;
+
+		private Map<String, Integer> labelCounts = new HashMap<String, Integer>();
+		private Map<String, Integer> tagCounts = new HashMap<String, Integer>();
+		private double labelG = 0.0, tagG = 0.0;
+
+		private Map<List<Integer>, Silhouette> silhouettes =
+				new ConcurrentHashMap<List<Integer>, Silhouette>();
+
+		public Statistics(DTGraph<String, String> graph)
+		{
+			this.graph = graph;
+
+			size = graph.size();
+			numLinks = graph.numLinks();
+			numLabels = graph.labels().size();
+			numTags = graph.tags().size();
+
+			labelSets = new MotifVarTags(graph, null,
+					Collections.<List<Integer>>emptyList(), true).labelSets();
+
+			for(DTNode<String, String> node : graph.nodes())
+			{
+				sourceG += g(node.linksOut().size());
+				targetG += g(node.linksIn().size());
+
+				increment(labelCounts, node.label());
+			}
+
+			for(DTLink<String, String> link : graph.links())
+				increment(tagCounts, link.tag());
+
+			for(int count : labelCounts.values())
+				labelG += g(count);
+			for(int count : tagCounts.values())
+				tagG += g(count);
+		}
+
+		private static void increment(Map<String, Integer> map, String symbol)
+		{
+			Integer count = map.get(symbol);
+			map.put(symbol, count == null ? 1 : count + 1);
+		}
+
+		public double labelSets()
+		{
+			return labelSets;
+		}
+
+		private Silhouette silhouette(List<Integer> occurrence)
+		{
+			Silhouette silhouette = silhouettes.get(occurrence);
+			if(silhouette == null)
+			{
+				silhouette = new Silhouette(graph, occurrence);
+				silhouettes.put(new ArrayList<Integer>(occurrence), silhouette);
+			}
+
+			return silhouette;
+		}
+
+		/**
+		 * Forgets the cached contributions of the occurrences.
+		 */
+		public void clear()
+		{
+			silhouettes.clear();
+		}
+	}
+
+	/**
+	 * What replacing a single occurrence by a symbol node does to the
+	 * silhouette, and the cost of its wiring.
+	 */
+	private static class Silhouette
+	{
+		// * the number of links within the occurrence
+		private int internal = 0;
+		// * the number of links out of and into the occurrence
+		private int outBoundary = 0, inBoundary = 0;
+		// * sums of g over the out and in degrees of the nodes
+		private double sourceG = 0.0, targetG = 0.0;
+
+		private List<String> labels;
+		private List<String> internalTags = new ArrayList<String>();
+
+		private double wiring;
+
+		public Silhouette(DTGraph<String, String> graph, List<Integer> occurrence)
+		{
+			Set<Integer> nodes = new HashSet<Integer>(occurrence);
+			labels = new ArrayList<String>(occurrence.size());
+
+			long wired = 0;
+			double wiringG = 0.0;
+
+			for(int index : occurrence)
+			{
+				DTNode<String, String> node = graph.get(index);
+				labels.add(node.label());
+
+				sourceG += g(node.linksOut().size());
+				targetG += g(node.linksIn().size());
+
+				for(DTLink<String, String> link : node.linksOut())
+					if(nodes.contains(link.to().index()))
+					{
+						internal++;
+						internalTags.add(link.tag());
+					} else
+						outBoundary++;
+
+				for(DTLink<String, String> link : node.linksIn())
+					if(! nodes.contains(link.from().index()))
+						inBoundary++;
+
+				// * A KT estimator over the nodes of the motif, reset for
+				//   each occurrence
+				int outside = 0;
+				for(DNode<String> neighbor : node.neighbors())
+					if(! nodes.contains(neighbor.index()))
+						outside++;
+
+				wired += outside;
+				wiringG += g(outside);
+			}
+
+			wiring = kt(wired, occurrence.size(), wiringG);
+		}
+	}
+}
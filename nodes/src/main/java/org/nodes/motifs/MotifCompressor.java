@@ -1,6 +1,6 @@
 package org.nodes.motifs;
 
-import static nl.peterbloem.kit.Functions.logFactorial;
+import static org.nodes.util.LogFactorials.log2Factorial;
 import static nl.peterbloem.kit.Functions.prefix;
 import static nl.peterbloem.kit.Series.series;
 import static org.nodes.compression.Functions.log2;
@@ -24,6 +24,7 @@ import org.nodes.DTLink;
 import org.nodes.DTNode;
 import org.nodes.FastWalkable;
 import org.nodes.Graph;
+import org.nodes.IntCursor;
 import org.nodes.Link;
 import org.nodes.MapDTGraph;
 import org.nodes.MapUTGraph;
@@ -294,7 +295,7 @@ public class MotifCompressor extends AbstractGraphCompressor<String>
 			}
 		}
 
-		bits -= logFactorial(subbedNumLinks, 2.0);
+		bits -= log2Factorial(subbedNumLinks);
 		// -- Structure is now stored
 		// - Subbed graph, bits for the label sequences (as done by AbstractGraphCompressor)
 
@@ -318,6 +319,12 @@ public class MotifCompressor extends AbstractGraphCompressor<String>
 		OnlineModel<Integer> om = new OnlineModel<Integer>(Series.series(sub.size()));
 		
 		double wiringBits = 0.0;
+		
+		// * For FastWalkable graphs, we walk the neighbor indices directly. 
+		//   These contain each neighbor once for every link to it, so the 
+		//   result is the same.
+		IntCursor cursor = graph instanceof FastWalkable<?, ?> ? 
+				((FastWalkable<?, ?>) graph).neighborCursor() : null;
 
 		for (List<Integer> occurrence : occurrences)
 		{
@@ -327,14 +334,21 @@ public class MotifCompressor extends AbstractGraphCompressor<String>
 			int indexWithin = 0;
 			for (int index : occurrence)
 			{
-				for (DNode<String> neighbor : graph.get(index).neighbors())
-					if (!occSet.contains(neighbor.index()))
-					{
-						for (DLink<String> link : graph.get(index).linksOut(neighbor))
-							wiringBits += -log2(om.observe(indexWithin));
-						for (DLink<String> link : graph.get(index).linksIn(neighbor))
+				if (cursor != null)
+				{
+					cursor.reset(index);
+					while (cursor.hasNext())
+						if (!occSet.contains(cursor.next()))
 							wiringBits += -log2(om.observe(indexWithin));
-					}
+				} else
+					for (DNode<String> neighbor : graph.get(index).neighbors())
+						if (!occSet.contains(neighbor.index()))
+						{
+							for (DLink<String> link : graph.get(index).linksOut(neighbor))
+								wiringBits += -log2(om.observe(indexWithin));
+							for (DLink<String> link : graph.get(index).linksIn(neighbor))
+								wiringBits += -log2(om.observe(indexWithin));
+						}
 
 				indexWithin++;
 			}
@@ -593,18 +607,16 @@ public class MotifCompressor extends AbstractGraphCompressor<String>
 		
 		if(graph instanceof FastWalkable<?, ?>)
 		{
-			FastWalkable<L, Node<L>> g = (FastWalkable<L, Node<L>>)graph;
+			IntCursor cursor = ((FastWalkable<?, ?>)graph).neighborCursor();
 			
 			int sum = 0;
-			List<Integer> neighbs = new ArrayList<Integer>();
 			
-			for (int i : Series.series(occurrence.size()))
+			for (int nodeIndex : occurrence)
 			{
-				int nodeIndex = occurrence.get(i);
-				Node<L> node = graph.get(nodeIndex);
+				cursor.reset(nodeIndex);
 		
-				for(Node<L> neighb : g.neighborsFast(node))
-					if (!occSet.contains(neighb.index()))
+				while(cursor.hasNext())
+					if (!occSet.contains(cursor.next()))
 						sum++;
 			}
 			
@@ -1,6 +1,6 @@
 package org.nodes.motifs;
 
-import static nl.peterbloem.kit.Functions.logFactorial;
+import static org.nodes.util.LogFactorials.log2Factorial;
 import static nl.peterbloem.kit.Functions.prefix;
 import static nl.peterbloem.kit.Series.series;
 import static org.nodes.compression.Functions.log2;
@@ -227,7 +227,7 @@ public class MotifVar
 			}
 		}
 
-		bits -= logFactorial(subbedNumLinks, 2.0);
+		bits -= log2Factorial(subbedNumLinks);
 		
 		return bits;
 	}
@@ -1,6 +1,6 @@
 package org.nodes.motifs;
 
-import static nl.peterbloem.kit.Functions.logFactorial;
+import static org.nodes.util.LogFactorials.log2Factorial;
 import static nl.peterbloem.kit.Functions.prefix;
 import static nl.peterbloem.kit.Series.series;
 import static org.nodes.compression.Functions.log2;
@@ -65,7 +65,7 @@ public class MotifVarTags
 
 	// - This list holds the index of the occurrence the given node belongs to
 	//
-	private List<Integer> inOccurrence;
+	private List<Integer> inOccurrence = null;
 	private int replacedNodes = 0;
 	private int numLabels;
 	
@@ -94,7 +94,20 @@ public class MotifVarTags
 		this.motif = motif;
 		this.occurrences = occurrences;
 		this.specifySubstitutions = specifySubstitutions;
-
+		
+		numLabels = graph.labels().size();
+	}
+	
+	/**
+	 * Finds the occurrence of each node in the graph. This takes time linear 
+	 * in the size of the graph, so it is only done for the parts of the code 
+	 * that need it.
+	 */
+	private void index()
+	{
+		if(inOccurrence != null)
+			return;
+		
 		inOccurrence = new ArrayList<Integer>(graph.size());
 		for(int i : series(graph.size()))
 			inOccurrence.add(null);
@@ -105,8 +118,6 @@ public class MotifVarTags
 				inOccurrence.set(i, occIndex);
 				replacedNodes++;
 			}
-		
-		numLabels = graph.labels().size();
 	}
 
 	public double size()
@@ -192,6 +203,8 @@ public class MotifVarTags
 	 */
 	public double silhouetteStructure()
 	{
+		index();
+		
 		double bits = 0;
 
 		// * Store the subbed graph
@@ -223,9 +236,9 @@ public class MotifVarTags
 			Integer firstOcc = inOccurrence.get(link.first().index());
 			Integer secondOcc = inOccurrence.get(link.second().index());
 
-			if ((firstOcc == null && secondOcc == null)
-					|| firstOcc != secondOcc) // if true, the link is not removed 
-											  // from the graph by the substitution process
+			// - if true, the link is not removed from the graph by the 
+			//   substitution process (the indices are boxed, so we use equals)
+			if (firstOcc == null || ! firstOcc.equals(secondOcc))
 				subbedNumLinks++;
 		}
 		
@@ -241,8 +254,7 @@ public class MotifVarTags
 			Integer firstOcc = inOccurrence.get(link.first().index());
 			Integer secondOcc = inOccurrence.get(link.second().index());
 
-			if ((firstOcc == null && secondOcc == null)
-					|| firstOcc != secondOcc)
+			if (firstOcc == null || ! firstOcc.equals(secondOcc))
 			{
 				int first = link.first().index();
 				int second = link.second().index();
@@ -258,13 +270,15 @@ public class MotifVarTags
 		}
 
 		// * subtract the information stored in the link ordering
-		bits -= logFactorial(subbedNumLinks, 2.0);
+		bits -= log2Factorial(subbedNumLinks);
 		
 		return bits;
 	}
 
 	public double silhouetteLabels()
 	{
+		index();
+		
 		// * Labels
 		double bits = 0;
 		
@@ -286,8 +300,7 @@ public class MotifVarTags
 			Integer firstOcc = inOccurrence.get(link.first().index());
 			Integer secondOcc = inOccurrence.get(link.second().index());
 			
-			if ((firstOcc == null && secondOcc == null)
-					|| firstOcc != secondOcc)
+			if (firstOcc == null || ! firstOcc.equals(secondOcc))
 			{
 				// -- the link is part of the silhouette.
 				bits += - log2(tagModel.observe(link.tag()));
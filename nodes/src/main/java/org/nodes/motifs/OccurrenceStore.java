@@ -0,0 +1,513 @@
+package org.nodes.motifs;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.nodes.util.LongHashSet;
+
+/**
+ * Stores the sampled occurrences of motifs, within a memory budget.
+ *
+ * The occurrences of each motif are packed into a single int array, and the
+ * nodes taken by them are kept in a primitive hash set, which is replaced by a
+ * bitset once the motif covers enough of the graph for that to be smaller. An
+ * occurrence that overlaps an earlier occurrence of the same motif is
+ * rejected.
+ *
+ * When the store grows beyond its budget, the occurrences of the least
+ * frequent motifs are written to temporary files, and read back when the motif
+ * is sampled again, or its occurrences are requested. The frequencies of all
+ * motifs stay in memory. {@link #retainTop(int)} drops the occurrences of all
+ * but the most frequent motifs, but keeps their frequencies: a dropped motif
+ * that is sampled again collects new occurrences, and adds to the frequency it
+ * had. Its taken nodes are dropped with its occurrences, so the new
+ * occurrences are only checked against each other. They may overlap the 
+ * dropped occurrences, which still count in the frequency.
+ *
+ * The frequencies of the dropped motifs count towards the budget. If the 
+ * store is still over budget after spilling, the lowest of these frequencies
+ * are forgotten, and those motifs start again from zero.
+ *
+ * Not thread-safe. Call {@link #close()} to remove the temporary files.
+ *
+ * @author Peter
+ *
+ * @param <M> The type of the motifs.
+ */
+public class OccurrenceStore<M>
+{
+	private int numNodes;
+	private long budget;
+	private File directory;
+
+	private Map<M, Entry> entries = new LinkedHashMap<M, Entry>();
+	// * the frequencies of the motifs dropped by retainTop
+	private Map<M, Double> dropped = new HashMap<M, Double>();
+	// * a rough estimate of the memory per dropped frequency: the map entry,
+	//   the boxed frequency and a small motif
+	static final long DROPPED_MEMORY = 128;
+	private long memory = 0;
+	private long spills = 0, loads = 0;
+
+	/**
+	 * @param numNodes The number of nodes in the data graph.
+	 * @param budget The number of bytes the occurrences may take up in memory
+	 * 	(approximately).
+	 * @param directory The directory for the temporary files. If null, the
+	 * 	default temporary directory is used.
+	 */
+	public OccurrenceStore(int numNodes, long budget, File directory)
+	{
+		if(budget < 0)
+			throw new IllegalArgumentException("Budget cannot be negative (was "+budget+").");
+
+		this.numNodes = numNodes;
+		this.budget = budget;
+		this.directory = directory;
+	}
+
+	/**
+	 * Adds an occurrence of the given motif, unless it shares nodes with an
+	 * earlier occurrence of the same motif.
+	 *
+	 * @param weight The amount to add to the frequency of the motif.
+	 * @return Whether the occurrence was added.
+	 */
+	public boolean add(M motif, List<Integer> occurrence, double weight)
+	{
+		Entry entry = entries.get(motif);
+		if(entry == null)
+		{
+			entry = new Entry(occurrence.size());
+			entries.put(motif, entry);
+			memory += entry.memory();
+
+			Double frequency = dropped.remove(motif);
+			if(frequency != null)
+			{
+				entry.frequency = frequency;
+				memory -= DROPPED_MEMORY;
+			}
+		} else if(entry.size != occurrence.size())
+			throw new IllegalArgumentException("Occurrence has "+occurrence.size()+" nodes, earlier occurrences of this motif had "+entry.size+".");
+
+		load(entry);
+
+		for(int node : occurrence)
+			if(entry.taken.contains(node))
+				return false;
+
+		memory -= entry.memory();
+		entry.add(occurrence, weight);
+		memory += entry.memory();
+
+		if(memory > budget)
+			spill(entry);
+
+		return true;
+	}
+
+	/**
+	 * The total weight of the occurrences of the motif, including those dropped
+	 * by {@link #retainTop(int)} (unless that frequency was forgotten to stay
+	 * within the budget).
+	 */
+	public double frequency(M motif)
+	{
+		Entry entry = entries.get(motif);
+		if(entry != null)
+			return entry.frequency;
+
+		Double frequency = dropped.get(motif);
+		return frequency == null ? 0.0 : frequency;
+	}
+
+	/**
+	 * The number of occurrences stored for the motif.
+	 */
+	public int count(M motif)
+	{
+		Entry entry = entries.get(motif);
+		return entry == null ? 0 : entry.count;
+	}
+
+	/**
+	 * The number of motifs in the store, not counting those dropped by
+	 * {@link #retainTop(int)}.
+	 */
+	public int size()
+	{
+		return entries.size();
+	}
+
+	/**
+	 * The motifs, sorted by frequency from high to low. Motifs with the same
+	 * frequency are in the order in which they were first added.
+	 */
+	public List<M> sorted()
+	{
+		List<M> motifs = new ArrayList<M>(entries.keySet());
+		Collections.sort(motifs, new Comparator<M>()
+		{
+			@Override
+			public int compare(M a, M b)
+			{
+				return - Double.compare(entries.get(a).frequency, entries.get(b).frequency);
+			}
+		});
+
+		return motifs;
+	}
+
+	/**
+	 * The occurrences of the given motif, in the order they were added. This
+	 * reads the occurrences back into memory if they were spilled.
+	 *
+	 * @return An unmodifiable view.
+	 */
+	public List<List<Integer>> occurrences(M motif)
+	{
+		final Entry entry = entries.get(motif);
+		if(entry == null)
+			return Collections.emptyList();
+
+		load(entry);
+
+		final int[] data = entry.data;
+		final int size = entry.size, count = entry.count;
+
+		return new AbstractList<List<Integer>>()
+		{
+			@Override
+			public List<Integer> get(final int i)
+			{
+				if(i < 0 || i >= count)
+					throw new IndexOutOfBoundsException("Index "+i+" out of bounds for "+count+" occurrences.");
+
+				return new AbstractList<Integer>()
+				{
+					@Override
+					public Integer get(int j)
+					{
+						if(j < 0 || j >= size)
+							throw new IndexOutOfBoundsException();
+						return data[i * size + j];
+					}
+
+					@Override
+					public int size()
+					{
+						return size;
+					}
+				};
+			}
+
+			@Override
+			public int size()
+			{
+				return count;
+			}
+		};
+	}
+
+	/**
+	 * Removes the occurrences of all but the k most frequent motifs. The
+	 * frequencies of the removed motifs are kept, as far as the budget allows.
+	 */
+	public void retainTop(int k)
+	{
+		if(entries.size() <= k)
+			return;
+
+		List<M> sorted = sorted();
+		for(M motif : sorted.subList(k, sorted.size()))
+		{
+			Entry entry = entries.remove(motif);
+			memory -= entry.memory();
+			entry.delete();
+
+			dropped.put(motif, entry.frequency);
+			memory += DROPPED_MEMORY;
+		}
+
+		if(memory > budget)
+			spill(null);
+	}
+
+	/**
+	 * The approximate number of bytes taken up in memory by the occurrences,
+	 * and by the frequencies of the dropped motifs.
+	 */
+	public long memory()
+	{
+		return memory;
+	}
+
+	/**
+	 * The number of times the occurrences of a motif were written to disk.
+	 */
+	public long spills()
+	{
+		return spills;
+	}
+
+	/**
+	 * The number of times the occurrences of a motif were read back from disk.
+	 */
+	public long loads()
+	{
+		return loads;
+	}
+
+	/**
+	 * Removes all motifs and their temporary files.
+	 */
+	public void close()
+	{
+		for(Entry entry : entries.values())
+			entry.delete();
+
+		entries.clear();
+		dropped.clear();
+		memory = 0;
+	}
+
+	/**
+	 * Spills the least frequent motifs until the store is within its budget.
+	 * If that is not enough, forgets the lowest frequencies of the dropped 
+	 * motifs.
+	 *
+	 * @param keep A motif that should stay in memory (may be null).
+	 */
+	private void spill(Entry keep)
+	{
+		List<Entry> candidates = new ArrayList<Entry>();
+		for(Entry entry : entries.values())
+			if(entry != keep && entry.file == null && entry.count > 0)
+				candidates.add(entry);
+
+		Collections.sort(candidates, new Comparator<Entry>()
+		{
+			@Override
+			public int compare(Entry a, Entry b)
+			{
+				return Double.compare(a.frequency, b.frequency);
+			}
+		});
+
+		for(Entry entry : candidates)
+		{
+			if(memory <= budget)
+				break;
+
+			memory -= entry.memory();
+			entry.spill();
+			spills++;
+		}
+
+		if(memory <= budget || dropped.isEmpty())
+			return;
+
+		List<Map.Entry<M, Double>> lowest = new ArrayList<Map.Entry<M, Double>>(dropped.entrySet());
+		Collections.sort(lowest, new Comparator<Map.Entry<M, Double>>()
+		{
+			@Override
+			public int compare(Map.Entry<M, Double> a, Map.Entry<M, Double> b)
+			{
+				return Double.compare(a.getValue(), b.getValue());
+			}
+		});
+
+		List<M> forget = new ArrayList<M>();
+		for(Map.Entry<M, Double> entry : lowest)
+		{
+			if(memory <= budget)
+				break;
+
+			forget.add(entry.getKey());
+			memory -= DROPPED_MEMORY;
+		}
+
+		for(M motif : forget)
+			dropped.remove(motif);
+	}
+
+	private void load(Entry entry)
+	{
+		if(entry.file == null)
+			return;
+
+		entry.load();
+		loads++;
+		memory += entry.memory();
+
+		if(memory > budget)
+			spill(entry);
+	}
+
+	private class Entry
+	{
+		// * the number of nodes per occurrence
+		int size;
+		int count = 0;
+		double frequency = 0.0;
+
+		// * occurrence i is data[i * size], ..., data[i * size + size - 1]
+		int[] data;
+		Taken taken;
+
+		// * not null if the occurrences are on disk
+		File file = null;
+
+		public Entry(int size)
+		{
+			this.size = size;
+			this.data = new int[size * 4];
+			this.taken = new Taken();
+		}
+
+		public void add(List<Integer> occurrence, double weight)
+		{
+			if((count + 1) * size > data.length)
+				data = Arrays.copyOf(data, Math.max(data.length * 2, (count + 1) * size));
+
+			int offset = count * size;
+			for(int node : occurrence)
+			{
+				data[offset++] = node;
+				taken.add(node);
+			}
+
+			count++;
+			frequency += weight;
+		}
+
+		public long memory()
+		{
+			if(file != null)
+				return 0;
+
+			return 4L * data.length + taken.memory();
+		}
+
+		public void spill()
+		{
+			try
+			{
+				file = File.createTempFile("occurrences.", ".bin", directory);
+				file.deleteOnExit();
+
+				DataOutputStream out = new DataOutputStream(
+						new BufferedOutputStream(new FileOutputStream(file)));
+				try
+				{
+					for(int i = 0; i < count * size; i++)
+						out.writeInt(data[i]);
+				} finally
+				{
+					out.close();
+				}
+			} catch(IOException e)
+			{
+				throw new RuntimeException(e);
+			}
+
+			data = null;
+			taken = null;
+		}
+
+		public void load()
+		{
+			data = new int[Math.max(count * size, size * 4)];
+			taken = new Taken();
+
+			try
+			{
+				DataInputStream in = new DataInputStream(
+						new BufferedInputStream(new FileInputStream(file)));
+				try
+				{
+					for(int i = 0; i < count * size; i++)
+					{
+						data[i] = in.readInt();
+						taken.add(data[i]);
+					}
+				} finally
+				{
+					in.close();
+				}
+			} catch(IOException e)
+			{
+				throw new RuntimeException(e);
+			}
+
+			delete();
+		}
+
+		public void delete()
+		{
+			if(file != null)
+			{
+				file.delete();
+				file = null;
+			}
+		}
+	}
+
+	/**
+	 * The nodes taken by the occurrences of a motif: a hash set while there are
+	 * few, and a bitset over all nodes once that is smaller.
+	 */
+	private class Taken
+	{
+		private LongHashSet sparse = new LongHashSet();
+		private BitSet dense = null;
+
+		public boolean contains(int node)
+		{
+			return dense != null ? dense.get(node) : sparse.contains(node);
+		}
+
+		public void add(int node)
+		{
+			if(dense != null)
+			{
+				dense.set(node);
+				return;
+			}
+
+			sparse.add(node);
+
+			// * The hash set takes up to 32 bytes per node, the bitset one bit
+			//   per node in the graph
+			if(32L * sparse.size() > numNodes / 8 + 1)
+			{
+				dense = new BitSet(numNodes);
+				for(long n : sparse.toArray())
+					dense.set((int) n);
+				sparse = null;
+			}
+		}
+
+		public long memory()
+		{
+			return dense != null ? numNodes / 8 : 32L * sparse.size();
+		}
+	}
+}
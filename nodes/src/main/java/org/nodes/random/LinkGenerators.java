@@ -2,6 +2,7 @@ package org.nodes.random;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 import org.nodes.DGraph;
 import org.nodes.DLink;
@@ -29,6 +30,7 @@ public class LinkGenerators
 	public static class LinkGenerator<T> extends AbstractGenerator<Link<T>>
 	{
 		protected List<Link<T>> links;
+		private Random random = null;
 
 		public LinkGenerator(Graph<T> graph)
 		{
@@ -36,13 +38,28 @@ public class LinkGenerators
 			for(Link<T> link : graph.links())
 				links.add(link);
 		}
+		
+		/**
+		 * A generator that shares the list of links of the given generator, 
+		 * but draws from its own random number generator.
+		 */
+		public LinkGenerator(LinkGenerator<T> other, Random random)
+		{
+			this.links = other.links;
+			this.random = random;
+		}
 
 		@Override
 		public Link<T> generate()
 		{	
-			int i = Global.random().nextInt(links.size());
+			int i = random().nextInt(links.size());
 			return links.get(i);
-		}		
+		}
+		
+		protected Random random()
+		{
+			return random == null ? Global.random() : random;
+		}
 	}
 	
 	public static class ULinkGenerator<L> extends LinkGenerator<L>
@@ -13,6 +13,7 @@ import java.util.Set;
 
 import org.nodes.FastWalkable;
 import org.nodes.Graph;
+import org.nodes.IntCursor;
 import org.nodes.Link;
 import org.nodes.Node;
 import org.nodes.Subgraph;
@@ -96,6 +97,9 @@ public class SimpleSubgraphGenerator extends AbstractGenerator<List<Integer>>
 
 	protected boolean addNeighbor(List<Integer> indices)
 	{
+		if(graph instanceof FastWalkable<?, ?>)
+			return addNeighborFast(indices, (FastWalkable<?, ?>) graph);
+		
 		Node<?> randomNeighbor = randomNeighbor(indices);
 		
 		int i = 0;
@@ -116,6 +120,50 @@ public class SimpleSubgraphGenerator extends AbstractGenerator<List<Integer>>
 		return true;
 	}
 	
+	/**
+	 * A version of addNeighbor for FastWalkable graphs, which works on node 
+	 * indices only. 
+	 */
+	private boolean addNeighborFast(List<Integer> indices, FastWalkable<?, ?> graph)
+	{
+		for(int i : series(REJECTION_TRIES + 1))
+		{
+			int node = choose(indices);
+			
+			int n = graph.numNeighborsFast(node);
+			if(n == 0)
+				continue;
+			
+			int neighbor = graph.neighborFast(node, Global.random().nextInt(n));
+			if(! indices.contains(neighbor))
+			{
+				indices.add(neighbor);
+				return true;
+			}
+		}
+		
+		// * Search exhaustively
+		IntCursor cursor = graph.neighborCursor();
+		List<Integer> candidates = new ArrayList<Integer>();
+		
+		for(int index : indices)
+		{
+			cursor.reset(index);
+			while(cursor.hasNext())
+			{
+				int neighbor = cursor.next();
+				if(! indices.contains(neighbor))
+					candidates.add(neighbor);
+			}
+		}
+		
+		if(candidates.isEmpty())
+			return false;
+		
+		indices.add(choose(candidates));
+		return true;
+	}
+	
 	/**
 	 * Searches explicitly for a neighbor that is not contained in the index list
 	 * @param result
@@ -7,7 +7,9 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
 
 import org.nodes.Graph;
@@ -40,6 +42,8 @@ public class SubgraphGenerator<L> extends AbstractGenerator<SubgraphGenerator<L>
 	
 	private boolean probability = true;
 	
+	private Random random = null;
+	
 	public SubgraphGenerator(Graph<L> graph, int n)
 	{
 		this(graph, n, new ArrayList<Node<L>>());
@@ -74,7 +78,26 @@ public class SubgraphGenerator<L> extends AbstractGenerator<SubgraphGenerator<L>
 		
 		links = new LinkGenerator<L>(graph);
 	}
-
+	
+	/**
+	 * A generator that shares the graph and the list of links with the given 
+	 * generator, but draws from its own random number generator. This is 
+	 * cheap, so that every thread can sample with its own copy.
+	 * 
+	 * @param ints The generator for the sizes of the subgraphs. This is 
+	 * 	ignored if the given generator has a fixed size.
+	 */
+	public SubgraphGenerator(SubgraphGenerator<L> other, Generator<Integer> ints, Random random)
+	{
+		this.n = other.n;
+		this.ints = ints;
+		this.graph = other.graph;
+		this.toAvoid = other.toAvoid;
+		this.probability = other.probability;
+		this.random = random;
+		
+		links = new LinkGenerator<L>(other.links, random);
+	}
 
 	@Override
 	public SubgraphGenerator<L>.Result generate()
@@ -131,7 +154,7 @@ public class SubgraphGenerator<L> extends AbstractGenerator<SubgraphGenerator<L>
 									linksCandidates.add(linkCandidate);
 				
 				if(! linksCandidates.isEmpty() )
-					link = Functions.choose(linksCandidates);
+					link = random == null ? Functions.choose(linksCandidates) : choose(linksCandidates);
 			}	
 		}
 		
@@ -140,6 +163,17 @@ public class SubgraphGenerator<L> extends AbstractGenerator<SubgraphGenerator<L>
 				new ArrayList<Link<L>>(linksChosen));
 	}
 	
+	private Link<L> choose(Set<Link<L>> candidates)
+	{
+		int draw = random.nextInt(candidates.size());
+		
+		Iterator<Link<L>> iterator = candidates.iterator();
+		for(int i = 0; i < draw; i++)
+			iterator.next();
+		
+		return iterator.next();
+	}
+	
 	private boolean avoid(Link<L> link)
 	{
 		if(toAvoid.contains(link.first()))
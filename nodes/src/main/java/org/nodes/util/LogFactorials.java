@@ -0,0 +1,198 @@
+package org.nodes.util;
+
+import static java.lang.Math.PI;
+import static java.lang.Math.log;
+import static java.lang.Math.log1p;
+
+import java.util.List;
+
+/**
+ * A shared table of binary log factorials, for code length computations.
+ *
+ * The table grows lazily (by doubling) up to a cap. Beyond the cap, the
+ * factorials are computed with Stirling's series, which is accurate to well
+ * below a millionth of a bit at that point. Lookups are lock free; only
+ * growing the table is synchronized.
+ *
+ * @author Peter
+ *
+ */
+public class LogFactorials
+{
+	public static final int DEFAULT_CAP = 1 << 20;
+
+	private static final double LOG2E = 1.0 / log(2.0);
+	private static final double HALF_LN_2PI = 0.5 * log(2.0 * PI);
+
+	// * Below this, the Stirling difference in log2Choose is not accurate
+	//   enough, and we subtract factorials directly
+	private static final long STIRLING_MIN = 64;
+
+	private static volatile int cap = DEFAULT_CAP;
+	private static volatile double[] table = init();
+
+	private static double[] init()
+	{
+		double[] table = new double[1024];
+		for(int i = 2; i < table.length; i++)
+			table[i] = table[i - 1] + log(i) * LOG2E;
+
+		return table;
+	}
+
+	/**
+	 * The largest argument for which the factorial is stored in the table.
+	 */
+	public static int cap()
+	{
+		return cap;
+	}
+
+	/**
+	 * Sets the largest argument for which the factorial is stored in the
+	 * table. Setting a cap below the current size of the table does not
+	 * shrink it.
+	 */
+	public static void setCap(int cap)
+	{
+		if(cap < 1)
+			throw new IllegalArgumentException("Cap must be positive (was "+cap+").");
+
+		LogFactorials.cap = cap;
+	}
+
+	/**
+	 * The binary logarithm of n!.
+	 */
+	public static double log2Factorial(long n)
+	{
+		if(n < 0)
+			throw new IllegalArgumentException("Factorial of negative number ("+n+").");
+
+		double[] table = LogFactorials.table;
+		if(n < table.length)
+			return table[(int) n];
+
+		if(n <= cap)
+			return grow((int) n)[(int) n];
+
+		return stirling(n) * LOG2E;
+	}
+
+	/**
+	 * The binary logarithm of the binomial coefficient (total choose sub).
+	 * 
+	 * If sub is larger than total (for instance when a multigraph has more 
+	 * links than a simple graph has slots), there is no way to make the 
+	 * choice, and the result is positive infinity.
+	 */
+	public static double log2Choose(long sub, long total)
+	{
+		if(sub < 0)
+			throw new IllegalArgumentException("Cannot choose "+sub+" out of "+total+".");
+		
+		if(sub > total)
+			return Double.POSITIVE_INFINITY;
+
+		long large = Math.max(sub, total - sub), small = total - large;
+
+		if(total <= cap || large < STIRLING_MIN)
+			return log2Factorial(total) - log2Factorial(large) - log2Factorial(small);
+
+		// * log(total!/large!) by the difference of the Stirling series,
+		//   written so that the large terms cancel analytically
+		double ratio = - (double) small / total;
+		double ln =
+				small * log(total) - large * log1p(ratio) - small
+				- 0.5 * log1p(ratio)
+				+ correction(total) - correction(large);
+
+		return ln * LOG2E - log2Factorial(small);
+	}
+
+	/**
+	 * The sum of the binary log factorials of the given values.
+	 */
+	public static double sum(int[] values)
+	{
+		int max = 0;
+		for(int value : values)
+			max = Math.max(max, value);
+
+		if(max > cap)
+		{
+			double sum = 0.0;
+			for(int value : values)
+				sum += log2Factorial(value);
+
+			return sum;
+		}
+
+		double[] table = ensure(max);
+
+		double sum = 0.0;
+		for(int value : values)
+			sum += table[value];
+
+		return sum;
+	}
+
+	/**
+	 * The sum of the binary log factorials of the given values.
+	 */
+	public static double sum(List<Integer> values)
+	{
+		int[] array = new int[values.size()];
+		for(int i = 0; i < array.length; i++)
+			array[i] = values.get(i);
+
+		return sum(array);
+	}
+
+	/**
+	 * Returns the table, making sure that it contains n.
+	 */
+	private static double[] ensure(int n)
+	{
+		double[] table = LogFactorials.table;
+		if(n < table.length)
+			return table;
+
+		return grow(n);
+	}
+
+	private static synchronized double[] grow(int n)
+	{
+		double[] old = table;
+		if(n < old.length)
+			return old;
+
+		int length = (int) Math.min(Math.max((long) old.length * 2, (long) n + 1), (long) cap + 1);
+		double[] table = new double[length];
+		System.arraycopy(old, 0, table, 0, old.length);
+
+		for(int i = old.length; i < length; i++)
+			table[i] = table[i - 1] + log(i) * LOG2E;
+
+		LogFactorials.table = table;
+		return table;
+	}
+
+	/**
+	 * ln n! by Stirling's series.
+	 */
+	private static double stirling(long n)
+	{
+		double x = n;
+		return x * log(x) - x + 0.5 * log(x) + HALF_LN_2PI + correction(n);
+	}
+
+	/**
+	 * The correction terms of Stirling's series.
+	 */
+	private static double correction(long n)
+	{
+		double x = n, x2 = x * x;
+		return 1.0/(12.0 * x) - 1.0/(360.0 * x * x2) + 1.0/(1260.0 * x * x2 * x2);
+	}
+}
@@ -0,0 +1,194 @@
+package org.nodes.util;
+
+import java.util.Arrays;
+
+/**
+ * A set of primitive longs, with open addressing and linear probing.
+ *
+ * Removal shifts the following entries back, rather than leaving tombstones,
+ * so the table does not degrade when elements are added and removed many
+ * times over, as in a Markov chain over edge sets. The table is kept at most
+ * half full.
+ *
+ * Long.MIN_VALUE marks empty slots, and cannot be stored. Not thread-safe.
+ *
+ * @author Peter
+ *
+ */
+public class LongHashSet
+{
+	private static final long EMPTY = Long.MIN_VALUE;
+
+	private long[] keys;
+	private int mask;
+	private int size = 0;
+
+	public LongHashSet()
+	{
+		this(16);
+	}
+
+	/**
+	 * @param expected The number of elements to make room for.
+	 */
+	public LongHashSet(int expected)
+	{
+		if(expected < 0)
+			throw new IllegalArgumentException("Expected size cannot be negative (was "+expected+").");
+
+		int capacity = Integer.highestOneBit(Math.max(4, expected) * 2 - 1) << 1;
+		allocate(capacity);
+	}
+
+	public LongHashSet(LongHashSet other)
+	{
+		keys = other.keys.clone();
+		mask = other.mask;
+		size = other.size;
+	}
+
+	private void allocate(int capacity)
+	{
+		keys = new long[capacity];
+		Arrays.fill(keys, EMPTY);
+		mask = capacity - 1;
+	}
+
+	/**
+	 * @return True if the set did not contain the key.
+	 */
+	public boolean add(long key)
+	{
+		if(key == EMPTY)
+			throw new IllegalArgumentException("Cannot store Long.MIN_VALUE.");
+
+		int i = slot(key);
+		while(keys[i] != EMPTY)
+		{
+			if(keys[i] == key)
+				return false;
+			i = (i + 1) & mask;
+		}
+
+		keys[i] = key;
+		size++;
+
+		if(size * 2 > keys.length)
+			rehash(keys.length * 2);
+
+		return true;
+	}
+
+	public boolean contains(long key)
+	{
+		if(key == EMPTY)
+			return false;
+
+		int i = slot(key);
+		while(keys[i] != EMPTY)
+		{
+			if(keys[i] == key)
+				return true;
+			i = (i + 1) & mask;
+		}
+
+		return false;
+	}
+
+	/**
+	 * @return True if the set contained the key.
+	 */
+	public boolean remove(long key)
+	{
+		if(key == EMPTY)
+			return false;
+
+		int i = slot(key);
+		while(keys[i] != key)
+		{
+			if(keys[i] == EMPTY)
+				return false;
+			i = (i + 1) & mask;
+		}
+
+		// * Shift back the entries after the hole that would no longer be
+		//   found past it
+		int j = i;
+		while(true)
+		{
+			j = (j + 1) & mask;
+			if(keys[j] == EMPTY)
+				break;
+
+			int k = slot(keys[j]);
+			// * The entry at j may move to i if its home slot k is not in the
+			//   (cyclic) range (i, j]
+			boolean stays = i <= j ? (i < k && k <= j) : (i < k || k <= j);
+			if(! stays)
+			{
+				keys[i] = keys[j];
+				i = j;
+			}
+		}
+
+		keys[i] = EMPTY;
+		size--;
+
+		return true;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	public void clear()
+	{
+		Arrays.fill(keys, EMPTY);
+		size = 0;
+	}
+
+	/**
+	 * The elements, in no particular order.
+	 */
+	public long[] toArray()
+	{
+		long[] result = new long[size];
+
+		int n = 0;
+		for(long key : keys)
+			if(key != EMPTY)
+				result[n++] = key;
+
+		return result;
+	}
+
+	private void rehash(int capacity)
+	{
+		long[] old = keys;
+		allocate(capacity);
+
+		for(long key : old)
+			if(key != EMPTY)
+			{
+				int i = slot(key);
+				while(keys[i] != EMPTY)
+					i = (i + 1) & mask;
+				keys[i] = key;
+			}
+	}
+
+	private int slot(long key)
+	{
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+
+		return (int) key & mask;
+	}
+}
@@ -1,11 +1,5 @@
 package org.nodes.util.bootstrap;
 
-import static nl.peterbloem.kit.Functions.log2;
-import static nl.peterbloem.kit.Functions.log2Sum;
-import static nl.peterbloem.kit.Functions.minList;
-import static nl.peterbloem.kit.Series.series;
-
-import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.commons.math3.distribution.NormalDistribution;
@@ -22,45 +16,21 @@ public class BCaCI extends PercentileCI
 	private double b;
 	
 	public BCaCI(List<Double> data, int bootstrapSamples)
+	{
+		this(Bootstraps.toArray(data), bootstrapSamples);
+	}
+	
+	public BCaCI(double[] data, int bootstrapSamples)
 	{
 		super(data, bootstrapSamples);
 
 		// * estimate a: jackknife method
-		// Mean estimates for each jackknife fold
-		List<Double> means = new ArrayList<Double>(data.size());
-		for(int i : series(data.size()))
-		{
-			double foldMean = 0.0;
-			for(double datum : minList(data, i))
-				foldMean += datum;
-			foldMean /= data.size() - 1;
-					
-			means.add(foldMean);
-		}
-		
-		double foldsMean = 0.0;
-		for(double foldMean : means)
-			foldsMean += foldMean;
-		foldsMean /= means.size();
-		
-		double sumDiffsTo3 = 0.0, sumDiffsTo2 = 0.0;
-		for(double foldMean : means)
-		{
-			double diff = foldsMean - foldMean; 
-			sumDiffsTo3 += diff * diff * diff;
-			sumDiffsTo2 += diff * diff;
-		}
-		
-		double den = Math.sqrt(sumDiffsTo2);
-		den = den * den * den;
-		
-		a = (1.0/6.0) * (sumDiffsTo3/den);
+		a = Bootstraps.acceleration(data);
 		
 		// * estimate b from the number of bootstrap means below the sample mean
-		int m = 0;
-		while(bootstraps.get(m++) < dataMean);
+		int m = Bootstraps.countBelow(bootstraps, dataMean);
 		
-		b = N.inverseCumulativeProbability(m/(double)bootstraps.size());
+		b = N.inverseCumulativeProbability(m/(double)bootstraps.length);
 	}
 	
 	private static final NormalDistribution N = new NormalDistribution();
@@ -74,27 +44,13 @@ public class BCaCI extends PercentileCI
 	@Override
 	public double lowerBound(double alpha)
 	{ 
-		int iBelow = (int) (beta(a, b, alpha) * bootstraps.size());  
-		double rem = ((int) beta(a, b, alpha) * bootstraps.size()) - (double) iBelow;
-		
-		if(iBelow == bootstraps.size() -1)
-			return bootstraps.get(iBelow);
-		
-		// interpolated values
-		return bootstraps.get(iBelow) * (1.0 - rem) + bootstraps.get(iBelow+1) * (rem);
+		return Bootstraps.percentile(bootstraps, beta(a, b, alpha));
 	}
 	
 	@Override
 	public double upperBound(double alpha)
 	{
-		int iBelow = (int) (beta(a, b, 1.0 - alpha) * bootstraps.size());  
-		double rem = ((int) (beta(a, b, 1.0 - alpha) * bootstraps.size())) - (double) iBelow;
-		
-		if(iBelow == bootstraps.size() -1)
-			return bootstraps.get(iBelow);
-		
-		// interpolated values
-		return bootstraps.get(iBelow) * (1.0 - rem) + bootstraps.get(iBelow+1) * (rem);
+		return Bootstraps.percentile(bootstraps, beta(a, b, 1.0 - alpha));
 	}	
 	
 
@@ -0,0 +1,415 @@
+package org.nodes.util.bootstrap;
+
+import static java.lang.Math.log;
+import static java.lang.Math.pow;
+import static java.lang.Math.sqrt;
+import static nl.peterbloem.kit.Functions.log2;
+import static nl.peterbloem.kit.Functions.log2Sum;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Primitive helpers for the bootstrap confidence intervals: drawing
+ * replicates in parallel, selecting percentiles, and the jackknife.
+ *
+ * The replicates are drawn in blocks of a fixed size, each with its own
+ * random number generator split off from the seed in order, so the
+ * replicates only depend on the seed, not on the number of threads.
+ *
+ * @author Peter
+ *
+ */
+class Bootstraps
+{
+	public static final int BLOCK_SIZE = 256;
+
+	/**
+	 * Fills a range of an array with bootstrap replicates.
+	 */
+	public static interface Replicates
+	{
+		/**
+		 * Computes the replicates result[from] to result[to-1]. This is called
+		 * from several threads at once, for disjoint ranges.
+		 */
+		public void fill(double[] result, int from, int to, SplittableRandom random);
+	}
+
+	/**
+	 * Draws the given number of replicates, in parallel on the common
+	 * fork/join pool.
+	 */
+	public static double[] replicates(final Replicates replicates, int samples, long seed)
+	{
+		if(samples < 1)
+			throw new IllegalArgumentException("Number of bootstrap samples must be positive (was "+samples+").");
+
+		final double[] result = new double[samples];
+		SplittableRandom root = new SplittableRandom(seed);
+
+		if(samples <= BLOCK_SIZE)
+		{
+			replicates.fill(result, 0, samples, root.split());
+			return result;
+		}
+
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(samples / BLOCK_SIZE + 1);
+		for(int from = 0; from < samples; from += BLOCK_SIZE)
+		{
+			final int f = from, t = Math.min(samples, from + BLOCK_SIZE);
+			final SplittableRandom random = root.split();
+
+			tasks.add(new Callable<Void>()
+			{
+				public Void call()
+				{
+					replicates.fill(result, f, t, random);
+					return null;
+				}
+			});
+		}
+
+		try
+		{
+			for(Future<Void> future : ForkJoinPool.commonPool().invokeAll(tasks))
+				future.get();
+		} catch (InterruptedException e)
+		{
+			throw new RuntimeException(e);
+		} catch (ExecutionException e)
+		{
+			throw new RuntimeException(e.getCause());
+		}
+
+		return result;
+	}
+
+	/**
+	 * Bootstrap replicates of the mean of the data.
+	 */
+	public static double[] means(final double[] data, int samples, long seed)
+	{
+		final int n = data.length;
+
+		return replicates(new Replicates()
+		{
+			public void fill(double[] result, int from, int to, SplittableRandom random)
+			{
+				for(int b = from; b < to; b++)
+				{
+					double sum = 0.0;
+					for(int i = 0; i < n; i++)
+						sum += data[random.nextInt(n)];
+
+					result[b] = sum / n;
+				}
+			}
+		}, samples, seed);
+	}
+
+	/**
+	 * Bootstrap replicates of the log of the mean, for data given as binary
+	 * logarithms.
+	 */
+	public static double[] logMeans(final double[] logData, int samples, long seed)
+	{
+		final int n = logData.length;
+
+		// * Scale the values by the largest, so that we can sum them as doubles
+		final double max = max(logData);
+		final double[] scaled = scaled(logData, max);
+		final double logN = log2(n);
+
+		return replicates(new Replicates()
+		{
+			public void fill(double[] result, int from, int to, SplittableRandom random)
+			{
+				int[] indices = new int[n];
+
+				for(int b = from; b < to; b++)
+				{
+					double sum = 0.0;
+					for(int i = 0; i < n; i++)
+					{
+						indices[i] = random.nextInt(n);
+						sum += scaled[indices[i]];
+					}
+
+					if(sum >= Double.MIN_NORMAL)
+					{
+						result[b] = max + log2(sum) - logN;
+						continue;
+					}
+
+					// * All chosen values are negligible next to the maximum:
+					//   sum them in log space instead
+					double logSum = Double.NEGATIVE_INFINITY;
+					for(int i = 0; i < n; i++)
+						logSum = log2Sum(logSum, logData[indices[i]]);
+
+					result[b] = logSum - logN;
+				}
+			}
+		}, samples, seed);
+	}
+
+	/**
+	 * The log of the mean of data given as binary logarithms.
+	 */
+	public static double logMean(double[] logData)
+	{
+		double max = max(logData);
+		if(max == Double.NEGATIVE_INFINITY)
+			return max;
+
+		double sum = 0.0;
+		for(double value : scaled(logData, max))
+			sum += value;
+
+		return max + log2(sum) - log2(logData.length);
+	}
+
+	/**
+	 * The acceleration of the BCa interval for the mean, from the jackknife.
+	 *
+	 * The leave-one-out means are (S - x_i)/(n - 1), so their deviations from
+	 * their own mean are (x_i - mean)/(n - 1). The factor 1/(n - 1) cancels,
+	 * which leaves a single pass over the data.
+	 */
+	public static double acceleration(double[] data)
+	{
+		double mean = 0.0;
+		for(double datum : data)
+			mean += datum;
+		mean /= data.length;
+
+		double sumDiffsTo3 = 0.0, sumDiffsTo2 = 0.0;
+		for(double datum : data)
+		{
+			double diff = datum - mean;
+			sumDiffsTo3 += diff * diff * diff;
+			sumDiffsTo2 += diff * diff;
+		}
+
+		if(sumDiffsTo2 == 0.0) // prevent div by zero
+			return 0.0;
+
+		return (1.0/6.0) * (sumDiffsTo3 / pow(sumDiffsTo2, 1.5));
+	}
+
+	/**
+	 * The acceleration of the BCa interval for the mean, for data given as
+	 * binary logarithms. The acceleration does not change when the data is
+	 * scaled, so we compute it on the data divided by its maximum.
+	 */
+	public static double logAcceleration(double[] logData)
+	{
+		return acceleration(scaled(logData, max(logData)));
+	}
+
+	/**
+	 * The number of values strictly below the threshold.
+	 */
+	public static int countBelow(double[] values, double threshold)
+	{
+		int m = 0;
+		for(double value : values)
+			if(value < threshold)
+				m++;
+
+		return m;
+	}
+
+	/**
+	 * The percentile at p, interpolating linearly between the two nearest
+	 * order statistics. This reorders the values.
+	 */
+	public static double percentile(double[] values, double p)
+	{
+		double position = p * values.length;
+		int iBelow = Math.min((int) position, values.length - 1);
+		double rem = position - iBelow;
+
+		double below = select(values, iBelow);
+		if(iBelow == values.length - 1)
+			return below;
+
+		double above = minFrom(values, iBelow + 1);
+
+		return below * (1.0 - rem) + above * rem;
+	}
+
+	/**
+	 * The percentile at p of values given as binary logarithms, interpolating
+	 * linearly between the nearest order statistics in the original space.
+	 * This reorders the values.
+	 */
+	public static double logPercentile(double[] logValues, double p)
+	{
+		double position = p * logValues.length;
+		int iBelow = Math.min((int) position, logValues.length - 1);
+		double rem = position - iBelow;
+
+		double below = select(logValues, iBelow);
+		if(iBelow == logValues.length - 1 || rem <= 0.0)
+			return below;
+
+		double above = minFrom(logValues, iBelow + 1);
+
+		return log2Sum(below + log2(1.0 - rem), above + log2(rem));
+	}
+
+	/**
+	 * Moves the k-th smallest value (from 0) to index k, with smaller or equal
+	 * values before it and larger or equal values after it, and returns it.
+	 * Expected linear time.
+	 */
+	public static double select(double[] values, int k)
+	{
+		if(k < 0 || k >= values.length)
+			throw new IllegalArgumentException("Index "+k+" out of range for "+values.length+" values.");
+
+		int lo = 0, hi = values.length - 1;
+		while(hi > lo)
+		{
+			// * median of three, moved to the middle
+			int mid = (lo + hi) >>> 1;
+			if(values[mid] < values[lo])
+				swap(values, lo, mid);
+			if(values[hi] < values[lo])
+				swap(values, lo, hi);
+			if(values[hi] < values[mid])
+				swap(values, mid, hi);
+
+			double pivot = values[mid];
+
+			int i = lo, j = hi;
+			while(i <= j)
+			{
+				while(values[i] < pivot)
+					i++;
+				while(values[j] > pivot)
+					j--;
+
+				if(i <= j)
+					swap(values, i++, j--);
+			}
+
+			// * [lo, j] <= pivot, [i, hi] >= pivot, and anything between is
+			//   equal to the pivot
+			if(k <= j)
+				hi = j;
+			else if(k >= i)
+				lo = i;
+			else
+				return values[k];
+		}
+
+		return values[k];
+	}
+
+	/**
+	 * A standard normal sample (polar method).
+	 */
+	public static double gaussian(SplittableRandom random)
+	{
+		double u, v, s;
+		do {
+			u = 2.0 * random.nextDouble() - 1.0;
+			v = 2.0 * random.nextDouble() - 1.0;
+			s = u * u + v * v;
+		} while(s >= 1.0 || s == 0.0);
+
+		return u * sqrt(-2.0 * log(s) / s);
+	}
+
+	/**
+	 * A chi-squared sample with k degrees of freedom, in constant time.
+	 */
+	public static double chiSquared(SplittableRandom random, int k)
+	{
+		return 2.0 * gamma(random, 0.5 * k);
+	}
+
+	/**
+	 * A sample from the gamma distribution with the given shape and scale 1
+	 * (Marsaglia and Tsang).
+	 */
+	private static double gamma(SplittableRandom random, double shape)
+	{
+		if(shape < 1.0)
+			return gamma(random, shape + 1.0) * pow(random.nextDouble(), 1.0 / shape);
+
+		double d = shape - 1.0/3.0;
+		double c = 1.0 / sqrt(9.0 * d);
+
+		while(true)
+		{
+			double x, v;
+			do {
+				x = gaussian(random);
+				v = 1.0 + c * x;
+			} while(v <= 0.0);
+
+			v = v * v * v;
+			double u = random.nextDouble();
+
+			if(u < 1.0 - 0.0331 * x * x * x * x)
+				return d * v;
+			if(log(u) < 0.5 * x * x + d * (1.0 - v + log(v)))
+				return d * v;
+		}
+	}
+
+	public static double[] toArray(List<Double> values)
+	{
+		double[] result = new double[values.size()];
+		for(int i = 0; i < result.length; i++)
+			result[i] = values.get(i);
+
+		return result;
+	}
+
+	private static double max(double[] values)
+	{
+		double max = Double.NEGATIVE_INFINITY;
+		for(double value : values)
+			max = Math.max(max, value);
+
+		return max;
+	}
+
+	/**
+	 * 2^(value - max) for each value.
+	 */
+	private static double[] scaled(double[] logValues, double max)
+	{
+		double[] scaled = new double[logValues.length];
+		for(int i = 0; i < scaled.length; i++)
+			scaled[i] = pow(2.0, logValues[i] - max);
+
+		return scaled;
+	}
+
+	private static double minFrom(double[] values, int from)
+	{
+		double min = Double.POSITIVE_INFINITY;
+		for(int i = from; i < values.length; i++)
+			min = Math.min(min, values[i]);
+
+		return min;
+	}
+
+	private static void swap(double[] values, int i, int j)
+	{
+		double t = values[i];
+		values[i] = values[j];
+		values[j] = t;
+	}
+}
@@ -3,10 +3,8 @@ package org.nodes.util.bootstrap;
 import static java.lang.Math.sqrt;
 import static nl.peterbloem.kit.Series.series;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Collections;
 import java.util.List;
+import java.util.SplittableRandom;
 
 import nl.peterbloem.kit.Functions;
 import nl.peterbloem.kit.Global;
@@ -19,12 +17,11 @@ public class LogNormalCI
 	public static final double LN2 = Math.log(2.0);
 	public static final double LOGE = Functions.log2(Math.E);
 	
-	private List<Double> logValues;
-	private ArrayList<Double> ts;
+	private double[] ts;
 	private double lnMean;
-	private int lnVariance;
+	private double lnVariance;
 	private int n;
-	private ArrayList<Double> lnValues;
+	private double[] lnValues;
 	
 	/**
 	 * 
@@ -32,81 +29,73 @@ public class LogNormalCI
 	 */
 	public LogNormalCI(List<Double> logValues, int bsSamples)
 	{
-		this.logValues = logValues;
-				
-		n = logValues.size();
+		this(Bootstraps.toArray(logValues), bsSamples);
+	}
+	
+	/**
+	 * 
+	 * @param logValues data in base 2 log.
+	 */
+	public LogNormalCI(double[] logValues, int bsSamples)
+	{
+		n = logValues.length;
 		
 		// * convert observations to ln
-		lnValues = new ArrayList<Double>(n);
-		for(int i : series(n))
-			lnValues.add(logValues.get(i) * LN2);
+		lnValues = new double[n];
+		for(int i = 0; i < n; i++)
+			lnValues[i] = logValues[i] * LN2;
 		
 		// * compute the mean of the log observations (in ln space, as it were)
 		//   NOTE: This is different from lnMeanEstimate
 		lnMean = 0.0;
-		for(int i : series(n))
-			lnMean += lnValues.get(i);
+		for(double lnValue : lnValues)
+			lnMean += lnValue;
 		lnMean /= (double) n;
 		
 		// * compute the variance of the log observations
 		lnVariance = 0;
-		for(int i : series(n))
+		for(double lnValue : lnValues)
 		{
-			double diff = lnValues.get(i) - lnMean;
+			double diff = lnValue - lnMean;
 			lnVariance += diff * diff;
 		}
 		lnVariance /= (double)(n - 1); 
 		
-		List<Double> ns = new ArrayList<Double>(bsSamples);
-		List<Double> chis = new ArrayList<Double>(bsSamples);
-		
-		for(int i : series(bsSamples))
-			ns.add(Global.random().nextGaussian());
-		
-		for(int i : series(bsSamples))
-			chis.add(chiSquaredSample(n - 1));
-		
-		ts = new ArrayList<Double>(bsSamples);
-		for(int i : series(bsSamples))
+		// * Sample the t statistic. The chi-squared samples are drawn directly,
+		//   rather than as sums of n-1 squared normal samples.
+		final double sd = sqrt(lnVariance), halfVariance = lnVariance * 0.5; 
+		ts = Bootstraps.replicates(new Bootstraps.Replicates()
 		{
-			double x = chis.get(i)/(n-1);
-			double num = ns.get(i) + sqrt(lnVariance) * 0.5 * sqrt(n) * (x - 1);
-			double den = sqrt(x * (1.0 + lnVariance * 0.5 * x));
-			ts.add(num / den);
-		}
-		
-		Collections.sort(ts);
+			public void fill(double[] result, int from, int to, SplittableRandom random)
+			{
+				for(int i = from; i < to; i++)
+				{
+					double x = Bootstraps.chiSquared(random, n - 1)/(n-1);
+					double num = Bootstraps.gaussian(random) + sd * 0.5 * sqrt(n) * (x - 1);
+					double den = sqrt(x * (1.0 + halfVariance * x));
+					result[i] = num / den;
+				}
+			}
+		}, bsSamples, Global.random().nextLong());
 	} 
 
 	public LogNormalCI(List<Double> logSamples)
 	{
 		this(logSamples, DEFAULT_BS_SAMPLES);
 	}
-
-	private double chiSquaredSample(int k)
-	{
-		double sumOfSquares = 0.0;
-		for(int i : series(k))
-		{
-			double s = Global.random().nextGaussian();
-			sumOfSquares += s * s;
-		}
-		
-		return sumOfSquares;
-	}
 	
 	public double lowerBound(double alpha)
 	{
-		int upperIndex = (int) Math.floor( (1.0 - alpha) * ts.size());
-		double t1 = ts.get(upperIndex);
+		int upperIndex = (int) Math.floor( (1.0 - alpha) * ts.length);
+		double t1 = Bootstraps.select(ts, upperIndex);
 
 		return (lnMean + lnVariance * 0.5 - t1 * sqrt((lnVariance * (1.0 + lnVariance*0.5)) / n)) * LOGE;
 	}
 
 	public double upperBound(double alpha)
 	{
-		int lowerIndex = (int) Math.floor( (alpha) * ts.size());
-		double t0 = ts.get(lowerIndex);
+		int lowerIndex = (int) Math.floor( (alpha) * ts.length);
+		double t0 = Bootstraps.select(ts, lowerIndex);
 
 		return (lnMean + lnVariance * 0.5 - t0 * sqrt((lnVariance * (1.0 + lnVariance*0.5)) / n)) * LOGE;
 	}
@@ -121,7 +110,19 @@ public class LogNormalCI
 	
 	public double mlMean()
 	{
-		return mlMean(lnValues) * LOGE;
+		double mlMean = 0.0;
+		for(double lnValue : lnValues)
+			mlMean += lnValue;
+		mlMean /= (double) n;
+		
+		double sumSq = 0;
+		for(double lnValue : lnValues)
+		{
+			double diff = lnValue - mlMean;
+			sumSq += diff * diff;
+		}
+		
+		return (mlMean + 0.5 * sumSq / (double) n) * LOGE;
 	}
 	
 	/**
@@ -1,13 +1,10 @@
 package org.nodes.util.bootstrap;
 
 import static nl.peterbloem.kit.LogNum.fromDouble;
-import static nl.peterbloem.kit.Series.series;
 
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
-import nl.peterbloem.kit.Functions;
+import nl.peterbloem.kit.Global;
 import nl.peterbloem.kit.LogNum;
 import nl.peterbloem.kit.Pair;
 
@@ -27,56 +24,43 @@ public class LogPercentileCI
 {	
 	public static final int BS_SAMPLES = 10000;
 	
-	protected List<LogNum> data;
+	/**
+	 * The data, as binary logarithms.
+	 */
+	protected double[] data;
 	protected int bootstrapSamples;
 	
-	protected List<LogNum> bootstraps;
+	/**
+	 * The binary logarithms of the bootstrap means. These are not sorted; the
+	 * percentiles are found by selection, which reorders them.
+	 */
+	protected double[] bootstraps;
 	
-	protected LogNum dataMean;
+	protected double dataMean;
 	
-	protected LogPercentileCI(List<LogNum> bootstraps, List<Double> data, Object blah)
+	protected LogPercentileCI(double[] bootstraps, double[] data)
 	{
 		this.bootstraps = bootstraps;
-
-		this.data = new ArrayList<LogNum>(data.size());
-		for(double datum : data)
-			this.data.add(new LogNum(datum, true, 2.0));
+		this.data = data;
 		
-		dataMean = LogNum.mean(this.data);
+		dataMean = Bootstraps.logMean(data);
 		
-		this.bootstrapSamples = bootstraps.size();
-
-		Collections.sort(bootstraps);
+		this.bootstrapSamples = bootstraps.length;
 	}
 	
 	public LogPercentileCI(List<Double> data, int bootstrapSamples)
 	{
-		this.data = new ArrayList<LogNum>(data.size());
-		for(double datum : data)
-			this.data.add(new LogNum(datum, true, 2.0));
-		
-		this.bootstrapSamples = bootstrapSamples;
-		
-		dataMean = LogNum.mean(this.data);
-		
-		bootstraps = new ArrayList<LogNum>(bootstrapSamples);
-		
-		List<LogNum> sample = new ArrayList<LogNum>(data.size());
-		for(int b : series(bootstrapSamples))
-		{
-			sample.clear();
-			for(int i : series(this.data.size()))
-				sample.add(Functions.choose(this.data));
-
-			bootstraps.add(LogNum.mean(sample));
-		}
-		
-		Collections.sort(bootstraps);
+		this(Bootstraps.toArray(data), bootstrapSamples);
+	}
+	
+	public LogPercentileCI(double[] data, int bootstrapSamples)
+	{
+		this(Bootstraps.logMeans(data, bootstrapSamples, Global.random().nextLong()), data);
 	}
 	
 	public double logMean()
 	{
-		return dataMean.logMag();
+		return dataMean;
 	}
 	
 	/**
@@ -88,13 +72,7 @@ public class LogPercentileCI
 	 */
 	public double lowerBound(double alpha)
 	{
-		int iBelow = (int)(alpha * bootstraps.size());
-		double rem = alpha * bootstraps.size() - (double) iBelow;
-		
-		if(iBelow == bootstraps.size() -1)
-			return bootstraps.get(iBelow).logMag();
-		
-		return interpolate(bootstraps.get(iBelow), bootstraps.get(iBelow+1), (1.0 - rem)).logMag();
+		return Bootstraps.logPercentile(bootstraps, alpha);
 	}
 	
 	/**
@@ -106,13 +84,7 @@ public class LogPercentileCI
 	 */
 	public double upperBound(double alpha)
 	{
-		int iBelow = (int)((1.0 - alpha) * bootstraps.size());
-		double rem = ((1.0 - alpha) * bootstraps.size()) - iBelow;
-		
-		if(iBelow == bootstraps.size() -1)
-			return bootstraps.get(iBelow).logMag();
-		
-		return interpolate(bootstraps.get(iBelow), bootstraps.get(iBelow+1), (1.0 - rem)).logMag();
+		return Bootstraps.logPercentile(bootstraps, 1.0 - alpha);
 	}	
 	
 	/**
@@ -0,0 +1,118 @@
+package org.nodes.util.bootstrap;
+
+import static java.lang.Math.sqrt;
+import static org.nodes.util.bootstrap.LogNormalCI.LN2;
+import static org.nodes.util.bootstrap.LogNormalCI.LOGE;
+
+import org.apache.commons.math3.distribution.NormalDistribution;
+
+/**
+ * A running estimate of the mean of a log-normal distribution, from
+ * observations given in log (base 2) space. The mean and variance of the
+ * log-observations are kept with Welford's algorithm, so that the estimate is
+ * stable for log-values of any magnitude, and observations can be added one
+ * at a time.
+ *
+ * The estimate and the interval follow {@link LogNormalCI}, with the
+ * bootstrapped t-values replaced by the normal quantiles they converge to.
+ * This makes the interval cheap enough to check after every batch of samples.
+ *
+ * @author Peter
+ *
+ */
+public class OnlineLogNormal
+{
+	private static final NormalDistribution N = new NormalDistribution();
+
+	private long n = 0;
+	// * mean and sum of squared deviations of the observations in ln space
+	private double lnMean = 0.0;
+	private double m2 = 0.0;
+
+	/**
+	 * @param logValue An observation, in log base 2.
+	 */
+	public void add(double logValue)
+	{
+		double x = logValue * LN2;
+
+		n++;
+		double delta = x - lnMean;
+		lnMean += delta / n;
+		m2 += delta * (x - lnMean);
+	}
+
+	/**
+	 * Adds all observations of another accumulator to this one.
+	 */
+	public void add(OnlineLogNormal other)
+	{
+		if(other.n == 0)
+			return;
+
+		long total = n + other.n;
+		double delta = other.lnMean - lnMean;
+
+		lnMean += delta * other.n / total;
+		m2 += other.m2 + delta * delta * ((double) n * other.n / total);
+		n = total;
+	}
+
+	public long size()
+	{
+		return n;
+	}
+
+	/**
+	 * The mean of the observations, in ln space.
+	 */
+	public double lnMean()
+	{
+		return lnMean;
+	}
+
+	/**
+	 * The (unbiased) variance of the observations in ln space.
+	 */
+	public double lnVariance()
+	{
+		if(n < 2)
+			return Double.NaN;
+
+		return m2 / (n - 1.0);
+	}
+
+	/**
+	 * The estimate of the log (base 2) of the mean of the log-normal
+	 * distribution.
+	 */
+	public double logMean()
+	{
+		return (lnMean + 0.5 * lnVariance()) * LOGE;
+	}
+
+	/**
+	 * The distance, in bits, between the estimate of the log mean and a
+	 * one-sided confidence bound at the given alpha.
+	 */
+	public double halfWidth(double alpha)
+	{
+		if(n < 2)
+			return Double.POSITIVE_INFINITY;
+
+		double variance = lnVariance();
+		double z = N.inverseCumulativeProbability(1.0 - alpha);
+
+		return z * sqrt((variance * (1.0 + variance * 0.5)) / n) * LOGE;
+	}
+
+	public double lowerBound(double alpha)
+	{
+		return logMean() - halfWidth(alpha);
+	}
+
+	public double upperBound(double alpha)
+	{
+		return logMean() + halfWidth(alpha);
+	}
+}
@@ -1,12 +1,8 @@
 package org.nodes.util.bootstrap;
 
-import static nl.peterbloem.kit.Series.series;
-
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
-import nl.peterbloem.kit.Functions;
+import nl.peterbloem.kit.Global;
 import nl.peterbloem.kit.Pair;
 
 /**
@@ -20,14 +16,23 @@ import nl.peterbloem.kit.Pair;
  */
 public class PercentileCI
 {	
-	protected List<Double> data;
+	protected double[] data;
 	protected int bootstrapSamples;
 	
-	protected List<Double> bootstraps;
+	/**
+	 * The bootstrap means. These are not sorted; the percentiles are found by 
+	 * selection, which reorders them.
+	 */
+	protected double[] bootstraps;
 	
 	protected double dataMean;
 	
 	public PercentileCI(List<Double> data, int bootstrapSamples)
+	{
+		this(Bootstraps.toArray(data), bootstrapSamples);
+	}
+	
+	public PercentileCI(double[] data, int bootstrapSamples)
 	{
 		this.data = data;
 		this.bootstrapSamples = bootstrapSamples;
@@ -35,26 +40,9 @@ public class PercentileCI
 		dataMean = 0.0;
 		for(double datum : data)
 			dataMean += datum;
-		dataMean /= data.size();
-		
-		bootstraps = new ArrayList<Double>(bootstrapSamples);
+		dataMean /= data.length;
 		
-		List<Double> sample = new ArrayList<Double>(data.size());
-		for(int b : series(bootstrapSamples))
-		{
-			sample.clear();
-			for(int i : series(data.size()))
-				sample.add(Functions.choose(data));
-			
-			double mean = 0.0;
-			for(double val : sample)
-				mean += val;
-			mean /= sample.size();
-
-			bootstraps.add(mean);
-		}
-		
-		Collections.sort(bootstraps);
+		bootstraps = Bootstraps.means(data, bootstrapSamples, Global.random().nextLong());
 	}
 	
 	public double mean()
@@ -71,14 +59,7 @@ public class PercentileCI
 	 */
 	public double lowerBound(double alpha)
 	{
-		int iBelow = (int)(alpha * bootstraps.size());
-		double rem = alpha * bootstraps.size() - (double) iBelow;
-		
-		if(iBelow == bootstraps.size() -1)
-			return bootstraps.get(iBelow);
-		
-		// interpolated values
-		return bootstraps.get(iBelow) * (1.0 - rem) + bootstraps.get(iBelow+1) * (rem);
+		return Bootstraps.percentile(bootstraps, alpha);
 	}
 	
 	/**
@@ -90,14 +71,7 @@ public class PercentileCI
 	 */
 	public double upperBound(double alpha)
 	{
-		int iBelow = (int)((1.0 - alpha) * bootstraps.size());
-		double rem = ((1.0 - alpha) * bootstraps.size()) - iBelow;
-		
-		if(iBelow == bootstraps.size() -1)
-			return bootstraps.get(iBelow);
-		
-		// interpolated values
-		return bootstraps.get(iBelow) * (1.0 - rem) + bootstraps.get(iBelow+1) * (rem);
+		return Bootstraps.percentile(bootstraps, 1.0 - alpha);
 	}	
 	
 	/**
@@ -3,14 +3,18 @@ package org.nodes.walks;
 import static nl.peterbloem.kit.Functions.reverse;
 
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 import org.nodes.Acyclic;
+import org.nodes.FastWalkable;
 import org.nodes.Graph;
+import org.nodes.IntCursor;
 import org.nodes.Node;
 
 import nl.peterbloem.kit.Functions;
@@ -69,42 +73,47 @@ public class Walks
 
 		public java.util.Iterator<Node<L>> iterator()
 		{
+			if(graph instanceof FastWalkable<?, ?>)
+				return new FastIterator();
+			
 			return new Iterator(); 
 		}
 		
 		private class Iterator implements java.util.Iterator<Node<L>>
 		{
 			private LinkedList<Node<L>> buffer;
-			private int next = 0; // The next node in the buffer to unpack
 			
 			// * Whether we can assume that the given graph is acyclic
 			private boolean acyclic = (graph instanceof Acyclic);  
-			// * History of visited nodes
-			private Set<Node<L>> history = acyclic ? new HashSet<Node<L>>() : null;
+			// * History of nodes that have been added to the buffer
+			private Set<Node<L>> history = acyclic ? null : new HashSet<Node<L>>();
 			
 			public Iterator() {
 				buffer = new LinkedList<Node<L>>();
 				buffer.add(start);
+				
+				if(! acyclic) history.add(start);
 			}
 
 			@Override
 			public boolean hasNext()
 			{
-				ensure();
-				
 				return ! buffer.isEmpty();
-				
 			}
 
 			@Override
 			public Node<L> next()
 			{
-				ensure();
-
-				next --;
+				if(buffer.isEmpty())
+					throw new NoSuchElementException();
+				
+				Node<L> node = buffer.poll();
+				
+				for(Node<L> neighbor : node.neighbors())
+					if(acyclic || history.add(neighbor))
+						buffer.add(neighbor);
 				
-				if(acyclic) history.add(buffer.peek());
-				return buffer.poll();
+				return node;
 			}
 
 			@Override
@@ -113,15 +122,60 @@ public class Walks
 				// TODO: implement
 				throw new UnsupportedOperationException();
 			}
+		}
+		
+		/**
+		 * Walks over the node indices of a FastWalkable graph, so that the 
+		 * only objects created are the nodes returned.
+		 */
+		private class FastIterator implements java.util.Iterator<Node<L>>
+		{
+			private IntCursor cursor = ((FastWalkable<?, ?>) graph).neighborCursor();
 			
-			private void ensure()
+			// * Every node enters the queue at most once
+			private int[] queue = new int[graph.size()];
+			private int head = 0, tail = 0;
+			
+			private BitSet history = new BitSet(graph.size());
+			
+			public FastIterator()
+			{
+				queue[tail++] = start.index();
+				history.set(start.index());
+			}
+
+			@Override
+			public boolean hasNext()
+			{
+				return head < tail;
+			}
+
+			@Override
+			public Node<L> next()
 			{
-				if(buffer.size() < 5 && next < buffer.size())
-					for(Node<L> node : buffer.get(next).neighbors())
-						if(! history.contains(node))
-							buffer.add(node);
+				if(head >= tail)
+					throw new NoSuchElementException();
+				
+				int index = queue[head++];
 				
-				next++;
+				cursor.reset(index);
+				while(cursor.hasNext())
+				{
+					int neighbor = cursor.next();
+					if(! history.get(neighbor))
+					{
+						history.set(neighbor);
+						queue[tail++] = neighbor;
+					}
+				}
+				
+				return graph.get(index);
+			}
+
+			@Override
+			public void remove()
+			{
+				throw new UnsupportedOperationException();
 			}
 		}
 	}
@@ -149,22 +203,24 @@ public class Walks
 
 		public java.util.Iterator<Node<L>> iterator()
 		{
+			if(graph instanceof FastWalkable<?, ?>)
+				return new FastIterator();
+			
 			return new Iterator(); 
 		}
 		
 		private class Iterator implements java.util.Iterator<Node<L>>
 		{
 			private LinkedList<Node<L>> buffer;
-			private int next = 0; // The next node in the buffer to unpack
 			
 			// * Whether we can assume that the given graph is acyclic
 			private boolean acyclic = (graph instanceof Acyclic);  
 			// * History of visited nodes
-			private Set<Node<L>> history = acyclic ? new HashSet<Node<L>>() : null;
+			private Set<Node<L>> history = acyclic ? null : new HashSet<Node<L>>();
 			
 			public Iterator() {
 				buffer = new LinkedList<Node<L>>();
-				buffer.add(start);
+				buffer.push(start);
 			}
 
 			@Override
@@ -173,18 +229,24 @@ public class Walks
 				ensure();
 				
 				return ! buffer.isEmpty();
-				
 			}
 
 			@Override
 			public Node<L> next()
 			{
 				ensure();
-
-				next --;
 				
-				if(acyclic) history.add(buffer.peek());
-				return buffer.poll();
+				if(buffer.isEmpty())
+					throw new NoSuchElementException();
+				
+				Node<L> node = buffer.pop();
+				if(! acyclic) history.add(node);
+				
+				for(Node<L> neighbor : node.neighbors())
+					if(acyclic || ! history.contains(neighbor))
+						buffer.push(neighbor);
+				
+				return node;
 			}
 
 			@Override
@@ -195,21 +257,81 @@ public class Walks
 			}
 
 			/**
-			 * Ensures that the buffer has enough nodes, if they are available
+			 * Removes the nodes on top of the stack that have already been 
+			 * visited.
 			 */
 			private void ensure()
 			{
+				if(! acyclic)
+					while(! buffer.isEmpty() && history.contains(buffer.peek()))
+						buffer.pop();
+			}
+		}
+		
+		/**
+		 * Walks over the node indices of a FastWalkable graph, so that the 
+		 * only objects created are the nodes returned.
+		 */
+		private class FastIterator implements java.util.Iterator<Node<L>>
+		{
+			private IntCursor cursor = ((FastWalkable<?, ?>) graph).neighborCursor();
+			
+			private int[] stack = new int[16];
+			private int top = 0;
+			
+			private BitSet history = new BitSet(graph.size());
+			
+			public FastIterator()
+			{
+				stack[top++] = start.index();
+			}
 
-				if(buffer.size() < 5 && next < buffer.size())
-					for(Node<L> node : buffer.get(next).neighbors())
-						buffer.add(next+1, node);
+			@Override
+			public boolean hasNext()
+			{
+				ensure();
 				
-				next++;
+				return top > 0;
+			}
+
+			@Override
+			public Node<L> next()
+			{
+				ensure();
+				
+				if(top == 0)
+					throw new NoSuchElementException();
+				
+				int index = stack[--top];
+				history.set(index);
+				
+				cursor.reset(index);
+				while(cursor.hasNext())
+				{
+					int neighbor = cursor.next();
+					if(! history.get(neighbor))
+					{
+						if(top == stack.length)
+							stack = Arrays.copyOf(stack, stack.length * 2);
+						stack[top++] = neighbor;
+					}
+				}
+				
+				return graph.get(index);
+			}
+
+			@Override
+			public void remove()
+			{
+				throw new UnsupportedOperationException();
 			}
 			
+			private void ensure()
+			{
+				while(top > 0 && history.get(stack[top - 1]))
+					top--;
+			}
 		}
 	}
 
-
-
 }
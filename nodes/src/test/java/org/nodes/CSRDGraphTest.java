@@ -0,0 +1,144 @@
+package org.nodes;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class CSRDGraphTest
+{
+	private static LightDGraph<String> example()
+	{
+		LightDGraph<String> graph = new LightDGraph<String>();
+
+		DNode<String> a = graph.add("a"),
+		              b = graph.add("b"),
+		              c = graph.add("c"),
+		              d = graph.add("d");
+
+		a.connect(b);
+		b.connect(c);
+		c.connect(a);
+		c.connect(d);
+		d.connect(c);
+		d.connect(d);
+		a.connect(b);
+
+		return graph;
+	}
+
+	@Test
+	public void testCopy()
+	{
+		LightDGraph<String> graph = example();
+		CSRDGraph<String> csr = CSRDGraph.copy(graph);
+
+		assertEquals(graph.size(), csr.size());
+		assertEquals(graph.numLinks(), csr.numLinks());
+
+		for(int i = 0; i < graph.size(); i++)
+		{
+			assertEquals(graph.get(i).label(), csr.get(i).label());
+			assertEquals(graph.get(i).outDegree(), csr.get(i).outDegree());
+			assertEquals(graph.get(i).inDegree(), csr.get(i).inDegree());
+		}
+
+		int n = 0;
+		for(DLink<String> link : csr.links())
+		{
+			assertTrue(graph.get(link.from().index()).connectedTo(graph.get(link.to().index())));
+			n++;
+		}
+		assertEquals(graph.numLinks(), n);
+	}
+
+	@Test
+	public void testEquals()
+	{
+		LightDGraph<String> graph = example();
+		CSRDGraph<String> csr = CSRDGraph.copy(graph);
+
+		assertEquals(graph, csr);
+		assertEquals(csr, graph);
+		assertEquals(csr, CSRDGraph.copy(graph));
+		assertEquals(csr, CSRDGraph.copy(csr));
+
+		assertEquals(graph.hashCode(), csr.hashCode());
+
+		graph.get(0).connect(graph.get(3));
+
+		assertFalse(csr.equals(graph));
+		assertFalse(graph.equals(csr));
+	}
+
+	@Test
+	public void testConnected()
+	{
+		CSRDGraph<String> csr = CSRDGraph.copy(example());
+
+		DNode<String> a = csr.node("a"),
+		              b = csr.node("b"),
+		              d = csr.node("d");
+
+		assertTrue(a.connectedTo(b));
+		assertFalse(b.connectedTo(a));
+		assertTrue(b.connected(a));
+		assertTrue(d.connectedTo(d));
+		assertFalse(a.connected(d));
+
+		assertEquals(2, a.linksOut(b).size());
+		assertEquals(0, a.linksIn(b).size());
+		assertEquals(2, b.links(a).size());
+		assertEquals(1, d.links(d).size());
+	}
+
+	@Test
+	public void testNeighbors()
+	{
+		CSRDGraph<String> csr = CSRDGraph.copy(example());
+
+		DNode<String> c = csr.node("c");
+		assertEquals(3, c.neighbors().size());
+		assertEquals(4, csr.neighborsFast(c).size());
+
+		// * primitive access
+		assertEquals(2, csr.outDegree(c.index()));
+		assertEquals(0, csr.out(c.index(), 0));
+		assertEquals(3, csr.out(c.index(), 1));
+	}
+
+	@Test(expected=UnsupportedOperationException.class)
+	public void testImmutable()
+	{
+		CSRDGraph<String> csr = CSRDGraph.copy(example());
+
+		csr.get(0).connect(csr.get(1));
+	}
+
+	@Test
+	public void testRandom()
+	{
+		Random random = new Random(0);
+
+		LightDGraph<String> graph = new LightDGraph<String>();
+		for(int i = 0; i < 100; i++)
+			graph.add(null);
+
+		for(int i = 0; i < 1000; i++)
+			graph.get(random.nextInt(100)).connect(graph.get(random.nextInt(100)));
+
+		CSRDGraph<String> csr = CSRDGraph.copy(graph);
+
+		assertEquals(graph, csr);
+		assertEquals(csr, graph);
+
+		for(int i = 0; i < 100; i++)
+			for(int j = 0; j < 100; j++)
+				assertEquals(
+					graph.get(i).connectedTo(graph.get(j)),
+					csr.connectedTo(i, j));
+	}
+}
@@ -0,0 +1,125 @@
+package org.nodes;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class CSRUGraphTest
+{
+	private static LightUGraph<String> example()
+	{
+		LightUGraph<String> graph = new LightUGraph<String>();
+
+		UNode<String> a = graph.add("a"),
+		              b = graph.add("b"),
+		              c = graph.add("c"),
+		              d = graph.add("d");
+
+		a.connect(b);
+		b.connect(c);
+		c.connect(a);
+		c.connect(d);
+		d.connect(d);
+		a.connect(b);
+
+		return graph;
+	}
+
+	@Test
+	public void testCopy()
+	{
+		LightUGraph<String> graph = example();
+		CSRUGraph<String> csr = CSRUGraph.copy(graph);
+
+		assertEquals(graph.size(), csr.size());
+		assertEquals(graph.numLinks(), csr.numLinks());
+
+		for(int i = 0; i < graph.size(); i++)
+		{
+			assertEquals(graph.get(i).label(), csr.get(i).label());
+			assertEquals(graph.get(i).degree(), csr.get(i).degree());
+		}
+
+		int n = 0;
+		for(ULink<String> link : csr.links())
+		{
+			assertTrue(graph.get(link.first().index()).connected(graph.get(link.second().index())));
+			n++;
+		}
+		assertEquals(graph.numLinks(), n);
+	}
+
+	@Test
+	public void testEquals()
+	{
+		LightUGraph<String> graph = example();
+		CSRUGraph<String> csr = CSRUGraph.copy(graph);
+
+		assertEquals(graph, csr);
+		assertEquals(csr, graph);
+		assertEquals(csr, CSRUGraph.copy(graph));
+
+		assertEquals(graph.hashCode(), csr.hashCode());
+
+		graph.get(0).connect(graph.get(3));
+
+		assertFalse(csr.equals(graph));
+		assertFalse(graph.equals(csr));
+	}
+
+	@Test
+	public void testConnected()
+	{
+		CSRUGraph<String> csr = CSRUGraph.copy(example());
+
+		UNode<String> a = csr.node("a"),
+		              b = csr.node("b"),
+		              d = csr.node("d");
+
+		assertTrue(a.connected(b));
+		assertTrue(b.connected(a));
+		assertTrue(d.connected(d));
+		assertFalse(a.connected(d));
+
+		assertEquals(2, a.links(b).size());
+		assertEquals(1, d.links(d).size());
+
+		assertEquals(2, a.neighbors().size());
+		assertEquals(3, csr.neighborsFast(a).size());
+	}
+
+	@Test(expected=UnsupportedOperationException.class)
+	public void testImmutable()
+	{
+		CSRUGraph<String> csr = CSRUGraph.copy(example());
+
+		csr.get(0).remove();
+	}
+
+	@Test
+	public void testRandom()
+	{
+		Random random = new Random(0);
+
+		LightUGraph<String> graph = new LightUGraph<String>();
+		for(int i = 0; i < 100; i++)
+			graph.add(null);
+
+		for(int i = 0; i < 1000; i++)
+			graph.get(random.nextInt(100)).connect(graph.get(random.nextInt(100)));
+
+		CSRUGraph<String> csr = CSRUGraph.copy(graph);
+
+		assertEquals(graph, csr);
+		assertEquals(csr, graph);
+		assertEquals(graph.hashCode(), csr.hashCode());
+
+		for(int i = 0; i < 100; i++)
+			for(int j = 0; j < 100; j++)
+				assertEquals(
+					graph.get(i).connected(graph.get(j)),
+					csr.connected(i, j));
+	}
+}
@@ -0,0 +1,182 @@
+package org.nodes;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class DegreeSequencesTest
+{
+	/**
+	 * Erdős–Gallai, straight from the definition.
+	 */
+	private static boolean naive(int[] degrees)
+	{
+		int n = degrees.length;
+		int[] d = degrees.clone();
+		Arrays.sort(d);
+		
+		long sum = 0;
+		for(int x : d)
+		{
+			if(x < 0 || x > n - 1)
+				return false;
+			sum += x;
+		}
+		if(sum % 2 != 0)
+			return false;
+		
+		for(int k = 1; k <= n; k++)
+		{
+			long left = 0, right = (long) k * (k - 1);
+			for(int i = 0; i < n; i++)
+				if(i < k)
+					left += d[n - 1 - i];
+				else
+					right += Math.min(d[n - 1 - i], k);
+			
+			if(left > right)
+				return false;
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Fulkerson–Chen–Anstee, straight from the definition.
+	 */
+	private static boolean naive(int[] in, int[] out)
+	{
+		int n = in.length;
+		
+		long inSum = 0, outSum = 0;
+		for(int i = 0; i < n; i++)
+		{
+			if(in[i] < 0 || out[i] < 0 || in[i] > n - 1 || out[i] > n - 1)
+				return false;
+			inSum += in[i];
+			outSum += out[i];
+		}
+		if(inSum != outSum)
+			return false;
+		
+		// * sort the pairs lexicographically by (out, in), descending
+		long[] pairs = new long[n];
+		for(int i = 0; i < n; i++)
+			pairs[i] = ((long) out[i] << 32) | in[i];
+		Arrays.sort(pairs);
+		
+		for(int k = 1; k <= n; k++)
+		{
+			long left = 0, right = 0;
+			for(int i = 0; i < n; i++)
+			{
+				long pair = pairs[n - 1 - i];
+				int a = (int) (pair >>> 32), b = (int) pair;
+				
+				if(i < k)
+				{
+					left += a;
+					right += Math.min(b, k - 1);
+				} else
+					right += Math.min(b, k);
+			}
+			
+			if(left > right)
+				return false;
+		}
+		
+		return true;
+	}
+	
+	@Test
+	public void testUndirected()
+	{
+		assertTrue(DegreeSequences.isGraphical(new int[0]));
+		assertTrue(DegreeSequences.isGraphical(new int[]{3, 2, 2, 2, 1}));
+		assertFalse(DegreeSequences.isGraphical(new int[]{4, 4, 2, 2, 1}));
+		assertFalse(DegreeSequences.isGraphical(new int[]{3, 3, 1, 1, 0, 0}));
+		
+		Random random = new Random(0);
+		int graphical = 0;
+		for(int rep = 0; rep < 20000; rep++)
+		{
+			int n = random.nextInt(10);
+			int[] degrees = new int[n];
+			for(int i = 0; i < n; i++)
+				degrees[i] = random.nextInt(n + 1);
+			
+			boolean expected = naive(degrees);
+			assertEquals(Arrays.toString(degrees), expected, DegreeSequences.isGraphical(degrees));
+			
+			if(expected)
+				graphical++;
+		}
+		
+		assertTrue(graphical > 100);
+	}
+
+	@Test
+	public void testDirected()
+	{
+		assertTrue(DegreeSequences.isGraphical(new int[]{0, 1, 2}, new int[]{2, 1, 0}));
+		assertFalse(DegreeSequences.isGraphical(new int[]{3, 2, 2}, new int[]{3, 2, 2}));
+		assertTrue(DegreeSequences.isGraphical(new int[]{5, 0, 1, 0, 1, 0}, new int[]{0, 2, 1, 2, 1, 1}));
+		
+		Random random = new Random(1);
+		int graphical = 0;
+		for(int rep = 0; rep < 20000; rep++)
+		{
+			int n = random.nextInt(8);
+			int[] in = new int[n], out = new int[n];
+			for(int i = 0; i < n; i++)
+			{
+				in[i] = random.nextInt(n);
+				out[i] = random.nextInt(n);
+			}
+			
+			// * Balance the sums, so that more sequences are interesting
+			int diff = 0;
+			for(int i = 0; i < n; i++)
+				diff += in[i] - out[i];
+			for(int i = 0; i < n && diff != 0; i++)
+				while(diff > 0 && out[i] < n - 1) { out[i]++; diff--; }
+			for(int i = 0; i < n && diff != 0; i++)
+				while(diff < 0 && in[i] < n - 1) { in[i]++; diff++; }
+			
+			boolean expected = naive(in, out);
+			assertEquals(Arrays.toString(in) + Arrays.toString(out), expected, DegreeSequences.isGraphical(in, out));
+			
+			if(expected)
+				graphical++;
+		}
+		
+		assertTrue(graphical > 100);
+	}
+	
+	@Test
+	public void testExtraction()
+	{
+		LightDGraph<String> graph = new LightDGraph<String>();
+		for(int i = 0; i < 4; i++)
+			graph.add("x");
+		
+		graph.get(0).connect(graph.get(1));
+		graph.get(0).connect(graph.get(2));
+		graph.get(3).connect(graph.get(0));
+		
+		assertTrue(Arrays.equals(new int[]{1, 1, 1, 0}, DegreeSequences.inDegrees(graph)));
+		assertTrue(Arrays.equals(new int[]{2, 0, 0, 1}, DegreeSequences.outDegrees(graph)));
+		assertTrue(Arrays.equals(new int[]{3, 1, 1, 1}, DegreeSequences.degrees(graph)));
+		
+		LightUGraph<String> ugraph = new LightUGraph<String>();
+		for(int i = 0; i < 3; i++)
+			ugraph.add("x");
+		ugraph.get(0).connect(ugraph.get(1));
+		ugraph.get(0).connect(ugraph.get(2));
+		
+		assertTrue(Arrays.equals(new int[]{2, 1, 1}, DegreeSequences.degrees(ugraph)));
+	}
+}
@@ -5,6 +5,7 @@ import static org.junit.Assert.*;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -362,7 +363,75 @@ public class DiskDGraphTest
 
 		assertEquals(memGraph, diskGraph);
 	}
-	
+
+	/**
+	 * Imports with a tiny run size, so that the edges are spread over many runs
+	 * and merged in several passes.
+	 */
+	@Test
+	public void testImportRuns()
+		throws IOException
+	{
+		Global.randomSeed();
+		DIR.mkdirs();
+
+		int n = 30, m = 200;
+
+		List<List<Integer>> outs = new ArrayList<List<Integer>>(),
+		                    ins = new ArrayList<List<Integer>>();
+		for(int i : series(n))
+		{
+			outs.add(new ArrayList<Integer>());
+			ins.add(new ArrayList<Integer>());
+		}
+
+		File file = new File(DIR, "runs.txt");
+		PrintWriter writer = new PrintWriter(file);
+		writer.println("# a comment");
+		for(int i : series(m))
+		{
+			int a = i == 0 ? n - 1 : Global.random().nextInt(n),
+			    b = Global.random().nextInt(n);
+
+			outs.get(a).add(b);
+			ins.get(b).add(a);
+
+			writer.println(a + (i % 2 == 0 ? "\t" : " ") + b + (i % 3 == 0 ? " 0.5" : ""));
+			if(i % 50 == 0)
+				writer.println("% another comment\n");
+		}
+		writer.close();
+
+		IngestStats stats = new IngestStats();
+		DiskDGraph graph = DiskDGraph.fromFile(file, DIR, r(), stats, 7, 3);
+
+		assertEquals(n, graph.size());
+		assertEquals(m, graph.numLinks());
+		assertEquals(m, stats.edges());
+		assertEquals(file.length(), stats.bytes());
+		assertEquals((m + 6) / 7, stats.runs());
+
+		for(int i : series(n))
+		{
+			List<Integer> expected = new ArrayList<Integer>(ins.get(i));
+			Collections.sort(expected);
+			List<Integer> sortedOut = new ArrayList<Integer>(outs.get(i));
+			Collections.sort(sortedOut);
+			expected.addAll(sortedOut);
+
+			List<Integer> actual = new ArrayList<Integer>();
+			for(int j : series(graph.numNeighborsFast(i)))
+				actual.add(graph.neighborFast(i, j));
+
+			assertEquals(expected, actual);
+		}
+
+		for(File tmp : DIR.listFiles())
+			assertFalse(tmp.getName().endsWith(".run"));
+
+		graph.close();
+	}
+
 	@Test
 	public void testCopy()
 	{
@@ -630,6 +699,76 @@ public class DiskDGraphTest
 		}
 	}
 	
+	@Test
+	public void testLookupsKeepOrder()
+	{
+		File dbFile = r();
+		DiskDGraph graph = new DiskDGraph(dbFile, true);
+		for(int i : series(4))
+			graph.add(null);
+		
+		for(int j = 3; j >= 0; j--)
+			graph.get(0).connect(graph.get(j));
+		
+		// * lookups should not reorder the row
+		assertTrue(graph.get(0).connectedTo(graph.get(1)));
+		assertEquals(1, graph.get(0).linksOut(graph.get(2)).size());
+		assertEquals(1, graph.get(1).linksIn(graph.get(0)).size());
+		assertEquals(1, graph.get(3).links(graph.get(0)).size());
+		
+		assertEquals(Arrays.asList(3, 2, 1, 0), outIndices(graph, 0));
+		
+		// * The marks of the unsorted rows should survive closing the graph
+		graph.close();
+		graph = new DiskDGraph(dbFile, true);
+		
+		assertEquals(Arrays.asList(3, 2, 1, 0), outIndices(graph, 0));
+		for(int j : series(4))
+		{
+			assertTrue(graph.get(0).connectedTo(graph.get(j)));
+			assertEquals(1, graph.get(0).linksOut(graph.get(j)).size());
+		}
+		
+		graph.sort();
+		
+		assertEquals(Arrays.asList(0, 1, 2, 3), outIndices(graph, 0));
+		for(int j : series(4))
+			assertTrue(graph.get(0).connectedTo(graph.get(j)));
+		
+		graph.close();
+	}
+	
+	@Test
+	public void testDisconnectUnsorted()
+	{
+		DiskDGraph graph = new DiskDGraph(r(), true);
+		for(int i : series(4))
+			graph.add(null);
+		
+		for(int j = 3; j >= 1; j--)
+			graph.get(0).connect(graph.get(j));
+		graph.get(0).connect(graph.get(2));
+		
+		// * a row that is rewritten comes out sorted
+		graph.get(0).disconnect(graph.get(2));
+		
+		assertEquals(Arrays.asList(1, 3), outIndices(graph, 0));
+		assertEquals(2, graph.numLinks());
+		assertFalse(graph.get(0).connectedTo(graph.get(2)));
+		assertTrue(graph.get(0).connectedTo(graph.get(3)));
+		
+		graph.close();
+	}
+	
+	private static List<Integer> outIndices(DGraph<String> graph, int node)
+	{
+		List<Integer> indices = new ArrayList<Integer>();
+		for(DNode<String> out : graph.get(node).out())
+			indices.add(out.index());
+		
+		return indices;
+	}
+	
 	/**
 	 * Test subgraph extraction
 	 * 
@@ -0,0 +1,140 @@
+package org.nodes;
+
+import static nl.peterbloem.kit.Series.series;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import nl.peterbloem.kit.Global;
+
+public class GraphBuilderTest
+{
+	private static int[] random(int n, int m)
+	{
+		int[] links = new int[2 * m];
+		for(int i : series(2 * m))
+			links[i] = Global.random().nextInt(n);
+
+		return links;
+	}
+
+	@Test
+	public void testDirected()
+	{
+		Global.randomSeed();
+
+		for(int rep : series(10))
+		{
+			int[] links = random(50, 300);
+
+			LightDGraph<String> expected = new LightDGraph<String>();
+			for(int i : series(60))
+				expected.add(null);
+			for(int i : series(links.length / 2))
+				expected.get(links[2 * i]).connect(expected.get(links[2 * i + 1]));
+
+			LightDGraph<String> graph = new GraphBuilder(links).size(60).directed();
+
+			assertEquals(expected, graph);
+			assertEquals(expected.hashCode(), graph.hashCode());
+
+			assertEquals(expected, new GraphBuilder(links).size(60).csrDirected());
+		}
+	}
+
+	@Test
+	public void testUndirected()
+	{
+		Global.randomSeed();
+
+		for(int rep : series(10))
+		{
+			int[] links = random(50, 300);
+
+			LightUGraph<String> expected = new LightUGraph<String>();
+			for(int i : series(50))
+				expected.add(null);
+			for(int i : series(links.length / 2))
+				expected.get(links[2 * i]).connect(expected.get(links[2 * i + 1]));
+
+			GraphBuilder builder = new GraphBuilder();
+			for(int i : series(links.length / 2))
+				builder.add(links[2 * i], links[2 * i + 1]);
+			builder.size(50);
+
+			LightUGraph<String> graph = builder.undirected();
+
+			assertEquals(expected, graph);
+			assertEquals(expected.hashCode(), graph.hashCode());
+
+			assertEquals(expected, builder.csrUndirected());
+		}
+	}
+
+	@Test
+	public void testSimple()
+	{
+		Global.randomSeed();
+
+		for(int rep : series(10))
+		{
+			int[] links = random(20, 300);
+
+			LightDGraph<String> full = new GraphBuilder(links).size(20).directed();
+			LightUGraph<String> fullU = new GraphBuilder(links).size(20).undirected();
+
+			DGraph<String> expected = LightDGraph.copy(Graphs.toSimpleDGraph(full));
+			UGraph<String> expectedU = LightUGraph.copy(Graphs.toSimpleUGraph(fullU));
+
+			assertEquals(expected, new GraphBuilder(links).size(20).simple(true).directed());
+			assertEquals(expected, new GraphBuilder(links).size(20).simple(true).csrDirected());
+
+			assertEquals(expectedU, new GraphBuilder(links).size(20).simple(true).undirected());
+			assertEquals(expectedU, new GraphBuilder(links).size(20).simple(true).csrUndirected());
+		}
+	}
+
+	/**
+	 * The rows should be sorted, and the graph should still be editable.
+	 */
+	@Test
+	public void testEdit()
+	{
+		LightDGraph<String> graph = new GraphBuilder()
+				.add(0, 3).add(0, 1).add(2, 0).add(0, 2)
+				.threads(3)
+				.directed();
+
+		assertEquals(4, graph.size());
+		assertEquals(4, graph.numLinks());
+
+		// * the in-row, followed by the out-row
+		assertEquals(4, graph.numNeighborsFast(0));
+		assertEquals(2, graph.neighborFast(0, 0));
+		assertEquals(1, graph.neighborFast(0, 1));
+		assertEquals(2, graph.neighborFast(0, 2));
+		assertEquals(3, graph.neighborFast(0, 3));
+
+		graph.get(3).connect(graph.add(null));
+		graph.get(0).disconnect(graph.get(1));
+
+		assertEquals(5, graph.size());
+		assertEquals(4, graph.numLinks());
+		assertTrue(graph.get(3).connectedTo(graph.get(4)));
+		assertFalse(graph.get(0).connectedTo(graph.get(1)));
+	}
+
+	@Test
+	public void testEmpty()
+	{
+		assertEquals(0, new GraphBuilder().directed().size());
+		assertEquals(0, new GraphBuilder().csrUndirected().numLinks());
+		assertEquals(5, new GraphBuilder().size(5).undirected().size());
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testNegative()
+	{
+		new GraphBuilder().add(0, -1);
+	}
+}
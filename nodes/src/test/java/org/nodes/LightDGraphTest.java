@@ -522,4 +522,218 @@ public class LightDGraphTest
 			assertEquals(nbsList, nbsFastList);			
 		}
 	}
+	
+	@Test
+	public void testUnsortedLookups()
+	{
+		LightDGraph<String> graph = new LightDGraph<String>();
+		for(int i : series(5))
+			graph.add(null);
+		
+		// * connect in reverse order, so that the rows go out of order
+		for(int i = 4; i >= 0; i--)
+			for(int j = 4; j >= 0; j--)
+				if((i + j) % 2 == 0)
+					graph.get(i).connect(graph.get(j));
+		graph.get(0).connect(graph.get(2));
+		
+		for(int i : series(5))
+			for(int j : series(5))
+				assertEquals((i + j) % 2 == 0, graph.get(i).connectedTo(graph.get(j)));
+		
+		assertEquals(2, graph.get(0).linksOut(graph.get(2)).size());
+		assertEquals(1, graph.get(0).linksIn(graph.get(2)).size());
+		assertEquals(3, graph.get(2).links(graph.get(0)).size());
+		
+		graph.get(0).disconnect(graph.get(2));
+		assertFalse(graph.get(0).connectedTo(graph.get(2)));
+		assertFalse(graph.get(2).connectedTo(graph.get(0)));
+		assertEquals(11, graph.numLinks());
+		
+		// * removing a node shifts the rows after it
+		graph.get(1).remove();
+		graph.get(2).connect(graph.get(0));
+		assertTrue(graph.get(2).connectedTo(graph.get(0)));
+		assertTrue(graph.get(3).connectedTo(graph.get(1)));
+		assertFalse(graph.get(1).connectedTo(graph.get(0)));
+		assertFalse(graph.get(0).connectedTo(graph.get(2)));
+	}
+	
+	@Test
+	public void testLookupsKeepOrder()
+	{
+		LightDGraph<String> graph = new LightDGraph<String>();
+		for(int i : series(4))
+			graph.add(null);
+		
+		for(int j = 3; j >= 0; j--)
+			graph.get(0).connect(graph.get(j));
+		
+		List<Integer> before = new ArrayList<Integer>();
+		for(DNode<String> node : graph.get(0).out())
+			before.add(node.index());
+		
+		// * lookups should not reorder the row
+		assertTrue(graph.get(0).connectedTo(graph.get(1)));
+		assertEquals(1, graph.get(0).linksOut(graph.get(2)).size());
+		assertEquals(1, graph.get(3).links(graph.get(0)).size());
+		assertEquals(graph, LightDGraph.copy(graph));
+		
+		List<Integer> after = new ArrayList<Integer>();
+		for(DNode<String> node : graph.get(0).out())
+			after.add(node.index());
+		
+		assertEquals(Arrays.asList(3, 2, 1, 0), before);
+		assertEquals(before, after);
+		
+		graph.sort();
+		
+		after.clear();
+		for(DNode<String> node : graph.get(0).out())
+			after.add(node.index());
+		assertEquals(Arrays.asList(0, 1, 2, 3), after);
+	}
+	
+	@Test
+	public void testLabelIndex()
+	{
+		LightDGraph<String> graph = new LightDGraph<String>();
+		graph.add("a");
+		graph.add("b");
+		graph.add("a");
+		
+		graph.indexLabels(true);
+		assertTrue(graph.labelsIndexed());
+		
+		graph.add("c");
+		graph.add("a");
+		
+		assertEquals(0, graph.node("a").index());
+		assertEquals(3, graph.node("c").index());
+		assertNull(graph.node("d"));
+		assertEquals(3, graph.nodes("a").size());
+		assertEquals(0, graph.nodes("d").size());
+		
+		graph.node("a").remove();
+		
+		assertEquals(1, graph.node("a").index());
+		assertEquals(2, graph.node("c").index());
+		assertEquals(0, graph.node("b").index());
+		
+		List<Integer> indices = new ArrayList<Integer>();
+		for(DNode<String> node : graph.nodes("a"))
+			indices.add(node.index());
+		assertEquals(Arrays.asList(1, 3), indices);
+		
+		graph.indexLabels(false);
+		assertFalse(graph.labelsIndexed());
+		assertEquals(2, graph.node("c").index());
+	}
+	
+	@Test
+	public void testNeighborCursor()
+	{
+		LightDGraph<String> graph = new LightDGraph<String>();
+		for(int i : series(4))
+			graph.add(null);
+		
+		graph.get(0).connect(graph.get(1));
+		graph.get(2).connect(graph.get(0));
+		graph.get(0).connect(graph.get(0));
+		graph.get(0).connect(graph.get(1));
+		
+		IntCursor cursor = graph.neighborCursor();
+		for(DNode<String> node : graph.nodes())
+		{
+			List<Integer> expected = new ArrayList<Integer>();
+			for(DNode<String> neighbor : graph.neighborsFast(node))
+				expected.add(neighbor.index());
+			
+			List<Integer> indices = new ArrayList<Integer>();
+			for(int i : series(graph.numNeighborsFast(node.index())))
+				indices.add(graph.neighborFast(node.index(), i));
+			
+			assertEquals(expected, indices);
+			
+			cursor.reset(node.index());
+			assertEquals(expected.size(), cursor.size());
+			
+			indices.clear();
+			while(cursor.hasNext())
+				indices.add(cursor.next());
+			
+			assertEquals(expected, indices);
+		}
+		
+		assertEquals(5, graph.numNeighborsFast(0));
+		assertEquals(0, graph.numNeighborsFast(3));
+	}
+	
+	/**
+	 * The fingerprint should stay equal to that of a graph built from scratch, 
+	 * under any sequence of edits.
+	 */
+	@Test
+	public void testFingerprint()
+	{
+		Global.randomSeed();
+		
+		LightDGraph<String> graph = new LightDGraph<String>();
+		for(int i : series(20))
+			graph.add(i % 3 == 0 ? null : "n" + (i % 4));
+		
+		for(int rep : series(300))
+		{
+			int a = Global.random().nextInt(graph.size()), 
+			    b = Global.random().nextInt(graph.size());
+			
+			double draw = Global.random().nextDouble();
+			if(draw < 0.6)
+				graph.get(a).connect(graph.get(b));
+			else if(draw < 0.8)
+				graph.get(a).disconnect(graph.get(b));
+			else if(draw < 0.9 && graph.numLinks() > 0)
+				graph.links().iterator().next().remove();
+			else if(draw < 0.95 && graph.size() > 5)
+				graph.get(a).remove();
+			else 
+				graph.add("n" + rep);
+			
+			DGraph<String> copy = CSRDGraph.copy(graph);
+			
+			assertEquals(copy.hashCode(), graph.hashCode());
+			assertEquals(LightDGraph.copy(graph).hashCode(), graph.hashCode());
+			assertEquals(graph, LightDGraph.copy(graph));
+			assertEquals(graph, copy);
+		}
+	}
+	
+	@Test
+	public void testEqualsMultiple()
+	{
+		LightDGraph<String> a = new LightDGraph<String>();
+		LightDGraph<String> b = new LightDGraph<String>();
+		for(int i : series(4))
+		{
+			a.add(null);
+			b.add(null);
+		}
+		
+		a.get(0).connect(a.get(1));
+		a.get(0).connect(a.get(1));
+		a.get(2).connect(a.get(3));
+		
+		b.get(0).connect(b.get(1));
+		b.get(2).connect(b.get(3));
+		b.get(2).connect(b.get(3));
+		
+		assertFalse(a.equals(b));
+		
+		a.get(0).disconnect(a.get(1));
+		a.get(0).connect(a.get(1));
+		a.get(2).connect(a.get(3));
+		
+		assertEquals(a, b);
+		assertEquals(a.hashCode(), b.hashCode());
+	}
 }
@@ -1,5 +1,6 @@
 package org.nodes;
 
+import static nl.peterbloem.kit.Series.series;
 import static org.junit.Assert.*;
 
 import java.io.File;
@@ -574,4 +575,76 @@ public class LightUGraphTest
 		System.out.println("num links " + yeast.numLinks());
 
 	}
+	
+	/**
+	 * The fingerprint should stay equal to that of a graph built from scratch, 
+	 * under any sequence of edits.
+	 */
+	@Test
+	public void testFingerprint()
+	{
+		Global.randomSeed();
+		
+		LightUGraph<String> graph = new LightUGraph<String>();
+		for(int i : series(20))
+			graph.add(i % 3 == 0 ? null : "n" + (i % 4));
+		
+		for(int rep : series(300))
+		{
+			int a = Global.random().nextInt(graph.size()), 
+			    b = Global.random().nextInt(graph.size());
+			
+			double draw = Global.random().nextDouble();
+			if(draw < 0.6)
+				graph.get(a).connect(graph.get(b));
+			else if(draw < 0.8)
+				graph.get(a).disconnect(graph.get(b));
+			else if(draw < 0.9 && graph.numLinks() > 0)
+				graph.links().iterator().next().remove();
+			else if(draw < 0.95 && graph.size() > 5)
+				graph.get(a).remove();
+			else 
+				graph.add("n" + rep);
+			
+			UGraph<String> copy = CSRUGraph.copy(graph);
+			
+			assertEquals(copy.hashCode(), graph.hashCode());
+			assertEquals(LightUGraph.copy(graph).hashCode(), graph.hashCode());
+			assertEquals(graph, LightUGraph.copy(graph));
+			assertEquals(graph, copy);
+		}
+	}
+	
+	/**
+	 * Graphs with the same neighbors, but different numbers of links between 
+	 * them, are not equal.
+	 */
+	@Test
+	public void testEqualsMultiple()
+	{
+		LightUGraph<String> a = new LightUGraph<String>();
+		LightUGraph<String> b = new LightUGraph<String>();
+		for(int i : series(4))
+		{
+			a.add(null);
+			b.add(null);
+		}
+		
+		a.get(0).connect(a.get(1));
+		a.get(0).connect(a.get(1));
+		a.get(2).connect(a.get(3));
+		
+		b.get(0).connect(b.get(1));
+		b.get(2).connect(b.get(3));
+		b.get(2).connect(b.get(3));
+		
+		assertFalse(a.equals(b));
+		
+		a.get(1).disconnect(a.get(0));
+		a.get(1).connect(a.get(0));
+		a.get(3).connect(a.get(2));
+		
+		assertEquals(a, b);
+		assertEquals(a.hashCode(), b.hashCode());
+	}
 }
@@ -0,0 +1,151 @@
+package org.nodes;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class MappedDGraphTest
+{
+	public static File DIR = new File("./tmp/");
+	
+	public static File r()
+	{
+		int id = (new Random()).nextInt(1000000000);
+		return new File(DIR, "mapped" + id);
+	}
+	
+	private static LightDGraph<String> example()
+	{
+		LightDGraph<String> graph = new LightDGraph<String>();
+
+		DNode<String> a = graph.add("a"),
+		              b = graph.add("b"),
+		              c = graph.add("c"),
+		              d = graph.add("d");
+
+		a.connect(b);
+		b.connect(c);
+		c.connect(a);
+		c.connect(d);
+		d.connect(c);
+		d.connect(d);
+		a.connect(b);
+
+		return graph;
+	}
+	
+	private static LightDGraph<String> random(int n, int m)
+	{
+		Random random = new Random(0);
+
+		LightDGraph<String> graph = new LightDGraph<String>();
+		for(int i = 0; i < n; i++)
+			graph.add(null);
+
+		for(int i = 0; i < m; i++)
+			graph.get(random.nextInt(n)).connect(graph.get(random.nextInt(n)));
+		
+		return graph;
+	}
+
+	@Test
+	public void testWrite()
+		throws IOException
+	{
+		for(boolean varint : new boolean[]{false, true})
+		{
+			LightDGraph<String> graph = example();
+			
+			File dir = r();
+			MappedDGraph.write(graph, dir, varint);
+			MappedDGraph mapped = MappedDGraph.open(dir);
+	
+			assertEquals(graph.size(), mapped.size());
+			assertEquals(graph.numLinks(), mapped.numLinks());
+			
+			assertEquals(graph, mapped);
+			assertEquals(mapped, graph);
+			assertEquals(graph.hashCode(), mapped.hashCode());
+			
+			DNode<String> a = mapped.node("a"),
+			              b = mapped.node("b"),
+			              d = mapped.node("d");
+	
+			assertTrue(a.connectedTo(b));
+			assertFalse(b.connectedTo(a));
+			assertTrue(d.connectedTo(d));
+	
+			assertEquals(2, a.linksOut(b).size());
+			assertEquals(2, b.links(a).size());
+			assertEquals(1, d.links(d).size());
+			
+			int n = 0;
+			for(DLink<String> link : mapped.links())
+			{
+				assertTrue(graph.get(link.from().index()).connectedTo(graph.get(link.to().index())));
+				n++;
+			}
+			assertEquals(graph.numLinks(), n);
+		}
+	}
+	
+	@Test
+	public void testRandom()
+		throws IOException
+	{
+		LightDGraph<String> graph = random(100, 1000);
+		
+		for(boolean varint : new boolean[]{false, true})
+		{
+			File dir = r();
+			MappedDGraph.write(graph, dir, varint);
+			MappedDGraph mapped = MappedDGraph.open(dir);
+			
+			assertEquals(graph, mapped);
+			assertNull(mapped.get(0).label());
+			
+			IntCursor cursor = mapped.neighborCursor();
+			for(int i = 0; i < 100; i++)
+			{
+				List<Integer> expected = new ArrayList<Integer>();
+				for(DNode<String> in : graph.get(i).in())
+					expected.add(in.index());
+				for(DNode<String> out : graph.get(i).out())
+					expected.add(out.index());
+				
+				assertEquals(expected.size(), mapped.numNeighborsFast(i));
+				
+				cursor.reset(i);
+				int k = 0;
+				while(cursor.hasNext())
+				{
+					int next = cursor.next();
+					assertEquals(next, mapped.neighborFast(i, k++));
+					assertTrue(expected.remove((Integer)next));
+				}
+				assertTrue(expected.isEmpty());
+				
+				for(int j = 0; j < 100; j++)
+					assertEquals(
+						graph.get(i).connectedTo(graph.get(j)),
+						mapped.connectedTo(i, j));
+			}
+		}
+	}
+	
+	@Test(expected=UnsupportedOperationException.class)
+	public void testReadOnly()
+		throws IOException
+	{
+		File dir = r();
+		MappedDGraph.write(example(), dir, false);
+		
+		MappedDGraph.open(dir).get(0).connect(MappedDGraph.open(dir).get(1));
+	}
+}
@@ -0,0 +1,104 @@
+package org.nodes;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class MappedUGraphTest
+{
+	private static LightUGraph<String> example()
+	{
+		LightUGraph<String> graph = new LightUGraph<String>();
+
+		UNode<String> a = graph.add("a"),
+		              b = graph.add("b"),
+		              c = graph.add("c"),
+		              d = graph.add("d");
+
+		a.connect(b);
+		b.connect(c);
+		c.connect(a);
+		c.connect(d);
+		d.connect(d);
+		a.connect(b);
+
+		return graph;
+	}
+
+	@Test
+	public void testWrite()
+		throws IOException
+	{
+		for(boolean varint : new boolean[]{false, true})
+		{
+			LightUGraph<String> graph = example();
+			
+			File dir = MappedDGraphTest.r();
+			MappedUGraph.write(graph, dir, varint);
+			MappedUGraph mapped = MappedUGraph.open(dir);
+	
+			assertEquals(graph.size(), mapped.size());
+			assertEquals(graph.numLinks(), mapped.numLinks());
+			
+			assertEquals(graph, mapped);
+			assertEquals(mapped, graph);
+			assertEquals(graph.hashCode(), mapped.hashCode());
+			
+			UNode<String> a = mapped.node("a"),
+			              b = mapped.node("b"),
+			              d = mapped.node("d");
+	
+			assertTrue(a.connected(b));
+			assertTrue(b.connected(a));
+			assertTrue(d.connected(d));
+			assertFalse(a.connected(d));
+	
+			assertEquals(2, a.links(b).size());
+			assertEquals(1, d.links(d).size());
+			assertEquals(2, a.neighbors().size());
+			assertEquals(3, mapped.neighborsFast(a).size());
+			
+			int n = 0;
+			for(ULink<String> link : mapped.links())
+			{
+				assertTrue(graph.get(link.first().index()).connected(graph.get(link.second().index())));
+				n++;
+			}
+			assertEquals(graph.numLinks(), n);
+		}
+	}
+	
+	@Test
+	public void testRandom()
+		throws IOException
+	{
+		Random random = new Random(0);
+
+		LightUGraph<String> graph = new LightUGraph<String>();
+		for(int i = 0; i < 100; i++)
+			graph.add(null);
+
+		for(int i = 0; i < 1000; i++)
+			graph.get(random.nextInt(100)).connect(graph.get(random.nextInt(100)));
+		
+		for(boolean varint : new boolean[]{false, true})
+		{
+			File dir = MappedDGraphTest.r();
+			MappedUGraph.write(graph, dir, varint);
+			MappedUGraph mapped = MappedUGraph.open(dir);
+			
+			assertEquals(graph, mapped);
+			assertEquals(graph.hashCode(), mapped.hashCode());
+	
+			for(int i = 0; i < 100; i++)
+				for(int j = 0; j < 100; j++)
+					assertEquals(
+						graph.get(i).connected(graph.get(j)),
+						mapped.connected(i, j));
+		}
+	}
+}
@@ -0,0 +1,163 @@
+package org.nodes.algorithms;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.nodes.DGraph;
+import org.nodes.DTGraph;
+import org.nodes.Graph;
+import org.nodes.Graphs;
+import org.nodes.MapDTGraph;
+import org.nodes.MapUTGraph;
+import org.nodes.UGraph;
+import org.nodes.UTGraph;
+import org.nodes.compression.Functions.NaturalComparator;
+
+import nl.peterbloem.kit.Order;
+
+public class CanonicalCacheTest
+{
+	private static DGraph<String> randomDirected(int n, double p, Random random)
+	{
+		DTGraph<String, String> graph = new MapDTGraph<String, String>();
+		for(int i = 0; i < n; i++)
+			graph.add(random.nextBoolean() ? "a" : "b");
+
+		for(int i = 0; i < n; i++)
+			for(int j = 0; j < n; j++)
+				if(i != j && random.nextDouble() < p)
+					graph.get(i).connect(graph.get(j));
+
+		return graph;
+	}
+
+	private static UGraph<String> randomUndirected(int n, double p, Random random)
+	{
+		UTGraph<String, String> graph = new MapUTGraph<String, String>();
+		for(int i = 0; i < n; i++)
+			graph.add("x");
+
+		for(int i = 0; i < n; i++)
+			for(int j = i + 1; j < n; j++)
+				if(random.nextDouble() < p)
+					graph.get(i).connect(graph.get(j));
+
+		return graph;
+	}
+
+	private static <L> Graph<L> shuffle(Graph<L> graph, Random random)
+	{
+		List<Integer> indices = new ArrayList<Integer>();
+		for(int i = 0; i < graph.size(); i++)
+			indices.add(i);
+		Collections.shuffle(indices, random);
+
+		return Graphs.reorder(graph, new Order(indices));
+	}
+
+	@Test
+	public void testDirected()
+	{
+		NaturalComparator<String> comp = new NaturalComparator<String>();
+		CanonicalCache<String> cache = new CanonicalCache<String>(comp);
+		Random random = new Random(0);
+
+		List<Graph<String>> shapes = new ArrayList<Graph<String>>();
+		for(int i = 0; i < 5; i++)
+			shapes.add(randomDirected(5, 0.4, random));
+
+		for(int i = 0; i < 200; i++)
+		{
+			Graph<String> graph = shuffle(shapes.get(random.nextInt(shapes.size())), random);
+
+			CanonicalCache<String>.Result result = cache.canonize(graph);
+
+			Graph<String> expected = Graphs.reorder(graph, Nauty.order(graph, comp));
+			assertEquals(expected, result.graph());
+			assertEquals(expected, Graphs.reorder(graph, result.order()));
+		}
+
+		assertEquals(200, cache.lookups());
+		assertTrue(cache.misses() <= shapes.size());
+		assertTrue(cache.hitRate() > 0.9);
+	}
+
+	@Test
+	public void testUndirected()
+	{
+		NaturalComparator<String> comp = new NaturalComparator<String>();
+		CanonicalCache<String> cache = new CanonicalCache<String>(comp, 10, 4);
+		Random random = new Random(1);
+
+		for(int i = 0; i < 200; i++)
+		{
+			Graph<String> graph = randomUndirected(5, 0.5, random);
+
+			CanonicalCache<String>.Result result = cache.canonize(graph);
+
+			Graph<String> expected = Graphs.reorder(graph, Nauty.order(graph, comp));
+			assertEquals(expected, result.graph());
+			assertEquals(expected, Graphs.reorder(graph, result.order()));
+		}
+
+		assertTrue(cache.size() <= 10);
+	}
+
+	@Test
+	public void testOrderHits()
+	{
+		CanonicalCache<String> cache = new CanonicalCache<String>(new NaturalComparator<String>());
+		Graph<String> graph = randomDirected(6, 0.3, new Random(2));
+
+		cache.canonize(graph);
+		cache.canonize(graph);
+		cache.canonize(graph);
+
+		assertEquals(1, cache.misses());
+		assertEquals(2, cache.orderHits());
+		assertEquals(0, cache.isomorphismHits());
+	}
+	
+	@Test
+	public void testOrderIndependentOfHistory()
+	{
+		NaturalComparator<String> comp = new NaturalComparator<String>();
+		Random random = new Random(3);
+		
+		// * A cycle has many automorphisms, so Nauty and VF2 may disagree on 
+		//   the order
+		DTGraph<String, String> cycle = new MapDTGraph<String, String>();
+		for(int i = 0; i < 6; i++)
+			cycle.add("a");
+		for(int i = 0; i < 6; i++)
+			cycle.get(i).connect(cycle.get((i + 1) % 6));
+		
+		List<Graph<String>> graphs = new ArrayList<Graph<String>>();
+		for(int i = 0; i < 20; i++)
+			graphs.add(shuffle(cycle, random));
+		
+		List<Integer> nodes = new ArrayList<Integer>();
+		for(int i = 0; i < 6; i++)
+			nodes.add(i);
+		
+		// * Once with a fresh cache for each graph, once with a warm cache 
+		//   visited in the opposite order
+		CanonicalCache<String> warm = new CanonicalCache<String>(comp);
+		List<List<Integer>> orders = new ArrayList<List<Integer>>();
+		for(int i = graphs.size() - 1; i >= 0; i--)
+			orders.add(0, warm.canonize(graphs.get(i)).order().apply(nodes));
+		
+		for(int i = 0; i < graphs.size(); i++)
+		{
+			Order fresh = new CanonicalCache<String>(comp).canonize(graphs.get(i)).order();
+			assertEquals(fresh.apply(nodes), orders.get(i));
+		}
+		
+		assertEquals(1, warm.misses());
+	}
+}
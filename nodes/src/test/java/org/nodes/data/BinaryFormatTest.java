@@ -0,0 +1,253 @@
+package org.nodes.data;
+
+import static nl.peterbloem.kit.Series.series;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+import org.nodes.DGraph;
+import org.nodes.DTGraph;
+import org.nodes.Graph;
+import org.nodes.LightDGraph;
+import org.nodes.LightDTGraph;
+import org.nodes.LightUGraph;
+import org.nodes.Link;
+import org.nodes.MapDTGraph;
+import org.nodes.MapUTGraph;
+import org.nodes.TLink;
+import org.nodes.UGraph;
+import org.nodes.UTGraph;
+
+import nl.peterbloem.kit.Global;
+
+public class BinaryFormatTest
+{
+	public static File DIR = new File("./tmp/");
+
+	private static String label(int i)
+	{
+		return i % 7 == 0 ? null : "n" + (i % 5);
+	}
+
+	private static String tag(int i)
+	{
+		return i % 4 == 0 ? null : "t" + (i % 3);
+	}
+
+	/**
+	 * The labels and the sorted links (with tags) of a graph.
+	 */
+	private static List<String> signature(Graph<String> graph, boolean directed)
+	{
+		List<String> result = new ArrayList<String>();
+		for(int i : series(graph.size()))
+			result.add("" + graph.get(i).label());
+
+		List<String> links = new ArrayList<String>();
+		for(Link<String> link : graph.links())
+		{
+			int a = link.first().index(), b = link.second().index();
+			if(! directed && a > b)
+			{
+				int t = a; a = b; b = t;
+			}
+
+			String tag = link instanceof TLink<?, ?> ? "" + ((TLink<?, ?>) link).tag() : "";
+			links.add(a + " " + b + " " + tag);
+		}
+		Collections.sort(links);
+		result.addAll(links);
+
+		return result;
+	}
+
+	private static File file()
+	{
+		DIR.mkdirs();
+		return new File(DIR, "graph" + Global.random().nextInt(1000000) + ".bin");
+	}
+
+	private static Graph<String> roundTrip(Graph<String> graph, boolean checksums)
+		throws IOException
+	{
+		File file = file();
+		BinaryFormat.write(graph, file, checksums);
+		Graph<String> fromFile = BinaryFormat.read(file);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		BinaryFormat.write(graph, bytes, checksums);
+		Graph<String> fromStream = BinaryFormat.read(new ByteArrayInputStream(bytes.toByteArray()));
+
+		assertEquals(file.length(), bytes.size());
+		assertEquals(fromFile.getClass(), fromStream.getClass());
+
+		return fromFile;
+	}
+
+	@Test
+	public void testDirected()
+		throws IOException
+	{
+		Global.randomSeed();
+
+		for(boolean checksums : new boolean[]{true, false})
+		{
+			LightDGraph<String> graph = new LightDGraph<String>();
+			for(int i : series(100))
+				graph.add(label(i));
+			for(int i : series(500))
+				graph.get(Global.random().nextInt(90)).connect(graph.get(Global.random().nextInt(90)));
+
+			Graph<String> read = roundTrip(graph, checksums);
+
+			assertTrue(read instanceof LightDGraph<?>);
+			assertEquals(graph, read);
+			assertEquals(signature(graph, true), signature(read, true));
+		}
+	}
+
+	@Test
+	public void testUndirected()
+		throws IOException
+	{
+		Global.randomSeed();
+
+		LightUGraph<String> graph = new LightUGraph<String>();
+		for(int i : series(100))
+			graph.add(label(i));
+		for(int i : series(500))
+			graph.get(Global.random().nextInt(90)).connect(graph.get(Global.random().nextInt(90)));
+
+		Graph<String> read = roundTrip(graph, true);
+
+		assertTrue(read instanceof UGraph<?>);
+		assertEquals(graph, read);
+		assertEquals(signature(graph, false), signature(read, false));
+	}
+
+	@Test
+	public void testTagged()
+		throws IOException
+	{
+		Global.randomSeed();
+
+		LightDTGraph<String, String> directed = new LightDTGraph<String, String>();
+		MapUTGraph<String, String> undirected = new MapUTGraph<String, String>();
+		for(int i : series(50))
+		{
+			directed.add(label(i));
+			undirected.add(label(i));
+		}
+
+		for(int i : series(200))
+		{
+			int a = Global.random().nextInt(50), b = Global.random().nextInt(50);
+			directed.get(a).connect(directed.get(b), tag(i));
+			undirected.get(a).connect(undirected.get(b), tag(i));
+		}
+
+		Graph<String> read = roundTrip(directed, true);
+		assertTrue(read instanceof DTGraph<?, ?>);
+		assertEquals(signature(directed, true), signature(read, true));
+
+		read = roundTrip(undirected, true);
+		assertTrue(read instanceof UTGraph<?, ?>);
+		assertEquals(undirected.numLinks(), read.numLinks());
+		assertEquals(signature(undirected, false), signature(read, false));
+	}
+
+	@Test
+	public void testReadInto()
+		throws IOException
+	{
+		Global.randomSeed();
+
+		LightDTGraph<String, String> graph = new LightDTGraph<String, String>();
+		for(int i : series(30))
+			graph.add(label(i));
+		for(int i : series(100))
+			graph.get(Global.random().nextInt(30)).connect(graph.get(Global.random().nextInt(30)), tag(i));
+
+		File file = file();
+		BinaryFormat.write(graph, file);
+
+		MapDTGraph<String, String> tagged = new MapDTGraph<String, String>();
+		BinaryFormat.readInto(file, tagged);
+		assertEquals(signature(graph, true), signature(tagged, true));
+
+		// * into an untagged graph: the tags are dropped
+		DGraph<String> untagged = new LightDGraph<String>();
+		BinaryFormat.readInto(file, untagged);
+		assertEquals(graph.size(), untagged.size());
+		assertEquals(graph.numLinks(), untagged.numLinks());
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testReadIntoUndirected()
+		throws IOException
+	{
+		File file = file();
+		BinaryFormat.write(new LightDGraph<String>(), file);
+
+		BinaryFormat.readInto(file, new LightUGraph<String>());
+	}
+
+	@Test
+	public void testEmpty()
+		throws IOException
+	{
+		assertEquals(0, roundTrip(new LightDGraph<String>(), true).size());
+		assertEquals(0, roundTrip(new LightUGraph<String>(), false).size());
+	}
+
+	@Test(expected=IOException.class)
+	public void testCorrupt()
+		throws IOException
+	{
+		Global.randomSeed();
+
+		LightDGraph<String> graph = new LightDGraph<String>();
+		for(int i : series(100))
+			graph.add(label(i));
+		for(int i : series(500))
+			graph.get(Global.random().nextInt(100)).connect(graph.get(Global.random().nextInt(100)));
+
+		File file = file();
+		BinaryFormat.write(graph, file);
+
+		// * flip a byte in the adjacency section
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		long position = raf.length() - 20;
+		raf.seek(position);
+		int b = raf.read();
+		raf.seek(position);
+		raf.write(b ^ 0x01);
+		raf.close();
+
+		BinaryFormat.read(file);
+	}
+
+	@Test(expected=IOException.class)
+	public void testNotBinary()
+		throws IOException
+	{
+		BinaryFormat.read(new ByteArrayInputStream("0\t1\n1\t2\n".getBytes()));
+	}
+
+	@After
+	public void cleanup()
+	{
+		if(DIR.exists())
+			for(File file : DIR.listFiles())
+				file.delete();
+	}
+}
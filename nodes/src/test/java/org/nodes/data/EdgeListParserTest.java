@@ -0,0 +1,166 @@
+package org.nodes.data;
+
+import static nl.peterbloem.kit.Series.series;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+import nl.peterbloem.kit.Global;
+
+public class EdgeListParserTest
+{
+	public static File DIR = new File("./tmp/");
+
+	private File write(String text)
+		throws IOException
+	{
+		DIR.mkdirs();
+		File file = new File(DIR, "edges" + Global.random().nextInt(1000000) + ".txt");
+
+		PrintWriter writer = new PrintWriter(file);
+		writer.print(text);
+		writer.close();
+
+		return file;
+	}
+
+	@Test
+	public void testInts()
+		throws IOException
+	{
+		File file = write("# comment\n0\t1\n\n  % comment\n2 3 0.5\r\n14  15\n6\t7");
+
+		int[] edges = new EdgeListParser(file).ints();
+		assertArrayEquals(new int[]{0, 1, 2, 3, 14, 15, 6, 7}, edges);
+	}
+
+	@Test
+	public void testStrings()
+		throws IOException
+	{
+		File file = write("a b\n# c d\nb\tc extra\r\n");
+
+		String[] edges = new EdgeListParser(file).strings();
+		assertArrayEquals(new String[]{"a", "b", "b", "c"}, edges);
+	}
+
+	/**
+	 * The result should not depend on where the chunk boundaries fall.
+	 */
+	@Test
+	public void testChunks()
+		throws IOException
+	{
+		Global.randomSeed();
+
+		StringBuilder text = new StringBuilder();
+		List<Integer> expected = new ArrayList<Integer>();
+		for(int i : series(300))
+		{
+			int a = Global.random().nextInt(100000), b = Global.random().nextInt(100);
+			expected.add(a);
+			expected.add(b);
+
+			text.append(a).append(i % 2 == 0 ? "\t" : "  ").append(b);
+			text.append(i % 3 == 0 ? "\r\n" : "\n");
+			if(i % 40 == 0)
+				text.append("# comment ").append(i).append("\n\n");
+		}
+		File file = write(text.toString());
+
+		for(int chunkSize : new int[]{1, 2, 3, 7, 64, 1000, 1 << 20})
+			for(int threads : new int[]{1, 3})
+			{
+				int[] edges = new EdgeListParser(file, chunkSize, threads).ints();
+
+				assertEquals(expected.size(), edges.length);
+				for(int i : series(edges.length))
+					assertEquals((int) expected.get(i), edges[i]);
+			}
+	}
+
+	/**
+	 * Streaming the chunks to a handler should give the edges in file order.
+	 */
+	@Test
+	public void testHandler()
+		throws IOException
+	{
+		StringBuilder text = new StringBuilder();
+		for(int i : series(500))
+			text.append(i).append(' ').append(i + 1).append('\n');
+		File file = write(text.toString());
+
+		for(int threads : new int[]{1, 4})
+		{
+			final List<Integer> streamed = new ArrayList<Integer>();
+			final int[] calls = new int[1];
+
+			EdgeListParser parser = new EdgeListParser(file, 64, threads);
+			parser.ints(new EdgeListParser.Handler<int[]>() {
+				public void edges(int[] edges)
+				{
+					calls[0]++;
+					for(int value : edges)
+						streamed.add(value);
+				}
+			});
+
+			assertEquals(parser.numChunks(), calls[0]);
+
+			int[] edges = parser.ints();
+			assertEquals(edges.length, streamed.size());
+			for(int i : series(edges.length))
+				assertEquals(edges[i], (int) streamed.get(i));
+		}
+	}
+
+	@Test
+	public void testEmpty()
+		throws IOException
+	{
+		assertEquals(0, new EdgeListParser(write("")).ints().length);
+		assertEquals(0, new EdgeListParser(write("# only a comment\n")).ints().length);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testSingle()
+		throws IOException
+	{
+		new EdgeListParser(write("0 1\n2\n3 4\n")).ints();
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testNotANumber()
+		throws IOException
+	{
+		new EdgeListParser(write("0 1\n2 x\n")).ints();
+	}
+
+	@Test
+	public void testNeural()
+		throws IOException
+	{
+		URL url = this.getClass().getResource("/graphs/neural/celegans.txt");
+		File file = new File(url.getFile());
+
+		String[] edges = new EdgeListParser(file).strings();
+		assertEquals(2 * Data.edgeList(file).numLinks(), edges.length);
+	}
+
+	@After
+	public void cleanup()
+	{
+		if(DIR.exists())
+			for(File file : DIR.listFiles())
+				file.delete();
+	}
+}
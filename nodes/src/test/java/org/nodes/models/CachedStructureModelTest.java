@@ -0,0 +1,142 @@
+package org.nodes.models;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.nodes.DNode;
+import org.nodes.Graph;
+import org.nodes.MapDTGraph;
+import org.nodes.MapUTGraph;
+import org.nodes.UNode;
+
+public class CachedStructureModelTest
+{
+	/**
+	 * A model that counts how often it is called. 
+	 */
+	private static class Counting implements StructureModel<Graph<?>>
+	{
+		AtomicInteger calls = new AtomicInteger(0);
+		
+		@Override
+		public double codelength(Graph<?> graph)
+		{
+			calls.incrementAndGet();
+			return graph.numLinks();
+		}
+	}
+	
+	private static Graph<String> path(String... labels)
+	{
+		MapUTGraph<String, String> graph = new MapUTGraph<String, String>();
+		
+		UNode<String> last = null;
+		for(String label : labels)
+		{
+			UNode<String> node = graph.add(label);
+			if(last != null)
+				last.connect(node);
+			last = node;
+		}
+		
+		return graph;
+	}
+	
+	@Test
+	public void testUndirected()
+	{
+		Counting counting = new Counting();
+		CachedStructureModel<Graph<?>> model = new CachedStructureModel<Graph<?>>(counting);
+		
+		assertEquals(2.0, model.codelength(path("a", "b", "c")), 0.0);
+		// * Same degree sequence, different order and labels
+		assertEquals(2.0, model.codelength(path("x", "y", "z")), 0.0);
+		assertEquals(1, counting.calls.get());
+		assertEquals(1, model.hits());
+		
+		assertEquals(3.0, model.codelength(path("a", "b", "c", "d")), 0.0);
+		assertEquals(2, counting.calls.get());
+	}
+	
+	@Test
+	public void testDirected()
+	{
+		Counting counting = new Counting();
+		CachedStructureModel<Graph<?>> model = new CachedStructureModel<Graph<?>>(counting);
+		
+		// * a -> b, a -> c and b -> c: (in, out) pairs (0, 2), (1, 1), (2, 0)
+		//   and (0, 0) for d
+		MapDTGraph<String, String> first = new MapDTGraph<String, String>();
+		DNode<String> a = first.add("a"), b = first.add("b"), c = first.add("c");
+		first.add("d");
+		a.connect(b); a.connect(c); b.connect(c);
+		
+		// * a -> b, b -> c, c -> a: the same in and out degrees separately, 
+		//   but not the same pairs
+		MapDTGraph<String, String> second = new MapDTGraph<String, String>();
+		a = second.add("a"); b = second.add("b"); c = second.add("c");
+		second.add("d");
+		a.connect(b); b.connect(c); c.connect(a);
+		
+		// * The first graph, with the nodes in a different order
+		MapDTGraph<String, String> third = new MapDTGraph<String, String>();
+		third.add("d");
+		b = third.add("b"); c = third.add("c"); DNode<String> d = third.add("d");
+		b.connect(c); b.connect(d); c.connect(d);
+		
+		model.codelength(first);
+		model.codelength(second);
+		assertEquals(2, counting.calls.get());
+		
+		model.codelength(third);
+		assertEquals(2, counting.calls.get());
+	}
+	
+	@Test
+	public void testEviction()
+	{
+		Counting counting = new Counting();
+		CachedStructureModel<Graph<?>> model = new CachedStructureModel<Graph<?>>(counting, 2, null);
+		
+		model.codelength(path("a", "b"));
+		model.codelength(path("a", "b", "c"));
+		model.codelength(path("a", "b"));
+		model.codelength(path("a", "b", "c", "d"));
+		
+		assertEquals(2, model.size());
+		assertEquals(3, counting.calls.get());
+		
+		// * the path of three was least recently used, so it was evicted
+		model.codelength(path("a", "b"));
+		assertEquals(3, counting.calls.get());
+		model.codelength(path("a", "b", "c"));
+		assertEquals(4, counting.calls.get());
+	}
+	
+	@Test
+	public void testBatch()
+	{
+		Counting counting = new Counting();
+		CachedStructureModel<Graph<?>> model = new CachedStructureModel<Graph<?>>(counting);
+		
+		List<Graph<?>> graphs = new ArrayList<Graph<?>>();
+		for(int i = 0; i < 100; i++)
+			graphs.add(i % 2 == 0 ? path("a", "b", "c") : path("a", "b", "c", "d", "e"));
+		
+		List<Double> codelengths = model.codelengths(graphs);
+		
+		assertEquals(100, codelengths.size());
+		for(int i = 0; i < 100; i++)
+			assertEquals(i % 2 == 0 ? 2.0 : 4.0, codelengths.get(i), 0.0);
+		
+		assertEquals(2, counting.calls.get());
+		
+		assertEquals(Arrays.asList(2.0), model.codelengths(Arrays.<Graph<?>>asList(path("q", "r", "s"))));
+		assertEquals(2, counting.calls.get());
+	}
+}
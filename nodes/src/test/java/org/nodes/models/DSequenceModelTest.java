@@ -12,14 +12,18 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.junit.Test;
 import org.nodes.DGraph;
+import org.nodes.DNode;
 import org.nodes.Graphs;
 import org.nodes.MapDTGraph;
 import org.nodes.UGraph;
 import org.nodes.data.Data;
+import org.nodes.models.DSequenceEstimator.D;
 import org.nodes.random.RandomGraphs;
 import org.nodes.util.bootstrap.LogBCaCI;
 import org.nodes.util.bootstrap.LogNormalCI;
@@ -184,6 +188,81 @@ public class DSequenceModelTest
 	}
 	
 	
+	@Test
+	public void testSampler()
+	{
+		for(int seed : series(20))
+		{
+			Global.random().setSeed(seed);
+			
+			int n = Global.random().nextInt(25) + 5;
+			double p = Global.random().nextDouble() * 0.9 + 0.1;
+			
+			DGraph<?> graph = RandomGraphs.randomDirected(n, p);
+			
+			List<Integer> in = new ArrayList<Integer>(n), out = new ArrayList<Integer>(n);
+			for(DNode<?> node : graph.nodes())
+			{
+				in.add(node.inDegree());
+				out.add(node.outDegree());
+			}
+			
+			DSequenceSampler sampler = new DSequenceSampler(in, out);
+			DSequenceEstimator<String> model = new DSequenceEstimator<String>(in, out);
+			
+			// * At every step of a sample, the acceptable set should match the 
+			//   original implementation
+			DGraph<String> soFar = new MapDTGraph<String, String>();
+			for(int i : series(n))
+				soFar.add("x");
+			
+			int[] result = new int[n];
+			for(int hub = sampler.hub(); hub >= 0; hub = sampler.hub())
+			{
+				List<D> residual = new ArrayList<D>(n);
+				for(int i : series(n))
+					residual.add(new D(sampler.in(i), sampler.out(i)));
+				
+				int k = sampler.acceptable(hub, result);
+				
+				List<Integer> expected = model.findAcceptableSet(residual, soFar, soFar.get(hub));
+				assertEquals(expected.size(), k);
+				for(int i : series(k))
+					assertEquals((int) expected.get(i), result[i]);
+				
+				int to = result[Global.random().nextInt(k)];
+				sampler.connect(hub, to);
+				soFar.get(hub).connect(soFar.get(to));
+			}
+			
+			assertEquals(graph.numLinks(), soFar.numLinks());
+			
+			// * The sample should be a simple graph with the given degrees
+			for(int i : series(5))
+			{
+				sampler.sample(Global.random());
+				int[] links = sampler.links();
+				
+				int[] inDegrees = new int[n], outDegrees = new int[n];
+				Set<Pair<Integer, Integer>> seen = new HashSet<Pair<Integer, Integer>>();
+				for(int j = 0; j < links.length; j += 2)
+				{
+					assertTrue(links[j] != links[j + 1]);
+					assertTrue(seen.add(new Pair<Integer, Integer>(links[j], links[j + 1])));
+					
+					outDegrees[links[j]]++;
+					inDegrees[links[j + 1]]++;
+				}
+				
+				for(int j : series(n))
+				{
+					assertEquals((int) in.get(j), inDegrees[j]);
+					assertEquals((int) out.get(j), outDegrees[j]);
+				}
+			}
+		}
+	}
+	
 	@Test
 	public void testG()
 	{
@@ -0,0 +1,110 @@
+package org.nodes.models;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+
+public class SwitchChainTest
+{
+	private static int[] degrees(int size, int[] ends)
+	{
+		int[] degrees = new int[size];
+		for(int end : ends)
+			degrees[end]++;
+		
+		return degrees;
+	}
+	
+	@Test
+	public void testDegrees()
+	{
+		// * A ring of 20 nodes, with chords
+		int n = 20;
+		int[] ends = new int[4 * n];
+		for(int i = 0; i < n; i++)
+		{
+			ends[4 * i] = i;
+			ends[4 * i + 1] = (i + 1) % n;
+			ends[4 * i + 2] = i;
+			ends[4 * i + 3] = (i + 3) % n;
+		}
+		
+		SwitchChain chain = new SwitchChain(n, ends);
+		chain.sweeps(50, new SplittableRandom(1));
+		
+		int[] result = chain.ends();
+		assertTrue(Arrays.equals(degrees(n, ends), degrees(n, result)));
+		
+		// * still simple
+		for(int i = 0; i < result.length / 2; i++)
+		{
+			assertTrue(result[2 * i] != result[2 * i + 1]);
+			assertTrue(chain.connected(result[2 * i], result[2 * i + 1]));
+			
+			for(int j = i + 1; j < result.length / 2; j++)
+			{
+				boolean same = 
+						(result[2 * i] == result[2 * j] && result[2 * i + 1] == result[2 * j + 1]) ||
+						(result[2 * i] == result[2 * j + 1] && result[2 * i + 1] == result[2 * j]);
+				assertFalse(same);
+			}
+		}
+		
+		assertEquals(50 * chain.numLinks(), chain.attempts());
+		assertTrue(chain.acceptanceRate() > 0.0);
+		assertTrue(chain.perturbation() > 0.5);
+	}
+	
+	/**
+	 * There are three perfect matchings on four nodes, which the chain should 
+	 * visit equally often.
+	 */
+	@Test
+	public void testUniform()
+	{
+		SwitchChain chain = new SwitchChain(4, new int[]{0, 1, 2, 3});
+		SplittableRandom random = new SplittableRandom(2);
+		
+		Map<Integer, Integer> counts = new HashMap<Integer, Integer>();
+		int samples = 30000;
+		for(int i = 0; i < samples; i++)
+		{
+			chain.run(5, random);
+			
+			// * The partner of node 0 identifies the matching
+			int partner = chain.connected(0, 1) ? 1 : chain.connected(0, 2) ? 2 : 3;
+			counts.put(partner, counts.containsKey(partner) ? counts.get(partner) + 1 : 1);
+		}
+		
+		assertEquals(3, counts.size());
+		for(int count : counts.values())
+			assertEquals(1.0/3.0, count / (double) samples, 0.02);
+	}
+	
+	@Test
+	public void testParallel()
+	{
+		int[] ends = new int[]{0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 0, 0, 3};
+		SwitchChain start = new SwitchChain(6, ends);
+		
+		List<SwitchChain> first = SwitchChain.parallel(start, 8, 1000, 42, null);
+		List<SwitchChain> second = SwitchChain.parallel(start, 8, 1000, 42, null);
+		
+		assertEquals(8, first.size());
+		for(int i = 0; i < 8; i++)
+		{
+			assertTrue(Arrays.equals(first.get(i).ends(), second.get(i).ends()));
+			assertEquals(1000, first.get(i).attempts());
+		}
+		
+		// * The starting chain is untouched
+		assertTrue(Arrays.equals(ends, start.ends()));
+		assertEquals(0.0, start.perturbation(), 0.0);
+	}
+}
@@ -18,6 +18,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
 
 import org.apache.commons.math3.distribution.TDistribution;
 import org.junit.Test;
@@ -31,6 +32,7 @@ import org.nodes.random.RandomGraphs;
 import nl.peterbloem.kit.FrequencyModel;
 import nl.peterbloem.kit.Functions;
 import nl.peterbloem.kit.Generator;
+import nl.peterbloem.kit.Global;
 import nl.peterbloem.kit.LogNum;
 import nl.peterbloem.kit.Pair;
 import nl.peterbloem.kit.Series;
@@ -128,6 +130,174 @@ public class USequenceModelTest
 		assertEquals(1.0, model.logNumGraphsNaive(), 0.0);
 	}
 	
+	@Test
+	public void testSampler()
+	{
+		for(int rep : series(20))
+		{
+			Graph<String> graph = RandomGraphs.random(30, 60);
+			
+			List<Integer> sequence = new ArrayList<Integer>(graph.size());
+			for(Node<String> node : graph.nodes())
+				sequence.add(node.degree());
+			
+			USequenceSampler sampler = new USequenceSampler(sequence);
+			
+			// * On a fresh sampler (before any links are added), the acceptable 
+			//   set should match the original implementation
+			MapUTGraph<String, String> empty = new MapUTGraph<String, String>();
+			for(int i : series(graph.size()))
+				empty.add("x");
+			
+			for(int hub : series(graph.size()))
+			{
+				if(sequence.get(hub) == 0)
+					continue;
+				
+				int[] result = new int[graph.size()];
+				int k = sampler.acceptable(hub, result);
+				
+				List<Integer> expected = USequenceEstimator.findAcceptableSet(sequence, empty, empty.get(hub));
+				assertEquals(expected.size(), k);
+				for(int i : series(k))
+					assertEquals((int) expected.get(i), result[i]);
+			}
+			
+			// * The sample should be a simple graph with the given degrees, and 
+			//   the residual sequence should stay graphical
+			for(int i : series(5))
+			{
+				USequenceSampler.CHECK = true;
+				try {
+					sampler.sample(Global.random());
+				} finally {
+					USequenceSampler.CHECK = false;
+				}
+				int[] links = sampler.links();
+				
+				int[] degrees = new int[graph.size()];
+				Set<Pair<Integer, Integer>> seen = new HashSet<Pair<Integer, Integer>>();
+				for(int j = 0; j < links.length; j += 2)
+				{
+					int a = Math.min(links[j], links[j + 1]), b = Math.max(links[j], links[j + 1]);
+					
+					assertTrue(a != b);
+					assertTrue(seen.add(new Pair<Integer, Integer>(a, b)));
+					
+					degrees[a]++;
+					degrees[b]++;
+				}
+				
+				for(int j : series(graph.size()))
+					assertEquals((int) sequence.get(j), degrees[j]);
+			}
+		}
+	}
+	
+	@Test
+	public void testSamplerSteps()
+	{
+		for(int seed : series(20))
+		{
+			Global.random().setSeed(seed);
+			
+			Graph<String> graph = RandomGraphs.random(30, 60);
+			int n = graph.size();
+			
+			List<Integer> sequence = new ArrayList<Integer>(n);
+			for(Node<String> node : graph.nodes())
+				sequence.add(node.degree());
+			
+			USequenceSampler sampler = new USequenceSampler(sequence);
+			
+			// * At every step of a sample, the acceptable set should match the 
+			//   original implementation on the residual degrees and the graph
+			//   so far
+			MapUTGraph<String, String> soFar = new MapUTGraph<String, String>();
+			for(int i : series(n))
+				soFar.add("x");
+			
+			int[] result = new int[n];
+			for(int hub = sampler.hub(); hub >= 0; hub = sampler.hub())
+			{
+				List<Integer> residuals = new ArrayList<Integer>(n);
+				for(int i : series(n))
+					residuals.add(sampler.residual(i));
+				
+				int k = sampler.acceptable(hub, result);
+				
+				List<Integer> expected = USequenceEstimator.findAcceptableSet(residuals, soFar, soFar.get(hub));
+				assertEquals(expected.size(), k);
+				for(int i : series(k))
+					assertEquals((int) expected.get(i), result[i]);
+				
+				int to = result[Global.random().nextInt(k)];
+				sampler.connect(hub, to);
+				soFar.get(hub).connect(soFar.get(to));
+			}
+			
+			assertEquals(graph.numLinks(), soFar.numLinks());
+		}
+	}
+	
+	@Test
+	public void testBudget()
+	{
+		List<Integer> sequence = asList(3, 3, 3, 3, 3, 3, 3, 3, 3, 3);
+		
+		// * The same seed should give the same samples, whatever the number of
+		//   threads
+		List<Double> reference = null;
+		for(int threads : asList(1, 2, 5))
+		{
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			
+			USequenceEstimator<String> model = new USequenceEstimator<String>(sequence);
+			model.nonuniform(SampleBudget.samples(200), 42L, pool);
+			pool.shutdown();
+			
+			assertEquals(200, model.logSamples().size());
+			if(reference == null)
+				reference = model.logSamples();
+			else
+				assertEquals(reference, model.logSamples());
+		}
+		
+		// * Stopping by relative error
+		USequenceEstimator<String> model = new USequenceEstimator<String>(sequence);
+		model.nonuniform(SampleBudget.relativeError(0.05, 100000), 42L, null);
+		
+		int n = model.logSamples().size();
+		assertTrue(n >= 100 && n < 100000);
+		assertTrue(exp2(model.logStdError() - model.logNumGraphsNaive()) < 0.06);
+	}
+	
+	@Test
+	public void testHalfWidthMinimum()
+	{
+		List<Integer> sequence = asList(3, 3, 3, 3, 3, 3, 3, 3, 3, 3);
+		
+		// * A target half-width this wide is met by any interval, so sampling 
+		//   stops as soon as the interval is first checked
+		USequenceEstimator<String> model = new USequenceEstimator<String>(sequence);
+		model.nonuniform(SampleBudget.samples(10000).halfWidth(1000.0, 0.05), 42L, null);
+		
+		int n = model.logSamples().size();
+		assertTrue(n >= SampleBudget.MIN_SAMPLES && n < 10000);
+		
+		model = new USequenceEstimator<String>(sequence);
+		model.nonuniform(SampleBudget.samples(10000).halfWidth(1000.0, 0.05, 500), 42L, null);
+		
+		n = model.logSamples().size();
+		assertTrue(n >= 500 && n < 10000);
+		
+		// * A low minimum still waits for a few batches
+		model = new USequenceEstimator<String>(sequence);
+		model.nonuniform(SampleBudget.samples(10000).halfWidth(1000.0, 0.05, 2), 42L, null);
+		
+		assertEquals(ParallelSampler.MIN_BATCHES * ParallelSampler.BATCH_SIZE, model.logSamples().size());
+	}
+	
 	@Test
 	public void testGenerateSpeed()
 	{
@@ -486,5 +656,16 @@ public class USequenceModelTest
 			assertEquals(degrees, Graphs.degrees(token));
 		}
 	}
+	
+	@Test
+	public void testUniformSweeps()
+	{
+		List<Integer> degrees = Arrays.asList(3,2,2,2,1);
+		USequenceEstimator<String> model = new USequenceEstimator<String>(degrees, 100);
+		
+		Generator<UGraph<String>> gen = model.uniformSweeps(10);
+		
+		for(int i : series(100))
+			assertEquals(degrees, Graphs.degrees(gen.generate()));
+	}
 }
-
@@ -0,0 +1,156 @@
+package org.nodes.motifs;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+import org.nodes.DGraph;
+import org.nodes.DTGraph;
+import org.nodes.MapDTGraph;
+
+public class DTMotifExtractorTest
+{
+	private static final String[] LABELS = {"a", "b"};
+	private static final String[] TAGS = {"x", "y"};
+	
+	/**
+	 * A random graph with planted triangles, which have many automorphisms.
+	 */
+	private static DTGraph<String, String> graph(long seed)
+	{
+		Random random = new Random(seed);
+		DTGraph<String, String> graph = new MapDTGraph<String, String>();
+		
+		int n = 300;
+		for(int i = 0; i < n; i++)
+			graph.add(LABELS[random.nextInt(LABELS.length)]);
+		
+		for(int i = 0; i + 2 < n; i += 6)
+		{
+			graph.get(i).connect(graph.get(i + 1), "x");
+			graph.get(i + 1).connect(graph.get(i + 2), "x");
+			graph.get(i + 2).connect(graph.get(i), "x");
+		}
+		
+		for(int i = 0; i < 400; i++)
+		{
+			int from = random.nextInt(n), to = random.nextInt(n);
+			if(from != to)
+				graph.get(from).connect(graph.get(to), TAGS[random.nextInt(TAGS.length)]);
+		}
+		
+		return graph;
+	}
+	
+	private static MotifVarTags run(DTGraph<String, String> graph, int threads)
+	{
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			DTMotifExtractor extractor = 
+					new DTMotifExtractor(graph, 5000, 3, 4, 42L, executor);
+			extractor.run();
+			
+			return extractor.result();
+		} finally
+		{
+			executor.shutdown();
+		}
+	}
+	
+	@Test
+	public void testThreads()
+	{
+		DTGraph<String, String> graph = graph(0);
+		
+		MotifVarTags one = run(graph, 1);
+		MotifVarTags four = run(graph, 4);
+		
+		assertEquals(one.motifGraph(), four.motifGraph());
+		assertEquals(one.size(), four.size(), 0.0);
+	}
+	
+	/**
+	 * Compares the mask search to an exhaustive search with MotifVarTags, on 
+	 * a graph with parallel links, both in the motif and in the silhouette.
+	 */
+	@Test
+	public void testSearch()
+	{
+		Random random = new Random(1);
+		DTGraph<String, String> graph = new MapDTGraph<String, String>();
+		
+		int n = 200, numOccurrences = 40;
+		for(int i = 0; i < n; i++)
+			graph.add(LABELS[random.nextInt(LABELS.length)]);
+		
+		List<List<Integer>> occurrences = new ArrayList<List<Integer>>();
+		for(int o = 0; o < numOccurrences; o++)
+		{
+			List<Integer> occurrence = new ArrayList<Integer>();
+			for(int i = 0; i < 3; i++)
+				occurrence.add(3 * o + i);
+			occurrences.add(occurrence);
+			
+			graph.get(3 * o).connect(graph.get(3 * o + 1), TAGS[random.nextInt(TAGS.length)]);
+			graph.get(3 * o).connect(graph.get(3 * o + 1), "x");
+			graph.get(3 * o + 1).connect(graph.get(3 * o + 2), TAGS[random.nextInt(TAGS.length)]);
+		}
+		
+		// * Noise, often doubled, but never inside an occurrence
+		for(int i = 0; i < 300; i++)
+		{
+			int from = random.nextInt(n), to = random.nextInt(n);
+			if(from / 3 == to / 3 && from < 3 * numOccurrences)
+				continue;
+			
+			String tag = TAGS[random.nextInt(TAGS.length)];
+			graph.get(from).connect(graph.get(to), tag);
+			if(random.nextBoolean())
+				graph.get(from).connect(graph.get(to), tag);
+		}
+		
+		// * A large bundle of parallel links, which makes the silhouette 
+		//   structure cheaper than the prefix code for its size
+		for(int i = 0; i < 1000; i++)
+			graph.get(n - 1).connect(graph.get(n - 2), "x");
+		
+		DTGraph<String, String> sub = new MapDTGraph<String, String>();
+		for(int i = 0; i < 3; i++)
+			sub.add("");
+		sub.get(0).connect(sub.get(1));
+		sub.get(0).connect(sub.get(1));
+		sub.get(1).connect(sub.get(2));
+		
+		DTMotifExtractor extractor = new DTMotifExtractor(graph, 0, 3, 4, 0L, null);
+		DTMotifExtractor.MaskResult result = extractor.search(sub, occurrences, 
+				new IncrementalMotifVarTags.Statistics(graph), new SplittableRandom(0));
+		
+		List<List<String>> sequences = new ArrayList<List<String>>();
+		for(List<Integer> occurrence : occurrences)
+			sequences.add(DTMotifExtractor.labels(graph, occurrence));
+		
+		int nMask = sub.size() + (int) sub.numLinks();
+		double best = Double.POSITIVE_INFINITY;
+		for(int mask = 0; mask < 1 << nMask; mask++)
+		{
+			boolean[] masked = new boolean[nMask];
+			for(int i = 0; i < nMask; i++)
+				masked[i] = ((mask >>> i) & 1) == 1;
+			
+			List<List<Integer>> occOut = new ArrayList<List<Integer>>();
+			DTGraph<String, String> motif = DTMotifExtractor.mask((DGraph<String>) sub, masked, 
+					sequences, occurrences, occOut, new ArrayList<List<String>>());
+			
+			best = Math.min(best, new MotifVarTags(graph, motif, occOut, true).size());
+		}
+		
+		assertEquals(best, result.bits, 1e-6);
+		assertEquals(best, new MotifVarTags(graph, result.motif, result.occurrences, true).size(), 1e-6);
+	}
+}
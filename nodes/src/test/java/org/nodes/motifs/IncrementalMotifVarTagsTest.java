@@ -0,0 +1,186 @@
+package org.nodes.motifs;
+
+import static org.junit.Assert.*;
+import static org.nodes.motifs.MotifVarTags.VARIABLE_SYMBOL;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+import org.nodes.DTGraph;
+import org.nodes.MapDTGraph;
+
+public class IncrementalMotifVarTagsTest
+{
+	private static final double EPSILON = 1e-6;
+
+	private static final String[] LABELS = {"a", "b", "c"};
+	private static final String[] TAGS = {"x", "y", "z"};
+
+	private DTGraph<String, String> graph = new MapDTGraph<String, String>();
+	private DTGraph<String, String> motif = new MapDTGraph<String, String>();
+	private List<List<Integer>> occurrences = new ArrayList<List<Integer>>();
+
+	/**
+	 * Plants occurrences of a motif with two variable nodes and a variable
+	 * link in a random graph. There are more than 128 occurrences, so that
+	 * occurrence indices are not all cached Integers.
+	 */
+	private void setup(long seed)
+	{
+		Random random = new Random(seed);
+
+		motif.add(VARIABLE_SYMBOL);
+		motif.add("a");
+		motif.add(VARIABLE_SYMBOL);
+		motif.get(0).connect(motif.get(1), VARIABLE_SYMBOL);
+		motif.get(1).connect(motif.get(2), "x");
+
+		int n = 600;
+
+		List<Integer> nodes = new ArrayList<Integer>();
+		for(int i = 0; i < n; i++)
+			nodes.add(i);
+		Collections.shuffle(nodes, random);
+
+		for(int o = 0; o < 150; o++)
+			occurrences.add(new ArrayList<Integer>(nodes.subList(3 * o, 3 * o + 3)));
+
+		String[] labels = new String[n];
+		for(int i = 0; i < n; i++)
+			labels[i] = LABELS[random.nextInt(LABELS.length)];
+
+		// * the variable link of an occurrence should be its only link
+		//   between its first two nodes
+		Set<List<Integer>> forbidden = new HashSet<List<Integer>>();
+		for(List<Integer> occurrence : occurrences)
+		{
+			labels[occurrence.get(1)] = "a";
+			forbidden.add(occurrence.subList(0, 2));
+		}
+
+		for(String label : labels)
+			graph.add(label);
+
+		for(List<Integer> occurrence : occurrences)
+		{
+			graph.get(occurrence.get(0)).connect(graph.get(occurrence.get(1)), TAGS[random.nextInt(TAGS.length)]);
+			graph.get(occurrence.get(1)).connect(graph.get(occurrence.get(2)), "x");
+		}
+
+		for(int i = 0; i < 1500; i++)
+		{
+			int from = random.nextInt(n), to = random.nextInt(n);
+			if(! forbidden.contains(Arrays.asList(from, to)))
+				graph.get(from).connect(graph.get(to), TAGS[random.nextInt(TAGS.length)]);
+		}
+	}
+
+	private static void assertSame(MotifVarTags expected, IncrementalMotifVarTags actual)
+	{
+		assertEquals(expected.labelSets(), actual.labelSets(), EPSILON);
+		assertEquals(expected.motif(), actual.motif(), EPSILON);
+		assertEquals(expected.silhouetteStructure(), actual.silhouetteStructure(), EPSILON);
+		assertEquals(expected.silhouetteLabels(), actual.silhouetteLabels(), EPSILON);
+		assertEquals(expected.labelSubstitutions(), actual.labelSubstitutions(), EPSILON);
+		assertEquals(expected.tagSubstitutions(), actual.tagSubstitutions(), EPSILON);
+		assertEquals(expected.wiring(), actual.wiring(), EPSILON);
+		assertEquals(expected.size(), actual.size(), EPSILON);
+	}
+
+	@Test
+	public void testAdd()
+	{
+		setup(0);
+
+		for(boolean specify : Arrays.asList(true, false))
+		{
+			IncrementalMotifVarTags scorer = new IncrementalMotifVarTags(graph, motif, specify);
+			assertSame(new MotifVarTags(graph, motif, Collections.<List<Integer>>emptyList(), specify), scorer);
+
+			for(List<Integer> occurrence : occurrences)
+				scorer.add(occurrence);
+
+			assertEquals(occurrences.size(), scorer.count());
+			assertSame(new MotifVarTags(graph, motif, occurrences, specify), scorer);
+		}
+	}
+
+	@Test
+	public void testSharedStatistics()
+	{
+		setup(1);
+
+		IncrementalMotifVarTags.Statistics statistics = new IncrementalMotifVarTags.Statistics(graph);
+
+		// * The first scorer fills the cache of the statistics, the second
+		//   reads a subset of the occurrences from it
+		IncrementalMotifVarTags all = new IncrementalMotifVarTags(statistics, motif, true);
+		for(List<Integer> occurrence : occurrences)
+			all.add(occurrence);
+
+		IncrementalMotifVarTags some = new IncrementalMotifVarTags(statistics, motif, true);
+		List<List<Integer>> subset = new ArrayList<List<Integer>>();
+		for(int i = 0; i < occurrences.size(); i++)
+			if(i % 3 != 0)
+			{
+				some.add(occurrences.get(i));
+				subset.add(occurrences.get(i));
+			}
+
+		assertSame(new MotifVarTags(graph, motif, occurrences, true), all);
+		assertSame(new MotifVarTags(graph, motif, subset, true), some);
+	}
+
+	@Test
+	public void testRemove()
+	{
+		setup(1);
+
+		IncrementalMotifVarTags.Statistics statistics = new IncrementalMotifVarTags.Statistics(graph);
+		IncrementalMotifVarTags scorer = new IncrementalMotifVarTags(statistics, motif, true);
+
+		for(List<Integer> occurrence : occurrences)
+			scorer.add(occurrence);
+
+		List<List<Integer>> remaining = new ArrayList<List<Integer>>();
+		for(int i = 0; i < occurrences.size(); i++)
+			if(i % 3 == 0)
+				scorer.remove(occurrences.get(i));
+			else
+				remaining.add(occurrences.get(i));
+
+		assertSame(new MotifVarTags(graph, motif, remaining, true), scorer);
+
+		// * a fresh scorer with the same occurrences has the same code length
+		IncrementalMotifVarTags fresh = new IncrementalMotifVarTags(statistics, motif, true);
+		for(List<Integer> occurrence : remaining)
+			fresh.add(occurrence);
+
+		assertEquals(fresh.size(), scorer.size(), EPSILON);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRemoveUnknown()
+	{
+		setup(2);
+
+		IncrementalMotifVarTags scorer = new IncrementalMotifVarTags(graph, motif, true);
+		scorer.add(occurrences.get(0));
+		scorer.remove(occurrences.get(1));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testWrongSize()
+	{
+		setup(2);
+
+		IncrementalMotifVarTags scorer = new IncrementalMotifVarTags(graph, motif, true);
+		scorer.add(Arrays.asList(0, 1));
+	}
+}
@@ -0,0 +1,128 @@
+package org.nodes.motifs;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class OccurrenceStoreTest
+{
+	@Test
+	public void testOverlap()
+	{
+		OccurrenceStore<String> store = new OccurrenceStore<String>(100, Long.MAX_VALUE, null);
+
+		assertTrue(store.add("a", asList(1, 2, 3), 1.0));
+		assertFalse(store.add("a", asList(3, 4, 5), 1.0));
+		assertTrue(store.add("a", asList(4, 5, 6), 2.0));
+		// * other motifs may use the same nodes
+		assertTrue(store.add("b", asList(1, 2, 3), 0.5));
+
+		assertEquals(3.0, store.frequency("a"), 0.0);
+		assertEquals(0.5, store.frequency("b"), 0.0);
+		assertEquals(0.0, store.frequency("c"), 0.0);
+		assertEquals(2, store.count("a"));
+
+		assertEquals(asList(asList(1, 2, 3), asList(4, 5, 6)), store.occurrences("a"));
+		assertEquals(asList("a", "b"), store.sorted());
+
+		store.close();
+	}
+
+	@Test
+	public void testSpill()
+	{
+		Random random = new Random(0);
+
+		OccurrenceStore<Integer> store = new OccurrenceStore<Integer>(1000, 0, null);
+		OccurrenceStore<Integer> reference = new OccurrenceStore<Integer>(1000, Long.MAX_VALUE, null);
+
+		for(int i = 0; i < 2000; i++)
+		{
+			int motif = random.nextInt(10);
+			List<Integer> occurrence = asList(random.nextInt(1000), random.nextInt(1000), random.nextInt(1000));
+			if(occurrence.get(0).equals(occurrence.get(1)) || occurrence.get(1).equals(occurrence.get(2)) || occurrence.get(0).equals(occurrence.get(2)))
+				continue;
+
+			assertEquals(reference.add(motif, occurrence, 1.0), store.add(motif, occurrence, 1.0));
+		}
+
+		assertTrue(store.spills() > 0);
+		assertTrue(store.loads() > 0);
+
+		assertEquals(reference.sorted(), store.sorted());
+		for(int motif : reference.sorted())
+		{
+			assertEquals(reference.frequency(motif), store.frequency(motif), 0.0);
+			assertEquals(
+					new ArrayList<List<Integer>>(reference.occurrences(motif)),
+					new ArrayList<List<Integer>>(store.occurrences(motif)));
+		}
+
+		store.close();
+		reference.close();
+	}
+
+	@Test
+	public void testRetainTop()
+	{
+		OccurrenceStore<String> store = new OccurrenceStore<String>(100, Long.MAX_VALUE, null);
+
+		store.add("a", asList(1, 2), 1.0);
+		store.add("b", asList(1, 2), 3.0);
+		store.add("c", asList(1, 2), 2.0);
+
+		store.retainTop(2);
+
+		assertEquals(asList("b", "c"), store.sorted());
+		assertEquals(2, store.size());
+		assertEquals(0, store.count("a"));
+		// * the frequency of a dropped motif is kept
+		assertEquals(1.0, store.frequency("a"), 0.0);
+
+		// * a dropped motif collects new occurrences, and continues from its
+		//   frequency
+		assertTrue(store.add("a", asList(1, 2), 2.5));
+		assertEquals(1, store.count("a"));
+		assertEquals(3.5, store.frequency("a"), 0.0);
+		assertEquals(asList("a", "b", "c"), store.sorted());
+
+		store.close();
+	}
+
+	@Test
+	public void testDroppedBudget()
+	{
+		long budget = 2 * OccurrenceStore.DROPPED_MEMORY;
+		OccurrenceStore<String> store = new OccurrenceStore<String>(100, budget, null);
+
+		store.add("a", asList(1, 2), 1.0);
+		store.add("b", asList(1, 2), 2.0);
+		store.add("c", asList(1, 2), 3.0);
+		store.add("d", asList(1, 2), 4.0);
+		store.add("e", asList(1, 2), 5.0);
+
+		store.retainTop(1);
+
+		// * the dropped frequencies count towards the budget, and the lowest
+		//   are forgotten to stay within it
+		assertTrue(store.memory() <= budget);
+		assertEquals(0.0, store.frequency("a"), 0.0);
+		assertEquals(0.0, store.frequency("b"), 0.0);
+		assertEquals(3.0, store.frequency("c"), 0.0);
+		assertEquals(4.0, store.frequency("d"), 0.0);
+		assertEquals(5.0, store.frequency("e"), 0.0);
+
+		// * a motif that was sampled again no longer counts as dropped
+		assertTrue(store.add("c", asList(1, 2), 1.0));
+		assertEquals(4.0, store.frequency("c"), 0.0);
+		assertTrue(store.memory() <= budget);
+
+		store.close();
+		assertEquals(0, store.memory());
+	}
+}
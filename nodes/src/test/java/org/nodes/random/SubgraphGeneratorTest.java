@@ -3,6 +3,10 @@ package org.nodes.random;
 import static nl.peterbloem.kit.Series.series;
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
 import org.junit.Test;
 import org.nodes.Graph;
 import org.nodes.Graphs;
@@ -33,5 +37,26 @@ public class SubgraphGeneratorTest
 //			assertEquals(subTarget, sub);
 //		}
 	}
+	
+	@Test
+	public void testSeeded()
+	{
+		Graph<String> graph = Graphs.jbc();
+		SubgraphGenerator<String> base = new SubgraphGenerator<String>(graph, 4);
+		
+		List<List<Integer>> first = new ArrayList<List<Integer>>();
+		SubgraphGenerator<String> gen = new SubgraphGenerator<String>(base, null, new Random(42));
+		for(int i : series(100))
+			first.add(gen.generate().indices());
+		
+		List<List<Integer>> second = new ArrayList<List<Integer>>();
+		gen = new SubgraphGenerator<String>(base, null, new Random(42));
+		for(int i : series(100))
+			second.add(gen.generate().indices());
+		
+		assertEquals(first, second);
+		for(List<Integer> indices : first)
+			assertEquals(4, indices.size());
+	}
 
 }
@@ -0,0 +1,104 @@
+package org.nodes.util;
+
+import static nl.peterbloem.kit.Series.series;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class LogFactorialsTest
+{
+	private static double naive(long n)
+	{
+		double sum = 0.0;
+		for(long i = 2; i <= n; i++)
+			sum += Math.log(i) / Math.log(2.0);
+		
+		return sum;
+	}
+
+	@Test
+	public void testFactorial()
+	{
+		assertEquals(0.0, LogFactorials.log2Factorial(0), 0.0);
+		assertEquals(0.0, LogFactorials.log2Factorial(1), 0.0);
+		assertEquals(Math.log(120.0)/Math.log(2.0), LogFactorials.log2Factorial(5), 1e-12);
+		
+		for(long n : Arrays.asList(10L, 1023L, 1024L, 5000L, 100000L))
+			assertEquals(naive(n), LogFactorials.log2Factorial(n), 1e-9 * naive(n));
+	}
+	
+	@Test
+	public void testStirling()
+	{
+		int cap = LogFactorials.cap();
+		try {
+			LogFactorials.setCap(100);
+			
+			for(long n : Arrays.asList(101L, 150L, 3000L, 200000L))
+				assertEquals(naive(n), LogFactorials.log2Factorial(n), 1e-9 * naive(n));
+			
+			// * Choose beyond the cap, with the Stirling difference
+			for(long k : Arrays.asList(0L, 1L, 7L, 80L, 500L, 2500L))
+			{
+				long n = 5000;
+				double expected = naive(n) - naive(k) - naive(n - k);
+				assertEquals(expected, LogFactorials.log2Choose(k, n), 1e-8 * Math.max(1.0, expected));
+			}
+		} finally
+		{
+			LogFactorials.setCap(cap);
+		}
+	}
+	
+	@Test
+	public void testChoose()
+	{
+		assertEquals(Math.log(10.0)/Math.log(2.0), LogFactorials.log2Choose(2, 5), 1e-12);
+		assertEquals(0.0, LogFactorials.log2Choose(0, 5), 1e-12);
+		assertEquals(0.0, LogFactorials.log2Choose(5, 5), 1e-12);
+		
+		// * Very large totals, as in the binomial compressor
+		long t = 1000000L * 999999L / 2;
+		double bits = LogFactorials.log2Choose(1, t);
+		assertEquals(Math.log(t)/Math.log(2.0), bits, 1e-6);
+	}
+	
+	@Test
+	public void testChooseTooMany()
+	{
+		// * More links than slots, as in a multigraph
+		assertEquals(Double.POSITIVE_INFINITY, LogFactorials.log2Choose(6, 5), 0.0);
+		assertEquals(Double.POSITIVE_INFINITY, LogFactorials.log2Choose(1, 0), 0.0);
+		
+		int cap = LogFactorials.cap();
+		try {
+			LogFactorials.setCap(100);
+			assertEquals(Double.POSITIVE_INFINITY, LogFactorials.log2Choose(5001, 5000), 0.0);
+		} finally
+		{
+			LogFactorials.setCap(cap);
+		}
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testChooseNegative()
+	{
+		LogFactorials.log2Choose(-1, 5);
+	}
+	
+	@Test
+	public void testSum()
+	{
+		int[] values = new int[1000];
+		double expected = 0.0;
+		for(int i : series(values.length))
+		{
+			values[i] = (i * 31) % 2000;
+			expected += naive(values[i]);
+		}
+		
+		assertEquals(expected, LogFactorials.sum(values), 1e-9 * expected);
+	}
+}
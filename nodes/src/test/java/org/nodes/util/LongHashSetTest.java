@@ -0,0 +1,70 @@
+package org.nodes.util;
+
+import static nl.peterbloem.kit.Series.series;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class LongHashSetTest
+{
+	@Test
+	public void testRandom()
+	{
+		Random random = new Random(0);
+		
+		LongHashSet set = new LongHashSet();
+		Set<Long> reference = new HashSet<Long>();
+		
+		// * A small range of keys, so that there are many collisions and 
+		//   removals
+		for(int i : series(200000))
+		{
+			long key = random.nextInt(500) * 0x100000001L - 250;
+			
+			switch(random.nextInt(3))
+			{
+				case 0: 
+					assertEquals(reference.add(key), set.add(key));
+					break;
+				case 1:
+					assertEquals(reference.remove(key), set.remove(key));
+					break;
+				default:
+					assertEquals(reference.contains(key), set.contains(key));
+			}
+			
+			assertEquals(reference.size(), set.size());
+		}
+		
+		long[] keys = set.toArray();
+		Arrays.sort(keys);
+		
+		long[] expected = new long[reference.size()];
+		int i = 0;
+		for(long key : reference)
+			expected[i++] = key;
+		Arrays.sort(expected);
+		
+		assertTrue(Arrays.equals(expected, keys));
+	}
+	
+	@Test
+	public void testCopy()
+	{
+		LongHashSet set = new LongHashSet(3);
+		for(long key : series(100))
+			set.add(key);
+		
+		LongHashSet copy = new LongHashSet(set);
+		copy.remove(5);
+		
+		assertTrue(set.contains(5));
+		assertFalse(copy.contains(5));
+		assertEquals(99, copy.size());
+	}
+}
@@ -0,0 +1,152 @@
+package org.nodes.util.bootstrap;
+
+import static nl.peterbloem.kit.Functions.log2;
+import static nl.peterbloem.kit.Functions.log2Sum;
+import static nl.peterbloem.kit.Series.series;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+
+import nl.peterbloem.kit.Global;
+
+public class BootstrapsTest
+{
+	@Test
+	public void testSelect()
+	{
+		for(int n : Arrays.asList(1, 2, 3, 10, 101, 1000))
+			for(int rep : series(10))
+			{
+				double[] values = new double[n];
+				for(int i : series(n))
+					values[i] = rep % 2 == 0 ? Global.random().nextGaussian() : Global.random().nextInt(5);
+
+				double[] sorted = values.clone();
+				Arrays.sort(sorted);
+
+				int k = Global.random().nextInt(n);
+				assertEquals(sorted[k], Bootstraps.select(values, k), 0.0);
+
+				for(int i : series(k))
+					assertTrue(values[i] <= values[k]);
+				for(int i : series(k + 1, n))
+					assertTrue(values[i] >= values[k]);
+			}
+	}
+
+	@Test
+	public void testPercentile()
+	{
+		double[] values = new double[1000];
+		for(int i : series(values.length))
+			values[i] = Global.random().nextGaussian();
+
+		double[] sorted = values.clone();
+		Arrays.sort(sorted);
+
+		for(double p : Arrays.asList(0.0, 0.025, 0.0504, 0.5, 0.975, 0.9999))
+		{
+			int iBelow = (int)(p * sorted.length);
+			double rem = p * sorted.length - iBelow;
+			double expected = iBelow == sorted.length - 1 ? sorted[iBelow] :
+				sorted[iBelow] * (1.0 - rem) + sorted[iBelow + 1] * rem;
+
+			assertEquals(expected, Bootstraps.percentile(values, p), 1e-12);
+		}
+	}
+
+	@Test
+	public void testAcceleration()
+	{
+		int n = 200;
+		double[] data = new double[n];
+		for(int i : series(n))
+			data[i] = Math.exp(Global.random().nextGaussian());
+
+		// * The jackknife the long way round
+		double sum = 0.0;
+		for(double datum : data)
+			sum += datum;
+
+		double[] folds = new double[n];
+		double foldsMean = 0.0;
+		for(int i : series(n))
+		{
+			folds[i] = (sum - data[i]) / (n - 1);
+			foldsMean += folds[i] / n;
+		}
+
+		double num = 0.0, den = 0.0;
+		for(double fold : folds)
+		{
+			num += Math.pow(foldsMean - fold, 3);
+			den += Math.pow(foldsMean - fold, 2);
+		}
+		double expected = num / (6.0 * Math.pow(den, 1.5));
+
+		assertEquals(expected, Bootstraps.acceleration(data), 1e-9);
+
+		// * The acceleration of log data is that of the original data
+		double[] logData = new double[n];
+		for(int i : series(n))
+			logData[i] = log2(data[i]) + 5000.0;
+
+		assertEquals(expected, Bootstraps.logAcceleration(logData), 1e-9);
+	}
+
+	@Test
+	public void testLogMeans()
+	{
+		double[] logData = new double[100];
+		for(int i : series(logData.length))
+			logData[i] = 10000.0 + 20.0 * Global.random().nextGaussian();
+
+		double logSum = Double.NEGATIVE_INFINITY;
+		for(double value : logData)
+			logSum = log2Sum(logSum, value);
+
+		assertEquals(logSum - log2(logData.length), Bootstraps.logMean(logData), 1e-9);
+
+		// * Every bootstrap mean is between the smallest and largest value
+		double[] means = Bootstraps.logMeans(logData, 1000, 42);
+		double[] sorted = logData.clone();
+		Arrays.sort(sorted);
+		for(double mean : means)
+		{
+			assertTrue(mean >= sorted[0] - 1e-9);
+			assertTrue(mean <= sorted[sorted.length - 1] + 1e-9);
+		}
+	}
+
+	@Test
+	public void testSeed()
+	{
+		double[] data = new double[50];
+		for(int i : series(data.length))
+			data[i] = Global.random().nextDouble();
+
+		double[] first = Bootstraps.means(data, 5000, 7);
+		double[] second = Bootstraps.means(data, 5000, 7);
+
+		assertArrayEquals(first, second, 0.0);
+	}
+
+	@Test
+	public void testChiSquared()
+	{
+		SplittableRandom random = new SplittableRandom(3);
+		for(int k : Arrays.asList(1, 2, 10, 1000))
+		{
+			int samples = 100000;
+			double mean = 0.0;
+			for(int i : series(samples))
+				mean += Bootstraps.chiSquared(random, k);
+			mean /= samples;
+
+			assertEquals(k, mean, 0.05 * k);
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package org.nodes.util.bootstrap;
+
+import static nl.peterbloem.kit.Series.series;
+import static org.junit.Assert.*;
+import static org.nodes.util.bootstrap.LogNormalCI.LN2;
+import static org.nodes.util.bootstrap.LogNormalCI.LOGE;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import nl.peterbloem.kit.Global;
+
+public class OnlineLogNormalTest
+{
+	@Test
+	public void testMoments()
+	{
+		// * Log values of a large magnitude, as we get from the SIS estimators 
+		List<Double> values = new ArrayList<Double>();
+		for(int i : series(1000))
+			values.add(1.0e6 + 3.0 * Global.random().nextGaussian());
+		
+		OnlineLogNormal online = new OnlineLogNormal();
+		for(double value : values)
+			online.add(value);
+		
+		double mean = 0.0;
+		for(double value : values)
+			mean += value * LN2;
+		mean /= values.size();
+		
+		double variance = 0.0;
+		for(double value : values)
+			variance += (value * LN2 - mean) * (value * LN2 - mean);
+		variance /= values.size() - 1.0;
+		
+		assertEquals(1000, online.size());
+		assertEquals(mean, online.lnMean(), 1.0e-6);
+		assertEquals(variance, online.lnVariance(), 1.0e-6);
+		assertEquals((mean + 0.5 * variance) * LOGE, online.logMean(), 1.0e-6);
+		
+		// * Merging two halves gives the same result
+		OnlineLogNormal first = new OnlineLogNormal(), second = new OnlineLogNormal();
+		for(int i : series(values.size()))
+			(i < 300 ? first : second).add(values.get(i));
+		first.add(second);
+		
+		assertEquals(online.size(), first.size());
+		assertEquals(online.lnMean(), first.lnMean(), 1.0e-6);
+		assertEquals(online.lnVariance(), first.lnVariance(), 1.0e-6);
+	}
+	
+	@Test
+	public void testHalfWidth()
+	{
+		OnlineLogNormal online = new OnlineLogNormal();
+		assertTrue(Double.isInfinite(online.halfWidth(0.05)));
+		
+		double last = Double.POSITIVE_INFINITY;
+		for(int i : series(1, 11))
+		{
+			for(int j : series(1000))
+				online.add(50.0 + Global.random().nextGaussian());
+			
+			double width = online.halfWidth(0.05);
+			assertTrue(width > 0.0);
+			assertTrue(width < last * 1.1);
+			assertTrue(online.lowerBound(0.05) < online.logMean());
+			assertTrue(online.upperBound(0.05) > online.logMean());
+			
+			last = width;
+		}
+		
+		// * A smaller alpha gives a wider interval
+		assertTrue(online.halfWidth(0.01) > online.halfWidth(0.05));
+	}
+}
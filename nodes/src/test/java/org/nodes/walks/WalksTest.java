@@ -0,0 +1,93 @@
+package org.nodes.walks;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+import org.nodes.Graph;
+import org.nodes.LightUGraph;
+import org.nodes.MapUTGraph;
+import org.nodes.Node;
+import org.nodes.UGraph;
+
+public class WalksTest
+{
+	/**
+	 * A cycle a-b-c-d-a, with a tail d-e and a separate node f
+	 */
+	private static <G extends UGraph<String>> G example(G graph)
+	{
+		for(String label : Arrays.asList("a", "b", "c", "d", "e", "f"))
+			graph.add(label);
+		
+		graph.get(0).connect(graph.get(1));
+		graph.get(1).connect(graph.get(2));
+		graph.get(2).connect(graph.get(3));
+		graph.get(3).connect(graph.get(0));
+		graph.get(3).connect(graph.get(4));
+		
+		return graph;
+	}
+	
+	private static List<String> labels(Iterable<Node<String>> walk)
+	{
+		List<String> labels = new ArrayList<String>();
+		for(Node<String> node : walk)
+			labels.add(node.label());
+		
+		return labels;
+	}
+
+	@Test
+	public void testBreadthFirst()
+	{
+		for(Graph<String> graph : Arrays.<Graph<String>>asList(
+				example(new LightUGraph<String>()), 
+				example(new MapUTGraph<String, String>())))
+		{
+			List<String> labels = labels(Walks.breadthFirst(graph, graph.get(0)));
+			
+			assertEquals(5, labels.size());
+			assertEquals(new HashSet<String>(Arrays.asList("a", "b", "c", "d", "e")), new HashSet<String>(labels));
+			
+			assertEquals("a", labels.get(0));
+			// * b and d are at distance one, e and c at distance 2
+			assertEquals(new HashSet<String>(Arrays.asList("b", "d")), new HashSet<String>(labels.subList(1, 3)));
+		}
+	}
+	
+	@Test
+	public void testDepthFirst()
+	{
+		for(Graph<String> graph : Arrays.<Graph<String>>asList(
+				example(new LightUGraph<String>()), 
+				example(new MapUTGraph<String, String>())))
+		{
+			List<String> labels = labels(Walks.depthFirst(graph, graph.get(4)));
+			
+			assertEquals(5, labels.size());
+			assertEquals(new HashSet<String>(Arrays.asList("a", "b", "c", "d", "e")), new HashSet<String>(labels));
+			
+			assertEquals(Arrays.asList("e", "d"), labels.subList(0, 2));
+			
+			// * each node after the first is a neighbor of an earlier one
+			Set<String> seen = new HashSet<String>();
+			for(String label : labels)
+			{
+				if(! seen.isEmpty())
+				{
+					boolean found = false;
+					for(Node<String> neighbor : graph.node(label).neighbors())
+						found = found || seen.contains(neighbor.label());
+					assertTrue(found);
+				}
+				seen.add(label);
+			}
+		}
+	}
+}